@@ -0,0 +1,141 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.common.security;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of creating, accessing and copying a
+ * {@link GuardedString}.
+ * <p/>
+ * The {@code pooled} encryptor is the one the framework uses, the
+ * {@code perCall} encryptor looks up and initializes a new {@link Cipher} for
+ * each call as the framework did before the ciphers were pooled. Run with
+ * {@code -t} to compare them under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardedStringBenchmark {
+
+    @Param({ "pooled", "perCall" })
+    public String encryptor;
+
+    @Param({ "16" })
+    public int length;
+
+    private char[] clearChars;
+    private GuardedString guardedString;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("perCall".equals(encryptor)) {
+            GuardedString.setEncryptor(new PerCallEncryptor());
+        } else {
+            GuardedString.setEncryptor(EncryptorFactory.getInstance().newRandomEncryptor());
+        }
+        clearChars = new char[length];
+        for (int i = 0; i < length; i++) {
+            clearChars[i] = (char) ('a' + i % 26);
+        }
+        guardedString = new GuardedString(clearChars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GuardedString.setEncryptor(null);
+    }
+
+    @Benchmark
+    public GuardedString create() {
+        return new GuardedString(clearChars);
+    }
+
+    @Benchmark
+    public void access(final Blackhole blackhole) {
+        guardedString.access(new GuardedString.Accessor() {
+            public void access(char[] chars) {
+                blackhole.consume(chars[0]);
+            }
+        });
+    }
+
+    @Benchmark
+    public GuardedString copy() {
+        return guardedString.copy();
+    }
+
+    private static class PerCallEncryptor implements Encryptor {
+
+        private static final String FULL_ALGORITHM = "AES/CBC/PKCS5Padding";
+
+        private final Key key;
+        private final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+
+        PerCallEncryptor() throws Exception {
+            key = KeyGenerator.getInstance("AES").generateKey();
+        }
+
+        public byte[] encrypt(byte[] bytes) {
+            return doFinal(Cipher.ENCRYPT_MODE, bytes);
+        }
+
+        public byte[] decrypt(byte[] bytes) {
+            return doFinal(Cipher.DECRYPT_MODE, bytes);
+        }
+
+        private byte[] doFinal(int mode, byte[] bytes) {
+            try {
+                Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
+                cipher.init(mode, key, iv);
+                return cipher.doFinal(bytes);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link AttributeMap} with the case-insensitive sorted map of
+ * {@link AttributeUtil#toMap(java.util.Collection)}. Run with
+ * {@code -prof gc} to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeMapBenchmark {
+
+    @Param({ "10", "100", "500" })
+    public int attributes;
+
+    private Set<Attribute> attrs;
+    private String[] lookups;
+    private Map<String, Attribute> sortedMap;
+    private Map<String, Attribute> attributeMap;
+
+    @Setup
+    public void setUp() {
+        attrs = new HashSet<Attribute>();
+        attrs.add(new Uid("uid"));
+        attrs.add(new Name("name"));
+        for (int i = 0; i < attributes; i++) {
+            attrs.add(AttributeBuilder.build("attribute" + i, "value" + i));
+        }
+        // the names of a filter or a normalizer differ in case
+        lookups = new String[] { Uid.NAME, Name.NAME, "Attribute" + attributes / 2,
+            "ATTRIBUTE" + (attributes - 1), "missing" };
+        sortedMap = AttributeUtil.toMap(attrs);
+        attributeMap = new AttributeMap(attrs);
+    }
+
+    @Benchmark
+    public Map<String, Attribute> createSorted() {
+        return AttributeUtil.toMap(attrs);
+    }
+
+    @Benchmark
+    public Map<String, Attribute> createHashed() {
+        return new AttributeMap(attrs);
+    }
+
+    @Benchmark
+    public ConnectorObject createConnectorObject() {
+        return new ConnectorObject(ObjectClass.ACCOUNT, attrs);
+    }
+
+    @Benchmark
+    public void lookupSorted(final Blackhole blackhole) {
+        for (String name : lookups) {
+            blackhole.consume(sortedMap.get(name));
+        }
+    }
+
+    @Benchmark
+    public void lookupHashed(final Blackhole blackhole) {
+        for (String name : lookups) {
+            blackhole.consume(attributeMap.get(name));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects.filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link FilterCompiler} with the
+ * {@link FilteredResultsHandlerVisitor} filtering a page of objects with a
+ * compound, case-ignore filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({ "1000" })
+    public int objects;
+
+    @Param({ "true", "false" })
+    public boolean caseIgnore;
+
+    private ConnectorObject[] page;
+    private Filter filter;
+    private FilteredResultsHandlerVisitor visitor;
+    private Filter compiled;
+
+    @Setup
+    public void setUp() {
+        page = new ConnectorObject[objects];
+        for (int i = 0; i < objects; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(String.valueOf(i));
+            builder.setName("User" + i);
+            builder.addAttribute(AttributeBuilder.build("mail", "user" + i + "@Example.com"));
+            builder.addAttribute(AttributeBuilder.build("department", "Dept" + i % 10));
+            builder.addAttribute(AttributeBuilder.build("age", 20 + i % 50));
+            builder.addAttribute(AttributeBuilder.build("groups", "users", "group" + i % 7));
+            if (i % 3 == 0) {
+                builder.addAttribute(AttributeBuilder.build("manager", "User" + i / 3));
+            }
+            page[i] = builder.build();
+        }
+        filter =
+                FilterBuilder.and(FilterBuilder.or(FilterBuilder.containsAllValues(AttributeBuilder
+                        .build("groups", "USERS", "group3")), FilterBuilder
+                        .startsWith(AttributeBuilder.build("manager", "user1"))), FilterBuilder
+                        .and(FilterBuilder.endsWith(AttributeBuilder.build("mail",
+                                "@example.com")), FilterBuilder.greaterThan(AttributeBuilder
+                                .build("age", 30))), FilterBuilder.present("department"));
+        visitor = new FilteredResultsHandlerVisitor(caseIgnore);
+        compiled = FilterCompiler.compile(filter, caseIgnore);
+    }
+
+    @Benchmark
+    public int visitor() {
+        int accepted = 0;
+        for (ConnectorObject obj : page) {
+            if (filter.accept(visitor, obj).toBoolean()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public int compiled() {
+        int accepted = 0;
+        for (ConnectorObject obj : page) {
+            if (compiled.accept(obj)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public int compileAndFilter() {
+        // the compilation cost is paid once per search
+        final Filter perSearch = FilterCompiler.compile(filter, caseIgnore);
+        int accepted = 0;
+        for (ConnectorObject obj : page) {
+            if (perSearch.accept(obj)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
@@ -27,15 +27,19 @@ import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
 
 
 /**
  * Creates a new ScriptExecutorFactory for executing Groovy scripts. Scripts are
- * compiled at the creation of a new instance of {@link ScriptExecutor}.
+ * compiled at the creation of a new instance of {@link ScriptExecutor}, the
+ * compiled script classes are kept in the {@link CompiledScriptCache}.
  */
 public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
 
@@ -60,8 +64,9 @@ public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
     private static class GroovyScriptExecutor implements ScriptExecutor {
         private final Script groovyScript;
 
-        public GroovyScriptExecutor(ClassLoader loader, String script) {
-            groovyScript = new GroovyShell(loader).parse(script);
+        public GroovyScriptExecutor(final ClassLoader loader, final String script) {
+            // the Script instance keeps the binding, only the class is shared
+            groovyScript = InvokerHelper.createScript(compile(loader, script), new Binding());
         }
 
         public Object execute(Map<String, Object> arguments) throws Exception {
@@ -71,6 +76,22 @@ public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Script> compile(final ClassLoader loader, final String script) {
+        try {
+            return CompiledScriptCache.getInstance().get("Groovy", loader, script,
+                    new Callable<Class<? extends Script>>() {
+                        public Class<? extends Script> call() throws Exception {
+                            return new GroovyShell(loader).parse(script).getClass();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
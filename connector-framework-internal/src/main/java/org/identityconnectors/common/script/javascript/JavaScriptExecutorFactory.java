@@ -25,6 +25,7 @@
 package org.identityconnectors.common.script.javascript;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.script.Bindings;
 import javax.script.Compilable;
@@ -36,6 +37,7 @@ import javax.script.ScriptException;
 import javax.script.SimpleScriptContext;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -66,20 +68,30 @@ public class JavaScriptExecutorFactory extends ScriptExecutorFactory {
      * Always compile the script.
      */
     @Override
-    public ScriptExecutor newScriptExecutor(ClassLoader loader, String script, boolean compile) {
-        ScriptEngine engine = manager.getEngineByName(JAVA_SCRIPT);
+    public ScriptExecutor newScriptExecutor(ClassLoader loader, final String script,
+            boolean compile) {
         try {
-            if (compile) {
-                if (compilable) {
-                    CompiledScript compiled = ((Compilable) engine).compile(script);
-                    return new CompiledJavaScriptExecutor(loader, compiled);
-                } else {
-                    engine.eval(script);
-                }
+            // the script of an engine which can't compile is only evaluated
+            // by the executor
+            if (compile && compilable) {
+                // the compiled script is evaluated in a new context each time
+                CompiledScript compiled =
+                        CompiledScriptCache.getInstance().get(JAVA_SCRIPT, loader, script,
+                                new Callable<CompiledScript>() {
+                                    public CompiledScript call() throws ScriptException {
+                                        return ((Compilable) manager
+                                                .getEngineByName(JAVA_SCRIPT)).compile(script);
+                                    }
+                                });
+                return new CompiledJavaScriptExecutor(loader, compiled);
             }
             return new JavaScriptExecutor(loader, script);
         } catch (ScriptException e) {
             throw new ConnectorException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConnectorException(e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,123 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.common.security.impl;
+
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * A pool of initialized {@link Cipher} instances of one key.
+ * <p/>
+ * {@link Cipher#getInstance(String)} looks up the provider every time and
+ * costs more than encrypting a short secret. A cipher is reset to the state
+ * of its last {@code init} call by {@code doFinal}, so the pool keeps the
+ * idle encrypting and decrypting ciphers and reuses them. A cipher is not
+ * thread-safe, each one is used by one thread at a time and a cipher which
+ * failed is dropped.
+ *
+ * @since 1.5
+ */
+public final class CipherPool {
+
+    private static final int DEFAULT_MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final String transformation;
+    private final Key key;
+    private final AlgorithmParameterSpec params;
+    private final int maxIdle;
+
+    private final Queue<Cipher> encryptors = new ConcurrentLinkedQueue<Cipher>();
+    private final Queue<Cipher> decryptors = new ConcurrentLinkedQueue<Cipher>();
+    private final AtomicInteger idleEncryptors = new AtomicInteger(0);
+    private final AtomicInteger idleDecryptors = new AtomicInteger(0);
+
+    public CipherPool(String transformation, Key key, AlgorithmParameterSpec params) {
+        this(transformation, key, params, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param transformation
+     *            the name of the transformation, e.g. AES/CBC/PKCS5Padding.
+     * @param key
+     *            the key of the ciphers.
+     * @param params
+     *            the algorithm parameters, the same parameters are used for
+     *            each operation.
+     * @param maxIdle
+     *            the maximum number of idle ciphers kept for each mode.
+     */
+    public CipherPool(String transformation, Key key, AlgorithmParameterSpec params, int maxIdle) {
+        this.transformation = transformation;
+        this.key = key;
+        this.params = params;
+        this.maxIdle = maxIdle;
+    }
+
+    public byte[] encrypt(byte[] bytes) {
+        return doFinal(Cipher.ENCRYPT_MODE, encryptors, idleEncryptors, bytes);
+    }
+
+    public byte[] decrypt(byte[] bytes) {
+        return doFinal(Cipher.DECRYPT_MODE, decryptors, idleDecryptors, bytes);
+    }
+
+    /**
+     * Returns the number of idle ciphers.
+     */
+    public int getIdleCount() {
+        return idleEncryptors.get() + idleDecryptors.get();
+    }
+
+    private byte[] doFinal(final int mode, final Queue<Cipher> idle, final AtomicInteger idleCount,
+            final byte[] bytes) {
+        try {
+            Cipher cipher = idle.poll();
+            if (null != cipher) {
+                idleCount.decrementAndGet();
+            } else {
+                cipher = Cipher.getInstance(transformation);
+                cipher.init(mode, key, params);
+            }
+            final byte[] result = cipher.doFinal(bytes);
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idle.offer(cipher);
+            } else {
+                idleCount.decrementAndGet();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -25,7 +25,6 @@ package org.identityconnectors.common.security.impl;
 
 import java.security.Key;
 
-import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -52,10 +51,11 @@ public class EncryptorImpl implements Encryptor {
         (byte) 0x64,(byte) 0x05,(byte) 0x6A,(byte) 0xBE,
     };
 
-    private Key key;
-    private IvParameterSpec iv;
+    private final CipherPool ciphers;
 
     public EncryptorImpl(boolean defaultKey) {
+        Key key;
+        IvParameterSpec iv;
         if (defaultKey) {
             key = new SecretKeySpec(DEFAULT_KEY_BYTES, ALGORITHM);
             iv = new IvParameterSpec(DEFAULT_IV_BYTES);
@@ -69,30 +69,15 @@ public class EncryptorImpl implements Encryptor {
                 throw new RuntimeException(e);
             }
         }
+        ciphers = new CipherPool(FULL_ALGORITHM, key, iv);
     }
 
     public byte[] decrypt(byte[] bytes) {
-        try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return ciphers.decrypt(bytes);
     }
 
     public byte[] encrypt(byte[] bytes) {
-        try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return ciphers.encrypt(bytes);
     }
 
 }
@@ -23,8 +23,10 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,6 +36,7 @@ import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 
 public class APIConfigurationImpl implements APIConfiguration {
 
@@ -79,6 +82,26 @@ public class APIConfigurationImpl implements APIConfiguration {
      */
     private transient ConfigurationPropertyChangeListener configurationChangeListener;
 
+    /**
+     * The schema cache of the facade, dropped when the connector changes its
+     * configuration. Null if the cache is not enabled.
+     */
+    private transient SchemaCache schemaCache;
+
+    /**
+     * The serialized form of the configuration, shared with the copies while
+     * they are equal to the snapshot of the fingerprint. Not serialized in
+     * this object.
+     */
+    private transient volatile Fingerprint fingerprint;
+
+    /**
+     * The serialized form of the configuration without the producer buffer
+     * size and the timeouts, the key of a remote facade. Not serialized in
+     * this object.
+     */
+    private transient volatile Fingerprint remoteFingerprint;
+
     // =======================================================================
     // Constructors
     // =======================================================================
@@ -86,7 +109,18 @@ public class APIConfigurationImpl implements APIConfiguration {
     public APIConfigurationImpl() {
     }
 
+    /**
+     * Creates a deep copy of the configuration.
+     * <p/>
+     * The properties and their values are copied so the two configurations
+     * can be modified independently, the connector info and the change
+     * listener are shared.
+     */
     public APIConfigurationImpl(APIConfigurationImpl other) {
+        this(other, true);
+    }
+
+    private APIConfigurationImpl(APIConfigurationImpl other, boolean shareFingerprint) {
         if (null != other.connectorPoolConfiguration) {
             this.setConnectorPoolConfiguration(new ObjectPoolConfiguration(
                     other.connectorPoolConfiguration));
@@ -96,17 +130,33 @@ public class APIConfigurationImpl implements APIConfiguration {
                     other.resultsHandlerConfiguration));
         }
         this.isConnectorPoolingSupported = other.isConnectorPoolingSupported;
-        ConfigurationPropertiesImpl prop = new ConfigurationPropertiesImpl();
-        prop.setProperties(other.getConfigurationProperties().getProperties());
-        setConfigurationProperties(prop);
+        if (null != other.configurationProperties) {
+            List<ConfigurationPropertyImpl> properties = new ArrayList<ConfigurationPropertyImpl>();
+            for (ConfigurationPropertyImpl property : other.configurationProperties.getProperties()) {
+                ConfigurationPropertyImpl copy = new ConfigurationPropertyImpl(property);
+                copy.setValue(ConfigurationPropertyImpl.copyValue(property.getValue()));
+                properties.add(copy);
+            }
+            ConfigurationPropertiesImpl prop = new ConfigurationPropertiesImpl();
+            prop.setProperties(properties);
+            setConfigurationProperties(prop);
+        }
 
         this.bufferSize = other.bufferSize;
-        this.timeoutMap = new HashMap<Class<? extends APIOperation>, Integer>(other.timeoutMap);
-        this.supportedOperations =
-                new HashSet<Class<? extends APIOperation>>(other.supportedOperations);
+        if (null != other.timeoutMap) {
+            this.timeoutMap =
+                    new HashMap<Class<? extends APIOperation>, Integer>(other.timeoutMap);
+        }
+        if (null != other.supportedOperations) {
+            this.supportedOperations =
+                    new HashSet<Class<? extends APIOperation>>(other.supportedOperations);
+        }
 
         this.connectorInfo = other.connectorInfo;
         this.configurationChangeListener = other.configurationChangeListener;
+        if (shareFingerprint) {
+            this.fingerprint = other.getFingerprint();
+        }
     }
 
     // =======================================================================
@@ -244,4 +294,95 @@ public class APIConfigurationImpl implements APIConfiguration {
     public ConfigurationPropertyChangeListener getChangeListener() {
         return configurationChangeListener;
     }
+
+    public void setSchemaCache(SchemaCache schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    /**
+     * Gets the fingerprint of the current state of this configuration.
+     * <p/>
+     * The fingerprint is reused as long as this configuration is equal to its
+     * snapshot, so the copies of an unchanged configuration share the same
+     * serialized form.
+     */
+    Fingerprint getFingerprint() {
+        Fingerprint current = fingerprint;
+        if (null == current || !current.snapshot.isEqualTo(this, true)) {
+            current = new Fingerprint(new APIConfigurationImpl(this, false));
+            fingerprint = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the key of the remote facade of this configuration.
+     * <p/>
+     * The producer buffer size and the timeouts are applied by the client, so
+     * they are not part of the key. The key is serialized once and reused as
+     * long as the rest of this configuration does not change.
+     *
+     * @return the Base64 encoded configuration without the client settings.
+     */
+    public String getRemoteConnectorFacadeKey() {
+        Fingerprint current = remoteFingerprint;
+        if (null == current || !current.snapshot.isEqualTo(this, false)) {
+            APIConfigurationImpl snapshot = new APIConfigurationImpl(this, false);
+            snapshot.bufferSize = 0;
+            snapshot.timeoutMap = new HashMap<Class<? extends APIOperation>, Integer>();
+            current = new Fingerprint(snapshot);
+            remoteFingerprint = current;
+        }
+        return current.getValue();
+    }
+
+    /**
+     * Compares the serialized state of the two configurations.
+     *
+     * @param clientSettings
+     *            false to ignore the producer buffer size and the timeouts.
+     */
+    private boolean isEqualTo(APIConfigurationImpl other, boolean clientSettings) {
+        return (!clientSettings || (bufferSize == other.bufferSize && CollectionUtil.equals(
+                timeoutMap, other.timeoutMap)))
+                && isConnectorPoolingSupported == other.isConnectorPoolingSupported
+                && getConnectorPoolConfiguration().equals(other.getConnectorPoolConfiguration())
+                && getResultsHandlerConfiguration().equals(
+                        other.getResultsHandlerConfiguration())
+                && CollectionUtil.equals(supportedOperations, other.supportedOperations)
+                && (null == configurationProperties ? null == other.configurationProperties
+                        : null != other.configurationProperties
+                                && configurationProperties.equals(other.configurationProperties));
+    }
+
+    /**
+     * The Base64 encoded binary form of a configuration, it's the key of the
+     * {@link AbstractConnectorFacade}.
+     * <p/>
+     * The snapshot is a private copy which is never modified, the value is
+     * serialized from it only when it's first needed.
+     */
+    static final class Fingerprint {
+
+        private final APIConfigurationImpl snapshot;
+
+        private volatile String value;
+
+        private Fingerprint(APIConfigurationImpl snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        String getValue() {
+            String result = value;
+            if (null == result) {
+                result = SerializerUtil.serializeBase64Object(snapshot);
+                value = result;
+            }
+            return result;
+        }
+    }
 }
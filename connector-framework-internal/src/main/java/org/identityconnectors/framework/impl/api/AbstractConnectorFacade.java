@@ -30,7 +30,6 @@ import java.util.List;
 import java.util.Set;
 
 import org.identityconnectors.common.Assertions;
-import org.identityconnectors.common.Base64;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -79,6 +78,12 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
     private final APIConfigurationImpl configuration;
     private final String connectorFacadeKey;
 
+    /**
+     * The fingerprint of the configuration the facade was created from, it
+     * gives the key when the facade was not created from a key.
+     */
+    private final APIConfigurationImpl.Fingerprint fingerprint;
+
     /**
      * Builds up the maps of supported operations and calls.
      */
@@ -89,12 +94,11 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         // ensure thread-safety of a ConnectorFacade
         // also, configuration is used as a key in the
         // pool, so it is important that it not be modified.
-        byte[] bytes = SerializerUtil.serializeBinaryObject(configuration);
-        connectorFacadeKey = Base64.encode(bytes);
-        this.configuration = (APIConfigurationImpl) SerializerUtil.deserializeBinaryObject(bytes);
-        // parent ref not included in the clone
-        this.configuration.setConnectorInfo(configuration.getConnectorInfo());
-        this.configuration.setChangeListener(configuration.getChangeListener());
+        // The deep copy shares the fingerprint of an unchanged configuration
+        // so the key is serialized only once.
+        this.configuration = new APIConfigurationImpl(configuration);
+        this.fingerprint = this.configuration.getFingerprint();
+        this.connectorFacadeKey = null;
     }
 
     /**
@@ -109,6 +113,7 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         Assertions.nullCheck(configuration, "configuration");
         Assertions.nullCheck(connectorInfo, "connectorInfo");
         this.connectorFacadeKey = configuration;
+        this.fingerprint = null;
         this.configuration = (APIConfigurationImpl) SerializerUtil.deserializeBase64Object(configuration);
         // parent ref not included in the clone
         this.configuration.setConnectorInfo(connectorInfo);
@@ -131,6 +136,7 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
     public AbstractConnectorFacade(final String facadeAlias,
             final APIConfigurationImpl configuration) {
         this.connectorFacadeKey = Assertions.blankChecked(facadeAlias, "facadeURI");
+        this.fingerprint = null;
         Assertions.nullCheck(configuration, "configuration");
         this.configuration =
                 (APIConfigurationImpl) configuration.getConnectorInfo()
@@ -166,7 +172,7 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      * @return identifier of this ConnectorFacade instance.
      */
     public final String getConnectorFacadeKey() {
-        return connectorFacadeKey;
+        return null != fingerprint ? fingerprint.getValue() : connectorFacadeKey;
     }
 
     /**
@@ -26,7 +26,6 @@ import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.objects.ConnectorMessages;
-import org.identityconnectors.framework.common.serializer.SerializerUtil;
 
 /**
  * Common base class shared between local and remote implementations
@@ -85,8 +84,7 @@ abstract public class AbstractConnectorInfo implements ConnectorInfo {
     }
 
     public final APIConfiguration createDefaultAPIConfiguration() {
-        APIConfigurationImpl rv =
-                (APIConfigurationImpl) SerializerUtil.cloneObject(defaultAPIConfiguration);
+        APIConfigurationImpl rv = new APIConfigurationImpl(defaultAPIConfiguration);
         rv.setConnectorInfo(this);
         return rv;
     }
@@ -27,6 +27,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -63,9 +64,11 @@ public class BufferedResultsProxy implements InvocationHandler {
         this.bufferSize = (bufferSize < 1) ? 100 : bufferSize;
     }
 
-    private static class BufferedResultsHandler extends Thread implements ObjectStreamHandler {
+    private static class BufferedResultsHandler implements Runnable, ObjectStreamHandler {
         private static final Object DONE = new Object();
         private final AtomicBoolean stopped = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Thread producer = null;
         private final Method method;
         private final Object target;
         private final Object[] arguments;
@@ -105,7 +108,7 @@ public class BufferedResultsProxy implements InvocationHandler {
          *             If we said to wait and we timed out.
          */
         public void stop(boolean wait) {
-            if (wait && Thread.currentThread() == this) {
+            if (wait && Thread.currentThread() == producer) {
                 throw new IllegalStateException("A thread cannot wait on itself");
             }
 
@@ -115,16 +118,17 @@ public class BufferedResultsProxy implements InvocationHandler {
                 // wakeup so that it can exit
                 buffer.clear();
                 if (wait) {
+                    boolean done;
                     try {
-                        // join with a time-limit. this may timeout
+                        // wait with a time-limit. this may timeout
                         // if we are blocked in the producer
-                        join(timeoutMillis);
+                        done = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw ConnectorException.wrap(e);
                     }
-                    // if we're still alive, we've timed out
-                    if (isAlive()) {
+                    // if we're still running, we've timed out
+                    if (!done) {
                         throw new OperationTimeoutException();
                     }
                 }
@@ -150,9 +154,13 @@ public class BufferedResultsProxy implements InvocationHandler {
             return actualArguments;
         }
 
-        @Override
         public void run() {
+            producer = Thread.currentThread();
             try {
+                if (isStopped()) {
+                    // the consumer timed out while the task was queued
+                    return;
+                }
                 try {
                     result = method.invoke(target, createActualArguments());
                     buffer.put(DONE);
@@ -167,6 +175,9 @@ public class BufferedResultsProxy implements InvocationHandler {
                 }
             } catch (InterruptedException e) {
                 LOG.error(e, null);
+            } finally {
+                producer = null;
+                finished.countDown();
             }
         }
 
@@ -243,12 +254,9 @@ public class BufferedResultsProxy implements InvocationHandler {
                     "We only support operations that have a single stream handler " + method);
         }
 
-        // this guy will automatically inherit
-        // CurrentLocale since we are using a new thread
-        // NOTE: if we ever introduce thread pooling
-        // here, it needs to explicitly propagate
-        bufHandler.setDaemon(true);
-        bufHandler.start();
+        // the executor propagates the CurrentLocale to the producer, it
+        // never runs the producer on this thread
+        OperationExecutor.getInstance().execute(bufHandler);
         while (!bufHandler.isStopped()) {
             Object obj = bufHandler.getNextObject();
             if (obj != null) {
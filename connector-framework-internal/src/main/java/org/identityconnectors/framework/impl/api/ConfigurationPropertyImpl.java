@@ -22,12 +22,22 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.io.File;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.Script;
+import org.identityconnectors.common.security.GuardedByteArray;
+import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConfigurationProperty;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.objects.ConnectorMessages;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 
 public class ConfigurationPropertyImpl implements ConfigurationProperty {
 
@@ -179,6 +189,60 @@ public class ConfigurationPropertyImpl implements ConfigurationProperty {
         this.parent = null;
     }
 
+    /**
+     * The value types which can be shared between the copies.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>();
+    static {
+        IMMUTABLE_TYPES.add(String.class);
+        IMMUTABLE_TYPES.add(Long.class);
+        IMMUTABLE_TYPES.add(Character.class);
+        IMMUTABLE_TYPES.add(Double.class);
+        IMMUTABLE_TYPES.add(Float.class);
+        IMMUTABLE_TYPES.add(Integer.class);
+        IMMUTABLE_TYPES.add(Short.class);
+        IMMUTABLE_TYPES.add(Byte.class);
+        IMMUTABLE_TYPES.add(Boolean.class);
+        IMMUTABLE_TYPES.add(BigDecimal.class);
+        IMMUTABLE_TYPES.add(BigInteger.class);
+        IMMUTABLE_TYPES.add(URI.class);
+        IMMUTABLE_TYPES.add(File.class);
+        IMMUTABLE_TYPES.add(Script.class);
+    }
+
+    /**
+     * Creates a deep copy of a property value.
+     * <p/>
+     * The immutable values are shared, the arrays and the guarded values are
+     * copied and any other type falls back to the serializer.
+     *
+     * @param value
+     *            the value to copy, may be null.
+     * @return the copy of the value.
+     */
+    static Object copyValue(Object value) {
+        if (null == value || IMMUTABLE_TYPES.contains(value.getClass())) {
+            return value;
+        } else if (value instanceof GuardedString) {
+            return ((GuardedString) value).copy();
+        } else if (value instanceof GuardedByteArray) {
+            return ((GuardedByteArray) value).copy();
+        } else if (value.getClass().isArray()) {
+            Class<?> componentType = value.getClass().getComponentType();
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(componentType, length);
+            if (componentType.isPrimitive()) {
+                System.arraycopy(value, 0, copy, 0, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    Array.set(copy, i, copyValue(Array.get(value, i)));
+                }
+            }
+            return copy;
+        }
+        return SerializerUtil.cloneObject(value);
+    }
+
     private String formatMessage(String key, String dflt, Object... args) {
         APIConfigurationImpl apiConfig = getParent().getParent();
         ConnectorMessages messages = apiConfig.getConnectorInfo().getMessages();
@@ -19,7 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
- * Portions Copyrighted 2014 ForgeRock AS.
+ * Portions Copyrighted 2014-2015 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api;
 
@@ -33,6 +33,9 @@ import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
 /**
  * Proxy responsible for logging operations from the API.
+ * <p/>
+ * The trace is written by the {@link OperationTracer}, which may sample the
+ * calls and render them on a background thread.
  */
 public class LoggingProxy implements InvocationHandler {
 
@@ -58,31 +61,26 @@ public class LoggingProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
         final String methodName = method.getName();
-        if (isLoggable()) {
-            StringBuilder bld = new StringBuilder();
-            bld.append("Enter: ").append(method.getName()).append('(');
-            for (int i = 0; args != null && i < args.length; i++) {
-                if (i != 0) {
-                    bld.append(", ");
-                }
-                bld.append(args[i]);
-            }
-            bld.append(')');
-            final String msg = bld.toString();
-            LOG.log(op, methodName, LOG_LEVEL, msg, null);
+        final OperationTracer tracer = OperationTracer.getInstance();
+        // the return is traced only if the call was sampled
+        final boolean traced = isLoggable() && tracer.isSampled();
+        if (traced) {
+            tracer.enter(op, methodName, args);
         }
         // invoke the method
         try {
             Object ret = method.invoke(target, args);
-            if (isLoggable()) {
-                LOG.log(op, methodName, LOG_LEVEL, "Return: " + ret, null);
+            if (traced) {
+                tracer.exit(op, methodName, ret);
             }
             return ret;
         } catch (InvocationTargetException e) {
             Throwable root = e.getCause();
 
             try {
-                LOG.log(op, methodName, LOG_LEVEL, "Exception: ", root);
+                if (isLoggable()) {
+                    tracer.exception(op, methodName, root);
+                }
             } catch (Throwable t) {
                 // Ignore. Don't let a failed log prevent this from completing.
             }
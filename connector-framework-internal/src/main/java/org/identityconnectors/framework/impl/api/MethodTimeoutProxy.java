@@ -25,16 +25,12 @@ package org.identityconnectors.framework.impl.api;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 
@@ -48,11 +44,6 @@ import org.identityconnectors.framework.common.exceptions.OperationTimeoutExcept
  */
 public class MethodTimeoutProxy implements InvocationHandler {
 
-    /**
-     * Get a pool of threads to use for operational timeouts.
-     */
-    private static final ExecutorService THREADPOOL = Executors.newCachedThreadPool();
-
     /**
      * The underlying operation that we are providing a timeout for
      */
@@ -83,20 +74,12 @@ public class MethodTimeoutProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
 
-        final Locale locale = CurrentLocale.get();
-
         Callable<Object> callable = new Callable<Object>() {
 
             public Object call() throws Exception {
                 try {
-                    try {
-                        // propagate current locale
-                        // since this is a thread pool
-                        CurrentLocale.set(locale);
-                        return method.invoke(target, args);
-                    } finally {
-                        CurrentLocale.clear();
-                    }
+                    // the executor propagates the current locale
+                    return method.invoke(target, args);
                 } catch (InvocationTargetException e) {
                     Throwable root = e.getCause();
                     if (root instanceof RuntimeException) {
@@ -112,14 +95,17 @@ public class MethodTimeoutProxy implements InvocationHandler {
             }
         };
 
+        // package in a future task so we can set a timeout..
+        FutureTask<Object> t = new FutureTask<Object>(callable);
         try {
-            // package in a future task so we can set a timeout..
-            FutureTask<Object> t = new FutureTask<Object>(callable);
-            // execute it in the thread pool so we don't waste resources.
-            THREADPOOL.execute(t);
+            // execute it in the shared executor so we don't waste resources,
+            // it gets a dedicated thread if the executor is saturated.
+            OperationExecutor.getInstance().execute(t);
             // execute and hope it doesn't timeout :)
             return t.get(timeoutMillis, TimeUnit.MILLISECONDS);
         } catch (TimeoutException ex) {
+            // the caller is told the operation failed, so stop it
+            t.cancel(true);
             throw new OperationTimeoutException(ex);
         } catch (ExecutionException ex) {
             throw ex.getCause();
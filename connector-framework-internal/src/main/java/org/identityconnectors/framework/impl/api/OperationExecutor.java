@@ -0,0 +1,275 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * The OperationExecutor runs the operations of the {@link MethodTimeoutProxy}
+ * and the producer side of the {@link BufferedResultsProxy}.
+ * <p/>
+ * By default the operations run on a bounded pool of platform threads. The
+ * tasks are never queued: when all threads are busy {@link #execute(Runnable)}
+ * starts a dedicated thread for the task and {@link #tryExecute(Runnable)}
+ * refuses it, so a task never waits for a thread and never runs on the caller
+ * thread. On a JDK with virtual threads every task can run on its own virtual
+ * thread instead. The executor is configured with system properties when it's
+ * first used:
+ * <ul>
+ * <li>{@value #MAX_THREADS_PROPERTY} - the size of the platform thread pool,
+ * default {@value #DEFAULT_MAX_THREADS}.</li>
+ * <li>{@value #VIRTUAL_THREADS_PROPERTY} - {@code true} to use virtual threads
+ * if the JDK supports them.</li>
+ * </ul>
+ * The caller's {@link CurrentLocale} and context class loader are propagated
+ * to the task. The number of running tasks, of tasks waiting for their thread
+ * to start them and of tasks which found the pool full are exposed as metrics.
+ *
+ * @since 1.5
+ */
+public final class OperationExecutor {
+
+    private static final Log LOG = Log.getLog(OperationExecutor.class);
+
+    public static final String MAX_THREADS_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationExecutor.maxThreads";
+
+    public static final String VIRTUAL_THREADS_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationExecutor.virtualThreads";
+
+    public static final int DEFAULT_MAX_THREADS = 256;
+
+    /**
+     * Time in seconds an idle platform thread is kept in the pool.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private static final class Holder {
+        private static final OperationExecutor INSTANCE = new OperationExecutor(Integer
+                .getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS), Boolean
+                .getBoolean(VIRTUAL_THREADS_PROPERTY));
+    }
+
+    private final ExecutorService executor;
+    private final ThreadFactory threadFactory = new OperationThreadFactory();
+    private final boolean virtual;
+    private final int maxThreads;
+
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    OperationExecutor(int maxThreads, boolean virtualThreads) {
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (null != virtualExecutor) {
+            this.executor = virtualExecutor;
+            this.virtual = true;
+            this.maxThreads = Integer.MAX_VALUE;
+        } else {
+            this.maxThreads = Math.max(1, maxThreads);
+            ThreadPoolExecutor pool =
+                    new ThreadPoolExecutor(this.maxThreads, this.maxThreads, KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                            threadFactory);
+            allowCoreThreadTimeOut(pool);
+            this.executor = pool;
+            this.virtual = false;
+        }
+    }
+
+    /**
+     * Gets the shared instance.
+     *
+     * @return the executor configured by the system properties.
+     */
+    public static OperationExecutor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Executes the task, on a dedicated thread if all threads are busy.
+     *
+     * @param task
+     *            the task to execute.
+     */
+    public void execute(final Runnable task) {
+        if (!tryExecute(task)) {
+            // the task may be timed by the caller, it must not run inline
+            pending.incrementAndGet();
+            threadFactory.newThread(new PropagatingTask(task)).start();
+        }
+    }
+
+    /**
+     * Executes the task if a thread is available.
+     *
+     * @param task
+     *            the task to execute.
+     * @return false if all threads are busy and the task was not executed.
+     */
+    public boolean tryExecute(final Runnable task) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(new PropagatingTask(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the tasks run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Returns the size of the platform thread pool or
+     * {@link Integer#MAX_VALUE} with virtual threads.
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the number of tasks which found all threads busy.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of tasks which were handed to a thread but did not
+     * start yet.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of running tasks.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of finished tasks.
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    private class PropagatingTask implements Runnable {
+
+        private final Runnable task;
+        private final Locale locale;
+        private final ClassLoader classLoader;
+
+        PropagatingTask(final Runnable task) {
+            this.task = task;
+            this.locale = CurrentLocale.get();
+            this.classLoader = Thread.currentThread().getContextClassLoader();
+        }
+
+        public void run() {
+            pending.decrementAndGet();
+            active.incrementAndGet();
+            final Thread current = Thread.currentThread();
+            final ClassLoader previous = current.getContextClassLoader();
+            try {
+                CurrentLocale.set(locale);
+                current.setContextClassLoader(classLoader);
+                task.run();
+            } finally {
+                current.setContextClassLoader(previous);
+                CurrentLocale.clear();
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    private static class OperationThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "OperationExecutor-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            // each task sets the class loader of its caller, the thread must
+            // not keep the loader of the caller which started it
+            thread.setContextClassLoader(null);
+            return thread;
+        }
+    }
+
+    /**
+     * Lets the idle threads of the pool terminate, the method is available
+     * since Java 6.
+     */
+    private static void allowCoreThreadTimeOut(final ThreadPoolExecutor pool) {
+        try {
+            Method method =
+                    ThreadPoolExecutor.class.getMethod("allowCoreThreadTimeOut", Boolean.TYPE);
+            method.invoke(pool, Boolean.TRUE);
+        } catch (Exception e) {
+            LOG.ok("Idle operation threads are not released on this JVM");
+        }
+    }
+
+    /**
+     * Creates the executor which starts a new virtual thread for each task,
+     * the method is available since Java 21.
+     *
+     * @return null if the JDK does not support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            LOG.info("Virtual threads are not supported, using platform threads");
+            return null;
+        }
+    }
+}
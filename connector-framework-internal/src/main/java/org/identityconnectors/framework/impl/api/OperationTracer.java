@@ -0,0 +1,347 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * The OperationTracer writes the operation trace of the {@link LoggingProxy}.
+ * <p/>
+ * By default every call is traced on the calling thread like before. The
+ * asynchronous tracer only records the arguments in a preallocated ring
+ * buffer and a background thread renders and logs them, the events are
+ * dropped when the buffer is full. The arguments are rendered after the call
+ * so an argument changed by the caller shows its later value. The tracer is
+ * configured with system properties when it's first used:
+ * <ul>
+ * <li>{@value #ASYNCHRONOUS_PROPERTY} - {@code true} to trace on the
+ * background thread.</li>
+ * <li>{@value #BUFFER_SIZE_PROPERTY} - the number of events in the ring
+ * buffer, rounded up to a power of two, default {@value #DEFAULT_BUFFER_SIZE}.
+ * </li>
+ * <li>{@value #SAMPLE_RATE_PROPERTY} - trace one of N calls, default every
+ * call. The exceptions are always traced.</li>
+ * <li>{@value #MAX_ARGUMENT_LENGTH_PROPERTY} - the longest rendered argument,
+ * default zero for no limit.</li>
+ * </ul>
+ * The operation and the method are passed to the log, so the logger does not
+ * need the stack trace to find the caller.
+ *
+ * @since 1.5
+ */
+public class OperationTracer {
+
+    public static final String ASYNCHRONOUS_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationTracer.asynchronous";
+
+    public static final String BUFFER_SIZE_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationTracer.bufferSize";
+
+    public static final String SAMPLE_RATE_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationTracer.sampleRate";
+
+    public static final String MAX_ARGUMENT_LENGTH_PROPERTY =
+            "org.identityconnectors.framework.impl.api.OperationTracer.maxArgumentLength";
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    static final Log.Level LOG_LEVEL = Log.Level.OK;
+
+    private static final int ENTER = 0;
+    private static final int RETURN = 1;
+    private static final int EXCEPTION = 2;
+
+    /**
+     * Time in nanoseconds the idle background thread waits for an event.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    private static final class Holder {
+        private static final OperationTracer INSTANCE = new OperationTracer(Log
+                .getLog(LoggingProxy.class), Boolean.getBoolean(ASYNCHRONOUS_PROPERTY), Integer
+                .getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE), Integer.getInteger(
+                SAMPLE_RATE_PROPERTY, 1), Integer.getInteger(MAX_ARGUMENT_LENGTH_PROPERTY, 0));
+    }
+
+    private final Log log;
+    private final int sampleRate;
+    private final int maxArgumentLength;
+
+    private final AtomicLong calls = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    // -- The ring buffer, null if the tracer is synchronous
+
+    private final Event[] events;
+    private final int mask;
+    /**
+     * The sequence of the event published in each slot.
+     */
+    private final AtomicLongArray published;
+    /**
+     * The next sequence to claim by the callers.
+     */
+    private final AtomicLong next = new AtomicLong(0);
+    /**
+     * The next sequence to render by the background thread.
+     */
+    private final AtomicLong consumed = new AtomicLong(0);
+
+    private final Thread consumer;
+    private volatile boolean waiting = false;
+
+    /**
+     * Creates a new tracer.
+     *
+     * @param log
+     *            the log to write the trace to.
+     * @param asynchronous
+     *            {@code true} to render the events on a background thread.
+     * @param bufferSize
+     *            the number of the events the asynchronous tracer keeps.
+     * @param sampleRate
+     *            trace one of this many calls.
+     * @param maxArgumentLength
+     *            the longest rendered argument, zero for no limit.
+     */
+    OperationTracer(final Log log, final boolean asynchronous, final int bufferSize,
+            final int sampleRate, final int maxArgumentLength) {
+        this.log = log;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.maxArgumentLength = Math.max(0, maxArgumentLength);
+        if (asynchronous) {
+            int size = 1;
+            while (size < bufferSize && size < (1 << 30)) {
+                size <<= 1;
+            }
+            events = new Event[size];
+            published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                events[i] = new Event();
+                published.set(i, -1L);
+            }
+            mask = size - 1;
+            consumer = new Thread(new Consumer(), "OperationTracer");
+            consumer.setDaemon(true);
+            // the tracer may be created by a connector bundle, its class
+            // loader must not be kept after undeploy
+            consumer.setContextClassLoader(null);
+            consumer.start();
+        } else {
+            events = null;
+            published = null;
+            mask = 0;
+            consumer = null;
+        }
+    }
+
+    /**
+     * Gets the shared instance.
+     *
+     * @return the tracer configured by the system properties.
+     */
+    public static OperationTracer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public boolean isLoggable() {
+        return log.isLoggable(LOG_LEVEL);
+    }
+
+    public boolean isAsynchronous() {
+        return null != events;
+    }
+
+    /**
+     * Returns true if the next call is traced.
+     */
+    public boolean isSampled() {
+        return sampleRate == 1 || calls.getAndIncrement() % sampleRate == 0;
+    }
+
+    /**
+     * Traces the call of the operation.
+     */
+    public void enter(final Class<?> operation, final String method, final Object[] args) {
+        trace(ENTER, operation, method, args, null, null);
+    }
+
+    /**
+     * Traces the result of the operation.
+     */
+    public void exit(final Class<?> operation, final String method, final Object result) {
+        trace(RETURN, operation, method, null, result, null);
+    }
+
+    /**
+     * Traces the exception of the operation.
+     */
+    public void exception(final Class<?> operation, final String method, final Throwable error) {
+        trace(EXCEPTION, operation, method, null, null, error);
+    }
+
+    /**
+     * Returns the number of the events dropped because the buffer was full.
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until the events traced before this call are written.
+     *
+     * @return false if the events are not written before the timeout.
+     */
+    public boolean flush(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!isAsynchronous()) {
+            return true;
+        }
+        final long target = next.get();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (consumed.get() < target) {
+            if (deadline - System.nanoTime() <= 0L) {
+                return false;
+            }
+            LockSupport.unpark(consumer);
+            Thread.sleep(1L);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the rendered event to the log.
+     */
+    void write(final Class<?> operation, final String method, final String message,
+            final Throwable error) {
+        log.log(operation, method, LOG_LEVEL, message, error);
+    }
+
+    private void trace(final int kind, final Class<?> operation, final String method,
+            final Object[] args, final Object result, final Throwable error) {
+        if (!isAsynchronous()) {
+            write(operation, method, render(kind, method, args, result, null), error);
+            return;
+        }
+        long sequence;
+        do {
+            sequence = next.get();
+            if (sequence - consumed.get() >= events.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1));
+        final int index = (int) sequence & mask;
+        final Event event = events[index];
+        event.kind = kind;
+        event.operation = operation;
+        event.method = method;
+        event.args = args;
+        event.result = result;
+        event.error = error;
+        event.thread = Thread.currentThread().getName();
+        published.set(index, sequence);
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private String render(final int kind, final String method, final Object[] args,
+            final Object result, final String thread) {
+        final StringBuilder bld = new StringBuilder();
+        if (null != thread) {
+            bld.append('[').append(thread).append("] ");
+        }
+        if (kind == ENTER) {
+            bld.append("Enter: ").append(method).append('(');
+            for (int i = 0; args != null && i < args.length; i++) {
+                if (i != 0) {
+                    bld.append(", ");
+                }
+                append(bld, args[i]);
+            }
+            bld.append(')');
+        } else if (kind == RETURN) {
+            append(bld.append("Return: "), result);
+        } else {
+            bld.append("Exception: ");
+        }
+        return bld.toString();
+    }
+
+    private void append(final StringBuilder bld, final Object value) {
+        final String text = String.valueOf(value);
+        if (maxArgumentLength > 0 && text.length() > maxArgumentLength) {
+            bld.append(text, 0, maxArgumentLength).append("...(").append(text.length()).append(
+                    " chars)");
+        } else {
+            bld.append(text);
+        }
+    }
+
+    private static final class Event {
+        private int kind;
+        private Class<?> operation;
+        private String method;
+        private Object[] args;
+        private Object result;
+        private Throwable error;
+        private String thread;
+    }
+
+    private class Consumer implements Runnable {
+        public void run() {
+            while (true) {
+                final long sequence = consumed.get();
+                final int index = (int) sequence & mask;
+                if (published.get(index) != sequence) {
+                    waiting = true;
+                    if (published.get(index) != sequence) {
+                        LockSupport.parkNanos(OperationTracer.this, IDLE_NANOS);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                final Event event = events[index];
+                try {
+                    write(event.operation, event.method, render(event.kind, event.method,
+                            event.args, event.result, event.thread), event.error);
+                } catch (Throwable t) {
+                    // Ignore. Don't let a failed log stop the tracing.
+                } finally {
+                    event.operation = null;
+                    event.args = null;
+                    event.result = null;
+                    event.error = null;
+                    consumed.set(sequence + 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.ConfigurationProperty;
+import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
+import org.identityconnectors.framework.common.objects.Schema;
+
+/**
+ * The SchemaCache keeps the {@link Schema} of a connector facade for a while,
+ * so the connector does not read the schema of the resource and the remote
+ * server does not send it again on every call.
+ * <p/>
+ * The cached schema expires after the time to live and it's dropped when the
+ * connector changes its configuration. The cache is disabled by default, it's
+ * enabled with the time to live in milliseconds set in the
+ * {@value #TIME_TO_LIVE_PROPERTY} system property.
+ *
+ * @since 1.5
+ */
+public final class SchemaCache {
+
+    public static final String TIME_TO_LIVE_PROPERTY =
+            "org.identityconnectors.framework.impl.api.SchemaCache.timeToLive";
+
+    public static final long DEFAULT_TIME_TO_LIVE = 0L;
+
+    private final long timeToLive;
+
+    private final AtomicLong version = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private volatile Entry entry = null;
+
+    /**
+     * Creates a new cache with the time to live of the system property.
+     */
+    public SchemaCache() {
+        this(Long.getLong(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive
+     *            the time the schema is kept, zero disables the cache.
+     * @param unit
+     *            the unit of the time to live.
+     */
+    public SchemaCache(long timeToLive, TimeUnit unit) {
+        this.timeToLive = Math.max(0L, unit.toNanos(timeToLive));
+    }
+
+    public boolean isEnabled() {
+        return timeToLive > 0L;
+    }
+
+    /**
+     * Gets the cached schema.
+     *
+     * @return null if the schema is not cached or it has expired.
+     */
+    public Schema get() {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Entry current = entry;
+        if (null != current && current.expires - System.nanoTime() > 0L) {
+            hits.incrementAndGet();
+            return current.schema;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Gets the version to pass to {@link #put(long, Schema)} when the schema is
+     * read, so a schema read before an invalidation is not cached.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Caches the schema.
+     *
+     * @param readVersion
+     *            the version of the cache when the schema was read.
+     * @param schema
+     *            the schema to cache.
+     */
+    public void put(final long readVersion, final Schema schema) {
+        if (isEnabled() && null != schema) {
+            synchronized (this) {
+                if (version.get() == readVersion) {
+                    entry = new Entry(schema, System.nanoTime() + timeToLive);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the cached schema.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            version.incrementAndGet();
+            entry = null;
+        }
+    }
+
+    /**
+     * Returns the number of the calls served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of the calls which had to read the schema.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Wraps the listener so the configuration changes invalidate this cache.
+     *
+     * @param listener
+     *            the listener of the facade, may be null.
+     * @return the listener which invalidates this cache and calls the listener
+     *         if it's not null.
+     */
+    public ConfigurationPropertyChangeListener invalidateOnChange(
+            final ConfigurationPropertyChangeListener listener) {
+        if (listener instanceof InvalidatingListener
+                && ((InvalidatingListener) listener).getCache() == this) {
+            return listener;
+        }
+        return new InvalidatingListener(listener);
+    }
+
+    private final class InvalidatingListener implements ConfigurationPropertyChangeListener {
+        private final ConfigurationPropertyChangeListener delegate;
+
+        private InvalidatingListener(final ConfigurationPropertyChangeListener delegate) {
+            this.delegate = delegate;
+        }
+
+        private SchemaCache getCache() {
+            return SchemaCache.this;
+        }
+
+        public void configurationPropertyChange(final List<ConfigurationProperty> changes) {
+            invalidate();
+            if (null != delegate) {
+                delegate.configurationPropertyChange(changes);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Schema schema;
+        private final long expires;
+
+        private Entry(final Schema schema, final long expires) {
+            this.schema = schema;
+            this.expires = expires;
+        }
+    }
+}
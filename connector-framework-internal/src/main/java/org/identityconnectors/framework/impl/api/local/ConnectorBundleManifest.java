@@ -22,6 +22,8 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.List;
+
 /**
  * Model for the ConnectorBundleManifest.
  *
@@ -34,6 +36,7 @@ public final class ConnectorBundleManifest {
     private String frameworkVersion;
     private String bundleName;
     private String bundleVersion;
+    private List<String> connectorClasses;
 
     public String getFrameworkVersion() {
         return frameworkVersion;
@@ -58,4 +61,18 @@ public final class ConnectorBundleManifest {
     public void setBundleVersion(String ver) {
         bundleVersion = ver;
     }
+
+    /**
+     * Returns the connector classes listed in the manifest.
+     *
+     * @return null if the manifest does not list the connector classes.
+     * @since 1.5
+     */
+    public List<String> getConnectorClasses() {
+        return connectorClasses;
+    }
+
+    public void setConnectorClasses(List<String> classNames) {
+        connectorClasses = classNames;
+    }
 }
@@ -83,6 +83,8 @@ public final class ConnectorBundleManifestParser {
         rv.setFrameworkVersion(frameworkVersion);
         rv.setBundleName(bundleName);
         rv.setBundleVersion(bundleVersion);
+        rv.setConnectorClasses(ConnectorClassScanner.parseClassNames(getAttribute(
+                ConnectorClassScanner.ATT_CONNECTOR_CLASSES)));
 
         return rv;
     }
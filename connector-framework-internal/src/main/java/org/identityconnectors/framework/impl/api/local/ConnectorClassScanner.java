@@ -0,0 +1,399 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.spi.ConnectorClass;
+
+/**
+ * Finds the {@link ConnectorClass} annotated classes of a bundle without
+ * loading the classes.
+ * <p/>
+ * The class file is read up to its annotations and the class is a candidate
+ * if it has the {@link ConnectorClass} annotation. The candidates still have
+ * to be loaded and checked. A bundle can list its connector classes in the
+ * {@value #ATT_CONNECTOR_CLASSES} manifest attribute, then its classes are not
+ * scanned at all. The result of scanning a bundle JAR is cached in the
+ * directory named by the {@value #CACHE_DIRECTORY_PROPERTY} system property,
+ * the file name is the SHA-256 checksum of the JAR. The expanded bundles are
+ * kept in the same directory by the {@link ExpandedBundleCache}.
+ *
+ * @since 1.5
+ */
+public final class ConnectorClassScanner {
+
+    private static final Log LOG = Log.getLog(ConnectorClassScanner.class);
+
+    /**
+     * Optional manifest attribute, the comma separated names of the connector
+     * classes of the bundle.
+     */
+    public static final String ATT_CONNECTOR_CLASSES = "ConnectorBundle-ConnectorClasses";
+
+    public static final String CACHE_DIRECTORY_PROPERTY =
+            "org.identityconnectors.framework.impl.api.local.ConnectorClassScanner.cacheDirectory";
+
+    private static final String ANNOTATION_DESCRIPTOR = "L"
+            + ConnectorClass.class.getName().replace('.', '/') + ";";
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private static final String CACHE_FILE_PREFIX = "connector-classes-";
+
+    private ConnectorClassScanner() {
+    }
+
+    /**
+     * Checks if the class file has the {@link ConnectorClass} annotation.
+     *
+     * @param classFile
+     *            the class file, the stream is not closed.
+     * @return true if the class is annotated.
+     * @throws IOException
+     *             if the class file can not be read or it's not a class file.
+     */
+    public static boolean isConnectorClass(final InputStream classFile) throws IOException {
+        final DataInputStream in = new DataInputStream(classFile);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major version
+        skip(in, 4);
+        final int count = in.readUnsignedShort();
+        final String[] utf8 = new String[count];
+        boolean referenced = false;
+        for (int i = 1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+            case 1: // Utf8
+                utf8[i] = in.readUTF();
+                referenced |= ANNOTATION_DESCRIPTOR.equals(utf8[i]);
+                break;
+            case 7: // Class
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                skip(in, 2);
+                break;
+            case 15: // MethodHandle
+                skip(in, 3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                skip(in, 4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                skip(in, 8);
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        if (!referenced) {
+            return false;
+        }
+        // access flags, this and super class
+        skip(in, 6);
+        skip(in, in.readUnsignedShort() * 2);
+        // fields and methods
+        for (int i = 0; i < 2; i++) {
+            int members = in.readUnsignedShort();
+            while (members-- > 0) {
+                skip(in, 6);
+                skipAttributes(in);
+            }
+        }
+        int attributes = in.readUnsignedShort();
+        while (attributes-- > 0) {
+            final String name = getUtf8(utf8, in.readUnsignedShort());
+            final int length = in.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+                int annotations = in.readUnsignedShort();
+                while (annotations-- > 0) {
+                    if (ANNOTATION_DESCRIPTOR.equals(getUtf8(utf8, in.readUnsignedShort()))) {
+                        return true;
+                    }
+                    skipElementValuePairs(in);
+                }
+                return false;
+            }
+            skip(in, length);
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the class file has the {@link ConnectorClass} annotation.
+     *
+     * @param classFile
+     *            the location of the class file.
+     * @return true if the class is annotated or the class file can not be
+     *         read, then the class has to be loaded to find it out.
+     */
+    public static boolean isConnectorClass(final URL classFile) {
+        InputStream in = null;
+        try {
+            in = classFile.openStream();
+            return isConnectorClass(in);
+        } catch (IOException e) {
+            LOG.ok(e, "Failed to scan {0}", classFile);
+            return true;
+        } finally {
+            IOUtil.quietClose(in);
+        }
+    }
+
+    /**
+     * Parses the value of the {@value #ATT_CONNECTOR_CLASSES} manifest
+     * attribute.
+     *
+     * @param value
+     *            the attribute value, may be null.
+     * @return the class names or null if the attribute was not set.
+     */
+    public static List<String> parseClassNames(final String value) {
+        if (null == value) {
+            return null;
+        }
+        final List<String> rv = new ArrayList<String>();
+        for (String name : value.split(",")) {
+            if (StringUtil.isNotBlank(name)) {
+                rv.add(name.trim());
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Returns the class name of a bundle entry.
+     *
+     * @param entryName
+     *            the forward-slash separated path of the class file.
+     */
+    public static String getClassName(final String entryName) {
+        return entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+    }
+
+    /**
+     * Returns the directory of the cached scan results.
+     *
+     * @return null if the results are not cached.
+     */
+    public static File getCacheDirectory() {
+        final String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        return StringUtil.isBlank(directory) ? null : new File(directory);
+    }
+
+    /**
+     * Calculates the checksum of the bundle.
+     *
+     * @param bundle
+     *            the bundle, the stream is not closed.
+     * @return the hex encoded SHA-256 checksum.
+     */
+    public static String checksum(final InputStream bundle) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = bundle.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        final StringBuilder rv = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            rv.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+                    Character.forDigit(b & 0xf, 16));
+        }
+        return rv.toString();
+    }
+
+    /**
+     * Reads the cached connector classes of a bundle.
+     *
+     * @param directory
+     *            the cache directory.
+     * @param checksum
+     *            the checksum of the bundle.
+     * @return the class names or null if the bundle is not in the cache.
+     */
+    public static List<String> readCache(final File directory, final String checksum) {
+        final File file = new File(directory, CACHE_FILE_PREFIX + checksum);
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            final List<String> rv = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtil.isNotBlank(line)) {
+                    rv.add(line.trim());
+                }
+            }
+            return rv;
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to read {0}", file);
+            return null;
+        } finally {
+            IOUtil.quietClose(reader);
+        }
+    }
+
+    /**
+     * Caches the connector classes of a bundle.
+     *
+     * @param directory
+     *            the cache directory.
+     * @param checksum
+     *            the checksum of the bundle.
+     * @param classNames
+     *            the names of the connector classes.
+     */
+    public static void writeCache(final File directory, final String checksum,
+            final Collection<String> classNames) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOG.warn("Failed to create directory {0}", directory);
+            return;
+        }
+        final File file = new File(directory, CACHE_FILE_PREFIX + checksum);
+        Writer writer = null;
+        File temp = null;
+        try {
+            temp = File.createTempFile(CACHE_FILE_PREFIX, ".tmp", directory);
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            for (String name : classNames) {
+                writer.write(name);
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            // another server may have cached the same bundle
+            if (!temp.renameTo(file) && !file.isFile()) {
+                LOG.warn("Failed to write {0}", file);
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to write {0}", file);
+        } finally {
+            IOUtil.quietClose(writer);
+            if (null != temp && temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    private static String getUtf8(final String[] utf8, final int index) throws IOException {
+        if (index <= 0 || index >= utf8.length || null == utf8[index]) {
+            throw new IOException("Invalid constant pool index " + index);
+        }
+        return utf8[index];
+    }
+
+    private static void skipAttributes(final DataInputStream in) throws IOException {
+        int attributes = in.readUnsignedShort();
+        while (attributes-- > 0) {
+            skip(in, 2);
+            skip(in, in.readInt());
+        }
+    }
+
+    private static void skipElementValuePairs(final DataInputStream in) throws IOException {
+        int pairs = in.readUnsignedShort();
+        while (pairs-- > 0) {
+            skip(in, 2);
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(final DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+        case 'e':
+            skip(in, 4);
+            break;
+        case '@':
+            skip(in, 2);
+            skipElementValuePairs(in);
+            break;
+        case '[':
+            int values = in.readUnsignedShort();
+            while (values-- > 0) {
+                skipElementValue(in);
+            }
+            break;
+        default:
+            // constant or class
+            skip(in, 2);
+        }
+    }
+
+    private static void skip(final DataInputStream in, final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
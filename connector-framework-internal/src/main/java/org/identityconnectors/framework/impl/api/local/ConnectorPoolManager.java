@@ -37,14 +37,30 @@ import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.local.operations.OperationalContext;
 import org.identityconnectors.framework.spi.AbstractConfiguration;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.PoolableConnector;
 
+/**
+ * Manages the pools of the {@link PoolableConnector}s.
+ * <p/>
+ * The pools are maintained periodically by the {@link ObjectPoolMaintainer}:
+ * it disposes the connectors which were idle for too long and creates new
+ * connectors in the background until {@code MinIdle} of them are idle in each
+ * pool. The period in milliseconds is set by the
+ * {@value #MAINTENANCE_INTERVAL_PROPERTY} system property, default
+ * {@value #DEFAULT_MAINTENANCE_INTERVAL}, zero disables the maintenance.
+ */
 public class ConnectorPoolManager {
 
+    public static final String MAINTENANCE_INTERVAL_PROPERTY =
+            "org.identityconnectors.framework.impl.api.local.ConnectorPoolManager.maintenanceInterval";
+
+    public static final long DEFAULT_MAINTENANCE_INTERVAL = 30000L;
+
     public static class ConnectorPoolKey {
         private final ConnectorKey connectorKey;
         private final ConfigurationPropertiesImpl configProperties;
@@ -96,6 +112,10 @@ public class ConnectorPoolManager {
 
         public void notifyUpdate() {
             try {
+                final SchemaCache schemaCache = apiConfiguration.getSchemaCache();
+                if (null != schemaCache) {
+                    schemaCache.invalidate();
+                }
                 final ConfigurationPropertyChangeListener listener =
                         apiConfiguration.getChangeListener();
                 if (null != listener) {
@@ -155,7 +175,8 @@ public class ConnectorPoolManager {
                                 JavaClassProperties.createBean(apiConfiguration
                                         .getConfigurationProperties(), localConnectorInfo
                                         .getConnectorConfigurationClass());
-                        if (null != apiConfiguration.getChangeListener()
+                        if ((null != apiConfiguration.getChangeListener() || null != apiConfiguration
+                                .getSchemaCache())
                                 && config instanceof AbstractConfiguration) {
                             ((AbstractConfiguration) config)
                                     .addChangeCallback(new InternalConfigurationChangeHandler(
@@ -249,15 +270,18 @@ public class ConnectorPoolManager {
                 LOG.info("Creating new pool: {0}", impl.getConnectorInfo().getConnectorKey());
                 // this instance is strictly used for the pool..
                 pool =
-                        new ObjectPool<PoolableConnector>(
-                                new ConnectorPoolHandler(impl, localInfo), impl
-                                        .getConnectorPoolConfiguration());
+                        ObjectPool.newInstance(new ConnectorPoolHandler(impl, localInfo), impl
+                                .getConnectorPoolConfiguration());
                 // add back to the map of POOLS..
 
                 ObjectPool<PoolableConnector> previousPool = POOLS.putIfAbsent(key, pool);
                 // Use the pool made by other thread
                 if (previousPool != null) {
                     pool = previousPool;
+                } else {
+                    // the caller borrows the first connector, the maintenance
+                    // creates the idle ones later
+                    ObjectPoolMaintainer.register(pool);
                 }
             }
             return Pair.of(key, pool);
@@ -272,6 +296,7 @@ public class ConnectorPoolManager {
         synchronized (POOLS) {
             ObjectPool<PoolableConnector> pool = POOLS.remove(connectorPoolKey);
             if (null != pool) {
+                ObjectPoolMaintainer.unregister(pool);
                 try {
                     pool.shutdown();
                 } catch (Exception e) {
@@ -285,6 +310,7 @@ public class ConnectorPoolManager {
         synchronized (POOLS) {
             // close each pool..
             for (ObjectPool<PoolableConnector> pool : POOLS.values()) {
+                ObjectPoolMaintainer.unregister(pool);
                 try {
                     pool.shutdown();
                 } catch (Exception e) {
@@ -0,0 +1,296 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Keeps the expanded bundles in the cache directory of the
+ * {@link ConnectorClassScanner} across restarts.
+ * <p/>
+ * The embedded {@code lib/} and {@code native/} files of a bundle are copied
+ * to the {@code bundle-<checksum>} directory once, the directory is reused as
+ * long as the checksum of the bundle does not change. The bundle is expanded
+ * in a temporary directory which is renamed when it's complete, so servers
+ * can share the cache directory. The directories of the bundles which are not
+ * deployed any more can be deleted when the servers are stopped.
+ *
+ * @since 1.5
+ */
+final class ExpandedBundleCache {
+
+    private static final Log LOG = Log.getLog(ExpandedBundleCache.class);
+
+    private static final String DIRECTORY_PREFIX = "bundle-";
+
+    /**
+     * The entries of the bundle, the file is written last.
+     */
+    private static final String CONTENTS_FILE = "bundle-contents";
+
+    /**
+     * The copy of a bundle which is not a file.
+     */
+    private static final String BUNDLE_FILE = "bundle.jar";
+
+    private static final String LIB_PREFIX = "lib/";
+
+    private static final String NATIVE_PREFIX = "native/";
+
+    private ExpandedBundleCache() {
+    }
+
+    /**
+     * Reads the expanded bundle.
+     *
+     * @param url
+     *            the location of the bundle.
+     * @param cacheDirectory
+     *            the cache directory.
+     * @param checksum
+     *            the checksum of the bundle.
+     * @return null if the bundle is not in the cache.
+     */
+    static WorkingBundleInfo read(final URL url, final File cacheDirectory, final String checksum)
+            throws IOException {
+        final File dir = new File(cacheDirectory, DIRECTORY_PREFIX + checksum);
+        final File contentsFile = new File(dir, CONTENTS_FILE);
+        if (!contentsFile.isFile()) {
+            return null;
+        }
+        final URL bundle =
+                "file".equals(url.getProtocol()) ? url : new File(dir, BUNDLE_FILE).toURI()
+                        .toURL();
+        final WorkingBundleInfo info = new WorkingBundleInfo(url.toString());
+        info.getImmediateClassPath().add(bundle);
+        JarInputStream stream = null;
+        try {
+            stream = new JarInputStream(bundle.openStream());
+            info.setManifest(new ConnectorBundleManifestParser(info.getOriginalLocation(), stream
+                    .getManifest()).parse());
+        } finally {
+            IOUtil.quietClose(stream);
+        }
+        List<String> classNames = info.getManifest().getConnectorClasses();
+        if (null == classNames) {
+            classNames = ConnectorClassScanner.readCache(cacheDirectory, checksum);
+            if (null == classNames) {
+                return null;
+            }
+        }
+        info.setConnectorClasses(new LinkedHashSet<String>(classNames));
+
+        final TreeMap<String, URL> libURLs = new TreeMap<String, URL>();
+        for (String name : readContents(contentsFile)) {
+            info.getImmediateBundleContents().add(name);
+            if (!isExpanded(name)) {
+                continue;
+            }
+            final File file = new File(dir, name);
+            if (!file.isFile()) {
+                LOG.warn("Expanded bundle {0} is incomplete, {1} is missing", dir, name);
+                return null;
+            }
+            if (name.startsWith(LIB_PREFIX)) {
+                libURLs.put(name.substring(LIB_PREFIX.length()), file.toURI().toURL());
+            } else {
+                info.getImmediateNativeLibraries().put(name.substring(NATIVE_PREFIX.length()),
+                        file.getAbsolutePath());
+            }
+        }
+        for (URL lib : libURLs.values()) {
+            info.getEmbeddedBundles().add(LocalConnectorInfoManagerImpl.processURL(lib, false));
+        }
+        return info;
+    }
+
+    /**
+     * Expands the bundle to the cache directory.
+     *
+     * @param url
+     *            the location of the bundle.
+     * @param cacheDirectory
+     *            the cache directory.
+     * @param checksum
+     *            the checksum of the bundle.
+     * @return true if the bundle is in the cache.
+     */
+    static boolean write(final URL url, final File cacheDirectory, final String checksum) {
+        final File dir = new File(cacheDirectory, DIRECTORY_PREFIX + checksum);
+        File staging = null;
+        try {
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+                throw new IOException("Could not create directory " + cacheDirectory);
+            }
+            staging = File.createTempFile(DIRECTORY_PREFIX, ".tmp", cacheDirectory);
+            if (!staging.delete() || !staging.mkdir()) {
+                throw new IOException("Could not create directory " + staging);
+            }
+            URL bundle = url;
+            if (!"file".equals(url.getProtocol())) {
+                final File file = new File(staging, BUNDLE_FILE);
+                final InputStream in = url.openStream();
+                try {
+                    copy(in, file);
+                } finally {
+                    IOUtil.quietClose(in);
+                }
+                bundle = file.toURI().toURL();
+            }
+
+            final List<String> contents = new ArrayList<String>();
+            Set<String> scanned = null;
+            JarInputStream stream = null;
+            try {
+                stream = new JarInputStream(bundle.openStream());
+                final ConnectorBundleManifest manifest =
+                        new ConnectorBundleManifestParser(url.toString(), stream.getManifest())
+                                .parse();
+                if (null == manifest.getConnectorClasses()
+                        && null == ConnectorClassScanner.readCache(cacheDirectory, checksum)) {
+                    scanned = new LinkedHashSet<String>();
+                }
+                JarEntry entry = null;
+                while ((entry = stream.getNextJarEntry()) != null) {
+                    final String name = entry.getName();
+                    contents.add(name);
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    if (null != scanned && name.endsWith(".class")
+                            && LocalConnectorInfoManagerImpl.isConnectorClass(stream, name)) {
+                        scanned.add(ConnectorClassScanner.getClassName(name));
+                    }
+                    if (isExpanded(name)) {
+                        final File file = new File(staging, name);
+                        final File parent = file.getParentFile();
+                        if (!parent.isDirectory() && !parent.mkdirs()) {
+                            throw new IOException("Could not create directory " + parent);
+                        }
+                        copy(stream, file);
+                    }
+                }
+            } finally {
+                IOUtil.quietClose(stream);
+            }
+            if (null != scanned) {
+                ConnectorClassScanner.writeCache(cacheDirectory, checksum, scanned);
+            }
+            writeContents(new File(staging, CONTENTS_FILE), contents);
+            // another server may have expanded the same bundle
+            if (!staging.renameTo(dir) && !new File(dir, CONTENTS_FILE).isFile()) {
+                throw new IOException("Could not rename " + staging + " to " + dir);
+            }
+            LOG.ok("Expanded bundle {0} to {1}", url, dir);
+            return true;
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to expand bundle {0} to {1}", url, dir);
+            return false;
+        } finally {
+            if (null != staging) {
+                delete(staging);
+            }
+        }
+    }
+
+    private static boolean isExpanded(final String name) {
+        return (name.startsWith(LIB_PREFIX) || name.startsWith(NATIVE_PREFIX))
+                && !name.endsWith("/");
+    }
+
+    /**
+     * Copies the stream to the file, the stream is not closed.
+     */
+    private static void copy(final InputStream in, final File file) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            IOUtil.copyFile(in, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<String> readContents(final File file) throws IOException {
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            final List<String> rv = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    rv.add(line);
+                }
+            }
+            return rv;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeContents(final File file, final List<String> contents)
+            throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (String name : contents) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (null != files) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -55,11 +55,13 @@ import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.local.operations.APIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.AuthenticationImpl;
 import org.identityconnectors.framework.impl.api.local.operations.BatchImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunnerProxy;
+import org.identityconnectors.framework.impl.api.local.operations.ConnectorObjectCache;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorOperationalContext;
 import org.identityconnectors.framework.impl.api.local.operations.CreateImpl;
 import org.identityconnectors.framework.impl.api.local.operations.DeleteImpl;
@@ -138,6 +140,16 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
      * Shared thread counter. 
      */
     private final ReferenceCounter referenceCounter = new ReferenceCounter();
+
+    /**
+     * The schema of this facade.
+     */
+    private final SchemaCache schemaCache = new SchemaCache();
+
+    /**
+     * The objects read by the get operation, null if the cache is not enabled.
+     */
+    private final ConnectorObjectCache objectCache;
     
     /**
      * Builds up the maps of supported operations and calls.
@@ -146,24 +158,40 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
             final APIConfigurationImpl apiConfiguration) {
         super(apiConfiguration);
         this.connectorInfo = connectorInfo;
+        this.objectCache =
+                ConnectorObjectCache.newInstance(getAPIConfiguration()
+                        .getResultsHandlerConfiguration());
         if (connectorInfo.isConfigurationStateless()
                 && !connectorInfo.isConnectorPoolingSupported()) {
             operationalContext = null;
         } else {
             operationalContext =
-                    new ConnectorOperationalContext(connectorInfo, getAPIConfiguration());
+                    new ConnectorOperationalContext(connectorInfo, getAPIConfiguration(),
+                            objectCache);
+        }
+        if (schemaCache.isEnabled()) {
+            // the configuration changes of the connector drop the schema
+            getAPIConfiguration().setSchemaCache(schemaCache);
         }
     }
 
     public LocalConnectorFacadeImpl(final LocalConnectorInfoImpl connectorInfo, String configuration) {
         super(configuration, connectorInfo);
         this.connectorInfo = connectorInfo;
+        this.objectCache =
+                ConnectorObjectCache.newInstance(getAPIConfiguration()
+                        .getResultsHandlerConfiguration());
         if (connectorInfo.isConfigurationStateless()
                 && !connectorInfo.isConnectorPoolingSupported()) {
             operationalContext = null;
         } else {
             operationalContext =
-                    new ConnectorOperationalContext(connectorInfo, getAPIConfiguration());
+                    new ConnectorOperationalContext(connectorInfo, getAPIConfiguration(),
+                            objectCache);
+        }
+        if (schemaCache.isEnabled()) {
+            // the configuration changes of the connector drop the schema
+            getAPIConfiguration().setSchemaCache(schemaCache);
         }
     }
 
@@ -182,11 +210,30 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
 
     protected ConnectorOperationalContext getOperationalContext() {
         if (null == operationalContext) {
-            return new ConnectorOperationalContext(connectorInfo, getAPIConfiguration());
+            return new ConnectorOperationalContext(connectorInfo, getAPIConfiguration(),
+                    objectCache);
         }
         return operationalContext;
     }
 
+    /**
+     * Gets the cache of the schema, the cache is dropped when the connector
+     * changes its configuration.
+     */
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    /**
+     * Gets the cache of the get operation.
+     *
+     * @return null if the cache is not enabled in the
+     *         {@link org.identityconnectors.framework.api.ResultsHandlerConfiguration}.
+     */
+    public ConnectorObjectCache getObjectCache() {
+        return objectCache;
+    }
+
     // =======================================================================
     // ConnectorFacade Interface
     // =======================================================================
@@ -209,7 +256,16 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
                     API_TO_IMPL.get(SearchApiOp.class);
             final ConnectorAPIOperationRunnerProxy handler =
                     new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
-            proxy = new GetImpl((SearchApiOp) newAPIOperationProxy(SearchApiOp.class, handler));
+            proxy =
+                    new GetImpl((SearchApiOp) newAPIOperationProxy(SearchApiOp.class, handler),
+                            objectCache);
+        } else if (api == SchemaApiOp.class) {
+            final Constructor<? extends APIOperationRunner> constructor = API_TO_IMPL.get(api);
+            final ConnectorAPIOperationRunnerProxy handler =
+                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
+            proxy =
+                    new SchemaImpl.CachedSchemaApiOp(schemaCache, (SchemaApiOp) newAPIOperationProxy(
+                            api, handler));
         } else if (api == ConnectorEventSubscriptionApiOp.class
                 || api == SyncEventSubscriptionApiOp.class
                 || api == BatchApiOp.class) {
@@ -36,6 +36,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -44,6 +45,13 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
@@ -52,6 +60,7 @@ import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.IOUtil;
 import org.identityconnectors.common.ReflectionUtil;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
@@ -70,6 +79,13 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
 
     private static final Log LOG = Log.getLog(LocalConnectorInfoManagerImpl.class);
 
+    /**
+     * The number of threads which load the bundles, default is the number of
+     * processors. The order of the connectors does not depend on it.
+     */
+    public static final String BUNDLE_THREADS_PROPERTY =
+            "org.identityconnectors.framework.impl.api.local.LocalConnectorInfoManagerImpl.bundleThreads";
+
     private List<ConnectorInfo> connectorInfos;
 
     public LocalConnectorInfoManagerImpl(final List<URL> bundleURLs,
@@ -84,23 +100,80 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
      */
     private static List<WorkingBundleInfo> expandBundles(final List<URL> bundleURLs)
             throws ConfigurationException {
-        final List<WorkingBundleInfo> rv = new ArrayList<WorkingBundleInfo>();
-        for (URL url : bundleURLs) {
-            WorkingBundleInfo info = null;
-            try {
-                if ("file".equals(url.getProtocol())) {
-                    final File file = new File(url.toURI());
-                    if (file.isDirectory()) {
-                        info = processDirectory(file);
-                    }
+        final List<Callable<WorkingBundleInfo>> tasks =
+                new ArrayList<Callable<WorkingBundleInfo>>(bundleURLs.size());
+        for (final URL url : bundleURLs) {
+            tasks.add(new Callable<WorkingBundleInfo>() {
+                public WorkingBundleInfo call() {
+                    return expandBundle(url);
                 }
-                if (info == null) {
-                    info = processURL(url, true);
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    private static WorkingBundleInfo expandBundle(final URL url) throws ConfigurationException {
+        WorkingBundleInfo info = null;
+        try {
+            if ("file".equals(url.getProtocol())) {
+                final File file = new File(url.toURI());
+                if (file.isDirectory()) {
+                    info = processDirectory(file);
                 }
-            } catch (URISyntaxException e) {
-                throw new ConfigurationException("Invalid bundleURL: " + url.toExternalForm(), e);
             }
-            rv.add(info);
+            if (info == null) {
+                info = processURL(url, true);
+            }
+        } catch (URISyntaxException e) {
+            throw new ConfigurationException("Invalid bundleURL: " + url.toExternalForm(), e);
+        }
+        return info;
+    }
+
+    /**
+     * Runs the tasks on a pool of at most {@value #BUNDLE_THREADS_PROPERTY}
+     * threads.
+     *
+     * @return the results in the order of the tasks.
+     */
+    private static <T> List<T> invokeAll(final List<Callable<T>> tasks)
+            throws ConfigurationException {
+        final int threads =
+                Math.min(tasks.size(), Integer.getInteger(BUNDLE_THREADS_PROPERTY, Runtime
+                        .getRuntime().availableProcessors()));
+        final List<T> rv = new ArrayList<T>(tasks.size());
+        if (threads <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    rv.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ConfigurationException(e);
+                }
+            }
+            return rv;
+        }
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(threads, new BundleThreadFactory());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                try {
+                    rv.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    } else if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw new ConfigurationException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigurationException(e);
+        } finally {
+            executor.shutdownNow();
         }
         return rv;
     }
@@ -123,6 +196,7 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             info.getImmediateClassPath().add(dir.toURI().toURL());
             final List<String> bundleContents = listBundleContents(dir);
             info.getImmediateBundleContents().addAll(bundleContents);
+            info.setConnectorClasses(scanDirectory(dir, info.getManifest(), bundleContents));
             final File libDir = new File(dir, "lib");
             if (libDir.exists()) {
                 final List<URL> libURLs = BundleLibSorter.getSortedURLs(libDir);
@@ -145,6 +219,43 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
         return info;
     }
 
+    /**
+     * Finds the connector classes of an expanded bundle.
+     */
+    private static Set<String> scanDirectory(final File dir,
+            final ConnectorBundleManifest manifest, final List<String> bundleContents) {
+        if (null != manifest.getConnectorClasses()) {
+            return new LinkedHashSet<String>(manifest.getConnectorClasses());
+        }
+        final Set<String> rv = new LinkedHashSet<String>();
+        for (String name : bundleContents) {
+            if (name.endsWith(".class")) {
+                InputStream in = null;
+                try {
+                    in = new FileInputStream(new File(dir, name));
+                    if (isConnectorClass(in, name)) {
+                        rv.add(ConnectorClassScanner.getClassName(name));
+                    }
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to scan {0}, the class will be loaded", name);
+                    rv.add(ConnectorClassScanner.getClassName(name));
+                } finally {
+                    IOUtil.quietClose(in);
+                }
+            }
+        }
+        return rv;
+    }
+
+    static boolean isConnectorClass(final InputStream in, final String name) {
+        try {
+            return ConnectorClassScanner.isConnectorClass(in);
+        } catch (IOException e) {
+            LOG.ok(e, "Failed to scan {0}, the class will be loaded", name);
+            return true;
+        }
+    }
+
     /**
      * Lists the contents of a directory and its contents. Result will be given as a list of forward-slash separated
      * relative paths
@@ -170,6 +281,21 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
 
     public static WorkingBundleInfo processURL(final URL url, final boolean topLevel)
             throws ConfigurationException {
+        final File cacheDirectory = topLevel ? ConnectorClassScanner.getCacheDirectory() : null;
+        if (null != cacheDirectory) {
+            try {
+                final String checksum = checksum(url);
+                WorkingBundleInfo info = ExpandedBundleCache.read(url, cacheDirectory, checksum);
+                if (null == info && ExpandedBundleCache.write(url, cacheDirectory, checksum)) {
+                    info = ExpandedBundleCache.read(url, cacheDirectory, checksum);
+                }
+                if (null != info) {
+                    return info;
+                }
+            } catch (IOException e) {
+                throw new ConfigurationException(e);
+            }
+        }
         final WorkingBundleInfo info = new WorkingBundleInfo(url.toString());
         final BundleTempDirectory tempDir = new BundleTempDirectory();
 
@@ -190,6 +316,9 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                 }
             }
             final TreeMap<String, URL> libURLs = new TreeMap<String, URL>();
+            // the connector classes found by scanning the class files
+            Set<String> scanned = null;
+            String checksum = null;
             try {
                 stream = new JarInputStream(url.openStream());
                 // only parse the manifest for top-level bundles
@@ -201,12 +330,32 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
                             new ConnectorBundleManifestParser(info.getOriginalLocation(),
                                     rawManifest);
                     info.setManifest(parser.parse());
+                    if (null != info.getManifest().getConnectorClasses()) {
+                        info.setConnectorClasses(new LinkedHashSet<String>(info.getManifest()
+                                .getConnectorClasses()));
+                    } else {
+                        if (null != cacheDirectory) {
+                            checksum = checksum(url);
+                            final List<String> cached =
+                                    ConnectorClassScanner.readCache(cacheDirectory, checksum);
+                            if (null != cached) {
+                                info.setConnectorClasses(new LinkedHashSet<String>(cached));
+                            }
+                        }
+                        if (null == info.getConnectorClasses()) {
+                            scanned = new LinkedHashSet<String>();
+                        }
+                    }
                 }
 
                 JarEntry entry = null;
                 while ((entry = stream.getNextJarEntry()) != null) {
                     final String name = entry.getName();
                     info.getImmediateBundleContents().add(name);
+                    if (null != scanned && name.endsWith(".class") && !entry.isDirectory()
+                            && isConnectorClass(stream, name)) {
+                        scanned.add(ConnectorClassScanner.getClassName(name));
+                    }
                     if (name.startsWith("lib/") && !entry.isDirectory()) {
                         final String localName = name.substring("lib/".length());
                         final URL tempurl = tempDir.copyStreamToFile(stream, name).toURI().toURL();
@@ -224,6 +373,12 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
             } finally {
                 IOUtil.quietClose(stream);
             }
+            if (null != scanned) {
+                info.setConnectorClasses(scanned);
+                if (null != checksum) {
+                    ConnectorClassScanner.writeCache(cacheDirectory, checksum, scanned);
+                }
+            }
             for (URL lib : libURLs.values()) {
                 info.getEmbeddedBundles().add(processURL(lib, false));
             }
@@ -233,87 +388,128 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
         return info;
     }
 
+    private static String checksum(final URL url) throws IOException {
+        InputStream in = null;
+        try {
+            in = url.openStream();
+            return ConnectorClassScanner.checksum(in);
+        } finally {
+            IOUtil.quietClose(in);
+        }
+    }
+
     /**
      * Final pass - create connector infos
      */
     public static List<ConnectorInfo> createConnectorInfo(
             final Collection<WorkingBundleInfo> parsed, final ClassLoader bundleParentClassLoader)
             throws ConfigurationException {
+        final List<Callable<List<ConnectorInfo>>> tasks =
+                new ArrayList<Callable<List<ConnectorInfo>>>(parsed.size());
+        for (final WorkingBundleInfo bundleInfo : parsed) {
+            tasks.add(new Callable<List<ConnectorInfo>>() {
+                public List<ConnectorInfo> call() {
+                    return createConnectorInfo(bundleInfo, bundleParentClassLoader);
+                }
+            });
+        }
         final List<ConnectorInfo> rv = new ArrayList<ConnectorInfo>();
-        for (WorkingBundleInfo bundleInfo : parsed) {
-            final ClassLoader loader =
-                    new BundleClassLoader(bundleInfo.getEffectiveClassPath(), bundleInfo
-                            .getEffectiveNativeLibraries(), bundleParentClassLoader);
-            for (String name : bundleInfo.getImmediateBundleContents()) {
-                Class<?> connectorClass = null;
-                ConnectorClass options = null;
-                if (name.endsWith(".class")) {
-                    String className = name.substring(0, name.length() - ".class".length());
-                    className = className.replace('/', '.');
-                    try {
-                        connectorClass = loader.loadClass(className);
-                        options = connectorClass.getAnnotation(ConnectorClass.class);
-                    } catch (Throwable e) {
-                        // probe for the class. this might not be an error since
-                        // it might be from a bundle
-                        // fragment ( a bundle only included by other bundles ).
-                        // However, we should definitely warn
-                        LOG.info(LOG.isOk() ?
-                                 e : null,
-                                "Unable to load class {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
-                                className, bundleInfo.getOriginalLocation());
-                    }
-                    if (connectorClass != null && options == null) {
-	                    for (Annotation annotation: connectorClass.getAnnotations()) {
-	                    	if (ConnectorClass.class.getName().equals(annotation.annotationType().getName())) {
-	                    		// Same class name as the annotation we are looking for. But the previous code haven't found it.
-	                    		// So it looks like the annotation on this class is actually the correct one but it is loaded
-	                    		// by wrong classloader. 
-	                    		// Note: This error is very difficult to diagnose. Therefore we are explicitly checking for it here.
-	                    		throw new ConfigurationException("Class "+connectorClass.getName()+" has ConnectorClass annotation but it looks like it is " +
-	                    				"loaded by a wrong classloader. Maybe the connector bundle contains the connector frameworks JAR? (it should NOT contain it).");
-	                    	}
-	                    }
-                    }
+        for (List<ConnectorInfo> infos : invokeAll(tasks)) {
+            rv.addAll(infos);
+        }
+        return rv;
+    }
+
+    private static List<ConnectorInfo> createConnectorInfo(final WorkingBundleInfo bundleInfo,
+            final ClassLoader bundleParentClassLoader) throws ConfigurationException {
+        final List<ConnectorInfo> rv = new ArrayList<ConnectorInfo>();
+        final ClassLoader loader =
+                new BundleClassLoader(bundleInfo.getEffectiveClassPath(), bundleInfo
+                        .getEffectiveNativeLibraries(), bundleParentClassLoader);
+        for (String name : getConnectorClassCandidates(bundleInfo)) {
+            Class<?> connectorClass = null;
+            ConnectorClass options = null;
+            if (name.endsWith(".class")) {
+                String className = name.substring(0, name.length() - ".class".length());
+                className = className.replace('/', '.');
+                try {
+                    connectorClass = loader.loadClass(className);
+                    options = connectorClass.getAnnotation(ConnectorClass.class);
+                } catch (Throwable e) {
+                    // probe for the class. this might not be an error since
+                    // it might be from a bundle
+                    // fragment ( a bundle only included by other bundles ).
+                    // However, we should definitely warn
+                    LOG.info(LOG.isOk() ?
+                             e : null,
+                            "Unable to load class {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
+                            className, bundleInfo.getOriginalLocation());
                 }
-                if (connectorClass != null && options != null) {
-                    if (!Connector.class.isAssignableFrom(connectorClass)) {
-                        throw new ConfigurationException("Class " + connectorClass
-                                + " does not implement " + Connector.class.getName());
-                    }
-                    final LocalConnectorInfoImpl info = new LocalConnectorInfoImpl();
-                    info.setConnectorClass(connectorClass.asSubclass(Connector.class));
-                    try {
-                        info.setConnectorConfigurationClass(options.configurationClass());
-                        info.setConnectorDisplayNameKey(options.displayNameKey());
-                        info.setConnectorCategoryKey(options.categoryKey());
-                        info.setConnectorKey(new ConnectorKey(bundleInfo.getManifest().getBundleName(),
-                                bundleInfo.getManifest().getBundleVersion(), connectorClass.getName()));
-                        final ConnectorMessagesImpl messages =
-                                loadMessageCatalog(bundleInfo.getEffectiveContents(), loader, info
-                                        .getConnectorClass());
-                        info.setMessages(messages);
-                        info.setDefaultAPIConfiguration(createDefaultAPIConfiguration(info));
-                        rv.add(info);
-                        LOG.info("Add ConnectorInfo {0} to Local Connector Info Manager from {1}",
-                                info.getConnectorKey(), bundleInfo.getOriginalLocation());
-                    } catch (final NoClassDefFoundError e) {
-                        LOG.info(LOG.isOk() ?
-                                e : null,
-                                "Unable to load configuration class of connector {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
-                                connectorClass, bundleInfo.getOriginalLocation());
-                    } catch (final TypeNotPresentException e) {
-                        LOG.info(LOG.isOk() ?
-                                 e : null,
-                                "Unable to load configuration class of connector {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
-                                connectorClass, bundleInfo.getOriginalLocation());
-                    }
+                if (connectorClass != null && options == null) {
+	                for (Annotation annotation: connectorClass.getAnnotations()) {
+	                	if (ConnectorClass.class.getName().equals(annotation.annotationType().getName())) {
+	                		// Same class name as the annotation we are looking for. But the previous code haven't found it.
+	                		// So it looks like the annotation on this class is actually the correct one but it is loaded
+	                		// by wrong classloader. 
+	                		// Note: This error is very difficult to diagnose. Therefore we are explicitly checking for it here.
+	                		throw new ConfigurationException("Class "+connectorClass.getName()+" has ConnectorClass annotation but it looks like it is " +
+	                				"loaded by a wrong classloader. Maybe the connector bundle contains the connector frameworks JAR? (it should NOT contain it).");
+	                	}
+	                }
+                }
+            }
+            if (connectorClass != null && options != null) {
+                if (!Connector.class.isAssignableFrom(connectorClass)) {
+                    throw new ConfigurationException("Class " + connectorClass
+                            + " does not implement " + Connector.class.getName());
+                }
+                final LocalConnectorInfoImpl info = new LocalConnectorInfoImpl();
+                info.setConnectorClass(connectorClass.asSubclass(Connector.class));
+                try {
+                    info.setConnectorConfigurationClass(options.configurationClass());
+                    info.setConnectorDisplayNameKey(options.displayNameKey());
+                    info.setConnectorCategoryKey(options.categoryKey());
+                    info.setConnectorKey(new ConnectorKey(bundleInfo.getManifest().getBundleName(),
+                            bundleInfo.getManifest().getBundleVersion(), connectorClass.getName()));
+                    final ConnectorMessagesImpl messages =
+                            loadMessageCatalog(bundleInfo.getEffectiveContents(), loader, info
+                                    .getConnectorClass());
+                    info.setMessages(messages);
+                    info.setDefaultAPIConfiguration(createDefaultAPIConfiguration(info));
+                    rv.add(info);
+                    LOG.info("Add ConnectorInfo {0} to Local Connector Info Manager from {1}",
+                            info.getConnectorKey(), bundleInfo.getOriginalLocation());
+                } catch (final NoClassDefFoundError e) {
+                    LOG.info(LOG.isOk() ?
+                            e : null,
+                            "Unable to load configuration class of connector {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
+                            connectorClass, bundleInfo.getOriginalLocation());
+                } catch (final TypeNotPresentException e) {
+                    LOG.info(LOG.isOk() ?
+                             e : null,
+                            "Unable to load configuration class of connector {0} from bundle {1}. Class will be ignored and will not be listed in list of connectors.",
+                            connectorClass, bundleInfo.getOriginalLocation());
                 }
             }
         }
         return rv;
     }
 
+    /**
+     * Returns the class files of the bundle which may contain a connector.
+     */
+    private static Collection<String> getConnectorClassCandidates(
+            final WorkingBundleInfo bundleInfo) {
+        if (null == bundleInfo.getConnectorClasses()) {
+            return bundleInfo.getImmediateBundleContents();
+        }
+        final List<String> rv = new ArrayList<String>(bundleInfo.getConnectorClasses().size());
+        for (String className : bundleInfo.getConnectorClasses()) {
+            rv.add(className.replace('.', '/') + ".class");
+        }
+        return rv;
+    }
+
     /**
      * Create an instance of the {@link APIConfiguration} object to setup the framework etc..
      */
@@ -435,6 +631,29 @@ public class LocalConnectorInfoManagerImpl implements ConnectorInfoManager {
         return Collections.unmodifiableList(connectorInfos);
     }
 
+    /**
+     * Removes the scripts compiled with the class loaders of the bundles from
+     * the {@link CompiledScriptCache}, the cached scripts keep the class
+     * loaders alive.
+     */
+    public void dispose() {
+        for (ConnectorInfo info : connectorInfos) {
+            CompiledScriptCache.getInstance().invalidate(
+                    ((LocalConnectorInfoImpl) info).getConnectorClass().getClassLoader());
+        }
+    }
+
+    private static final class BundleThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BundleLoader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private static final class BundleTempDirectory {
 
         private final Random _random = new Random(System.currentTimeMillis());
@@ -0,0 +1,482 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * An ObjectPool which borrows and returns the objects without locks.
+ * <p/>
+ * Every object has a state and a borrower claims an idle object with a
+ * compare-and-set of its state, so concurrent borrowers never block each
+ * other. The returned objects are put in a non-blocking queue of idle objects
+ * and the borrowers take them from its head. Each thread also remembers the
+ * objects it returned last and claims those first: a
+ * {@link org.identityconnectors.framework.spi.PoolableConnector} often serves
+ * the same application thread again.
+ * <p/>
+ * The pool is fair. When the pool is exhausted the borrowers are parked in
+ * the order they came and a returning thread unparks the longest waiting one,
+ * which is the only waiter allowed to claim the idle objects. While there are
+ * waiting borrowers, new borrowers join the queue instead of taking the idle
+ * objects.
+ *
+ * @since 1.5
+ */
+class LockFreeObjectPool<T> extends ObjectPool<T> {
+
+    private static final Log LOG = Log.getLog(LockFreeObjectPool.class);
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_ACTIVE = 1;
+    private static final int STATE_REMOVED = 2;
+    private static final int STATE_RETURNING = 3;
+
+    /**
+     * Number of returned objects a thread remembers.
+     */
+    private static final int AFFINITY_SIZE = 4;
+
+    /**
+     * Maximum time a waiting borrower sleeps before it checks if a disposed
+     * object made room for a new one.
+     */
+    private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The objects returned last by the thread, to any pool. The references
+     * are weak, so a thread does not keep a discarded pool alive.
+     */
+    private static final ThreadLocal<List<WeakReference<LockFreeObjectPool<?>.PooledObject>>> RECENTLY_RETURNED =
+            new ThreadLocal<List<WeakReference<LockFreeObjectPool<?>.PooledObject>>>() {
+                protected List<WeakReference<LockFreeObjectPool<?>.PooledObject>> initialValue() {
+                    return new ArrayList<WeakReference<LockFreeObjectPool<?>.PooledObject>>(
+                            AFFINITY_SIZE);
+                }
+            };
+
+    /**
+     * An object plus additional book-keeping information about the object
+     */
+    private class PooledObject implements ObjectPoolEntry<T> {
+
+        private final T object;
+
+        private final AtomicInteger state = new AtomicInteger(STATE_ACTIVE);
+
+        /**
+         * Is this object in the queue of idle objects?
+         */
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+
+        /**
+         * Last time the object became idle
+         */
+        private volatile long idleTimestamp;
+
+        /**
+         * Last successful test of the object
+         */
+        private volatile long lastTestTimestamp = 0;
+
+        /**
+         * Is this a freshly created object (never been pooled)?
+         */
+        private volatile boolean isNew = true;
+
+        public PooledObject(final T object) {
+            this.object = object;
+        }
+
+        public T getPooledObject() {
+            return object;
+        }
+
+        public void close() {
+            returnObject(this);
+        }
+
+        public boolean isOlderThan(long maxAge) {
+            return maxAge < (System.currentTimeMillis() - idleTimestamp);
+        }
+
+        private LockFreeObjectPool<T> getPool() {
+            return LockFreeObjectPool.this;
+        }
+    }
+
+    /**
+     * The idle objects in the order they were returned. An object claimed by
+     * the thread which returned it stays in the queue until it's polled.
+     */
+    private final ConcurrentLinkedQueue<PooledObject> idleObjects =
+            new ConcurrentLinkedQueue<PooledObject>();
+
+    /**
+     * Number of objects plus the objects under construction, never more than
+     * the {@code MaxObjects}.
+     */
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+
+    /**
+     * Fair queue of the waiting borrowers, the head is woken up when an
+     * object is returned or disposed.
+     */
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+    /**
+     * Create a new LockFreeObjectPool
+     *
+     * @param handler
+     *            Handler for objects
+     * @param config
+     *            Configuration for the pool
+     */
+    public LockFreeObjectPool(final ObjectPoolHandler<T> handler,
+            final ObjectPoolConfiguration config) {
+        super(handler, config);
+    }
+
+    /**
+     * Borrow an object from the pool.
+     *
+     * @return An object
+     */
+    public ObjectPoolEntry<T> borrowObject() {
+        final long start = System.nanoTime();
+        PooledObject rv = null;
+        do {
+            rv = borrowObjectNoTest();
+            if (isTestRequired(rv.isNew, rv.lastTestTimestamp)) {
+                try {
+                    getHandler().testObject(rv.getPooledObject());
+                    rv.lastTestTimestamp = System.currentTimeMillis();
+                } catch (Exception e) {
+                    dispose(rv);
+                    // if it's a new object, break out of the loop
+                    // immediately
+                    if (rv.isNew) {
+                        throw ConnectorException.wrap(e);
+                    }
+                    rv = null;
+                }
+            }
+        } while (null == rv);
+        recordBorrow(System.nanoTime() - start);
+        return rv;
+    }
+
+    private PooledObject borrowObjectNoTest() {
+        if (isShutdown()) {
+            throw new IllegalStateException("Object pool already shutdown");
+        }
+        PooledObject pooledConn;
+        if (waiters.isEmpty()) {
+            // Nobody is waiting so take the first available
+            pooledConn = borrowRecentlyReturnedObject();
+            if (null == pooledConn) {
+                pooledConn = borrowIdleObject();
+            }
+            if (null == pooledConn) {
+                pooledConn = makeObject();
+            }
+            if (null != pooledConn) {
+                return pooledConn;
+            }
+        }
+
+        final long waitStart = System.nanoTime();
+        final long deadline =
+                waitStart + TimeUnit.SECONDS.toNanos(getPoolConfiguration().getMaxWait());
+        long nanos = deadline - waitStart;
+        final Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            do {
+                // Only the longest waiting borrower takes the idle objects
+                if (waiters.peek() == current) {
+                    pooledConn = borrowIdleObject();
+                    if (null == pooledConn) {
+                        pooledConn = makeObject();
+                    }
+                    if (null != pooledConn) {
+                        return pooledConn;
+                    }
+                }
+                // Wait until an object is returned
+                LockSupport.parkNanos(this, Math.min(nanos, RECHECK_NANOS));
+                if (Thread.interrupted()) {
+                    current.interrupt();
+                    throw ConnectorException.wrap(new InterruptedException());
+                }
+                nanos = deadline - System.nanoTime();
+            } while (nanos > 0 && !isShutdown());
+        } finally {
+            waiters.remove(current);
+            // The next waiter may take the object this one did not need
+            signalWaiter();
+            recordWait(System.nanoTime() - waitStart);
+        }
+        if (isShutdown()) {
+            throw new IllegalStateException("Object pool already shutdown");
+        }
+        throw new ConnectorException("TimeOut");
+    }
+
+    /**
+     * Claims the objects returned recently by the current thread.
+     *
+     * @return null if none of them is idle.
+     */
+    @SuppressWarnings("unchecked")
+    private PooledObject borrowRecentlyReturnedObject() {
+        final List<WeakReference<LockFreeObjectPool<?>.PooledObject>> recent =
+                RECENTLY_RETURNED.get();
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            LockFreeObjectPool<?>.PooledObject candidate = recent.get(i).get();
+            if (null == candidate) {
+                recent.remove(i);
+            } else if (candidate.getPool() == this) {
+                recent.remove(i);
+                PooledObject pooledConn = (PooledObject) candidate;
+                if (claim(pooledConn)) {
+                    return pooledConn;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims the first idle object of the pool.
+     * <p/>
+     * Before it returns the object it checks the {@code MinIdle} size and the
+     * {@code MinEvictableIdleTime} before accepts the object.
+     *
+     * @return null if there was no idle object in the pool.
+     */
+    private PooledObject borrowIdleObject() {
+        PooledObject pooledConn;
+        while (null != (pooledConn = idleObjects.poll())) {
+            // Clear it before the claim, so a concurrent return of an object
+            // which is not idle any more queues it again
+            pooledConn.queued.set(false);
+            if (claim(pooledConn)) {
+                return pooledConn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Changes the state of the object from idle to active.
+     *
+     * @return false if the object was not idle or it was evicted.
+     */
+    private boolean claim(final PooledObject pooledConn) {
+        if (pooledConn.state.compareAndSet(STATE_IDLE, STATE_ACTIVE)) {
+            int idle = idleCount.decrementAndGet();
+            if (getPoolConfiguration().getMinIdle() <= idle
+                    && pooledConn.isOlderThan(getPoolConfiguration()
+                            .getMinEvictableIdleTimeMillis())) {
+                dispose(pooledConn);
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return an object to the pool
+     *
+     * @param pooled
+     */
+    private void returnObject(final PooledObject pooled) {
+        if (!pooled.state.compareAndSet(STATE_ACTIVE, STATE_RETURNING)) {
+            LOG.ok("Object was returned to the pool more than once");
+            return;
+        }
+        if (isShutdown() || getPoolConfiguration().getMaxIdle() <= idleCount.get()) {
+            dispose(pooled);
+            return;
+        }
+        pooled.isNew = false;
+        pooled.idleTimestamp = System.currentTimeMillis();
+        idleCount.incrementAndGet();
+        pooled.state.set(STATE_IDLE);
+        if (pooled.queued.compareAndSet(false, true)) {
+            idleObjects.offer(pooled);
+        }
+
+        if (isShutdown() && pooled.state.compareAndSet(STATE_IDLE, STATE_REMOVED)) {
+            // The pool was shut down in the meantime
+            idleCount.decrementAndGet();
+            dispose(pooled);
+            return;
+        }
+
+        if (signalWaiter()) {
+            // The waiting borrower takes it
+            return;
+        }
+        final List<WeakReference<LockFreeObjectPool<?>.PooledObject>> recent =
+                RECENTLY_RETURNED.get();
+        if (recent.size() >= AFFINITY_SIZE) {
+            recent.remove(0);
+        }
+        recent.add(new WeakReference<LockFreeObjectPool<?>.PooledObject>(pooled));
+    }
+
+    /**
+     * Wakes up the longest waiting borrower.
+     *
+     * @return false if nobody is waiting.
+     */
+    private boolean signalWaiter() {
+        final Thread waiter = waiters.peek();
+        if (null != waiter) {
+            LockSupport.unpark(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This is a long running process to create and init the object.
+     *
+     * @return null if the pool reached the {@code MaxObjects}.
+     * @throws ConnectorException
+     *             if something happens.
+     */
+    private PooledObject makeObject() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= getPoolConfiguration().getMaxObjects()) {
+                return null;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        try {
+            final long start = System.nanoTime();
+            PooledObject pooledConn = new PooledObject(getHandler().makeObject());
+            recordCreate(System.nanoTime() - start);
+            return pooledConn;
+        } catch (Throwable t) {
+            size.decrementAndGet();
+            throw ConnectorException.wrap(t);
+        }
+    }
+
+    /**
+     * Dispose of an object, but don't throw any exceptions. The caller must
+     * own the object: it's active or it was removed by the caller.
+     *
+     * @param entry
+     */
+    private void dispose(final PooledObject entry) {
+        entry.state.set(STATE_REMOVED);
+        if (entry.queued.get()) {
+            idleObjects.remove(entry);
+        }
+        size.decrementAndGet();
+        try {
+            getHandler().disposeObject(entry.getPooledObject());
+        } catch (Exception e) {
+            LOG.warn(e, "disposeObject() is not supposed to throw");
+        }
+        // A waiting borrower may create a new object now
+        signalWaiter();
+    }
+
+    void evictIdleObjects() {
+        for (Iterator<PooledObject> iter = idleObjects.iterator(); iter.hasNext();) {
+            PooledObject entry = iter.next();
+            if (getPoolConfiguration().getMinIdle() < idleCount.get()
+                    && entry.state.get() == STATE_IDLE
+                    && entry.isOlderThan(getPoolConfiguration().getMinEvictableIdleTimeMillis())
+                    && entry.state.compareAndSet(STATE_IDLE, STATE_REMOVED)) {
+                iter.remove();
+                entry.queued.set(false);
+                idleCount.decrementAndGet();
+                dispose(entry);
+            }
+        }
+    }
+
+    boolean prewarmObject() {
+        final PooledObject pooledConn;
+        try {
+            pooledConn = makeObject();
+        } catch (ConnectorException e) {
+            LOG.warn(e, "Failed to create a new idle object");
+            return false;
+        }
+        if (null == pooledConn) {
+            return false;
+        }
+        returnObject(pooledConn);
+        return true;
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+
+    void disposeIdleObjects() {
+        for (Iterator<PooledObject> iter = idleObjects.iterator(); iter.hasNext();) {
+            PooledObject entry = iter.next();
+            if (entry.state.compareAndSet(STATE_IDLE, STATE_REMOVED)) {
+                iter.remove();
+                entry.queued.set(false);
+                idleCount.decrementAndGet();
+                dispose(entry);
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the pool's stats at a point in time.
+     *
+     * @return The statistics
+     */
+    public Statistics getStatistics() {
+        return createStatistics(idleCount.get(), size.get());
+    }
+}
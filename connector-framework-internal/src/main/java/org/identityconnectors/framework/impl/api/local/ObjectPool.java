@@ -30,6 +30,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -48,10 +50,29 @@ public class ObjectPool<T> {
     public static final class Statistics {
         private final int numIdle;
         private final int numActive;
-
-        private Statistics(final int numIdle, final int numActive) {
+        private final long borrowCount;
+        private final long borrowTime;
+        private final long waitCount;
+        private final long waitTime;
+        private final long maxWaitTime;
+        private final long createCount;
+        private final long createTime;
+        private final long maxCreateTime;
+
+        private Statistics(final int numIdle, final int numActive, final long borrowCount,
+                final long borrowTime, final long waitCount, final long waitTime,
+                final long maxWaitTime, final long createCount, final long createTime,
+                final long maxCreateTime) {
             this.numIdle = numIdle;
             this.numActive = numActive;
+            this.borrowCount = borrowCount;
+            this.borrowTime = borrowTime;
+            this.waitCount = waitCount;
+            this.waitTime = waitTime;
+            this.maxWaitTime = maxWaitTime;
+            this.createCount = createCount;
+            this.createTime = createTime;
+            this.maxCreateTime = maxCreateTime;
         }
 
         /**
@@ -67,6 +88,70 @@ public class ObjectPool<T> {
         public int getNumActive() {
             return numActive - numIdle;
         }
+
+        /**
+         * Returns the number of successfully borrowed objects
+         */
+        public long getBorrowCount() {
+            return borrowCount;
+        }
+
+        /**
+         * Returns the average time in milliseconds it took to borrow an
+         * object, including the wait, the creation and the test of the object
+         */
+        public double getAverageBorrowTime() {
+            return borrowCount > 0 ? nanosToMillis(borrowTime) / borrowCount : 0;
+        }
+
+        /**
+         * Returns the number of borrows which had to wait for an object to
+         * become available
+         */
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        /**
+         * Returns the average time in milliseconds the waiting borrows waited
+         */
+        public double getAverageWaitTime() {
+            return waitCount > 0 ? nanosToMillis(waitTime) / waitCount : 0;
+        }
+
+        /**
+         * Returns the longest time in milliseconds a borrow waited
+         */
+        public double getMaxWaitTime() {
+            return nanosToMillis(maxWaitTime);
+        }
+
+        /**
+         * Returns the number of successfully created objects, including the
+         * objects created by the pool maintenance
+         */
+        public long getCreateCount() {
+            return createCount;
+        }
+
+        /**
+         * Returns the average time in milliseconds it took to create and
+         * initialize an object
+         */
+        public double getAverageCreateTime() {
+            return createCount > 0 ? nanosToMillis(createTime) / createCount : 0;
+        }
+
+        /**
+         * Returns the longest time in milliseconds it took to create an object
+         */
+        public double getMaxCreateTime() {
+            return nanosToMillis(maxCreateTime);
+        }
+
+        private static double nanosToMillis(long nanos) {
+            return nanos / 1000000d;
+        }
     }
 
     /**
@@ -93,6 +178,11 @@ public class ObjectPool<T> {
          */
         private boolean isNew;
 
+        /**
+         * Last successful test of the object
+         */
+        private long lastTestTimestamp = 0;
+
         public PooledObject(final T object) {
             this.object = object;
             isNew = true;
@@ -135,6 +225,27 @@ public class ObjectPool<T> {
         }
     }
 
+    /**
+     * Create a new ObjectPool with the implementation selected by the
+     * configuration.
+     *
+     * @param handler
+     *            Handler for objects
+     * @param config
+     *            Configuration for the pool
+     * @return the {@link LockFreeObjectPool} if
+     *         {@link ObjectPoolConfiguration#isLockFree()} is set otherwise
+     *         the ObjectPool.
+     */
+    public static <T> ObjectPool<T> newInstance(final ObjectPoolHandler<T> handler,
+            final ObjectPoolConfiguration config) {
+        Assertions.nullCheck(config, "config");
+        if (config.isLockFree()) {
+            return new LockFreeObjectPool<T>(handler, config);
+        }
+        return new ObjectPool<T>(handler, config);
+    }
+
     /**
      * Set contains all the PooledObject was made by this pool. It contains all
      * idle and borrowed(active) objects.
@@ -177,6 +288,20 @@ public class ObjectPool<T> {
      */
     private volatile boolean isShutdown = false;
 
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTime = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+    private final AtomicLong createTime = new AtomicLong();
+    private final AtomicLong maxCreateTime = new AtomicLong();
+
+    /**
+     * Set while the {@link #maintain()} is running.
+     */
+    private final AtomicBoolean maintaining = new AtomicBoolean(false);
+
     /**
      * Create a new ObjectPool
      *
@@ -206,6 +331,14 @@ public class ObjectPool<T> {
         return isShutdown;
     }
 
+    ObjectPoolHandler<T> getHandler() {
+        return handler;
+    }
+
+    ObjectPoolConfiguration getPoolConfiguration() {
+        return poolConfiguration;
+    }
+
     /**
      * Return an object to the pool
      *
@@ -239,12 +372,16 @@ public class ObjectPool<T> {
      * @return An object
      */
     public ObjectPoolEntry<T> borrowObject() {
+        final long start = System.nanoTime();
         PooledObject rv = null;
         try {
             do {
                 rv = borrowObjectNoTest();
                 try {
-                    handler.testObject(rv.getPooledObject());
+                    if (isTestRequired(rv.isNew(), rv.lastTestTimestamp)) {
+                        handler.testObject(rv.getPooledObject());
+                        rv.lastTestTimestamp = System.currentTimeMillis();
+                    }
                 } catch (Exception e) {
                     if (null != rv) {
                         dispose(rv);
@@ -258,6 +395,7 @@ public class ObjectPool<T> {
                 }
             } while (null == rv);
             rv.setActive(true);
+            recordBorrow(System.nanoTime() - start);
         } catch (InterruptedException e) {
             LOG.error(e, "Failed to borrow object from pool.");
             throw ConnectorException.wrap(e);
@@ -280,21 +418,22 @@ public class ObjectPool<T> {
         PooledObject pooledConn = borrowIdleObject();
         if (null == pooledConn) {
             long nanos = TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait());
+            long waitStart = 0;
+            boolean permitted = false;
             final ReentrantLock lock = this.takeLock;
             lock.lockInterruptibly();
             try {
                 do {
                     if (totalPermit.tryAcquire()) {
                         // If the pool is empty and there are available permits
-                        // then create a new instance.
-                        try {
-                            return makeObject();
-                        } catch (Throwable t){
-                            totalPermit.release();
-                            throw ConnectorException.wrap(t);
-                        }
+                        // then create a new instance, outside of the lock so
+                        // the other borrowers are not blocked.
+                        permitted = true;
                     } else {
                         // Wait for permit or object to became available
+                        if (0 == waitStart) {
+                            waitStart = System.nanoTime();
+                        }
                         try {
                             nanos = notEmpty.awaitNanos(nanos);
                         } catch (InterruptedException ie) {
@@ -312,9 +451,19 @@ public class ObjectPool<T> {
                             return pooledConn;
                         }
                     }
-                } while (nanos > 0);
+                } while (!permitted);
             } finally {
                 lock.unlock();
+                if (0 != waitStart) {
+                    recordWait(System.nanoTime() - waitStart);
+                }
+            }
+            try {
+                return makeObject();
+            } catch (Throwable t) {
+                totalPermit.release();
+                signalNotEmpty();
+                throw ConnectorException.wrap(t);
             }
         }
         return pooledConn;
@@ -344,6 +493,85 @@ public class ObjectPool<T> {
         return null;
     }
 
+    /**
+     * Maintains the idle objects of the pool.
+     * <p/>
+     * It disposes the objects which were idle for longer than the
+     * {@code MinEvictableIdleTime} while more than {@code MinIdle} objects are
+     * idle, then it creates new objects until {@code MinIdle} objects are
+     * idle. The objects are created outside of the locks, the borrowers are
+     * not blocked. Nothing happens if the maintenance is already running.
+     *
+     * @since 1.5
+     */
+    public void maintain() {
+        if (isShutdown() || !maintaining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            evictIdleObjects();
+            int missing = poolConfiguration.getMinIdle() - getIdleCount();
+            while (missing-- > 0 && !isShutdown() && prewarmObject()) {
+                // create the next one
+            }
+        } finally {
+            maintaining.set(false);
+        }
+    }
+
+    /**
+     * Disposes the objects which were idle for too long, keeping
+     * {@code MinIdle} of them.
+     */
+    void evictIdleObjects() {
+        for (PooledObject entry : idleObjects) {
+            if (poolConfiguration.getMinIdle() < idleObjects.size()
+                    && entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis())
+                    && idleObjects.remove(entry)) {
+                try {
+                    dispose(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new idle object if the pool has room for it.
+     *
+     * @return false if the pool is full or the object could not be created.
+     */
+    boolean prewarmObject() {
+        if (!totalPermit.tryAcquire()) {
+            return false;
+        }
+        final PooledObject pooledConn;
+        try {
+            pooledConn = makeObject();
+        } catch (Throwable t) {
+            totalPermit.release();
+            signalNotEmpty();
+            LOG.warn(t, "Failed to create a new idle object");
+            return false;
+        }
+        try {
+            returnObject(pooledConn);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of idle objects.
+     */
+    int getIdleCount() {
+        return idleObjects.size();
+    }
+
     /**
      * Closes any idle objects in the pool.
      * <p/>
@@ -357,25 +585,79 @@ public class ObjectPool<T> {
         // going, leave them alone so they can return
         // gracefully
         try {
-            for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
-                try {
-                    dispose(entry);
-                } catch (InterruptedException e) {
-                    LOG.error(e, "Failed to dispose PooledObject object");
-                }
-            }
+            disposeIdleObjects();
         } finally {
             handler.shutdown();
         }
     }
 
+    /**
+     * Disposes the idle objects when the pool is shut down.
+     */
+    void disposeIdleObjects() {
+        for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
+            try {
+                dispose(entry);
+            } catch (InterruptedException e) {
+                LOG.error(e, "Failed to dispose PooledObject object");
+            }
+        }
+    }
+
     /**
      * Gets a snapshot of the pool's stats at a point in time.
      *
      * @return The statistics
      */
     public Statistics getStatistics() {
-        return new Statistics(idleObjects.size(), activeObjects.size());
+        return createStatistics(idleObjects.size(), activeObjects.size());
+    }
+
+    Statistics createStatistics(int numIdle, int numTotal) {
+        return new Statistics(numIdle, numTotal, borrowCount.get(), borrowTime.get(), waitCount
+                .get(), waitTime.get(), maxWaitTime.get(), createCount.get(), createTime.get(),
+                maxCreateTime.get());
+    }
+
+    /**
+     * Checks if the object must be tested before it's borrowed.
+     *
+     * @param isNew
+     *            true if the object was never pooled.
+     * @param lastTestTimestamp
+     *            the time of the last successful test.
+     * @return false if the object was tested within the
+     *         {@link ObjectPoolConfiguration#getMinTestIntervalMillis()}.
+     */
+    boolean isTestRequired(boolean isNew, long lastTestTimestamp) {
+        return isNew
+                || poolConfiguration.getMinTestIntervalMillis() <= 0
+                || poolConfiguration.getMinTestIntervalMillis() < System.currentTimeMillis()
+                        - lastTestTimestamp;
+    }
+
+    void recordBorrow(long nanos) {
+        borrowCount.incrementAndGet();
+        borrowTime.addAndGet(nanos);
+    }
+
+    void recordWait(long nanos) {
+        waitCount.incrementAndGet();
+        waitTime.addAndGet(nanos);
+        recordMax(maxWaitTime, nanos);
+    }
+
+    void recordCreate(long nanos) {
+        createCount.incrementAndGet();
+        createTime.addAndGet(nanos);
+        recordMax(maxCreateTime, nanos);
+    }
+
+    private static void recordMax(AtomicLong max, long nanos) {
+        long current;
+        do {
+            current = max.get();
+        } while (nanos > current && !max.compareAndSet(current, nanos));
     }
 
     /**
@@ -386,13 +668,13 @@ public class ObjectPool<T> {
      *             if something happens.
      */
     private PooledObject makeObject() {
+        final long start = System.nanoTime();
+        PooledObject pooledConn = new PooledObject(handler.makeObject());
+        recordCreate(System.nanoTime() - start);
         synchronized (activeObjects) {
-            PooledObject pooledConn =
-                    new PooledObject((activeObjects.size() > 0) ? handler.makeObject() : handler
-                            .makeObject());
             activeObjects.add(pooledConn);
-            return pooledConn;
         }
+        return pooledConn;
     }
 
     /**
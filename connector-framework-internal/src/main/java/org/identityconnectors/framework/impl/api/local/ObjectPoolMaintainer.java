@@ -0,0 +1,132 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Runs the {@link ObjectPool#maintain()} of the registered pools
+ * periodically.
+ * <p/>
+ * The maintenance runs on its own daemon thread, so it never waits behind
+ * the operations and the operations never wait behind it. The thread is
+ * started with the first registered pool and stopped when the last one is
+ * unregistered. The period in milliseconds is set by the
+ * {@value ConnectorPoolManager#MAINTENANCE_INTERVAL_PROPERTY} system
+ * property, default {@value ConnectorPoolManager#DEFAULT_MAINTENANCE_INTERVAL},
+ * zero disables the maintenance.
+ *
+ * @since 1.5
+ */
+public final class ObjectPoolMaintainer {
+
+    private static final Log LOG = Log.getLog(ObjectPoolMaintainer.class);
+
+    private static final ConcurrentMap<ObjectPool<?>, Boolean> POOLS =
+            new ConcurrentHashMap<ObjectPool<?>, Boolean>();
+
+    private static ScheduledExecutorService scheduler = null;
+
+    private static final Runnable MAINTENANCE_TASK = new Runnable() {
+        public void run() {
+            for (ObjectPool<?> pool : POOLS.keySet()) {
+                if (pool.isShutdown()) {
+                    unregister(pool);
+                    continue;
+                }
+                try {
+                    pool.maintain();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to maintain pool: {0}", pool);
+                }
+            }
+        }
+    };
+
+    private ObjectPoolMaintainer() {
+    }
+
+    /**
+     * Adds the pool to the periodic maintenance.
+     *
+     * @param pool
+     *            the pool to maintain until it's unregistered or shut down.
+     */
+    public static void register(final ObjectPool<?> pool) {
+        synchronized (POOLS) {
+            long interval =
+                    Long.getLong(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY,
+                            ConnectorPoolManager.DEFAULT_MAINTENANCE_INTERVAL);
+            if (interval <= 0) {
+                return;
+            }
+            POOLS.put(pool, Boolean.TRUE);
+            if (null == scheduler) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ObjectPool-Maintenance");
+                        thread.setDaemon(true);
+                        // the first pool may come from a connector bundle,
+                        // its class loader must not be kept after undeploy
+                        thread.setContextClassLoader(null);
+                        return thread;
+                    }
+                });
+                scheduler.scheduleWithFixedDelay(MAINTENANCE_TASK, interval, interval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Removes the pool from the periodic maintenance.
+     *
+     * @param pool
+     *            the pool to remove.
+     */
+    public static void unregister(final ObjectPool<?> pool) {
+        synchronized (POOLS) {
+            POOLS.remove(pool);
+            if (POOLS.isEmpty() && null != scheduler) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the pool is maintained periodically.
+     */
+    public static boolean isRegistered(final ObjectPool<?> pool) {
+        return POOLS.containsKey(pool);
+    }
+}
@@ -59,6 +59,10 @@ public class WorkingBundleInfo {
     // List of included bundles.
     private List<WorkingBundleInfo> embeddedBundles = new ArrayList<WorkingBundleInfo>();
 
+    // Names of the classes with the ConnectorClass annotation, null if the
+    // classes of the bundle were not scanned.
+    private Set<String> connectorClasses;
+
     // Effective classpath (includes the classpaths of embedded bundles).
     private List<URL> effectiveClassPath;
 
@@ -101,6 +105,14 @@ public class WorkingBundleInfo {
         return embeddedBundles;
     }
 
+    public Set<String> getConnectorClasses() {
+        return connectorClasses;
+    }
+
+    public void setConnectorClasses(Set<String> classNames) {
+        connectorClasses = classNames;
+    }
+
     public List<URL> getEffectiveClassPath() {
         return effectiveClassPath;
     }
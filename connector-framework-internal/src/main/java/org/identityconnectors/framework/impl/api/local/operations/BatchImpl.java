@@ -24,6 +24,7 @@
 package org.identityconnectors.framework.impl.api.local.operations;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.Observer;
 import org.identityconnectors.framework.api.operations.batch.BatchTask;
 import org.identityconnectors.framework.api.operations.batch.BatchTaskExecutor;
@@ -31,17 +32,42 @@ import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.BatchToken;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.Subscription;
+import org.identityconnectors.framework.impl.api.OperationExecutor;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl.ReferenceCounter;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.PoolableConnector;
 import org.identityconnectors.framework.spi.operations.BatchOp;
 
 import java.util.List;
 
+/**
+ * Executes the batch on the connector.
+ * <p/>
+ * When the connector does not implement {@link BatchOp} the tasks are
+ * executed one by one. If the connector is pooled the tasks can be executed
+ * on up to {@value #PARALLELISM_PROPERTY} connectors of the pool at the same
+ * time, the default is {@value #DEFAULT_PARALLELISM}. The tasks are executed
+ * one by one if the {@link OperationOptions#OP_REQUIRE_SERIAL} option is set.
+ */
 public class BatchImpl extends ConnectorAPIOperationRunner implements
         org.identityconnectors.framework.api.operations.BatchApiOp {
 
+    private static final Log LOG = Log.getLog(BatchImpl.class);
+
+    public static final String PARALLELISM_PROPERTY =
+            "org.identityconnectors.framework.impl.api.local.operations.BatchImpl.parallelism";
+
+    public static final int DEFAULT_PARALLELISM = 1;
+
     private final ReferenceCounter referenceCounter;
 
+    /**
+     * The maximum number of connectors executing the tasks of a batch.
+     */
+    private final int parallelism;
+
     /**
      * Construct a batch operation.
      *
@@ -51,8 +77,7 @@ public class BatchImpl extends ConnectorAPIOperationRunner implements
      *          the connector on which to execute the operation.
      */
     public BatchImpl(final ConnectorOperationalContext context, final Connector connector) {
-        super(context, connector);
-        this.referenceCounter = new ReferenceCounter();
+        this(context, connector, new ReferenceCounter());
     }
 
     /**
@@ -65,8 +90,15 @@ public class BatchImpl extends ConnectorAPIOperationRunner implements
      */
     public BatchImpl(final ConnectorOperationalContext context, final Connector connector,
                      final ReferenceCounter referenceCounter) {
+        this(context, connector, referenceCounter, Integer.getInteger(PARALLELISM_PROPERTY,
+                DEFAULT_PARALLELISM));
+    }
+
+    BatchImpl(final ConnectorOperationalContext context, final Connector connector,
+            final ReferenceCounter referenceCounter, final int parallelism) {
         super(context, connector);
         this.referenceCounter = referenceCounter;
+        this.parallelism = Math.max(1, parallelism);
     }
 
     /**
@@ -85,6 +117,11 @@ public class BatchImpl extends ConnectorAPIOperationRunner implements
             Connector connector = getConnector();
             if (!(connector instanceof BatchOp)) {
                 // The connector does not implement batch support.  Process the batch iteratively.
+                ObjectPool<PoolableConnector> pool = parallelism > 1 ? getPool() : null;
+                if (null != pool && tasks.size() > 1 && !options.getRequireSerial()) {
+                    new ParallelBatch(tasks, observer, options.getFailOnError(), pool).execute();
+                    return null;
+                }
                 BatchTaskExecutor executor = new BatchTaskExecutorImpl(connector, getOperationalContext());
                 for (int i = 0; i < tasks.size(); i++) {
                     boolean complete = i == tasks.size() - 1;
@@ -127,4 +164,160 @@ public class BatchImpl extends ConnectorAPIOperationRunner implements
             referenceCounter.release();
         }
     }
+
+    /**
+     * Returns the pool of the connector.
+     *
+     * @return null if the connector is not pooled.
+     */
+    ObjectPool<PoolableConnector> getPool() {
+        return null != getOperationalContext() ? getOperationalContext().getPool() : null;
+    }
+
+    /**
+     * Executes the tasks on the connector of this operation and on the
+     * connectors borrowed from the pool.
+     * <p/>
+     * The results are passed to the observer one at a time. The last result
+     * is completed. If a task fails and the batch has to fail on error, no
+     * more tasks are started and the error is passed to the observer after
+     * the results of the running tasks.
+     */
+    private class ParallelBatch {
+
+        private final List<BatchTask> tasks;
+        private final Observer<BatchResult> observer;
+        private final boolean failOnError;
+        private final ObjectPool<PoolableConnector> pool;
+
+        private final Object lock = new Object();
+        private int next = 0;
+        private int running = 0;
+        private int finished = 0;
+        private boolean stopped = false;
+        private RuntimeException failure = null;
+
+        ParallelBatch(final List<BatchTask> tasks, final Observer<BatchResult> observer,
+                final boolean failOnError, final ObjectPool<PoolableConnector> pool) {
+            this.tasks = tasks;
+            this.observer = observer;
+            this.failOnError = failOnError;
+            this.pool = pool;
+        }
+
+        void execute() {
+            final int workers = Math.min(parallelism, tasks.size());
+            for (int i = 1; i < workers; i++) {
+                // this thread executes the remaining tasks if there are no
+                // more threads available
+                boolean started = OperationExecutor.getInstance().tryExecute(new Runnable() {
+                    public void run() {
+                        executeOnPooledConnector();
+                    }
+                });
+                if (!started) {
+                    break;
+                }
+            }
+            executeTasks(getConnector());
+
+            boolean interrupted = false;
+            synchronized (lock) {
+                while (running > 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // don't start more tasks but wait for the running ones
+                        stopped = true;
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (null != failure) {
+                observer.onError(failure);
+            }
+        }
+
+        private void executeOnPooledConnector() {
+            synchronized (lock) {
+                if (stopped || next >= tasks.size()) {
+                    return;
+                }
+            }
+            ObjectPoolEntry<PoolableConnector> entry = null;
+            try {
+                entry = pool.borrowObject();
+                executeTasks(entry.getPooledObject());
+            } catch (RuntimeException e) {
+                // the other connectors execute the tasks
+                LOG.warn(e, "Failed to borrow a connector for the batch");
+            } finally {
+                if (null != entry) {
+                    try {
+                        entry.close();
+                    } catch (Exception e) {
+                        LOG.error(e, null);
+                    }
+                }
+            }
+        }
+
+        private void executeTasks(final Connector connector) {
+            final BatchTaskExecutor executor =
+                    new BatchTaskExecutorImpl(connector, getOperationalContext());
+            int index;
+            while ((index = nextTask()) >= 0) {
+                Object result = null;
+                RuntimeException error = null;
+                try {
+                    result = tasks.get(index).execute(executor);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                finishTask(index, result, error);
+            }
+        }
+
+        private int nextTask() {
+            synchronized (lock) {
+                if (stopped || next >= tasks.size()) {
+                    return -1;
+                }
+                running++;
+                return next++;
+            }
+        }
+
+        private void finishTask(final int index, final Object result, RuntimeException error) {
+            synchronized (lock) {
+                try {
+                    boolean complete = ++finished == tasks.size();
+                    if (null == error) {
+                        try {
+                            observer.onNext(new BatchResult(result, null, String.valueOf(index),
+                                    complete, false));
+                        } catch (RuntimeException e) {
+                            error = e;
+                        }
+                    }
+                    if (null != error) {
+                        if (!failOnError) {
+                            observer.onError(error);
+                        } else if (null == failure) {
+                            stopped = true;
+                            failure = error;
+                        } else {
+                            LOG.ok(error, "Batch task {0} failed after the batch failed", index);
+                        }
+                    }
+                } finally {
+                    running--;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
 }
@@ -23,6 +23,7 @@
 package org.identityconnectors.framework.impl.api.local.operations;
 
 import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.spi.AttributeNormalizer;
 import org.identityconnectors.framework.spi.Connector;
 
@@ -65,4 +66,16 @@ public abstract class ConnectorAPIOperationRunner extends APIOperationRunner {
         }
         return new ObjectNormalizerFacade(objectClass, norm);
     }
+
+    /**
+     * Drops the changed object from the {@link ConnectorObjectCache} of the
+     * facade.
+     */
+    protected final void invalidateObject(final ObjectClass objectClass, final Uid... uids) {
+        final ConnectorOperationalContext context = getOperationalContext();
+        final ConnectorObjectCache cache = null != context ? context.getObjectCache() : null;
+        if (null != cache) {
+            cache.invalidate(objectClass, uids);
+        }
+    }
 }
@@ -0,0 +1,288 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * A short-lived cache of the objects read by the {@link GetImpl} of a facade.
+ * <p/>
+ * The objects are cached by the object class, the {@link Uid} value and the
+ * attributes to get for the time to live of the
+ * {@link ResultsHandlerConfiguration}, the least recently used objects are
+ * dropped when the cache is full. The create, update and delete operations of
+ * the facade drop the object, an object read while the facade changes an
+ * object is not cached. The changes made by other facades, the scripts and
+ * the batches are only seen after the time to live.
+ * <p/>
+ * Only the get operations without other options than the attributes to get
+ * are cached.
+ *
+ * @since 1.5
+ */
+public final class ConnectorObjectCache {
+
+    private final long timeToLive;
+    private final int maxSize;
+
+    private final AtomicLong version = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * The cached objects by their attributes to get, guarded by this map.
+     */
+    private final Map<ObjectKey, Map<Set<String>, CachedObject>> objects;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive
+     *            the time an object is kept.
+     * @param unit
+     *            the unit of the time to live.
+     * @param maxSize
+     *            the number of objects kept.
+     */
+    public ConnectorObjectCache(long timeToLive, TimeUnit unit, final int maxSize) {
+        if (timeToLive <= 0L || maxSize < 1) {
+            throw new IllegalArgumentException("The time to live and the size must be positive");
+        }
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.maxSize = maxSize;
+        this.objects =
+                new LinkedHashMap<ObjectKey, Map<Set<String>, CachedObject>>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<ObjectKey, Map<Set<String>, CachedObject>> eldest) {
+                        return size() > ConnectorObjectCache.this.maxSize;
+                    }
+                };
+    }
+
+    /**
+     * Creates the cache of the configuration.
+     *
+     * @return null if the cache is not enabled.
+     */
+    public static ConnectorObjectCache newInstance(final ResultsHandlerConfiguration configuration) {
+        if (null == configuration || configuration.getObjectCacheTimeToLive() <= 0) {
+            return null;
+        }
+        return new ConnectorObjectCache(configuration.getObjectCacheTimeToLive(),
+                TimeUnit.MILLISECONDS, configuration.getObjectCacheMaxSize());
+    }
+
+    /**
+     * Returns true if the result of the get with the options can be cached.
+     */
+    public boolean isCacheable(final OperationOptions options) {
+        if (null == options) {
+            return true;
+        }
+        for (String name : options.getOptions().keySet()) {
+            if (!OperationOptions.OP_ATTRIBUTES_TO_GET.equals(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the cached object.
+     *
+     * @return null if the object is not cached or it has expired.
+     */
+    public ConnectorObject get(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options) {
+        final ObjectKey key = new ObjectKey(objectClass, uid);
+        final Set<String> attributesToGet = getAttributesToGet(options);
+        synchronized (objects) {
+            final Map<Set<String>, CachedObject> entries = objects.get(key);
+            if (null != entries) {
+                final CachedObject entry = entries.get(attributesToGet);
+                if (null != entry) {
+                    if (entry.expires - System.nanoTime() > 0L) {
+                        hits.incrementAndGet();
+                        return entry.object;
+                    }
+                    entries.remove(attributesToGet);
+                    if (entries.isEmpty()) {
+                        objects.remove(key);
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Gets the version to pass to {@link #put} when the object is read, so an
+     * object read before a change is not cached.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Caches the object.
+     *
+     * @param readVersion
+     *            the version of the cache when the object was read.
+     */
+    public void put(final long readVersion, final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options, final ConnectorObject object) {
+        if (null == object) {
+            return;
+        }
+        final ObjectKey key = new ObjectKey(objectClass, uid);
+        final Set<String> attributesToGet = getAttributesToGet(options);
+        synchronized (objects) {
+            if (version.get() != readVersion) {
+                return;
+            }
+            Map<Set<String>, CachedObject> entries = objects.get(key);
+            if (null == entries) {
+                entries = new HashMap<Set<String>, CachedObject>(2);
+                objects.put(key, entries);
+            }
+            entries.put(attributesToGet, new CachedObject(object, System.nanoTime()
+                    + timeToLive));
+        }
+    }
+
+    /**
+     * Drops the object, the null values are ignored.
+     *
+     * @param objectClass
+     *            the object class of the changed object.
+     * @param uids
+     *            the values the object may be cached by.
+     */
+    public void invalidate(final ObjectClass objectClass, final Uid... uids) {
+        synchronized (objects) {
+            version.incrementAndGet();
+            for (Uid uid : uids) {
+                if (null != uid) {
+                    objects.remove(new ObjectKey(objectClass, uid));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all objects.
+     */
+    public void clear() {
+        synchronized (objects) {
+            version.incrementAndGet();
+            objects.clear();
+        }
+    }
+
+    /**
+     * Returns the number of the cached objects.
+     */
+    public int size() {
+        synchronized (objects) {
+            return objects.size();
+        }
+    }
+
+    /**
+     * Returns the number of the get operations served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of the get operations which had to read the object.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the key of the attributes to get, null for the default attributes.
+     */
+    private static Set<String> getAttributesToGet(final OperationOptions options) {
+        final String[] attributesToGet = null != options ? options.getAttributesToGet() : null;
+        if (null == attributesToGet) {
+            return null;
+        }
+        return new HashSet<String>(Arrays.asList(attributesToGet));
+    }
+
+    private static final class ObjectKey {
+        private final ObjectClass objectClass;
+        private final String uid;
+
+        private ObjectKey(final ObjectClass objectClass, final Uid uid) {
+            this.objectClass = objectClass;
+            this.uid = uid.getUidValue();
+        }
+
+        public int hashCode() {
+            return 31 * objectClass.hashCode() + uid.hashCode();
+        }
+
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof ObjectKey) {
+                final ObjectKey other = (ObjectKey) obj;
+                return objectClass.equals(other.objectClass) && uid.equals(other.uid);
+            }
+            return false;
+        }
+    }
+
+    private static final class CachedObject {
+        private final ConnectorObject object;
+        private final long expires;
+
+        private CachedObject(final ConnectorObject object, final long expires) {
+            this.object = object;
+            this.expires = expires;
+        }
+    }
+}
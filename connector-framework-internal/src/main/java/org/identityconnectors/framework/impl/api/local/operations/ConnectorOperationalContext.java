@@ -42,9 +42,24 @@ public class ConnectorOperationalContext extends OperationalContext {
      */
     private ConnectorPoolManager.ConnectorPoolKey connectorPoolKey;
 
+    /**
+     * Object cache of the facade, null if it's not enabled
+     */
+    private final ConnectorObjectCache objectCache;
+
     public ConnectorOperationalContext(final LocalConnectorInfoImpl connectorInfo,
             final APIConfigurationImpl apiConfiguration) {
+        this(connectorInfo, apiConfiguration, null);
+    }
+
+    public ConnectorOperationalContext(final LocalConnectorInfoImpl connectorInfo,
+            final APIConfigurationImpl apiConfiguration, final ConnectorObjectCache objectCache) {
         super(connectorInfo, apiConfiguration);
+        this.objectCache = objectCache;
+    }
+
+    public ConnectorObjectCache getObjectCache() {
+        return objectCache;
     }
 
     public ObjectPool<PoolableConnector> getPool() {
@@ -86,6 +86,8 @@ public class CreateImpl extends ConnectorAPIOperationRunner implements
                 normalizer.normalizeAttributes(createAttributes);
         // create the object..
         final Uid ret = ((CreateOp) connector).create(objectClass, normalizedAttributes, options);
-        return (Uid) normalizer.normalizeAttribute(ret);
+        final Uid normalizedUid = (Uid) normalizer.normalizeAttribute(ret);
+        invalidateObject(objectClass, ret, normalizedUid);
+        return normalizedUid;
     }
 }
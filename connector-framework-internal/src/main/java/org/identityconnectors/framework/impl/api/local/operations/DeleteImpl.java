@@ -62,8 +62,11 @@ public class DeleteImpl extends ConnectorAPIOperationRunner implements
         Connector connector = getConnector();
         final ObjectNormalizerFacade normalizer =
             getNormalizer(objectClass);
-        ((DeleteOp) connector).delete(objectClass,
-                (Uid)normalizer.normalizeAttribute(uid),
-                options);
+        final Uid normalizedUid = (Uid)normalizer.normalizeAttribute(uid);
+        try {
+            ((DeleteOp) connector).delete(objectClass, normalizedUid, options);
+        } finally {
+            invalidateObject(objectClass, uid, normalizedUid);
+        }
     }
 }
@@ -26,6 +26,7 @@ package org.identityconnectors.framework.impl.api.local.operations;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
@@ -37,7 +38,8 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
     // Fields
     // =======================================================================
     private final SearchResultsHandler handler;
-    private final Set<String> visitedUIDs = new HashSet<String>();
+    private final Set<String> visitedUIDs;
+    private final UidFingerprintSet visitedFingerprints;
 
     private boolean stillHandling = true;
 
@@ -52,16 +54,38 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
      *
      */
     public DuplicateFilteringResultsHandler(final SearchResultsHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * Filter chain for producers.
+     *
+     * @param handler
+     *            Producer to filter.
+     * @param config
+     *            Selects the compact duplicate filter, may be null.
+     * @since 1.5
+     */
+    public DuplicateFilteringResultsHandler(final SearchResultsHandler handler,
+            final ResultsHandlerConfiguration config) {
         // there must be a producer..
         if (handler == null) {
             throw new IllegalArgumentException("Handler must not be null!");
         }
         this.handler = handler;
+        if (null != config && config.isEnableCompactDuplicateFilter()) {
+            visitedUIDs = null;
+            visitedFingerprints =
+                    new UidFingerprintSet(config.getDuplicateFilterSpillThreshold());
+        } else {
+            visitedUIDs = new HashSet<String>();
+            visitedFingerprints = null;
+        }
     }
 
     public boolean handle(ConnectorObject object) {
         String uid = object.getUid().getUidValue();
-        if (!visitedUIDs.add(uid)) {
+        if (null != visitedFingerprints ? !visitedFingerprints.add(uid) : !visitedUIDs.add(uid)) {
             // we've already seen this - don't pass it
             // throw
             return true;
@@ -77,4 +101,17 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
     public boolean isStillHandling() {
         return stillHandling;
     }
+
+    /**
+     * Releases the seen {@code Uid} values when the search is finished.
+     *
+     * @since 1.5
+     */
+    public void dispose() {
+        if (null != visitedFingerprints) {
+            visitedFingerprints.close();
+        } else {
+            visitedUIDs.clear();
+        }
+    }
 }
@@ -26,6 +26,7 @@ package org.identityconnectors.framework.impl.api.local.operations;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterCompiler;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
 
 public final class FilteredResultsHandler implements ResultsHandler {
@@ -57,6 +58,24 @@ public final class FilteredResultsHandler implements ResultsHandler {
         this.filter = filter == null ? new PassThroughFilter() : filter;
     }
 
+    /**
+     * Filter chain for producers which accepts the objects like the
+     * {@link org.identityconnectors.framework.common.objects.filter.FilteredResultsHandlerVisitor}.
+     * The filter is compiled once for all objects.
+     *
+     * @param handler
+     *            Producer to filter.
+     * @param filter
+     *            Filter to use to accept objects.
+     * @param caseIgnore
+     *            true to compare the String and Character values
+     *            case-insensitively.
+     * @since 1.5
+     */
+    public FilteredResultsHandler(ResultsHandler handler, Filter filter, boolean caseIgnore) {
+        this(handler, FilterCompiler.compile(filter, caseIgnore));
+    }
+
     public boolean handle(ConnectorObject object) {
         if (filter.accept(object)) {
             return handler.handle(object);
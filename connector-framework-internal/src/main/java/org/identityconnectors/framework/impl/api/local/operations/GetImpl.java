@@ -42,14 +42,22 @@ import org.identityconnectors.framework.spi.operations.SearchOp;
 
 /**
  * Uses {@link SearchOp} to find the object that is referenced by the
- * {@link Uid} provided.
+ * {@link Uid} provided. The objects are read from and cached in the optional
+ * {@link ConnectorObjectCache} of the facade.
  */
 public class GetImpl implements GetApiOp {
 
     final SearchApiOp op;
 
+    final ConnectorObjectCache cache;
+
     public GetImpl(SearchApiOp search) {
+        this(search, null);
+    }
+
+    public GetImpl(SearchApiOp search, ConnectorObjectCache cache) {
         this.op = search;
+        this.cache = cache;
     }
 
     public Connector getConnector() {
@@ -67,6 +75,19 @@ public class GetImpl implements GetApiOp {
         if (options == null) {
             options = new OperationOptionsBuilder().build();
         }
+        if (null == cache || !cache.isCacheable(options)) {
+            return search(objectClass, uid, options);
+        }
+        ConnectorObject object = cache.get(objectClass, uid, options);
+        if (null == object) {
+            final long version = cache.getVersion();
+            object = search(objectClass, uid, options);
+            cache.put(version, objectClass, uid, options, object);
+        }
+        return object;
+    }
+
+    private ConnectorObject search(ObjectClass objectClass, Uid uid, OperationOptions options) {
         final List<ConnectorObject> list = new ArrayList<ConnectorObject>();
         Filter filter = FilterBuilder.equalTo(uid);
         op.search(objectClass, filter, new ResultsHandler() {
@@ -73,6 +73,16 @@ public final class ObjectNormalizerFacade {
         this.normalizer = normalizer;
     }
 
+    /**
+     * Returns true if the attributes are normalized by the connector.
+     *
+     * @return false if the normalizer methods return the original values.
+     * @since 1.5
+     */
+    public boolean hasNormalizer() {
+        return null != normalizer;
+    }
+
     /**
      * Returns the normalized value of the attribute.
      *
@@ -29,6 +29,7 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.impl.api.local.JavaClassProperties;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoImpl;
 import org.identityconnectors.framework.spi.AbstractConfiguration;
@@ -84,7 +85,8 @@ public class OperationalContext implements AbstractConfiguration.ConfigurationCh
                             JavaClassProperties.createBean(apiConfiguration
                                     .getConfigurationProperties(), connectorInfo
                                     .getConnectorConfigurationClass());
-                    if (null != apiConfiguration.getChangeListener()
+                    if ((null != apiConfiguration.getChangeListener() || null != apiConfiguration
+                            .getSchemaCache())
                             && configuration instanceof AbstractConfiguration) {
                         ((AbstractConfiguration) configuration).addChangeCallback(this);
                     }
@@ -121,6 +123,10 @@ public class OperationalContext implements AbstractConfiguration.ConfigurationCh
 
     public void notifyUpdate() {
         try {
+            final SchemaCache schemaCache = apiConfiguration.getSchemaCache();
+            if (null != schemaCache) {
+                schemaCache.invalidate();
+            }
             final ConfigurationPropertyChangeListener listener =
                     apiConfiguration.getChangeListener();
             if (null != listener) {
@@ -22,7 +22,9 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
 import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.operations.SchemaOp;
 
@@ -44,4 +46,29 @@ public class SchemaImpl extends ConnectorAPIOperationRunner implements
     public Schema schema() {
         return ((SchemaOp)getConnector()).schema();
     }
+
+    /**
+     * Serves the schema from the {@link SchemaCache} of the facade, the
+     * connector is only acquired to read the schema when it's not cached.
+     */
+    public static class CachedSchemaApiOp implements SchemaApiOp {
+
+        private final SchemaCache cache;
+        private final SchemaApiOp op;
+
+        public CachedSchemaApiOp(final SchemaCache cache, final SchemaApiOp schema) {
+            this.cache = cache;
+            this.op = schema;
+        }
+
+        public Schema schema() {
+            Schema schema = cache.get();
+            if (null == schema) {
+                final long version = cache.getVersion();
+                schema = op.schema();
+                cache.put(version, schema);
+            }
+            return schema;
+        }
+    }
 }
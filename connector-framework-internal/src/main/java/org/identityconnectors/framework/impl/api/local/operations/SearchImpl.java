@@ -38,7 +38,6 @@ import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
-import org.identityconnectors.framework.common.objects.filter.FilteredResultsHandlerVisitor;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
@@ -83,48 +82,66 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
 
         Filter actualFilter = originalFilter;               // actualFilter is used for chaining filters - it points to the filter where new filters should be chained
 
+        // the framework sorts and pages the results instead of the connector
+        ResultsHandler resultsHandler = handler;
+        OperationOptions connectorOptions = options;
+        SortingPagingResultsHandler sortingPaging = null;
+        if (hdlCfg.isEnableSortingPagingResultsHandler()
+                && SortingPagingResultsHandler.isRequested(options)) {
+            connectorOptions = SortingPagingResultsHandler.toConnectorOptions(options);
+            if (null != options.getAttributesToGet()
+                    && hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
+                // the sort attributes are removed after sorting
+                resultsHandler =
+                        new AttributesToGetSearchResultsHandler(handler, options
+                                .getAttributesToGet());
+            }
+            sortingPaging =
+                    new SortingPagingResultsHandler(resultsHandler, options, hdlCfg
+                            .getSortingSpillThreshold());
+            resultsHandler = sortingPaging;
+        }
+
+        // the pipeline reduces the attributes to get, filters and normalizes
+        // the results in one step
+        ObjectNormalizerFacade normalizer = null;
+        Filter resultsFilter = null;
         if (hdlCfg.isEnableNormalizingResultsHandler()) {
-            final ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
-            // chain a normalizing handler (must come before
-            // filter handler)
-            NormalizingResultsHandler normalizingHandler =
-                    new NormalizingResultsHandler(handler, normalizer);
-            // chain a filter handler..
+            normalizer = getNormalizer(objectClass);
             if (hdlCfg.isEnableFilteredResultsHandler()) {
-                // chain a filter handler..
-                final Filter normalizedFilter = normalizer.normalizeFilter(actualFilter);
-                handler =
-                        new FilteredResultsHandler(normalizingHandler,
-                                FilteredResultsHandlerVisitor.wrapFilter(normalizedFilter, hdlCfg
-                                        .isEnableCaseInsensitiveFilter()));
-                actualFilter = normalizedFilter;
-            } else {
-                handler = normalizingHandler;
+                actualFilter = normalizer.normalizeFilter(actualFilter);
+                resultsFilter = actualFilter;
             }
         } else if (hdlCfg.isEnableFilteredResultsHandler()) {
-            // chain a filter handler..
-            handler =
-                    new FilteredResultsHandler(handler, FilteredResultsHandlerVisitor.wrapFilter(
-                            actualFilter, hdlCfg.isEnableCaseInsensitiveFilter()));
-        }
-        // chain an attributes to get handler..
-        if (hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
-            handler = getAttributesToGetResutlsHandler(handler, options);
+            resultsFilter = actualFilter;
         }
-
-        final ResultsHandler handlerChain = handler;
+        final ResultsHandler handlerChain =
+                new SearchResultsPipeline(resultsHandler, normalizer, resultsFilter, hdlCfg
+                        .isEnableCaseInsensitiveFilter(), hdlCfg
+                        .isEnableAttributesToGetSearchResultsHandler() ? connectorOptions
+                        .getAttributesToGet() : null);
 
         final AtomicReference<SearchResult> result = new AtomicReference<SearchResult>(null);
-        rawSearch(search, objectClass, actualFilter, new SearchResultsHandler() {
+        try {
+            rawSearch(search, objectClass, actualFilter, new SearchResultsHandler() {
 
-            public void handleResult(final SearchResult searchResult) {
-                result.set(searchResult);
-            }
+                public void handleResult(final SearchResult searchResult) {
+                    result.set(searchResult);
+                }
 
-            public boolean handle(ConnectorObject connectorObject) {
-                return handlerChain.handle(connectorObject);
+                public boolean handle(ConnectorObject connectorObject) {
+                    return handlerChain.handle(connectorObject);
+                }
+            }, connectorOptions, hdlCfg);
+            if (null != sortingPaging) {
+                // the connector returned all results, return the page
+                result.set(sortingPaging.complete());
             }
-        }, options);
+        } finally {
+            if (null != sortingPaging) {
+                sortingPaging.dispose();
+            }
+        }
         return result.get();
     }
 
@@ -145,6 +162,31 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
      */
     public static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
             SearchResultsHandler handler, OperationOptions options) {
+        rawSearch(search, objectClass, filter, handler, options, null);
+    }
+
+    /**
+     * Raw, SPI-level search.
+     *
+     * @param search
+     *            The underlying implementation of search (generally the
+     *            connector itself)
+     * @param objectClass
+     *            The object class
+     * @param filter
+     *            The filter
+     * @param handler
+     *            The handler
+     * @param options
+     *            The options
+     * @param config
+     *            Configures the duplicate filter of the multi-query searches,
+     *            may be null.
+     * @since 1.5
+     */
+    public static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
+            SearchResultsHandler handler, OperationOptions options,
+            ResultsHandlerConfiguration config) {
         FilterTranslator<?> translator = search.createFilterTranslator(objectClass, options);
         List<?> queries = translator.translate(filter);
 
@@ -153,35 +195,30 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
         } else {
             // eliminate dups if more than one
             boolean eliminateDups = queries.size() > 1;
+            DuplicateFilteringResultsHandler dupsHandler = null;
             if (eliminateDups) {
-                handler = new DuplicateFilteringResultsHandler(handler);
+                dupsHandler = new DuplicateFilteringResultsHandler(handler, config);
+                handler = dupsHandler;
             }
-            for (Object query : queries) {
-                @SuppressWarnings("unchecked")
-                SearchOp<Object> hack = (SearchOp<Object>) search;
-                hack.executeQuery(objectClass, query, handler, options);
-                // don't run any more queries if the consumer
-                // has stopped
-                if (handler instanceof DuplicateFilteringResultsHandler) {
-                    DuplicateFilteringResultsHandler h = (DuplicateFilteringResultsHandler) handler;
-                    if (!h.isStillHandling()) {
+            try {
+                for (Object query : queries) {
+                    @SuppressWarnings("unchecked")
+                    SearchOp<Object> hack = (SearchOp<Object>) search;
+                    hack.executeQuery(objectClass, query, handler, options);
+                    // don't run any more queries if the consumer
+                    // has stopped
+                    if (null != dupsHandler && !dupsHandler.isStillHandling()) {
                         break;
                     }
                 }
+            } finally {
+                if (null != dupsHandler) {
+                    dupsHandler.dispose();
+                }
             }
         }
     }
 
-    private ResultsHandler getAttributesToGetResutlsHandler(ResultsHandler handler,
-            OperationOptions options) {
-        ResultsHandler ret = handler;
-        String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0) {
-            ret = new AttributesToGetSearchResultsHandler(handler, attrsToGet);
-        }
-        return ret;
-    }
-
     /**
      * Simple results handler that can reduce attributes to only the set of
      * attribute to get.
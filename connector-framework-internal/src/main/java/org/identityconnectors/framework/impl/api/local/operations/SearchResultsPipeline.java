@@ -0,0 +1,194 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilteredResultsHandlerVisitor;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.PresenceFilter;
+
+/**
+ * A ResultsHandler which does the work of the
+ * {@link SearchImpl.AttributesToGetSearchResultsHandler},
+ * {@link FilteredResultsHandler} and {@link NormalizingResultsHandler} chain
+ * in one step.
+ * <p/>
+ * The chain copies every object once for each handler. The pipeline evaluates
+ * the filter first and builds at most one new object for the accepted ones:
+ * <ul>
+ * <li>The filter is evaluated against the original object when it reads only
+ * the attributes to get, otherwise against the projected object like in the
+ * chain.</li>
+ * <li>Only the attributes to get are normalized.</li>
+ * <li>The object is passed on as it is when there is nothing to project and
+ * the connector has no normalizer.</li>
+ * </ul>
+ *
+ * @since 1.5
+ */
+final class SearchResultsPipeline implements ResultsHandler {
+
+    private final ResultsHandler handler;
+
+    /**
+     * The normalizer or null if the attributes are not normalized.
+     */
+    private final ObjectNormalizerFacade normalizer;
+
+    /**
+     * The wrapped filter or null if every object is accepted.
+     */
+    private final Filter filter;
+
+    /**
+     * The attributes to get or null to keep all attributes.
+     */
+    private final String[] attributesToGet;
+
+    /**
+     * True if the filter has to be evaluated against the projected object.
+     */
+    private final boolean filterProjection;
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param handler
+     *            the handler of the results.
+     * @param normalizer
+     *            normalizes the attributes, may be null.
+     * @param filter
+     *            the (normalized) filter to apply, may be null.
+     * @param caseIgnore
+     *            true to evaluate the filter case-insensitively.
+     * @param attributesToGet
+     *            the attributes to keep, null or empty to keep all of them.
+     */
+    SearchResultsPipeline(final ResultsHandler handler, final ObjectNormalizerFacade normalizer,
+            final Filter filter, final boolean caseIgnore, final String[] attributesToGet) {
+        Assertions.nullCheck(handler, "handler");
+        this.handler = handler;
+        this.normalizer = null != normalizer && normalizer.hasNormalizer() ? normalizer : null;
+        this.filter = FilteredResultsHandlerVisitor.wrapFilter(filter, caseIgnore);
+        this.attributesToGet =
+                null != attributesToGet && attributesToGet.length > 0 ? attributesToGet : null;
+        if (null == this.filter || null == this.attributesToGet) {
+            filterProjection = false;
+        } else {
+            Set<String> projected = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+            projected.add(Uid.NAME);
+            projected.add(Name.NAME);
+            for (String name : this.attributesToGet) {
+                projected.add(name);
+            }
+            Set<String> referenced = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+            filterProjection =
+                    !collectAttributeNames(filter, referenced)
+                            || !projected.containsAll(referenced);
+        }
+    }
+
+    public boolean handle(final ConnectorObject object) {
+        ConnectorObject projection = null;
+        if (null != filter) {
+            if (filterProjection) {
+                projection = new ConnectorObject(object.getObjectClass(), project(object));
+                if (!filter.accept(projection)) {
+                    return true;
+                }
+            } else if (!filter.accept(object)) {
+                return true;
+            }
+        }
+        if (null != normalizer) {
+            Set<Attribute> attributes =
+                    null != attributesToGet ? project(object) : object.getAttributes();
+            Set<Attribute> normalized = new HashSet<Attribute>(attributes.size() * 2);
+            for (Attribute attribute : attributes) {
+                normalized.add(normalizer.normalizeAttribute(attribute));
+            }
+            return handler.handle(new ConnectorObject(object.getObjectClass(), normalized));
+        } else if (null != projection) {
+            return handler.handle(projection);
+        } else if (null != attributesToGet) {
+            return handler.handle(new ConnectorObject(object.getObjectClass(), project(object)));
+        }
+        return handler.handle(object);
+    }
+
+    /**
+     * Returns the {@link Uid}, the {@link Name} and the attributes to get of
+     * the object.
+     */
+    private Set<Attribute> project(final ConnectorObject object) {
+        Set<Attribute> attributes = new HashSet<Attribute>((attributesToGet.length + 2) * 2);
+        attributes.add(object.getUid());
+        attributes.add(object.getName());
+        for (String name : attributesToGet) {
+            Attribute attribute = object.getAttributeByName(name);
+            if (null != attribute) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Collects the names of the attributes the filter reads.
+     *
+     * @return false if the filter contains a filter which may read any
+     *         attribute.
+     */
+    private static boolean collectAttributeNames(final Filter filter, final Set<String> names) {
+        if (filter instanceof AttributeFilter) {
+            names.add(((AttributeFilter) filter).getName());
+        } else if (filter instanceof PresenceFilter) {
+            names.add(((PresenceFilter) filter).getName());
+        } else if (filter instanceof NotFilter) {
+            return collectAttributeNames(((NotFilter) filter).getFilter(), names);
+        } else if (filter instanceof CompositeFilter) {
+            for (Filter subFilter : ((CompositeFilter) filter).getFilters()) {
+                if (!collectAttributeNames(subFilter, names)) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
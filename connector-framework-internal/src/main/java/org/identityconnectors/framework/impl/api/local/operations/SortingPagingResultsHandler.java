@@ -0,0 +1,576 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
+import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
+import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+
+/**
+ * Sorts and pages the search results of a connector which does not support
+ * the sort and paging options.
+ * <p/>
+ * The handler collects the results and returns the requested page to the
+ * handler when the search is complete:
+ * <ul>
+ * <li>A page of {@code offset + pageSize} results is selected with a bounded
+ * heap, only the page is kept in memory.</li>
+ * <li>Without a page size, or if the page is larger than the spill threshold,
+ * the results are sorted in runs of the spill threshold size, the runs are
+ * written to temporary files and merged. At most {@value #MAX_FAN_IN} runs are
+ * open at once, more runs are merged into larger runs first.</li>
+ * </ul>
+ * The results are ordered by the sort keys and then by the {@code Uid}. The
+ * paged results cookie holds the sort values of the last returned result, so
+ * no state is kept between the requests and the next page starts after the
+ * last result even if the results changed.
+ *
+ * @since 1.5
+ */
+final class SortingPagingResultsHandler implements ResultsHandler {
+
+    private static final Log LOG = Log.getLog(SortingPagingResultsHandler.class);
+
+    /**
+     * The maximum number of runs merged at once.
+     */
+    static final int MAX_FAN_IN = 64;
+
+    private final ResultsHandler handler;
+    private final SortKey[] sortKeys;
+    private final Integer pageSize;
+    private final int offset;
+    private final Object[] cookie;
+    private final boolean countTotal;
+    private final int spillThreshold;
+    private final int maxFanIn;
+
+    /**
+     * The number of results selected by the heap, zero if the results are
+     * sorted.
+     */
+    private final int topK;
+
+    private final Comparator<Object[]> keyComparator;
+    private final Comparator<Entry> entryComparator;
+
+    private final PriorityQueue<Entry> heap;
+    private final List<Entry> buffer;
+    private final List<File> runs = new ArrayList<File>();
+    private final List<Integer> runSizes = new ArrayList<Integer>();
+
+    private int total = 0;
+    private int afterCookie = 0;
+
+    /**
+     * Creates a new handler.
+     *
+     * @param handler
+     *            the handler of the requested page.
+     * @param options
+     *            the sort and paging options of the search.
+     * @param spillThreshold
+     *            number of results kept in memory, zero keeps all of them in
+     *            memory.
+     */
+    SortingPagingResultsHandler(final ResultsHandler handler, final OperationOptions options,
+            final int spillThreshold) {
+        this(handler, options, spillThreshold, MAX_FAN_IN);
+    }
+
+    SortingPagingResultsHandler(final ResultsHandler handler, final OperationOptions options,
+            final int spillThreshold, final int maxFanIn) {
+        this.handler = handler;
+        this.maxFanIn = Math.max(2, maxFanIn);
+        this.sortKeys = null != options.getSortKeys() ? options.getSortKeys() : new SortKey[0];
+        this.pageSize = options.getPageSize();
+        this.offset =
+                null != options.getPagedResultsOffset() ? Math.max(0, options
+                        .getPagedResultsOffset()) : 0;
+        this.cookie =
+                null != pageSize && null != options.getPagedResultsCookie() ? decodeCookie(options
+                        .getPagedResultsCookie()) : null;
+        this.countTotal =
+                SearchResult.CountPolicy.NONE != options.getTotalPagedResultsPolicy();
+        this.spillThreshold = spillThreshold;
+        this.keyComparator = new KeyComparator(sortKeys);
+        this.entryComparator = new Comparator<Entry>() {
+            public int compare(final Entry o1, final Entry o2) {
+                return keyComparator.compare(o1.key, o2.key);
+            }
+        };
+        final long k = null != pageSize ? (long) offset + Math.max(0, pageSize) : Long.MAX_VALUE;
+        if (k < Integer.MAX_VALUE && (spillThreshold == 0 || k <= spillThreshold)) {
+            topK = (int) k;
+            heap =
+                    new PriorityQueue<Entry>(Math.max(1, topK), Collections
+                            .reverseOrder(entryComparator));
+            buffer = null;
+        } else {
+            topK = 0;
+            heap = null;
+            buffer = new ArrayList<Entry>();
+        }
+    }
+
+    /**
+     * Returns true if the options request sorting or paging.
+     */
+    static boolean isRequested(final OperationOptions options) {
+        return null != options.getPageSize()
+                || (null != options.getSortKeys() && options.getSortKeys().length > 0);
+    }
+
+    /**
+     * Returns the options of the connector without the sort and paging
+     * options, the connector returns all results in its own order. The
+     * attributes to get include the sort attributes.
+     */
+    static OperationOptions toConnectorOptions(final OperationOptions options) {
+        final OperationOptionsBuilder builder = new OperationOptionsBuilder(options);
+        if (null != options.getAttributesToGet()) {
+            builder.setAttributesToGet(addSortAttributes(options.getAttributesToGet(), options
+                    .getSortKeys()));
+        }
+        builder.getOptions().remove(OperationOptions.OP_SORT_KEYS);
+        builder.getOptions().remove(OperationOptions.OP_PAGE_SIZE);
+        builder.getOptions().remove(OperationOptions.OP_PAGED_RESULTS_OFFSET);
+        builder.getOptions().remove(OperationOptions.OP_PAGED_RESULTS_COOKIE);
+        builder.getOptions().remove(OperationOptions.OP_TOTAL_PAGED_RESULTS_POLICY);
+        return builder.build();
+    }
+
+    /**
+     * Returns the attributes to get and the attributes the results are sorted
+     * by.
+     */
+    static String[] addSortAttributes(final String[] attributesToGet, final SortKey[] keys) {
+        final Set<String> names = CollectionUtil.newCaseInsensitiveSet();
+        Collections.addAll(names, attributesToGet);
+        final List<String> result = new ArrayList<String>(Arrays.asList(attributesToGet));
+        if (null != keys) {
+            for (SortKey key : keys) {
+                if (names.add(key.getField())) {
+                    result.add(key.getField());
+                }
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    public boolean handle(final ConnectorObject object) {
+        total++;
+        final Entry entry = new Entry(keyOf(object), object);
+        if (null != cookie && keyComparator.compare(entry.key, cookie) <= 0) {
+            // returned in a previous page
+            return true;
+        }
+        afterCookie++;
+        if (null != heap) {
+            if (topK == 0) {
+                return true;
+            }
+            if (heap.size() < topK) {
+                heap.add(entry);
+            } else if (entryComparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        } else {
+            buffer.add(entry);
+            if (spillThreshold > 0 && buffer.size() >= spillThreshold) {
+                spill();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the requested page to the handler.
+     *
+     * @return the result of the search with the cookie of the next page.
+     */
+    SearchResult complete() {
+        final Source source;
+        if (null != heap) {
+            final List<Entry> page = new ArrayList<Entry>(heap);
+            heap.clear();
+            Collections.sort(page, entryComparator);
+            source = new ListSource(page);
+        } else {
+            Collections.sort(buffer, entryComparator);
+            if (runs.isEmpty()) {
+                source = new ListSource(buffer);
+            } else {
+                // the runs and the buffer are open at once
+                while (runs.size() >= maxFanIn) {
+                    mergeRuns();
+                }
+                source = new MergeSource(runs, new ListSource(buffer));
+            }
+        }
+        // the results read from the source, the next page starts after them
+        int consumed = 0;
+        int returned = 0;
+        Entry last = null;
+        try {
+            Entry entry;
+            while ((null == pageSize || returned < pageSize) && null != (entry = source.next())) {
+                if (consumed++ < offset) {
+                    continue;
+                }
+                returned++;
+                last = entry;
+                if (!handler.handle(entry.object)) {
+                    // the rest of the page is returned by the next page
+                    break;
+                }
+            }
+        } finally {
+            source.close();
+        }
+        if (null == pageSize) {
+            return new SearchResult();
+        }
+        final int remaining = Math.max(0, afterCookie - consumed);
+        final String nextCookie = remaining > 0 && null != last ? encodeCookie(last.key) : null;
+        if (countTotal) {
+            return new SearchResult(nextCookie, SearchResult.CountPolicy.EXACT, total, remaining);
+        }
+        return new SearchResult(nextCookie, remaining);
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    void dispose() {
+        for (File run : runs) {
+            delete(run);
+        }
+        runs.clear();
+        runSizes.clear();
+    }
+
+    private static void delete(final File file) {
+        if (!file.delete()) {
+            LOG.ok("Failed to delete {0}", file);
+        }
+    }
+
+    private Object[] keyOf(final ConnectorObject object) {
+        final Object[] key = new Object[sortKeys.length + 1];
+        for (int i = 0; i < sortKeys.length; i++) {
+            key[i] = sortValue(object.getAttributeByName(sortKeys[i].getField()));
+        }
+        key[sortKeys.length] = object.getUid().getUidValue();
+        return key;
+    }
+
+    /**
+     * Returns the least value of the attribute or null if it has no value.
+     */
+    private static Object sortValue(final Attribute attribute) {
+        Object least = null;
+        if (null != attribute && null != attribute.getValue()) {
+            for (Object value : attribute.getValue()) {
+                if (null != value && (null == least || compareValues(value, least) < 0)) {
+                    least = value;
+                }
+            }
+        }
+        return least;
+    }
+
+    private static int compareValues(final Object v1, final Object v2) {
+        if (v1 instanceof Comparable && v1.getClass().equals(v2.getClass())) {
+            return CollectionUtil.forceCompare(v1, v2);
+        }
+        return String.valueOf(v1).compareTo(String.valueOf(v2));
+    }
+
+    private void spill() {
+        Collections.sort(buffer, entryComparator);
+        writeRun(new ListSource(buffer), buffer.size());
+        if (runs.size() == 1) {
+            LOG.ok("Sorting the search results in temporary files of {0} results", buffer.size());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Merges the first {@code maxFanIn} runs into a new run.
+     */
+    private void mergeRuns() {
+        final List<File> files = new ArrayList<File>(runs.subList(0, maxFanIn));
+        int size = 0;
+        for (Integer runSize : runSizes.subList(0, maxFanIn)) {
+            size += runSize;
+        }
+        runs.subList(0, maxFanIn).clear();
+        runSizes.subList(0, maxFanIn).clear();
+        try {
+            final Source source =
+                    new MergeSource(files, new ListSource(Collections.<Entry> emptyList()));
+            try {
+                writeRun(source, size);
+            } finally {
+                source.close();
+            }
+        } finally {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Writes the sorted entries to a new temporary file, the file is deleted
+     * by {@link #dispose()}.
+     */
+    private void writeRun(final Source source, final int size) {
+        BinaryObjectSerializer serializer = null;
+        try {
+            final File file = File.createTempFile("sort", ".tmp");
+            runs.add(file);
+            runSizes.add(size);
+            serializer =
+                    ObjectSerializerFactory.getInstance().newBinarySerializer(
+                            new BufferedOutputStream(new FileOutputStream(file)));
+            serializer.writeObject(size);
+            Entry entry;
+            while (null != (entry = source.next())) {
+                serializer.writeObject(entry.object);
+            }
+        } catch (IOException e) {
+            throw new ConnectorIOException(e);
+        } finally {
+            if (null != serializer) {
+                serializer.close();
+            }
+        }
+    }
+
+    private String encodeCookie(final Object[] key) {
+        final List<Object> values = new ArrayList<Object>(key.length);
+        Collections.addAll(values, key);
+        return SerializerUtil.serializeBase64Object(values);
+    }
+
+    private Object[] decodeCookie(final String encoded) {
+        final Object values;
+        try {
+            values = SerializerUtil.deserializeBase64Object(encoded);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid paged results cookie", e);
+        }
+        if (!(values instanceof List) || ((List<?>) values).size() != sortKeys.length + 1) {
+            throw new IllegalArgumentException(
+                    "The paged results cookie does not match the sort keys");
+        }
+        return ((List<?>) values).toArray();
+    }
+
+    private static final class Entry {
+
+        private final Object[] key;
+        private final ConnectorObject object;
+
+        Entry(final Object[] key, final ConnectorObject object) {
+            this.key = key;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Orders the keys by the sort keys, the missing values last, and then by
+     * the {@code Uid}.
+     */
+    private static final class KeyComparator implements Comparator<Object[]> {
+
+        private final SortKey[] sortKeys;
+
+        KeyComparator(final SortKey[] sortKeys) {
+            this.sortKeys = sortKeys;
+        }
+
+        public int compare(final Object[] k1, final Object[] k2) {
+            for (int i = 0; i < sortKeys.length; i++) {
+                final Object v1 = k1[i];
+                final Object v2 = k2[i];
+                if (null == v1 || null == v2) {
+                    if (v1 != v2) {
+                        return null == v1 ? 1 : -1;
+                    }
+                    continue;
+                }
+                final int result = compareValues(v1, v2);
+                if (result != 0) {
+                    return sortKeys[i].isAscendingOrder() ? result : -result;
+                }
+            }
+            return compareValues(k1[sortKeys.length], k2[sortKeys.length]);
+        }
+    }
+
+    private interface Source {
+
+        /**
+         * Returns the next entry or null if there are no more entries.
+         */
+        Entry next();
+
+        void close();
+    }
+
+    private static final class ListSource implements Source {
+
+        private final List<Entry> entries;
+        private int next = 0;
+
+        ListSource(final List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        public Entry next() {
+            return next < entries.size() ? entries.get(next++) : null;
+        }
+
+        public void close() {
+        }
+    }
+
+    private final class RunSource implements Source {
+
+        private final BinaryObjectDeserializer deserializer;
+        private int remaining;
+
+        RunSource(final File file) throws IOException {
+            deserializer =
+                    ObjectSerializerFactory.getInstance().newBinaryDeserializer(
+                            new BufferedInputStream(new FileInputStream(file)));
+            remaining = (Integer) deserializer.readObject();
+        }
+
+        public Entry next() {
+            if (remaining <= 0) {
+                return null;
+            }
+            remaining--;
+            final ConnectorObject object = (ConnectorObject) deserializer.readObject();
+            return new Entry(keyOf(object), object);
+        }
+
+        public void close() {
+            deserializer.close();
+        }
+    }
+
+    /**
+     * Merges the sorted sources.
+     */
+    private final class MergeSource implements Source {
+
+        private final List<Source> sources = new ArrayList<Source>();
+        private final PriorityQueue<Head> heads;
+
+        MergeSource(final List<File> files, final Source memory) {
+            heads = new PriorityQueue<Head>(files.size() + 1, new Comparator<Head>() {
+                public int compare(final Head o1, final Head o2) {
+                    return entryComparator.compare(o1.entry, o2.entry);
+                }
+            });
+            try {
+                for (File file : files) {
+                    sources.add(new RunSource(file));
+                }
+            } catch (IOException e) {
+                close();
+                throw new ConnectorIOException(e);
+            }
+            sources.add(memory);
+            for (Source source : sources) {
+                final Entry entry = source.next();
+                if (null != entry) {
+                    heads.add(new Head(source, entry));
+                }
+            }
+        }
+
+        public Entry next() {
+            final Head head = heads.poll();
+            if (null == head) {
+                return null;
+            }
+            final Entry entry = head.entry;
+            head.entry = head.source.next();
+            if (null != head.entry) {
+                heads.add(head);
+            }
+            return entry;
+        }
+
+        public void close() {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private static final class Head {
+
+        private final Source source;
+        private Entry entry;
+
+        Head(final Source source, final Entry entry) {
+            this.source = source;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+/**
+ * A set of the 128 bit fingerprints of {@code Uid} values.
+ * <p/>
+ * The fingerprints are kept in an open addressing hash table of two longs per
+ * entry, so the set takes 16 bytes per value at most twice over instead of
+ * the {@code String} and the {@code HashMap} entry. When the table grows after
+ * the number of values reached the spill threshold it's moved to a
+ * memory-mapped temporary file and the heap usage doesn't grow with the
+ * number of values any more.
+ *
+ * @since 1.5
+ */
+final class UidFingerprintSet {
+
+    private static final Log LOG = Log.getLog(UidFingerprintSet.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The mapped table must fit in one mapped region.
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final int spillThreshold;
+
+    /**
+     * Two longs per entry, both zero in the empty entries.
+     */
+    private LongBuffer table;
+    private int capacity;
+    private int size = 0;
+
+    private File spillFile = null;
+    private RandomAccessFile spillStore = null;
+
+    /**
+     * Creates a new set.
+     *
+     * @param spillThreshold
+     *            number of values kept on the heap, zero keeps all of them on
+     *            the heap.
+     */
+    UidFingerprintSet(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        this.capacity = INITIAL_CAPACITY;
+        this.table = LongBuffer.allocate(capacity * 2);
+    }
+
+    /**
+     * Adds the fingerprint of the value to the set.
+     *
+     * @return true if the set did not contain the fingerprint.
+     */
+    boolean add(final String value) {
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x9e3779b97f4a7c15L ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h1 = (h1 ^ c) * 0x100000001b3L;
+            h2 = (h2 + c) * 0xbf58476d1ce4e5b9L;
+        }
+        h1 = mix(h1);
+        h2 = mix(h2 ^ h1);
+        if (h1 == 0L && h2 == 0L) {
+            // reserved for the empty entries
+            h2 = 1L;
+        }
+        if (insert(table, capacity, h1, h2)) {
+            if (++size > capacity >> 1) {
+                resize();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isSpilled() {
+        return null != spillStore;
+    }
+
+    File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Releases the memory-mapped file.
+     */
+    void close() {
+        table = null;
+        closeSpillStore(spillStore, spillFile);
+        spillStore = null;
+        spillFile = null;
+    }
+
+    private static boolean insert(final LongBuffer table, final int capacity, final long h1,
+            final long h2) {
+        int mask = capacity - 1;
+        int index = (int) (h1 ^ (h1 >>> 32)) & mask;
+        while (true) {
+            long e1 = table.get(index << 1);
+            long e2 = table.get((index << 1) + 1);
+            if (e1 == 0L && e2 == 0L) {
+                table.put(index << 1, h1);
+                table.put((index << 1) + 1, h2);
+                return true;
+            } else if (e1 == h1 && e2 == h2) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new ConnectorException("Too many results to filter the duplicates");
+        }
+        final int newCapacity = capacity << 1;
+        final LongBuffer newTable;
+        File newFile = null;
+        RandomAccessFile newStore = null;
+        if (spillThreshold > 0 && size >= spillThreshold) {
+            try {
+                // deleted on the next resize or on close, not on exit: the
+                // exit hook would keep every name until the JVM stops
+                newFile = File.createTempFile("uids", ".tmp");
+                newStore = new RandomAccessFile(newFile, "rw");
+                newTable =
+                        newStore.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                newCapacity * 16L).asLongBuffer();
+            } catch (IOException e) {
+                closeSpillStore(newStore, newFile);
+                throw new ConnectorIOException(e);
+            }
+        } else {
+            newTable = LongBuffer.allocate(newCapacity * 2);
+        }
+        for (int i = 0; i < capacity; i++) {
+            long e1 = table.get(i << 1);
+            long e2 = table.get((i << 1) + 1);
+            if (e1 != 0L || e2 != 0L) {
+                insert(newTable, newCapacity, e1, e2);
+            }
+        }
+        if (null != newStore) {
+            if (null == spillStore) {
+                LOG.ok("Duplicate filter moved {0} fingerprints to {1}", size, newFile);
+            }
+            closeSpillStore(spillStore, spillFile);
+            spillStore = newStore;
+            spillFile = newFile;
+        }
+        table = newTable;
+        capacity = newCapacity;
+    }
+
+    private static void closeSpillStore(final RandomAccessFile store, final File file) {
+        if (null != store) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to close {0}", file);
+            }
+        }
+        if (null != file && !file.delete()) {
+            // the mapped region may still be in use until it's collected
+            LOG.ok("Failed to delete {0}", file);
+        }
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -82,11 +82,18 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
         }
 
         final ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
+        final Uid originalUid = uid;
         uid = (Uid) normalizer.normalizeAttribute(uid);
         replaceAttributes = normalizer.normalizeAttributes(replaceAttributes);
         UpdateOp op = (UpdateOp) getConnector();
-        Uid ret = op.update(objectClass, uid, replaceAttributes, options);
-        return (Uid) normalizer.normalizeAttribute(ret);
+        Uid ret = null;
+        try {
+            ret = op.update(objectClass, uid, replaceAttributes, options);
+            ret = (Uid) normalizer.normalizeAttribute(ret);
+        } finally {
+            invalidateObject(objectClass, originalUid, uid, ret);
+        }
+        return ret;
     }
 
     public Uid addAttributeValues(ObjectClass objclass, Uid uid, Set<Attribute> valuesToAdd,
@@ -99,19 +106,25 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
         }
 
         final ObjectNormalizerFacade normalizer = getNormalizer(objclass);
+        final Uid originalUid = uid;
         uid = (Uid) normalizer.normalizeAttribute(uid);
         valuesToAdd = normalizer.normalizeAttributes(valuesToAdd);
         UpdateOp op = (UpdateOp) getConnector();
-        Uid ret;
-        if (op instanceof UpdateAttributeValuesOp) {
-            UpdateAttributeValuesOp valueOp = (UpdateAttributeValuesOp) op;
-            ret = valueOp.addAttributeValues(objclass, uid, valuesToAdd, options);
-        } else {
-            Set<Attribute> replaceAttributes =
-                    fetchAndMerge(objclass, uid, valuesToAdd, true, options);
-            ret = op.update(objclass, uid, replaceAttributes, options);
+        Uid ret = null;
+        try {
+            if (op instanceof UpdateAttributeValuesOp) {
+                UpdateAttributeValuesOp valueOp = (UpdateAttributeValuesOp) op;
+                ret = valueOp.addAttributeValues(objclass, uid, valuesToAdd, options);
+            } else {
+                Set<Attribute> replaceAttributes =
+                        fetchAndMerge(objclass, uid, valuesToAdd, true, options);
+                ret = op.update(objclass, uid, replaceAttributes, options);
+            }
+            ret = (Uid) normalizer.normalizeAttribute(ret);
+        } finally {
+            invalidateObject(objclass, originalUid, uid, ret);
         }
-        return (Uid) normalizer.normalizeAttribute(ret);
+        return ret;
     }
 
     public Uid removeAttributeValues(ObjectClass objclass, Uid uid, Set<Attribute> valuesToRemove,
@@ -124,19 +137,25 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
         }
 
         final ObjectNormalizerFacade normalizer = getNormalizer(objclass);
+        final Uid originalUid = uid;
         uid = (Uid) normalizer.normalizeAttribute(uid);
         valuesToRemove = normalizer.normalizeAttributes(valuesToRemove);
         UpdateOp op = (UpdateOp) getConnector();
-        Uid ret;
-        if (op instanceof UpdateAttributeValuesOp) {
-            UpdateAttributeValuesOp valueOp = (UpdateAttributeValuesOp) op;
-            ret = valueOp.removeAttributeValues(objclass, uid, valuesToRemove, options);
-        } else {
-            Set<Attribute> replaceAttributes =
-                    fetchAndMerge(objclass, uid, valuesToRemove, false, options);
-            ret = op.update(objclass, uid, replaceAttributes, options);
+        Uid ret = null;
+        try {
+            if (op instanceof UpdateAttributeValuesOp) {
+                UpdateAttributeValuesOp valueOp = (UpdateAttributeValuesOp) op;
+                ret = valueOp.removeAttributeValues(objclass, uid, valuesToRemove, options);
+            } else {
+                Set<Attribute> replaceAttributes =
+                        fetchAndMerge(objclass, uid, valuesToRemove, false, options);
+                ret = op.update(objclass, uid, replaceAttributes, options);
+            }
+            ret = (Uid) normalizer.normalizeAttribute(ret);
+        } finally {
+            invalidateObject(objclass, originalUid, uid, ret);
         }
-        return (Uid) normalizer.normalizeAttribute(ret);
+        return ret;
     }
 
     private Set<Attribute> fetchAndMerge(ObjectClass objclass, Uid uid,
@@ -219,8 +238,10 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
      * Get the {@link ConnectorObject} to modify.
      */
     private ConnectorObject getConnectorObject(ObjectClass oclass, Uid uid, OperationOptions options) {
-        // attempt to get the connector object..
-        GetApiOp get = new GetImpl(new SearchImpl(getOperationalContext(), getConnector()));
+        // attempt to get the connector object, it may be cached by the facade..
+        GetApiOp get =
+                new GetImpl(new SearchImpl(getOperationalContext(), getConnector()),
+                        getOperationalContext().getObjectCache());
         return get.getObject(oclass, uid, options);
     }
 
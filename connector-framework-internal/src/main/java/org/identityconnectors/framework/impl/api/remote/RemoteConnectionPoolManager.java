@@ -0,0 +1,186 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolMaintainer;
+import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
+
+/**
+ * Keeps a pool of persistent {@link RemoteFrameworkConnection}s for each
+ * {@link RemoteFrameworkConnectionInfo}.
+ * <p/>
+ * The legacy connector server processes any number of requests on a single
+ * socket so the operations can reuse the connections instead of paying the
+ * connect and SSL handshake cost on every call. The idle connections are
+ * evicted in the background by the {@link ObjectPoolMaintainer}.
+ *
+ * @since 1.5
+ */
+public class RemoteConnectionPoolManager {
+
+    private static final Log LOG = Log.getLog(RemoteConnectionPoolManager.class);
+
+    private static class RemoteConnectionPoolHandler implements
+            ObjectPoolHandler<RemoteFrameworkConnection> {
+
+        private final RemoteFrameworkConnectionInfo connectionInfo;
+
+        /**
+         * Idle time in milliseconds after the connection is verified with an
+         * {@link EchoMessage} before it's borrowed.
+         */
+        private final long validationInterval;
+
+        public RemoteConnectionPoolHandler(final RemoteFrameworkConnectionInfo connectionInfo) {
+            this.connectionInfo = connectionInfo;
+            this.validationInterval =
+                    TimeUnit.SECONDS.toMillis(connectionInfo.getHeartbeatInterval() > 0 ? connectionInfo
+                            .getHeartbeatInterval() : 60L);
+        }
+
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            ObjectPoolConfiguration configuration =
+                    (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
+            configuration.validate();
+            return configuration;
+        }
+
+        public RemoteFrameworkConnection makeObject() {
+            return new RemoteFrameworkConnection(connectionInfo);
+        }
+
+        public void testObject(RemoteFrameworkConnection object) {
+            if (object.isClosed()) {
+                throw new ConnectorIOException("Remote connection is closed to " + connectionInfo);
+            }
+            if (object.getIdleTime() > validationInterval) {
+                try {
+                    object.writeObject(CurrentLocale.get());
+                    object.writeObject(connectionInfo.getKey());
+                    object.writeObject(new EchoMessage(null, null));
+                    object.flush();
+                    Object response = object.readObject();
+                    if (!(response instanceof EchoMessage)) {
+                        throw new ConnectorException("Unexpected response: " + response);
+                    }
+                    if (((EchoMessage) response).getObject() instanceof RuntimeException) {
+                        throw (RuntimeException) ((EchoMessage) response).getObject();
+                    }
+                } catch (RuntimeException e) {
+                    object.abort();
+                    throw e;
+                }
+            }
+        }
+
+        public void disposeObject(RemoteFrameworkConnection object) {
+            if (object.isClosed()) {
+                return;
+            }
+            try {
+                object.close();
+            } catch (Exception e) {
+                object.abort();
+            }
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Cache of the various POOLS..
+     */
+    private static final ConcurrentMap<RemoteFrameworkConnectionInfo, ObjectPool<RemoteFrameworkConnection>> POOLS =
+            new ConcurrentHashMap<RemoteFrameworkConnectionInfo, ObjectPool<RemoteFrameworkConnection>>();
+
+    /**
+     * Get the connection pool of the remote framework.
+     */
+    public static ObjectPool<RemoteFrameworkConnection> getPool(
+            final RemoteFrameworkConnectionInfo connectionInfo) {
+        ObjectPool<RemoteFrameworkConnection> pool = POOLS.get(connectionInfo);
+        // create a new pool if it doesn't exist..
+        if (pool == null) {
+            LOG.info("Creating new remote connection pool: {0}", connectionInfo);
+            pool =
+                    ObjectPool.newInstance(new RemoteConnectionPoolHandler(connectionInfo),
+                            connectionInfo.getConnectionPoolConfiguration());
+            ObjectPool<RemoteFrameworkConnection> previousPool =
+                    POOLS.putIfAbsent(connectionInfo, pool);
+            // Use the pool made by other thread
+            if (previousPool != null) {
+                pool.shutdown();
+                pool = previousPool;
+            } else {
+                ObjectPoolMaintainer.register(pool);
+            }
+        }
+        return pool;
+    }
+
+    public static void dispose(final RemoteFrameworkConnectionInfo connectionInfo) {
+        synchronized (POOLS) {
+            ObjectPool<RemoteFrameworkConnection> pool = POOLS.remove(connectionInfo);
+            if (null != pool) {
+                ObjectPoolMaintainer.unregister(pool);
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to close pool: {0}", pool);
+                }
+            }
+        }
+    }
+
+    public static void dispose() {
+        synchronized (POOLS) {
+            // close each pool..
+            for (ObjectPool<RemoteFrameworkConnection> pool : POOLS.values()) {
+                ObjectPoolMaintainer.unregister(pool);
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to close pool: {0}", pool);
+                }
+            }
+            // clear the map of all POOLS..
+            POOLS.clear();
+        }
+    }
+}
@@ -24,13 +24,11 @@
 package org.identityconnectors.framework.impl.api.remote;
 
 import java.lang.reflect.InvocationHandler;
-import java.util.HashMap;
 
 import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.ConnectorEventSubscriptionApiOp;
 import org.identityconnectors.framework.api.operations.SyncEventSubscriptionApiOp;
-import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
@@ -46,7 +44,7 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
      * Builds up the maps of supported operations and calls.
      */
     public RemoteConnectorFacadeImpl(final APIConfigurationImpl configuration) {
-        super(generateRemoteConnectorFacadeKey(configuration), configuration.getConnectorInfo());
+        super(configuration.getRemoteConnectorFacadeKey(), configuration.getConnectorInfo());
         // Restore the original configuration settings
         getAPIConfiguration().setProducerBufferSize(configuration.getProducerBufferSize());
         getAPIConfiguration().setTimeoutMap(configuration.getTimeoutMap());
@@ -56,7 +54,7 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
     public RemoteConnectorFacadeImpl(final RemoteConnectorInfoImpl connectorInfo,
                                      String configuration) {
         super(configuration, connectorInfo);
-        remoteConnectorFacadeKey = generateRemoteConnectorFacadeKey(getAPIConfiguration());
+        remoteConnectorFacadeKey = getAPIConfiguration().getRemoteConnectorFacadeKey();
     }
 
     public RemoteConnectorFacadeImpl(final RemoteConnectorInfoImpl connectorInfo, String config,
@@ -65,13 +63,6 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         getAPIConfiguration().setChangeListener(changeListener);
     }
 
-    private static String generateRemoteConnectorFacadeKey(final APIConfigurationImpl configuration) {
-        APIConfigurationImpl copy = new APIConfigurationImpl(configuration);
-        copy.setProducerBufferSize(0);
-        copy.setTimeoutMap(new HashMap<Class<? extends APIOperation>, Integer>());
-        return SerializerUtil.serializeBase64Object(copy);
-    }
-
     @Override
     protected APIOperation getOperationImplementation(final Class<? extends APIOperation> api) {
         if (api == ConnectorEventSubscriptionApiOp.class || api == SyncEventSubscriptionApiOp.class) {
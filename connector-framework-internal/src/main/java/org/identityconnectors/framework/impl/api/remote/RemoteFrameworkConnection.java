@@ -49,6 +49,7 @@ public class RemoteFrameworkConnection implements Closeable {
     private Socket socket;
     private BinaryObjectSerializer encoder;
     private BinaryObjectDeserializer decoder;
+    private volatile long lastActivityTimestamp = System.currentTimeMillis();
 
     public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info) {
         try {
@@ -77,6 +78,7 @@ public class RemoteFrameworkConnection implements Closeable {
     private void init(RemoteFrameworkConnectionInfo connectionInfo) throws Exception {
         Socket socket = new Socket();
         socket.setSoTimeout(connectionInfo.getTimeout());
+        socket.setKeepAlive(true);
         socket.connect(new InetSocketAddress(connectionInfo.getHost(), connectionInfo.getPort()),
                 connectionInfo.getTimeout());
         try {
@@ -139,18 +141,52 @@ public class RemoteFrameworkConnection implements Closeable {
         }
     }
 
+    /**
+     * Closes the underlying socket without flushing the pending output.
+     * <p/>
+     * Used when the connection is known to be broken or out of sync and
+     * therefore must not be reused.
+     */
+    public void abort() {
+        try {
+            socket.close();
+        } catch (Exception e) {
+            LOG.ok(e, "Failed to abort connection.");
+        }
+    }
+
+    /**
+     * Returns true if the underlying socket was closed or can not be used for
+     * further requests.
+     */
+    public boolean isClosed() {
+        return socket.isClosed() || !socket.isConnected() || socket.isInputShutdown()
+                || socket.isOutputShutdown();
+    }
+
+    /**
+     * Returns the number of milliseconds since the last object was written to
+     * or read from this connection.
+     */
+    public long getIdleTime() {
+        return System.currentTimeMillis() - lastActivityTimestamp;
+    }
+
     public void flush() {
         encoder.flush();
     }
 
     public void writeObject(Object object) {
         encoder.writeObject(object);
+        lastActivityTimestamp = System.currentTimeMillis();
     }
 
     public Object readObject() {
         // flush first in case there is any data in the
         // output buffer
         flush();
-        return decoder.readObject();
+        Object object = decoder.readObject();
+        lastActivityTimestamp = System.currentTimeMillis();
+        return object;
     }
 }
@@ -35,6 +35,7 @@ import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
@@ -75,11 +76,13 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                 new OperationRequest(connectorInfo.getConnectorKey(), connectorFacadeKey,
                         operation, method.getName(), simpleMarshallArgs);
 
-        // create the connection
-        RemoteFrameworkConnection connection = null;
-
+        // borrow a pooled connection
+        ObjectPoolEntry<RemoteFrameworkConnection> entry =
+                RemoteConnectionPoolManager.getPool(connectionInfo).borrowObject();
+        RemoteFrameworkConnection connection = entry.getPooledObject();
+        // the connection can be reused only if the whole response was read
+        boolean completed = false;
         try {
-            connection = new RemoteFrameworkConnection(connectionInfo);
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(connectionInfo.getKey());
             // send the request
@@ -93,14 +96,16 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
 
             // finally return the actual return value
             OperationResponsePart response = (OperationResponsePart) connection.readObject();
+            completed = true;
             if (response.getException() != null) {
                 throw response.getException();
             }
             return response.getResult();
         } finally {
-            if (null != connection) {
-                connection.close();
+            if (!completed) {
+                connection.abort();
             }
+            entry.close();
         }
 
     }
@@ -170,4 +175,4 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
         arguments.addAll(filteredArguments);
         return rv;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -58,6 +58,9 @@ class APIConfigurationHandlers {
                 rv.setMinEvictableIdleTimeMillis(decoder.readLongField(
                         "minEvictableIdleTimeMillis", rv.getMinEvictableIdleTimeMillis()));
                 rv.setMinIdle(decoder.readIntField("minIdle", rv.getMinIdle()));
+                rv.setMinTestIntervalMillis(decoder.readLongField("minTestIntervalMillis", rv
+                        .getMinTestIntervalMillis()));
+                rv.setLockFree(decoder.readBooleanField("lockFree", rv.isLockFree()));
                 return rv;
             }
 
@@ -69,6 +72,8 @@ class APIConfigurationHandlers {
                 encoder.writeLongField("minEvictableIdleTimeMillis", val
                         .getMinEvictableIdleTimeMillis());
                 encoder.writeIntField("minIdle", val.getMinIdle());
+                encoder.writeLongField("minTestIntervalMillis", val.getMinTestIntervalMillis());
+                encoder.writeBooleanField("lockFree", val.isLockFree());
             }
 
         });
@@ -87,6 +92,19 @@ class APIConfigurationHandlers {
                 rv.setEnableAttributesToGetSearchResultsHandler(decoder.readBooleanField(
                         "enableAttributesToGetSearchResultsHandler", rv
                                 .isEnableAttributesToGetSearchResultsHandler()));
+                rv.setEnableCompactDuplicateFilter(decoder.readBooleanField(
+                        "enableCompactDuplicateFilter", rv.isEnableCompactDuplicateFilter()));
+                rv.setDuplicateFilterSpillThreshold(decoder.readIntField(
+                        "duplicateFilterSpillThreshold", rv.getDuplicateFilterSpillThreshold()));
+                rv.setEnableSortingPagingResultsHandler(decoder.readBooleanField(
+                        "enableSortingPagingResultsHandler", rv
+                                .isEnableSortingPagingResultsHandler()));
+                rv.setSortingSpillThreshold(decoder.readIntField("sortingSpillThreshold", rv
+                        .getSortingSpillThreshold()));
+                rv.setObjectCacheTimeToLive(decoder.readIntField("objectCacheTimeToLive", rv
+                        .getObjectCacheTimeToLive()));
+                rv.setObjectCacheMaxSize(decoder.readIntField("objectCacheMaxSize", rv
+                        .getObjectCacheMaxSize()));
                 return rv;
             }
 
@@ -100,6 +118,15 @@ class APIConfigurationHandlers {
                         .isEnableCaseInsensitiveFilter());
                 encoder.writeBooleanField("enableAttributesToGetSearchResultsHandler", val
                         .isEnableAttributesToGetSearchResultsHandler());
+                encoder.writeBooleanField("enableCompactDuplicateFilter", val
+                        .isEnableCompactDuplicateFilter());
+                encoder.writeIntField("duplicateFilterSpillThreshold", val
+                        .getDuplicateFilterSpillThreshold());
+                encoder.writeBooleanField("enableSortingPagingResultsHandler", val
+                        .isEnableSortingPagingResultsHandler());
+                encoder.writeIntField("sortingSpillThreshold", val.getSortingSpillThreshold());
+                encoder.writeIntField("objectCacheTimeToLive", val.getObjectCacheTimeToLive());
+                encoder.writeIntField("objectCacheMaxSize", val.getObjectCacheMaxSize());
             }
         });
 
@@ -23,16 +23,13 @@
 package org.identityconnectors.framework.impl.serializer.binary;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
@@ -41,33 +38,88 @@ import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandl
 import org.identityconnectors.framework.impl.serializer.ObjectSerializerRegistry;
 import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
 
+/**
+ * Reads the objects written by the {@link BinaryObjectEncoder}.
+ * <p/>
+ * The fields of a top-level object are read in a single pass into one buffer
+ * which is reused for the next object. The fields of an object are located by
+ * their offset in the buffer, so the handlers can read them in any order.
+ */
 public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeserializer {
 
+    /**
+     * The fields of an object being read.
+     */
     private static class ReadState {
-        public Map<String, byte[]> objectFields = new HashMap<String, byte[]>();
-        public List<byte[]> anonymousFields = new ArrayList<byte[]>();
-        public DataInputStream currentInput;
+        private int namedCount = 0;
+        private int[] names = new int[8];
+        private int[] namedOffsets = new int[8];
+        private int[] namedLengths = new int[8];
+
+        private int anonymousCount = 0;
+        private int[] anonymousOffsets = new int[8];
+        private int[] anonymousLengths = new int[8];
+
+        /**
+         * Where the search for the next field starts, the handlers usually
+         * read the fields in the order they were written.
+         */
+        private int nextNamed = 0;
+
+        /**
+         * The position after the end of the object.
+         */
+        private int objectEnd;
+
+        public void reset() {
+            namedCount = 0;
+            anonymousCount = 0;
+            nextNamed = 0;
+        }
 
-        public ReadState() {
+        public void addNamed(int name, int offset, int length) {
+            if (namedCount == names.length) {
+                names = grow(names);
+                namedOffsets = grow(namedOffsets);
+                namedLengths = grow(namedLengths);
+            }
+            names[namedCount] = name;
+            namedOffsets[namedCount] = offset;
+            namedLengths[namedCount] = length;
+            namedCount++;
         }
 
-        public boolean startField(String name) {
-            currentInput = null;
-            byte[] content = objectFields.get(name);
-            if (content == null) {
-                return false;
-            } else {
-                currentInput = new DataInputStream(new ByteArrayInputStream(content));
-                return true;
+        public void addAnonymous(int offset, int length) {
+            if (anonymousCount == anonymousOffsets.length) {
+                anonymousOffsets = grow(anonymousOffsets);
+                anonymousLengths = grow(anonymousLengths);
             }
+            anonymousOffsets[anonymousCount] = offset;
+            anonymousLengths[anonymousCount] = length;
+            anonymousCount++;
         }
 
-        public void startAnonymousField(int index) {
-            if (index >= anonymousFields.size()) {
-                throw new ConnectorException("Anonymous content not found");
+        /**
+         * Finds the field with the name.
+         *
+         * @return the index of the field or -1 if the object has no such
+         *         field.
+         */
+        public int findNamed(int name) {
+            for (int i = 0; i < namedCount; i++) {
+                int index = (nextNamed + i) % namedCount;
+                if (names[index] == name) {
+                    nextNamed = index + 1;
+                    return index;
+                }
             }
-            currentInput =
-                    new DataInputStream(new ByteArrayInputStream(anonymousFields.get(index)));
+            return -1;
+        }
+
+        private static int[] grow(int[] array) {
+            int[] rv = new int[array.length * 2];
+            System.arraycopy(array, 0, rv, 0, array.length);
+            return rv;
         }
     }
 
@@ -77,15 +129,45 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
 
         private final Map<Integer, String> constantPool = new HashMap<Integer, String>();
 
-        private final Stack<ReadState> readStateStack = new Stack<ReadState>();
+        /**
+         * Mapping from the field name to its code.
+         */
+        private final Map<String, Integer> constantCodes = new HashMap<String, Integer>();
+
         private final DataInputStream rootInput;
 
+        /**
+         * The fields of the top-level object being read.
+         */
+        private byte[] buffer = new byte[BinaryObjectEncoder.INITIAL_BUFFER_SIZE];
+        private int limit = 0;
+
+        /**
+         * The part of the buffer the next value is read from.
+         */
+        private int position = 0;
+        private int end = 0;
+
+        /**
+         * True while the top-level object is read from the stream.
+         */
+        private boolean readingRoot = false;
+
+        private ReadState[] readStateStack = new ReadState[8];
+        private int depth = 0;
+
         public InternalDecoder(DataInputStream input) {
             rootInput = input;
         }
 
         public Object readObject(ObjectDecoder decoder) {
 
+            final boolean topLevel = depth == 0;
+            if (topLevel) {
+                readingRoot = true;
+                limit = 0;
+            }
+
             if (firstObject) {
                 int magic = readInt();
                 if (magic != BinaryObjectEncoder.OBJECT_MAGIC) {
@@ -99,64 +181,123 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             }
 
             // if it's a top-level object, it's proceeded by a constant pool
-            if (readStateStack.size() == 0) {
+            if (topLevel) {
                 int size = readInt();
                 for (int i = 0; i < size; i++) {
                     String constant = readString(false);
                     int code = readInt();
                     constantPool.put(code, constant);
+                    constantCodes.put(constant, code);
                 }
             }
 
             Class<?> clazz = readClass();
-            ReadState state = new ReadState();
-
-            while (true) {
-                byte type = readByte();
-                if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
-                    break;
-                } else if (type == BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
-                    byte[] bytes = readByteArray();
-                    state.anonymousFields.add(bytes);
-                } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
-                    String fieldName = readString(true);
-                    byte[] bytes = readByteArray();
-                    state.objectFields.put(fieldName, bytes);
-                } else {
-                    throw new ConnectorException("Unknown type: " + type);
+            final int parentEnd = end;
+            final ReadState state = pushState();
+            try {
+                while (true) {
+                    byte type = readByte();
+                    if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
+                        break;
+                    } else if (type == BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
+                        int length = readInt();
+                        state.addAnonymous(readFieldContent(length), length);
+                    } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
+                        int name = readInt();
+                        int length = readInt();
+                        state.addNamed(name, readFieldContent(length), length);
+                    } else {
+                        throw new ConnectorException("Unknown type: " + type);
+                    }
                 }
-            }
-            // push the state on the stack before we read the body
-            readStateStack.push(state);
+                state.objectEnd = position;
+                readingRoot = false;
 
-            Object rv;
-            if (clazz == null) {
-                rv = null;
-            } else {
-                ObjectSerializationHandler handler =
-                        ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-                if (handler == null) {
-                    // we may have special handlers for certain types of arrays
-                    // if handler is null, treat like any other array
-                    if (clazz.isArray()) {
-                        int length = getNumAnonymousFields();
-                        Object array = Array.newInstance(clazz.getComponentType(), length);
-                        for (int i = 0; i < length; i++) {
-                            startAnonymousField(i);
-                            Object element = readObject(decoder);
-                            Array.set(array, i, element);
+                Object rv;
+                if (clazz == null) {
+                    rv = null;
+                } else {
+                    ObjectSerializationHandler handler =
+                            ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                    if (handler == null) {
+                        // we may have special handlers for certain types of
+                        // arrays if handler is null, treat like any other array
+                        if (clazz.isArray()) {
+                            int length = getNumAnonymousFields();
+                            Object array = Array.newInstance(clazz.getComponentType(), length);
+                            for (int i = 0; i < length; i++) {
+                                startAnonymousField(i);
+                                Object element = readObject(decoder);
+                                Array.set(array, i, element);
+                            }
+                            rv = array;
+                        } else {
+                            throw new ConnectorException("No deserializer for type: " + clazz);
                         }
-                        rv = array;
                     } else {
-                        throw new ConnectorException("No deserializer for type: " + clazz);
+                        rv = handler.deserialize(decoder);
+                    }
+                }
+                // continue after the object in the parent field
+                position = state.objectEnd;
+                end = parentEnd;
+                return rv;
+            } finally {
+                depth--;
+                if (topLevel) {
+                    readingRoot = false;
+                    if (buffer.length > BinaryObjectEncoder.MAX_RETAINED_BUFFER_SIZE) {
+                        buffer = new byte[BinaryObjectEncoder.INITIAL_BUFFER_SIZE];
                     }
-                } else {
-                    rv = handler.deserialize(decoder);
                 }
             }
-            // pop
-            readStateStack.pop();
-            return rv;
+        }
+
+        private ReadState pushState() {
+            if (depth == readStateStack.length) {
+                ReadState[] stack = new ReadState[readStateStack.length * 2];
+                System.arraycopy(readStateStack, 0, stack, 0, depth);
+                readStateStack = stack;
+            }
+            ReadState state = readStateStack[depth];
+            if (null == state) {
+                state = new ReadState();
+                readStateStack[depth] = state;
+            } else {
+                state.reset();
+            }
+            depth++;
+            return state;
+        }
+
+        /**
+         * Reads the content of a top-level field into the buffer, or skips
+         * the content of a nested field which is already in the buffer.
+         *
+         * @return the offset of the content in the buffer.
+         */
+        private int readFieldContent(int length) {
+            if (length < 0) {
+                throw new ConnectorException("Bad field length: " + length);
+            }
+            if (readingRoot) {
+                if (limit + length > buffer.length) {
+                    byte[] newBuffer = new byte[Math.max(buffer.length * 2, limit + length)];
+                    System.arraycopy(buffer, 0, newBuffer, 0, limit);
+                    buffer = newBuffer;
+                }
+                try {
+                    rootInput.readFully(buffer, limit, length);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
+                int offset = limit;
+                limit += length;
+                return offset;
+            }
+            int offset = position;
+            skip(length);
+            return offset;
         }
 
         public Class<?> readClass() {
@@ -179,69 +320,85 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
         }
 
         public int getNumAnonymousFields() {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            return readState.anonymousFields.size();
+            return readStateStack[depth - 1].anonymousCount;
         }
 
         public void startAnonymousField(int index) {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            readState.startAnonymousField(index);
+            ReadState readState = readStateStack[depth - 1];
+            if (index >= readState.anonymousCount) {
+                throw new ConnectorException("Anonymous content not found");
+            }
+            position = readState.anonymousOffsets[index];
+            end = position + readState.anonymousLengths[index];
         }
 
         public boolean startField(String name) {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            return readState.startField(name);
+            ReadState readState = readStateStack[depth - 1];
+            Integer code = constantCodes.get(name);
+            int index = null != code ? readState.findNamed(code) : -1;
+            if (index < 0) {
+                return false;
+            }
+            position = readState.namedOffsets[index];
+            end = position + readState.namedLengths[index];
+            return true;
         }
 
         public int readInt() {
-            try {
-                return getCurrentInput().readInt();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            if (readingRoot) {
+                try {
+                    return rootInput.readInt();
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
             }
+            skip(4);
+            return ((buffer[position - 4] & 0xFF) << 24) | ((buffer[position - 3] & 0xFF) << 16)
+                    | ((buffer[position - 2] & 0xFF) << 8) | (buffer[position - 1] & 0xFF);
         }
 
         public long readLong() {
-            try {
-                return getCurrentInput().readLong();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            long high = readInt();
+            return (high << 32) | (readInt() & 0xFFFFFFFFL);
         }
 
         public double readDouble() {
-            try {
-                return getCurrentInput().readDouble();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            return Double.longBitsToDouble(readLong());
         }
 
         public byte[] readByteArray() {
-            try {
-                int length = getCurrentInput().readInt();
-                byte[] rv = new byte[length];
-                getCurrentInput().readFully(rv);
-                return rv;
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            int length = readInt();
+            if (length < 0) {
+                throw new ConnectorException("Bad array length: " + length);
+            }
+            byte[] rv = new byte[length];
+            if (readingRoot) {
+                try {
+                    rootInput.readFully(rv);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
+            } else {
+                skip(length);
+                System.arraycopy(buffer, position - length, rv, 0, length);
             }
+            return rv;
         }
 
         public byte readByte() {
-            try {
-                return getCurrentInput().readByte();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            if (readingRoot) {
+                try {
+                    return rootInput.readByte();
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
             }
+            skip(1);
+            return buffer[position - 1];
         }
 
         public boolean readBoolean() {
-            try {
-                return getCurrentInput().readBoolean();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            return readByte() != 0;
         }
 
         public String readString(boolean interned) {
@@ -255,20 +412,28 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             }
 
             try {
-                byte[] bytes = readByteArray();
-                return new String(bytes, "UTF8");
+                if (readingRoot) {
+                    return new String(readByteArray(), "UTF8");
+                }
+                int length = readInt();
+                if (length < 0) {
+                    throw new ConnectorException("Bad string length: " + length);
+                }
+                skip(length);
+                return new String(buffer, position - length, length, "UTF8");
             } catch (IOException e) {
                 throw ConnectorException.wrap(e);
             }
         }
 
-        private DataInputStream getCurrentInput() {
-            if (readStateStack.size() > 0) {
-                ReadState state = readStateStack.get(readStateStack.size() - 1);
-                return state.currentInput;
-            } else {
-                return rootInput;
+        /**
+         * Moves the position over the next bytes of the current field.
+         */
+        private void skip(int length) {
+            if (position + length > end) {
+                throw ConnectorException.wrap(new EOFException());
             }
+            position += length;
         }
     }
 
@@ -23,7 +23,6 @@
 package org.identityconnectors.framework.impl.serializer.binary;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -32,9 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import org.identityconnectors.common.Pair;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.impl.serializer.ObjectEncoder;
@@ -42,6 +39,14 @@ import org.identityconnectors.framework.impl.serializer.ObjectSerializationHandl
 import org.identityconnectors.framework.impl.serializer.ObjectSerializerRegistry;
 import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
 
+/**
+ * Writes the objects in the binary format.
+ * <p/>
+ * Each top-level object is encoded in a single pass into one buffer which is
+ * reused for the next object. The length of a field is not known until its
+ * content is written, so the encoder reserves its place and fills it in when
+ * the field ends.
+ */
 public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerializer {
 
     /**
@@ -60,11 +65,15 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
     public static final byte FIELD_TYPE_NAMED_FIELD = 71;
     public static final byte FIELD_TYPE_END_OBJECT = 72;
 
-    private static class OutputBuffer extends Pair<ByteArrayOutputStream, DataOutputStream> {
-        public OutputBuffer(ByteArrayOutputStream buf, DataOutputStream data) {
-            super(buf, data);
-        }
-    }
+    /**
+     * Initial size of the object buffer.
+     */
+    static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * A larger buffer is released after the object is written.
+     */
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
 
     private static class InternalEncoder {
 
@@ -75,10 +84,26 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         private List<String> constantBuffer = new ArrayList<String>();
 
-        private Stack<OutputBuffer> outputBufferStack = new Stack<OutputBuffer>();
         private DataOutputStream rootOutput;
         private boolean firstObject = true;
 
+        /**
+         * The top-level object being encoded.
+         */
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        private int position = 0;
+
+        /**
+         * Nesting depth of the objects being encoded.
+         */
+        private int depth = 0;
+
+        /**
+         * Positions of the length of the open fields.
+         */
+        private int[] fieldStack = new int[16];
+        private int fieldDepth = 0;
+
         public InternalEncoder(DataOutputStream output) {
             rootOutput = output;
         }
@@ -86,81 +111,86 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
         public void writeObject(ObjectEncoder encoder, Object object) {
 
             if (firstObject) {
-                writeInt(OBJECT_MAGIC);
-                writeInt(ENCODING_VERSION);
+                try {
+                    rootOutput.writeInt(OBJECT_MAGIC);
+                    rootOutput.writeInt(ENCODING_VERSION);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
                 firstObject = false;
             }
 
-            // push the stack
-            OutputBuffer objectBuffer;
-            {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream data = new DataOutputStream(baos);
-                objectBuffer = new OutputBuffer(baos, data);
-                outputBufferStack.push(objectBuffer);
+            final boolean topLevel = depth == 0;
+            if (topLevel) {
+                position = 0;
+                fieldDepth = 0;
             }
-
-            if (object == null) {
-                writeByte(OBJECT_TYPE_NULL);
-            } else {
-                Class<?> clazz = object.getClass();
-                ObjectSerializationHandler handler =
-                        ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-                if (handler == null) {
-                    // we may have special handlers for certain types of arrays
-                    // if handler is null, treat like any other array
-                    if (clazz.isArray()) {
-                        writeClass(clazz);
-                        int length = Array.getLength(object);
-                        for (int i = 0; i < length; i++) {
-                            Object val = Array.get(object, i);
-                            startAnonymousField();
-                            writeObject(encoder, val);
-                            endField();
-                        }
-                    } else {
-                        if (!clazz.getSuperclass().equals(Object.class)) {
-                            clazz = clazz.getSuperclass();
-                            handler = ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-                            if (handler == null) {
-                                throw new ConnectorException("No serializer for class: " + clazz);
-                            } else {
-                                writeClass(clazz);
-                                handler.serialize(object, encoder);
+            depth++;
+            try {
+                if (object == null) {
+                    writeByte(OBJECT_TYPE_NULL);
+                } else {
+                    Class<?> clazz = object.getClass();
+                    ObjectSerializationHandler handler =
+                            ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                    if (handler == null) {
+                        // we may have special handlers for certain types of
+                        // arrays if handler is null, treat like any other array
+                        if (clazz.isArray()) {
+                            writeClass(clazz);
+                            int length = Array.getLength(object);
+                            for (int i = 0; i < length; i++) {
+                                Object val = Array.get(object, i);
+                                startAnonymousField();
+                                writeObject(encoder, val);
+                                endField();
                             }
                         } else {
-                            throw new ConnectorException("No serializer for class: " + clazz);
+                            if (!clazz.getSuperclass().equals(Object.class)) {
+                                clazz = clazz.getSuperclass();
+                                handler = ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                                if (handler == null) {
+                                    throw new ConnectorException("No serializer for class: "
+                                            + clazz);
+                                } else {
+                                    writeClass(clazz);
+                                    handler.serialize(object, encoder);
+                                }
+                            } else {
+                                throw new ConnectorException("No serializer for class: " + clazz);
+                            }
                         }
+                    } else {
+                        writeClass(clazz);
+                        handler.serialize(object, encoder);
                     }
-                } else {
-                    writeClass(clazz);
-                    handler.serialize(object, encoder);
                 }
-            }
-            writeByte(FIELD_TYPE_END_OBJECT); // write end-object into the
-                                              // current obj buffer
-
-            // pop the stack
-            outputBufferStack.pop();
-
-            // it's a top-level object, flush the constant pool
-            if (outputBufferStack.size() == 0) {
-                writeInt(constantBuffer.size());
-                for (String constant : constantBuffer) {
-                    writeString(constant, false);
-                    writeInt(constantPool.get(constant));
-                }
-                constantBuffer.clear();
+                writeByte(FIELD_TYPE_END_OBJECT);
+            } finally {
+                depth--;
             }
 
-            // now write the actual object
-            try {
-                objectBuffer.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            // it's a top-level object, write the constant pool and the object
+            if (topLevel) {
+                try {
+                    rootOutput.writeInt(constantBuffer.size());
+                    for (String constant : constantBuffer) {
+                        byte[] bytes = constant.getBytes("UTF8");
+                        rootOutput.writeInt(bytes.length);
+                        rootOutput.write(bytes);
+                        rootOutput.writeInt(constantPool.get(constant));
+                    }
+                    constantBuffer.clear();
+                    rootOutput.write(buffer, 0, position);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                } finally {
+                    position = 0;
+                    if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                        buffer = new byte[INITIAL_BUFFER_SIZE];
+                    }
+                }
             }
-            byte[] bytes = objectBuffer.first.toByteArray();
-            writeBytes(bytes);
         }
 
         public void writeClass(Class<?> clazz) {
@@ -188,77 +218,69 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         public void startAnonymousField() {
             writeByte(FIELD_TYPE_ANONYMOUS_FIELD);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startFieldContent();
         }
 
         public void startField(String name) {
             writeByte(FIELD_TYPE_NAMED_FIELD);
             writeString(name, true);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startFieldContent();
         }
 
-        public void endField() {
-            OutputBuffer buf = outputBufferStack.pop();
-            try {
-                buf.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+        /**
+         * Reserves the place of the length of the field.
+         */
+        private void startFieldContent() {
+            if (fieldDepth == fieldStack.length) {
+                int[] stack = new int[fieldStack.length * 2];
+                System.arraycopy(fieldStack, 0, stack, 0, fieldDepth);
+                fieldStack = stack;
             }
-            byte[] bytes = buf.first.toByteArray();
-            writeByteArray(bytes);
+            ensureCapacity(4);
+            fieldStack[fieldDepth++] = position;
+            position += 4;
+        }
+
+        public void endField() {
+            int lengthPosition = fieldStack[--fieldDepth];
+            int length = position - lengthPosition - 4;
+            buffer[lengthPosition] = (byte) (length >>> 24);
+            buffer[lengthPosition + 1] = (byte) (length >>> 16);
+            buffer[lengthPosition + 2] = (byte) (length >>> 8);
+            buffer[lengthPosition + 3] = (byte) length;
         }
 
         public void writeInt(int v) {
-            try {
-                getCurrentOutput().writeInt(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(4);
+            buffer[position++] = (byte) (v >>> 24);
+            buffer[position++] = (byte) (v >>> 16);
+            buffer[position++] = (byte) (v >>> 8);
+            buffer[position++] = (byte) v;
         }
 
         public void writeLong(long v) {
-            try {
-                getCurrentOutput().writeLong(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
         }
 
         public void writeDouble(double l) {
-            try {
-                getCurrentOutput().writeDouble(l);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeLong(Double.doubleToLongBits(l));
         }
 
         public void writeByteArray(byte[] v) {
-            try {
-                getCurrentOutput().writeInt(v.length);
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeInt(v.length);
+            ensureCapacity(v.length);
+            System.arraycopy(v, 0, buffer, position, v.length);
+            position += v.length;
         }
 
         public void writeByte(byte b) {
-            try {
-                getCurrentOutput().writeByte(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(1);
+            buffer[position++] = b;
         }
 
         public void writeBoolean(boolean b) {
-            try {
-                getCurrentOutput().writeBoolean(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeByte(b ? (byte) 1 : (byte) 0);
         }
 
         public void writeString(String str, boolean intern) {
@@ -267,19 +289,32 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
                 writeInt(code);
                 return;
             }
-            try {
-                byte[] bytes = str.getBytes("UTF8");
-                writeByteArray(bytes);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            // ASCII is copied into the buffer, anything else is left to the
+            // charset encoder
+            final int length = str.length();
+            ensureCapacity(4 + length);
+            final int start = position + 4;
+            for (int i = 0; i < length; i++) {
+                char c = str.charAt(i);
+                if (c >= 0x80) {
+                    try {
+                        writeByteArray(str.getBytes("UTF8"));
+                    } catch (IOException e) {
+                        throw ConnectorException.wrap(e);
+                    }
+                    return;
+                }
+                buffer[start + i] = (byte) c;
             }
+            writeInt(length);
+            position += length;
         }
 
-        private void writeBytes(byte[] v) {
-            try {
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, position + length)];
+                System.arraycopy(buffer, 0, newBuffer, 0, position);
+                buffer = newBuffer;
             }
         }
 
@@ -292,14 +327,6 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
             return code;
         }
-
-        private DataOutputStream getCurrentOutput() {
-            if (outputBufferStack.size() == 0) {
-                return rootOutput;
-            } else {
-                return outputBufferStack.peek().second;
-            }
-        }
     }
 
     private InternalEncoder internalEncoder;
@@ -23,8 +23,10 @@
 package org.identityconnectors.common.script.groovy;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
 import org.testng.annotations.Test;
@@ -52,6 +54,21 @@ public class GroovyScriptExecutorFactoryTests {
         assertEquals(actual, 3);
     }
 
+    @Test
+    public void testCompiledScriptIsCached() throws Exception {
+        String script = "return x + " + System.nanoTime() + "L;";
+        CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        long hits = cache.getHitCount();
+        ScriptExecutor first = getScriptExecutor(script);
+        ScriptExecutor second = getScriptExecutor(script);
+        assertTrue(cache.getHitCount() > hits);
+        // the executors don't share the binding
+        assertEquals(first.execute(CollectionUtil.<String, Object> newMap("x", 1L)),
+                second.execute(CollectionUtil.<String, Object> newMap("x", 1L)));
+        assertEquals(((Long) first.execute(CollectionUtil.<String, Object> newMap("x", 2L)))
+                - (Long) second.execute(CollectionUtil.<String, Object> newMap("x", 1L)), 1L);
+    }
+
     private ScriptExecutor getScriptExecutor(String script) {
         ClassLoader loader = getClass().getClassLoader();
         return ScriptExecutorFactory.newInstance("GROOVY").newScriptExecutor(loader, script, false);
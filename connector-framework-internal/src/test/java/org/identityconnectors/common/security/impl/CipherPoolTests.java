@@ -0,0 +1,108 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.common.security.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.annotations.Test;
+
+public class CipherPoolTests {
+
+    private static final String FULL_ALGORITHM = "AES/CBC/PKCS5Padding";
+
+    private final SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+    private final IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+
+    @Test
+    public void testReusedCipher() throws Exception {
+        CipherPool pool = new CipherPool(FULL_ALGORITHM, key, iv, 2);
+        Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+        for (int i = 0; i < 3; i++) {
+            byte[] clear = ("secret" + i).getBytes("UTF-8");
+            byte[] encrypted = pool.encrypt(clear);
+            assertTrue(Arrays.equals(encrypted, cipher.doFinal(clear)));
+            assertTrue(Arrays.equals(pool.decrypt(encrypted), clear));
+        }
+        assertEquals(pool.getIdleCount(), 2);
+    }
+
+    @Test
+    public void testFailedCipherIsDropped() throws Exception {
+        CipherPool pool = new CipherPool(FULL_ALGORITHM, key, iv, 2);
+        byte[] encrypted = pool.encrypt(new byte[] { 1, 2, 3 });
+        pool.decrypt(encrypted);
+        assertEquals(pool.getIdleCount(), 2);
+        try {
+            pool.decrypt(new byte[] { 1, 2, 3 });
+            fail("Invalid cipher text must fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(pool.getIdleCount(), 1);
+        assertTrue(Arrays.equals(pool.decrypt(encrypted), new byte[] { 1, 2, 3 }));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final CipherPool pool = new CipherPool(FULL_ALGORITHM, key, iv, 2);
+        final int threads = 8;
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            byte[] clear = ("secret-" + id + "-" + i).getBytes("UTF-8");
+                            if (!Arrays.equals(pool.decrypt(pool.encrypt(clear)), clear)) {
+                                throw new IllegalStateException("Round trip failed");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(finished.await(30, TimeUnit.SECONDS));
+        assertEquals(failure.get(), null);
+        assertTrue(pool.getIdleCount() <= 4);
+    }
+}
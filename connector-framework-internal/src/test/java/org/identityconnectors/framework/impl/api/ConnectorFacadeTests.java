@@ -25,6 +25,9 @@ package org.identityconnectors.framework.impl.api;
 
 import static org.identityconnectors.framework.common.objects.ObjectClass.ACCOUNT;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -63,6 +66,7 @@ import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.mockconnector.MockAllOpsConnector;
@@ -680,6 +684,87 @@ public class ConnectorFacadeTests {
         assertTrue(obj.getAttributeByName("does not exist") == null);
     }
 
+    @Test
+    public void connectorFacadeKeyTest() {
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        APIConfigurationImpl impl =
+                (APIConfigurationImpl) TestHelpers.createTestConfiguration(
+                        MockAllOpsConnector.class, new MockConfiguration(false));
+        String expected = SerializerUtil.serializeBase64Object(impl);
+
+        ConnectorFacade facade1 = factory.newInstance(impl);
+        ConnectorFacade facade2 = factory.newInstance(impl);
+        assertEquals(facade1.getConnectorFacadeKey(), expected);
+        // the unchanged configuration is serialized once
+        assertSame(facade2.getConnectorFacadeKey(), facade1.getConnectorFacadeKey());
+
+        // the facade keeps its own copy of the configuration
+        ConfigurationPropertiesImpl properties = impl.getConfigurationProperties();
+        properties.setPropertyValue("fail", true);
+        assertSame(((ConfigurationPropertyImpl) properties.getProperty("fail")).getParent(),
+                properties);
+        assertEquals(facade1.getConnectorFacadeKey(), expected);
+
+        ConnectorFacade facade3 = factory.newInstance(impl);
+        assertFalse(expected.equals(facade3.getConnectorFacadeKey()));
+        assertEquals(facade3.getConnectorFacadeKey(), SerializerUtil.serializeBase64Object(impl));
+
+        impl.setTimeout(GetApiOp.class, 1000);
+        ConnectorFacade facade4 = factory.newInstance(impl);
+        assertEquals(facade4.getConnectorFacadeKey(), SerializerUtil.serializeBase64Object(impl));
+        assertFalse(facade3.getConnectorFacadeKey().equals(facade4.getConnectorFacadeKey()));
+    }
+
+    @Test
+    public void remoteConnectorFacadeKeyTest() {
+        APIConfigurationImpl impl =
+                (APIConfigurationImpl) TestHelpers.createTestConfiguration(
+                        MockAllOpsConnector.class, new MockConfiguration(false));
+        String key = impl.getRemoteConnectorFacadeKey();
+        assertEquals(key, serializeWithoutClientSettings(impl));
+        // the unchanged configuration is serialized once
+        assertSame(impl.getRemoteConnectorFacadeKey(), key);
+
+        // the client settings are not part of the key
+        impl.setTimeout(GetApiOp.class, 1000);
+        impl.setProducerBufferSize(7);
+        assertSame(impl.getRemoteConnectorFacadeKey(), key);
+
+        impl.getConfigurationProperties().setPropertyValue("fail", true);
+        String changed = impl.getRemoteConnectorFacadeKey();
+        assertFalse(key.equals(changed));
+        assertEquals(changed, serializeWithoutClientSettings(impl));
+    }
+
+    private static String serializeWithoutClientSettings(APIConfigurationImpl impl) {
+        APIConfigurationImpl copy = new APIConfigurationImpl(impl);
+        copy.setProducerBufferSize(0);
+        copy.setTimeoutMap(new HashMap<Class<? extends APIOperation>, Integer>());
+        return SerializerUtil.serializeBase64Object(copy);
+    }
+
+    @Test
+    public void copyValueTest() {
+        String[] strings = new String[] { "a", "b" };
+        Object copy = ConfigurationPropertyImpl.copyValue(strings);
+        assertNotSame(copy, strings);
+        assertTrue(CollectionUtil.equals(copy, strings));
+
+        int[] ints = new int[] { 1, 2 };
+        copy = ConfigurationPropertyImpl.copyValue(ints);
+        assertNotSame(copy, ints);
+        assertTrue(CollectionUtil.equals(copy, ints));
+
+        GuardedString password = new GuardedString("secret".toCharArray());
+        copy = ConfigurationPropertyImpl.copyValue(password);
+        assertNotSame(copy, password);
+        assertEquals(copy, password);
+
+        String string = "value";
+        assertSame(ConfigurationPropertyImpl.copyValue(string), string);
+        assertEquals(ConfigurationPropertyImpl.copyValue(null), null);
+    }
+
     static Uid newUid(int id) {
         return new Uid(Integer.toString(id));
     }
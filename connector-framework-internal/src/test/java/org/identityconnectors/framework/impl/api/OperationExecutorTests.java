@@ -0,0 +1,187 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.annotations.Test;
+
+public class OperationExecutorTests {
+
+    @Test
+    public void testBoundedPool() throws Exception {
+        final OperationExecutor executor = new OperationExecutor(2, false);
+        assertFalse(executor.isVirtual());
+        assertEquals(executor.getMaxThreads(), 2);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            }
+        };
+        assertTrue(executor.tryExecute(task));
+        assertTrue(executor.tryExecute(task));
+        // the tasks are not queued when all threads are busy
+        assertFalse(executor.tryExecute(task));
+        assertEquals(executor.getRejectedCount(), 1L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getActiveCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(executor.getActiveCount(), 2);
+
+        assertEquals(executor.getPendingCount(), 0);
+
+        // execute starts a dedicated thread, the task never runs on the caller
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        final CountDownLatch dedicated = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                thread.set(Thread.currentThread());
+                dedicated.countDown();
+            }
+        });
+        assertTrue(dedicated.await(5, TimeUnit.SECONDS));
+        assertNotSame(thread.get(), Thread.currentThread());
+        assertEquals(executor.getRejectedCount(), 2L);
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompletedCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(executor.getCompletedCount(), 3);
+        assertEquals(executor.getActiveCount(), 0);
+        assertEquals(executor.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testTimeoutCancelsOperation() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Runnable target = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        };
+        Runnable proxy =
+                (Runnable) Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[] { Runnable.class }, new MethodTimeoutProxy(target, 100));
+        try {
+            proxy.run();
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the timed out operation does not go on
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNestedTaskDoesNotWait() throws Exception {
+        final OperationExecutor executor = new OperationExecutor(1, false);
+        final CountDownLatch nested = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                // runs on a dedicated thread, the only pool thread is busy
+                executor.execute(new Runnable() {
+                    public void run() {
+                        nested.countDown();
+                    }
+                });
+                try {
+                    // the only pool thread waits for the nested task
+                    if (nested.await(5, TimeUnit.SECONDS)) {
+                        finished.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLocalePropagation() throws Exception {
+        final OperationExecutor executor = new OperationExecutor(1, false);
+        final AtomicReference<Locale> locale = new AtomicReference<Locale>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        CurrentLocale.set(Locale.JAPANESE);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    locale.set(CurrentLocale.get());
+                    finished.countDown();
+                }
+            });
+        } finally {
+            CurrentLocale.clear();
+        }
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(locale.get(), Locale.JAPANESE);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final OperationExecutor executor = new OperationExecutor(1, true);
+        final CountDownLatch finished = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                finished.countDown();
+            }
+        });
+        // falls back to the platform pool on a JDK without virtual threads
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(executor.getMaxThreads(), executor.isVirtual() ? Integer.MAX_VALUE : 1);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.testng.annotations.Test;
+
+public class OperationTracerTests {
+
+    private static class RecordingTracer extends OperationTracer {
+
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        private final List<ClassLoader> loaders =
+                Collections.synchronizedList(new ArrayList<ClassLoader>());
+        private volatile Throwable error = null;
+        private volatile CountDownLatch blocked = null;
+
+        RecordingTracer(boolean asynchronous, int bufferSize, int sampleRate,
+                int maxArgumentLength) {
+            super(Log.getLog(OperationTracerTests.class), asynchronous, bufferSize, sampleRate,
+                    maxArgumentLength);
+        }
+
+        @Override
+        void write(Class<?> operation, String method, String message, Throwable error) {
+            assertSame(operation, GetApiOp.class);
+            CountDownLatch latch = blocked;
+            if (null != latch) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add(message);
+            threads.add(Thread.currentThread().getName());
+            loaders.add(Thread.currentThread().getContextClassLoader());
+            if (null != error) {
+                this.error = error;
+            }
+        }
+    }
+
+    @Test
+    public void testSynchronous() throws Exception {
+        RecordingTracer tracer = new RecordingTracer(false, 16, 1, 0);
+        assertFalse(tracer.isAsynchronous());
+        tracer.enter(GetApiOp.class, "getObject", new Object[] { "a", 1 });
+        tracer.exit(GetApiOp.class, "getObject", null);
+        RuntimeException error = new RuntimeException();
+        tracer.exception(GetApiOp.class, "getObject", error);
+        assertEquals(tracer.messages.size(), 3);
+        assertEquals(tracer.messages.get(0), "Enter: getObject(a, 1)");
+        assertEquals(tracer.messages.get(1), "Return: null");
+        assertEquals(tracer.messages.get(2), "Exception: ");
+        assertSame(tracer.error, error);
+        assertEquals(tracer.threads.get(0), Thread.currentThread().getName());
+    }
+
+    @Test
+    public void testAsynchronous() throws Exception {
+        RecordingTracer tracer = new RecordingTracer(true, 16, 1, 0);
+        assertTrue(tracer.isAsynchronous());
+        for (int i = 0; i < 100; i++) {
+            tracer.enter(GetApiOp.class, "getObject", new Object[] { i });
+            tracer.exit(GetApiOp.class, "getObject", i);
+            // the slow writer must not lose the events of a full buffer
+            assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+        }
+        assertEquals(tracer.messages.size(), 200);
+        assertEquals(tracer.getDroppedEvents(), 0L);
+        String thread = Thread.currentThread().getName();
+        assertEquals(tracer.messages.get(0), "[" + thread + "] Enter: getObject(0)");
+        assertEquals(tracer.messages.get(199), "[" + thread + "] Return: 99");
+        assertEquals(tracer.threads.get(0), "OperationTracer");
+        // the consumer does not keep the class loader of the creating thread
+        assertNull(tracer.loaders.get(0));
+    }
+
+    @Test
+    public void testFullBufferDropsEvents() throws Exception {
+        RecordingTracer tracer = new RecordingTracer(true, 3, 1, 0);
+        tracer.blocked = new CountDownLatch(1);
+        // the buffer is rounded up to four events
+        for (int i = 0; i < 10; i++) {
+            tracer.exit(GetApiOp.class, "getObject", i);
+        }
+        assertTrue(tracer.getDroppedEvents() >= 5L);
+        tracer.blocked.countDown();
+        tracer.blocked = null;
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+        assertEquals(tracer.messages.size() + tracer.getDroppedEvents(), 10L);
+        assertEquals(tracer.messages.get(0), "[" + Thread.currentThread().getName()
+                + "] Return: 0");
+    }
+
+    @Test
+    public void testSampling() {
+        RecordingTracer tracer = new RecordingTracer(false, 16, 4, 0);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (tracer.isSampled()) {
+                sampled++;
+            }
+        }
+        assertEquals(sampled, 25);
+        tracer = new RecordingTracer(false, 16, 0, 0);
+        assertTrue(tracer.isSampled());
+        assertTrue(tracer.isSampled());
+    }
+
+    @Test
+    public void testTruncation() {
+        RecordingTracer tracer = new RecordingTracer(false, 16, 1, 5);
+        tracer.enter(GetApiOp.class, "getObject", new Object[] { "abcdefghij", "abc", null });
+        tracer.exit(GetApiOp.class, "getObject", "0123456789");
+        assertEquals(tracer.messages.get(0), "Enter: getObject(abcde...(10 chars), abc, null)");
+        assertEquals(tracer.messages.get(1), "Return: 01234...(10 chars)");
+        assertNull(tracer.error);
+    }
+}
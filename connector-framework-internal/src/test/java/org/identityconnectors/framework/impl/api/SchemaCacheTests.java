@@ -0,0 +1,144 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.framework.api.ConfigurationProperty;
+import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.common.objects.ObjectClassInfoBuilder;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.SchemaBuilder;
+import org.identityconnectors.framework.impl.api.local.operations.SchemaImpl;
+import org.identityconnectors.framework.spi.Connector;
+import org.testng.annotations.Test;
+
+public class SchemaCacheTests {
+
+    @Test
+    public void testCachedSchema() {
+        final SchemaCache cache = new SchemaCache(1, TimeUnit.HOURS);
+        final CountingSchemaApiOp op = new CountingSchemaApiOp();
+        final SchemaApiOp cached = new SchemaImpl.CachedSchemaApiOp(cache, op);
+        final Schema schema = cached.schema();
+        assertSame(cached.schema(), schema);
+        assertSame(cached.schema(), schema);
+        assertEquals(op.count.get(), 1);
+        assertEquals(cache.getHits(), 2);
+        assertEquals(cache.getMisses(), 1);
+
+        cache.invalidate();
+        assertFalse(cached.schema() == schema);
+        assertEquals(op.count.get(), 2);
+    }
+
+    @Test
+    public void testExpiredSchema() throws Exception {
+        final SchemaCache cache = new SchemaCache(10, TimeUnit.MILLISECONDS);
+        cache.put(cache.getVersion(), newSchema());
+        Thread.sleep(50);
+        assertNull(cache.get());
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    public void testDisabledCache() {
+        final SchemaCache cache = new SchemaCache(0, TimeUnit.MILLISECONDS);
+        assertFalse(cache.isEnabled());
+        final CountingSchemaApiOp op = new CountingSchemaApiOp();
+        final SchemaApiOp cached = new SchemaImpl.CachedSchemaApiOp(cache, op);
+        cached.schema();
+        cached.schema();
+        assertEquals(op.count.get(), 2);
+        assertEquals(cache.getHits(), 0);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        if (null == System.getProperty(SchemaCache.TIME_TO_LIVE_PROPERTY)) {
+            assertFalse(new SchemaCache().isEnabled());
+        }
+    }
+
+    @Test
+    public void testInvalidatedWhileReading() {
+        final SchemaCache cache = new SchemaCache(1, TimeUnit.HOURS);
+        final long version = cache.getVersion();
+        cache.invalidate();
+        // the schema read before the invalidation is not cached
+        cache.put(version, newSchema());
+        assertNull(cache.get());
+    }
+
+    @Test
+    public void testConfigurationChange() {
+        final SchemaCache cache = new SchemaCache(1, TimeUnit.HOURS);
+        // without a listener of the facade the changes invalidate the cache
+        cache.put(cache.getVersion(), newSchema());
+        cache.invalidateOnChange(null).configurationPropertyChange(
+                Collections.<ConfigurationProperty> emptyList());
+        assertNull(cache.get());
+
+        final AtomicInteger changes = new AtomicInteger(0);
+        final ConfigurationPropertyChangeListener listener =
+                cache.invalidateOnChange(new ConfigurationPropertyChangeListener() {
+                    public void configurationPropertyChange(List<ConfigurationProperty> diff) {
+                        changes.incrementAndGet();
+                    }
+                });
+        assertSame(cache.invalidateOnChange(listener), listener);
+
+        cache.put(cache.getVersion(), newSchema());
+        assertTrue(null != cache.get());
+        listener.configurationPropertyChange(Collections.<ConfigurationProperty> emptyList());
+        assertEquals(changes.get(), 1);
+        assertNull(cache.get());
+    }
+
+    private static Schema newSchema() {
+        final SchemaBuilder builder = new SchemaBuilder(Connector.class);
+        builder.defineObjectClass(new ObjectClassInfoBuilder().build());
+        return builder.build();
+    }
+
+    private static class CountingSchemaApiOp implements SchemaApiOp {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public Schema schema() {
+            count.incrementAndGet();
+            return newSchema();
+        }
+    }
+}
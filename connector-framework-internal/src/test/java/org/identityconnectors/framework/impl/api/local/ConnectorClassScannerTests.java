@@ -0,0 +1,190 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.ConnectorClass;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.testng.annotations.Test;
+
+public class ConnectorClassScannerTests {
+
+    @Test
+    public void testIsConnectorClass() throws Exception {
+        assertTrue(isConnectorClass(TestConnector.class));
+        assertFalse(isConnectorClass(ConnectorClassScannerTests.class));
+        // uses the annotation but it's not annotated
+        assertFalse(isConnectorClass(ConnectorClass.class));
+        assertFalse(isConnectorClass(Deprecated.class));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotAClassFile() throws Exception {
+        ConnectorClassScanner.isConnectorClass(new ByteArrayInputStream(new byte[] { 1, 2, 3,
+            4, 5, 6 }));
+    }
+
+    @Test
+    public void testParseClassNames() {
+        assertNull(ConnectorClassScanner.parseClassNames(null));
+        assertEquals(ConnectorClassScanner.parseClassNames(" a.B , c.D,,"), Arrays.asList("a.B",
+                "c.D"));
+    }
+
+    @Test
+    public void testProcessURL() throws Exception {
+        File dir = createTempDirectory();
+        File cacheDir = new File(dir, "cache");
+        try {
+            File bundle = createBundle(dir, null);
+            File indexed = createBundle(dir, "a.b.Connector");
+            System.setProperty(ConnectorClassScanner.CACHE_DIRECTORY_PROPERTY, cacheDir
+                    .getAbsolutePath());
+            WorkingBundleInfo info =
+                    LocalConnectorInfoManagerImpl.processURL(bundle.toURI().toURL(), true);
+            assertEquals(info.getConnectorClasses(), Collections.singleton(TestConnector.class
+                    .getName()));
+
+            InputStream in = bundle.toURI().toURL().openStream();
+            String checksum;
+            try {
+                checksum = ConnectorClassScanner.checksum(in);
+            } finally {
+                IOUtil.quietClose(in);
+            }
+            assertEquals(checksum.length(), 64);
+            assertEquals(ConnectorClassScanner.readCache(cacheDir, checksum), Collections
+                    .singletonList(TestConnector.class.getName()));
+
+            // the cached classes are used
+            ConnectorClassScanner.writeCache(cacheDir, checksum, Collections.singleton("x.Y"));
+            info = LocalConnectorInfoManagerImpl.processURL(bundle.toURI().toURL(), true);
+            assertEquals(info.getConnectorClasses(), Collections.singleton("x.Y"));
+
+            // the indexed classes are used
+            info = LocalConnectorInfoManagerImpl.processURL(indexed.toURI().toURL(), true);
+            assertEquals(info.getConnectorClasses(), Collections.singleton("a.b.Connector"));
+            assertNotNull(info.getManifest().getConnectorClasses());
+        } finally {
+            System.clearProperty(ConnectorClassScanner.CACHE_DIRECTORY_PROPERTY);
+            delete(dir);
+        }
+    }
+
+    private boolean isConnectorClass(final Class<?> clazz) throws IOException {
+        InputStream in = getClassFile(clazz);
+        try {
+            return ConnectorClassScanner.isConnectorClass(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private InputStream getClassFile(final Class<?> clazz) {
+        return clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+    }
+
+    private File createBundle(final File dir, final String connectorClasses) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("ConnectorBundle-FrameworkVersion", "1.0");
+        attributes.putValue("ConnectorBundle-Name", "test");
+        attributes.putValue("ConnectorBundle-Version", "1.0");
+        if (null != connectorClasses) {
+            attributes.putValue(ConnectorClassScanner.ATT_CONNECTOR_CLASSES, connectorClasses);
+        }
+        File bundle = File.createTempFile("bundle", ".jar", dir);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(bundle), manifest);
+        try {
+            for (Class<?> clazz : new Class<?>[] { TestConnector.class,
+                ConnectorClassScannerTests.class }) {
+                out.putNextEntry(new JarEntry(clazz.getName().replace('.', '/') + ".class"));
+                InputStream in = getClassFile(clazz);
+                try {
+                    IOUtil.copyFile(in, out);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return bundle;
+    }
+
+    private File createTempDirectory() throws IOException {
+        File dir = File.createTempFile("scanner", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        return dir;
+    }
+
+    private void delete(final File file) {
+        File[] files = file.listFiles();
+        if (null != files) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Deprecated
+    @ConnectorClass(configurationClass = MockConfiguration.class, displayNameKey = "TestConnector",
+            messageCatalogPaths = { "a.Messages", "b.Messages" })
+    public static class TestConnector implements Connector {
+
+        public void dispose() {
+        }
+
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        public void init(Configuration cfg) {
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.script.CompiledScriptCache;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.ConnectorClass;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.testng.annotations.Test;
+
+public class LocalConnectorInfoManagerImplTests {
+
+    @Test
+    public void testConnectorInfoOrder() throws Exception {
+        File dir = createTempDirectory();
+        try {
+            List<URL> bundleURLs = new ArrayList<URL>();
+            for (int i = 0; i < 6; i++) {
+                bundleURLs.add(createBundle(dir, "test" + i).toURI().toURL());
+            }
+            for (String threads : new String[] { "1", "4" }) {
+                System.setProperty(LocalConnectorInfoManagerImpl.BUNDLE_THREADS_PROPERTY, threads);
+                List<ConnectorInfo> infos =
+                        new LocalConnectorInfoManagerImpl(bundleURLs, getClass().getClassLoader())
+                                .getConnectorInfos();
+                assertEquals(infos.size(), 6);
+                for (int i = 0; i < 6; i++) {
+                    assertEquals(infos.get(i).getConnectorKey().getBundleName(), "test" + i);
+                    assertEquals(infos.get(i).getConnectorKey().getConnectorName(),
+                            TestConnector.class.getName());
+                }
+            }
+        } finally {
+            System.clearProperty(LocalConnectorInfoManagerImpl.BUNDLE_THREADS_PROPERTY);
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+        File dir = createTempDirectory();
+        try {
+            LocalConnectorInfoManagerImpl manager =
+                    new LocalConnectorInfoManagerImpl(Arrays.asList(createBundle(dir, "test")
+                            .toURI().toURL()), getClass().getClassLoader());
+            ClassLoader loader =
+                    ((LocalConnectorInfoImpl) manager.getConnectorInfos().get(0))
+                            .getConnectorClass().getClassLoader();
+            assertTrue(loader instanceof BundleClassLoader);
+            CompiledScriptCache cache = CompiledScriptCache.getInstance();
+            cache.get("test", loader, "script", new Callable<Object>() {
+                public Object call() {
+                    return new Object();
+                }
+            });
+            cache.get("test", getClass().getClassLoader(), "script", new Callable<Object>() {
+                public Object call() {
+                    return new Object();
+                }
+            });
+            long misses = cache.getMissCount();
+            manager.dispose();
+            // only the script of the bundle is compiled again
+            cache.get("test", getClass().getClassLoader(), "script", new Callable<Object>() {
+                public Object call() {
+                    return new Object();
+                }
+            });
+            assertEquals(cache.getMissCount(), misses);
+            cache.get("test", loader, "script", new Callable<Object>() {
+                public Object call() {
+                    return new Object();
+                }
+            });
+            assertEquals(cache.getMissCount(), misses + 1);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testExpandedBundleCache() throws Exception {
+        File dir = createTempDirectory();
+        File cacheDir = new File(dir, "cache");
+        try {
+            URL bundle = createBundle(dir, "test").toURI().toURL();
+            WorkingBundleInfo info = LocalConnectorInfoManagerImpl.processURL(bundle, true);
+            String nativeLibrary = info.getImmediateNativeLibraries().get("libtest.so");
+            assertFalse(nativeLibrary.startsWith(cacheDir.getAbsolutePath()));
+
+            System.setProperty(ConnectorClassScanner.CACHE_DIRECTORY_PROPERTY, cacheDir
+                    .getAbsolutePath());
+            info = LocalConnectorInfoManagerImpl.processURL(bundle, true);
+            nativeLibrary = info.getImmediateNativeLibraries().get("libtest.so");
+            assertTrue(nativeLibrary.startsWith(cacheDir.getAbsolutePath()));
+            assertEquals(info.getEmbeddedBundles().size(), 1);
+            assertEquals(info.getConnectorClasses(), new HashSet<String>(Arrays
+                    .asList(TestConnector.class.getName())));
+            assertTrue(info.getImmediateBundleContents().contains("lib/embedded.jar"));
+            assertTrue(info.getImmediateBundleContents().contains("native/libtest.so"));
+            assertEquals(cacheDir.list().length, 2);
+
+            // the expanded bundle is reused
+            File nativeFile = new File(nativeLibrary);
+            assertTrue(nativeFile.setLastModified(1000L));
+            info = LocalConnectorInfoManagerImpl.processURL(bundle, true);
+            assertEquals(info.getImmediateNativeLibraries().get("libtest.so"), nativeLibrary);
+            assertEquals(nativeFile.lastModified(), 1000L);
+            assertEquals(info.getEmbeddedBundles().size(), 1);
+            assertEquals(cacheDir.list().length, 2);
+        } finally {
+            System.clearProperty(ConnectorClassScanner.CACHE_DIRECTORY_PROPERTY);
+            delete(dir);
+        }
+    }
+
+    private File createBundle(final File dir, final String bundleName) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("ConnectorBundle-FrameworkVersion", "1.0");
+        attributes.putValue("ConnectorBundle-Name", bundleName);
+        attributes.putValue("ConnectorBundle-Version", "1.0");
+        File bundle = File.createTempFile("bundle", ".jar", dir);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(bundle), manifest);
+        try {
+            out.putNextEntry(new JarEntry(TestConnector.class.getName().replace('.', '/')
+                    + ".class"));
+            InputStream in =
+                    TestConnector.class.getResourceAsStream("/"
+                            + TestConnector.class.getName().replace('.', '/') + ".class");
+            try {
+                IOUtil.copyFile(in, out);
+            } finally {
+                in.close();
+            }
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("lib/"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("lib/embedded.jar"));
+            ByteArrayOutputStream embedded = new ByteArrayOutputStream();
+            JarOutputStream embeddedOut = new JarOutputStream(embedded, new Manifest());
+            embeddedOut.putNextEntry(new JarEntry("a/b.txt"));
+            embeddedOut.write(1);
+            embeddedOut.close();
+            out.write(embedded.toByteArray());
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("native/libtest.so"));
+            out.write(new byte[] { 1, 2, 3 });
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return bundle;
+    }
+
+    private File createTempDirectory() throws IOException {
+        File dir = File.createTempFile("bundles", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        return dir;
+    }
+
+    private void delete(final File file) {
+        File[] files = file.listFiles();
+        if (null != files) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @ConnectorClass(configurationClass = MockConfiguration.class, displayNameKey = "TestConnector")
+    public static class TestConnector implements Connector {
+
+        public void dispose() {
+        }
+
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        public void init(Configuration cfg) {
+        }
+    }
+}
@@ -1,252 +1,550 @@
-/*
- * ====================
- * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
- *
- * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
- *
- * The contents of this file are subject to the terms of the Common Development
- * and Distribution License("CDDL") (the "License").  You may not use this file
- * except in compliance with the License.
- *
- * You can obtain a copy of the License at
- * http://opensource.org/licenses/cddl1.php
- * See the License for the specific language governing permissions and limitations
- * under the License.
- *
- * When distributing the Covered Code, include this CDDL Header Notice in each file
- * and include the License file at http://opensource.org/licenses/cddl1.php.
- * If applicable, add the following below this CDDL Header, with the fields
- * enclosed by brackets [] replaced by your own identifying information:
- * "Portions Copyrighted [year] [name of copyright owner]"
- * ====================
- */
-package org.identityconnectors.framework.impl.api.local;
-
-import org.identityconnectors.framework.common.serializer.SerializerUtil;
-import org.testng.Assert;
-import org.testng.annotations.Test;
-import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
-import org.identityconnectors.framework.common.exceptions.ConnectorException;
-import org.identityconnectors.framework.impl.api.local.ObjectPool.Statistics;
-
-
-public class ObjectPoolTests {
-
-    private class MyTestConnection  {
-
-        private boolean _isGood = true;
-
-        @Test
-		public void test() {
-            if (!_isGood) {
-                throw new ConnectorException("Connection is bad");
-            }
-        }
-
-        public void dispose() {
-            _isGood = false;
-        }
-
-        public boolean isGood() {
-            return _isGood;
-        }
-    }
-
-    private class MyTestConnectionFactory implements ObjectPoolHandler<MyTestConnection> {
-        private boolean _createBadConnection = false;
-        private int _totalCreatedConnections = 0;
-
-        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
-            ObjectPoolConfiguration configuration = (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
-            //validate it
-            configuration.validate();
-            return configuration;
-        }
-
-        public MyTestConnection makeObject() {
-            _totalCreatedConnections++;
-            MyTestConnection rv = new MyTestConnection();
-            if (_createBadConnection) {
-                rv.dispose();
-            }
-            return rv;
-        }
-        @Test
-        public void testObject(MyTestConnection object) {
-            object.test();
-        }
-
-        public void disposeObject(MyTestConnection object) {
-            object.dispose();
-        }
-
-        public int getTotalCreatedConnections() {
-            return _totalCreatedConnections;
-        }
-
-
-        public void setCreateBadConnection(boolean v) {
-            _createBadConnection = v;
-        }
-
-        public void shutdown() {
-        }
-    }
-
-    private class MyTestThread extends Thread {
-        private final ObjectPool<MyTestConnection> _pool;
-        private final int _numIterations;
-        private Exception _exception;
-        public MyTestThread(ObjectPool<MyTestConnection> pool,
-                int numIterations) {
-            _pool = pool;
-            _numIterations = numIterations;
-        }
-        @Override
-        public void run() {
-            try {
-                for ( int i = 0; i < _numIterations; i++ ) {
-                    ObjectPoolEntry<MyTestConnection> con =
-                        _pool.borrowObject();
-                    Thread.sleep(300);
-                    con.close();
-                }
-            }
-            catch (Exception e) {
-                _exception = e;
-            }
-        }
-        public void shutdown() throws Exception {
-            join();
-            if (_exception != null) {
-                throw _exception;
-            }
-        }
-
-    }
-
-    @Test
-    public void testWithManyThreads() throws Exception {
-        final int NUM_ITERATIONS = 10;
-        final int NUM_THREADS = 10;
-        final int MAX_CONNECTIONS = NUM_THREADS-3; //make sure we get some waiting
-        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
-        config.setMaxObjects(MAX_CONNECTIONS);
-        config.setMaxIdle(MAX_CONNECTIONS);
-        config.setMinIdle(MAX_CONNECTIONS);
-        config.setMinEvictableIdleTimeMillis(60*1000);
-        config.setMaxWait(60*1000);
-        MyTestConnectionFactory fact = new MyTestConnectionFactory();
-
-        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
-
-        MyTestThread [] threads = new MyTestThread[NUM_THREADS];
-        for (int i = 0; i < threads.length; i++) {
-            threads[i] = new MyTestThread(pool,NUM_ITERATIONS);
-            threads[i].start();
-        }
-
-        for (MyTestThread thread : threads) {
-            thread.shutdown();
-        }
-
-        //these should be the same since we never
-        //should have disposed anything
-        Assert.assertEquals(MAX_CONNECTIONS, fact.getTotalCreatedConnections());
-        Statistics stats = pool.getStatistics();
-        Assert.assertEquals(stats.getNumActive(), 0);
-        Assert.assertEquals(MAX_CONNECTIONS, stats.getNumIdle());
-
-        pool.shutdown();
-        stats = pool.getStatistics();
-        Assert.assertEquals(0, stats.getNumActive());
-        Assert.assertEquals(0, stats.getNumIdle());
-
-    }
-
-    @Test
-    public void testBadConnection() throws Exception {
-        final int MAX_CONNECTIONS = 3;
-        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
-        config.setMaxObjects(MAX_CONNECTIONS);
-        config.setMaxIdle(MAX_CONNECTIONS);
-        config.setMinIdle(MAX_CONNECTIONS);
-        config.setMinEvictableIdleTimeMillis(60*1000);
-        config.setMaxWait(60*1000);
-        MyTestConnectionFactory fact = new MyTestConnectionFactory();
-
-        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
-
-        //borrow first connection and return
-        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
-        Assert.assertEquals(1, fact.getTotalCreatedConnections());
-        conn.close();
-        Assert.assertEquals(1, fact.getTotalCreatedConnections());
-
-        //re-borrow same connection and return
-        conn = pool.borrowObject();
-        Assert.assertEquals(1, fact.getTotalCreatedConnections());
-        conn.close();
-        Assert.assertEquals(1, fact.getTotalCreatedConnections());
-
-        //dispose and make sure we get a new connection
-        conn.getPooledObject().dispose();
-        conn = pool.borrowObject();
-        Assert.assertEquals(2, fact.getTotalCreatedConnections());
-        conn.close();
-        Assert.assertEquals(2, fact.getTotalCreatedConnections());
-    }
-
-    @Test
-    public void testIdleCleanup() throws Exception {
-        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
-        config.setMaxObjects(3);
-        config.setMaxIdle(2);
-        config.setMinIdle(1);
-        config.setMinEvictableIdleTimeMillis(3000);
-        config.setMaxWait(60*1000);
-        MyTestConnectionFactory fact = new MyTestConnectionFactory();
-
-        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
-
-        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
-        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
-        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
-
-        Assert.assertEquals(3, fact.getTotalCreatedConnections());
-        conn1.close();
-        Assert.assertEquals(1, pool.getStatistics().getNumIdle());
-        conn2.close();
-        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
-        conn3.close();
-        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
-        Assert.assertEquals(false, conn1.getPooledObject().isGood());
-        Assert.assertEquals(true, conn2.getPooledObject().isGood());
-        Assert.assertEquals(true, conn3.getPooledObject().isGood());
-        Thread.sleep(config.getMinEvictableIdleTimeMillis()+1000);
-        ObjectPoolEntry<MyTestConnection> conn4 = pool.borrowObject();
-        Assert.assertSame(conn3, conn4);
-        Assert.assertEquals(false, conn1.getPooledObject().isGood());
-        Assert.assertEquals(false, conn2.getPooledObject().isGood());
-        Assert.assertEquals(true, conn3.getPooledObject().isGood());
-        Assert.assertEquals(true, conn4.getPooledObject().isGood());
-    }
-
-    @Test
-    public void testCreateBadConnection()
-        throws Exception
-    {
-        MyTestConnectionFactory fact = new MyTestConnectionFactory();
-        fact.setCreateBadConnection(true);
-
-        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,new ObjectPoolConfiguration());
-        try {
-            pool.borrowObject();
-            Assert.fail("expected exception");
-        }
-        catch (ConnectorException e) {
-            Assert.assertEquals("Connection is bad", e.getMessage());
-        }
-    }
-
-}
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.local.ObjectPool.Statistics;
+
+
+public class ObjectPoolTests {
+
+    private class MyTestConnection  {
+
+        private boolean _isGood = true;
+
+        @Test
+		public void test() {
+            if (!_isGood) {
+                throw new ConnectorException("Connection is bad");
+            }
+        }
+
+        public void dispose() {
+            _isGood = false;
+        }
+
+        public boolean isGood() {
+            return _isGood;
+        }
+    }
+
+    private class MyTestConnectionFactory implements ObjectPoolHandler<MyTestConnection> {
+        private boolean _createBadConnection = false;
+        private final AtomicInteger _totalCreatedConnections = new AtomicInteger(0);
+
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            ObjectPoolConfiguration configuration = (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
+            //validate it
+            configuration.validate();
+            return configuration;
+        }
+
+        public MyTestConnection makeObject() {
+            _totalCreatedConnections.incrementAndGet();
+            MyTestConnection rv = new MyTestConnection();
+            if (_createBadConnection) {
+                rv.dispose();
+            }
+            return rv;
+        }
+        @Test
+        public void testObject(MyTestConnection object) {
+            object.test();
+        }
+
+        public void disposeObject(MyTestConnection object) {
+            object.dispose();
+        }
+
+        public int getTotalCreatedConnections() {
+            return _totalCreatedConnections.get();
+        }
+
+
+        public void setCreateBadConnection(boolean v) {
+            _createBadConnection = v;
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    private class MyTestThread extends Thread {
+        private final ObjectPool<MyTestConnection> _pool;
+        private final int _numIterations;
+        private Exception _exception;
+        public MyTestThread(ObjectPool<MyTestConnection> pool,
+                int numIterations) {
+            _pool = pool;
+            _numIterations = numIterations;
+        }
+        @Override
+        public void run() {
+            try {
+                for ( int i = 0; i < _numIterations; i++ ) {
+                    ObjectPoolEntry<MyTestConnection> con =
+                        _pool.borrowObject();
+                    Thread.sleep(300);
+                    con.close();
+                }
+            }
+            catch (Exception e) {
+                _exception = e;
+            }
+        }
+        public void shutdown() throws Exception {
+            join();
+            if (_exception != null) {
+                throw _exception;
+            }
+        }
+
+    }
+
+    @Test
+    public void testWithManyThreads() throws Exception {
+        final int NUM_ITERATIONS = 10;
+        final int NUM_THREADS = 10;
+        final int MAX_CONNECTIONS = NUM_THREADS-3; //make sure we get some waiting
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(MAX_CONNECTIONS);
+        config.setMaxIdle(MAX_CONNECTIONS);
+        config.setMinIdle(MAX_CONNECTIONS);
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setMaxWait(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        MyTestThread [] threads = new MyTestThread[NUM_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new MyTestThread(pool,NUM_ITERATIONS);
+            threads[i].start();
+        }
+
+        for (MyTestThread thread : threads) {
+            thread.shutdown();
+        }
+
+        //these should be the same since we never
+        //should have disposed anything
+        Assert.assertEquals(MAX_CONNECTIONS, fact.getTotalCreatedConnections());
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumActive(), 0);
+        Assert.assertEquals(MAX_CONNECTIONS, stats.getNumIdle());
+
+        pool.shutdown();
+        stats = pool.getStatistics();
+        Assert.assertEquals(0, stats.getNumActive());
+        Assert.assertEquals(0, stats.getNumIdle());
+
+    }
+
+    @Test
+    public void testBadConnection() throws Exception {
+        final int MAX_CONNECTIONS = 3;
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(MAX_CONNECTIONS);
+        config.setMaxIdle(MAX_CONNECTIONS);
+        config.setMinIdle(MAX_CONNECTIONS);
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setMaxWait(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        //borrow first connection and return
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        conn.close();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+
+        //re-borrow same connection and return
+        conn = pool.borrowObject();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        conn.close();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+
+        //dispose and make sure we get a new connection
+        conn.getPooledObject().dispose();
+        conn = pool.borrowObject();
+        Assert.assertEquals(2, fact.getTotalCreatedConnections());
+        conn.close();
+        Assert.assertEquals(2, fact.getTotalCreatedConnections());
+    }
+
+    @Test
+    public void testIdleCleanup() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(3);
+        config.setMaxIdle(2);
+        config.setMinIdle(1);
+        config.setMinEvictableIdleTimeMillis(3000);
+        config.setMaxWait(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+
+        Assert.assertEquals(3, fact.getTotalCreatedConnections());
+        conn1.close();
+        Assert.assertEquals(1, pool.getStatistics().getNumIdle());
+        conn2.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        conn3.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        Assert.assertEquals(false, conn1.getPooledObject().isGood());
+        Assert.assertEquals(true, conn2.getPooledObject().isGood());
+        Assert.assertEquals(true, conn3.getPooledObject().isGood());
+        Thread.sleep(config.getMinEvictableIdleTimeMillis()+1000);
+        ObjectPoolEntry<MyTestConnection> conn4 = pool.borrowObject();
+        Assert.assertSame(conn3, conn4);
+        Assert.assertEquals(false, conn1.getPooledObject().isGood());
+        Assert.assertEquals(false, conn2.getPooledObject().isGood());
+        Assert.assertEquals(true, conn3.getPooledObject().isGood());
+        Assert.assertEquals(true, conn4.getPooledObject().isGood());
+    }
+
+    @Test
+    public void testMaintenance() throws Exception {
+        testMaintenance(false);
+        testMaintenance(true);
+    }
+
+    private void testMaintenance(boolean lockFree) throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(5);
+        config.setMaxIdle(5);
+        config.setMinIdle(2);
+        config.setMinEvictableIdleTimeMillis(500);
+        config.setLockFree(lockFree);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        //pre-warm the pool
+        pool.maintain();
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumIdle(), 2);
+        Assert.assertEquals(stats.getCreateCount(), 2);
+        Assert.assertTrue(stats.getMaxCreateTime() >= stats.getAverageCreateTime());
+
+        //the pre-warmed connections are borrowed first
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn4 = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 4);
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        conn4.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 4);
+
+        //evict the stale connections but keep the minimum
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getStatistics().getNumIdle() > 2 && System.currentTimeMillis() < deadline) {
+            pool.maintain();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 4);
+
+        pool.shutdown();
+        pool.maintain();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+    }
+
+    @Test
+    public void testMaintainer() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMinIdle(2);
+        final CountDownLatch created = new CountDownLatch(2);
+        final List<String> threads = new CopyOnWriteArrayList<String>();
+        final List<ClassLoader> loaders = new CopyOnWriteArrayList<ClassLoader>();
+        MyTestConnectionFactory fact = new MyTestConnectionFactory() {
+            public MyTestConnection makeObject() {
+                threads.add(Thread.currentThread().getName());
+                loaders.add(Thread.currentThread().getContextClassLoader());
+                created.countDown();
+                return super.makeObject();
+            }
+        };
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        System.setProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY, "10");
+        try {
+            ObjectPoolMaintainer.register(pool);
+        } finally {
+            System.clearProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY);
+        }
+        try {
+            Assert.assertTrue(ObjectPoolMaintainer.isRegistered(pool));
+            Assert.assertTrue(created.await(10, TimeUnit.SECONDS));
+            //the maintenance has its own thread
+            Assert.assertEquals(threads.get(0), "ObjectPool-Maintenance");
+            //the thread does not keep the class loader of the registering thread
+            Assert.assertNull(loaders.get(0));
+        } finally {
+            ObjectPoolMaintainer.unregister(pool);
+        }
+        Assert.assertFalse(ObjectPoolMaintainer.isRegistered(pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCreateOutsideLock() throws Exception {
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory() {
+            public MyTestConnection makeObject() {
+                if (creating.getCount() > 0) {
+                    creating.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.makeObject();
+            }
+        };
+        final ObjectPool<MyTestConnection> pool =
+                new ObjectPool<MyTestConnection>(fact, new ObjectPoolConfiguration());
+        Thread slow = new Thread() {
+            public void run() {
+                pool.borrowObject();
+            }
+        };
+        slow.start();
+        Assert.assertTrue(creating.await(10, TimeUnit.SECONDS));
+        try {
+            //the slow connection does not block the other borrowers
+            ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+            Assert.assertTrue(conn.getPooledObject().isGood());
+            Assert.assertEquals(release.getCount(), 1);
+        } finally {
+            release.countDown();
+            slow.join();
+        }
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+    }
+
+    @Test
+    public void testCreateBadConnection()
+        throws Exception
+    {
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+        fact.setCreateBadConnection(true);
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,new ObjectPoolConfiguration());
+        try {
+            pool.borrowObject();
+            Assert.fail("expected exception");
+        }
+        catch (ConnectorException e) {
+            Assert.assertEquals("Connection is bad", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLockFreeWithManyThreads() throws Exception {
+        final int NUM_ITERATIONS = 10;
+        final int NUM_THREADS = 10;
+        final int MAX_CONNECTIONS = NUM_THREADS-3; //make sure we get some waiting
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(MAX_CONNECTIONS);
+        config.setMaxIdle(MAX_CONNECTIONS);
+        config.setMinIdle(MAX_CONNECTIONS);
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setMaxWait(60*1000);
+        config.setLockFree(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+        Assert.assertTrue(pool instanceof LockFreeObjectPool);
+
+        MyTestThread [] threads = new MyTestThread[NUM_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new MyTestThread(pool,NUM_ITERATIONS);
+            threads[i].start();
+        }
+
+        for (MyTestThread thread : threads) {
+            thread.shutdown();
+        }
+
+        //these should be the same since we never
+        //should have disposed anything
+        Assert.assertEquals(MAX_CONNECTIONS, fact.getTotalCreatedConnections());
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumActive(), 0);
+        Assert.assertEquals(MAX_CONNECTIONS, stats.getNumIdle());
+        Assert.assertEquals(stats.getBorrowCount(), NUM_THREADS * NUM_ITERATIONS);
+        Assert.assertTrue(stats.getWaitCount() > 0);
+        Assert.assertTrue(stats.getMaxWaitTime() >= stats.getAverageWaitTime());
+
+        pool.shutdown();
+        stats = pool.getStatistics();
+        Assert.assertEquals(0, stats.getNumActive());
+        Assert.assertEquals(0, stats.getNumIdle());
+    }
+
+    @Test
+    public void testLockFreeBadConnection() throws Exception {
+        final int MAX_CONNECTIONS = 3;
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(MAX_CONNECTIONS);
+        config.setMaxIdle(MAX_CONNECTIONS);
+        config.setMinIdle(MAX_CONNECTIONS);
+        config.setMinEvictableIdleTimeMillis(60*1000);
+        config.setMaxWait(60*1000);
+        config.setLockFree(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        //borrow first connection and return
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        conn.close();
+
+        //re-borrow same connection and return
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        Assert.assertSame(conn, conn2);
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        conn2.close();
+
+        //dispose and make sure we get a new connection
+        conn.getPooledObject().dispose();
+        conn = pool.borrowObject();
+        Assert.assertEquals(2, fact.getTotalCreatedConnections());
+        conn.close();
+        Assert.assertEquals(1, pool.getStatistics().getNumIdle());
+    }
+
+    @Test
+    public void testLockFreeDoubleReturn() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setLockFree(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        for (int i = 0; i < 100; i++) {
+            final ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread other = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        conn.close();
+                    } catch (Exception e) {
+                        // the assertions below fail
+                    }
+                }
+            };
+            other.start();
+            start.countDown();
+            conn.close();
+            other.join();
+            //the concurrent returns are counted once
+            Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        }
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 1);
+    }
+
+    @Test
+    public void testLockFreeIdleQueue() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setLockFree(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        final ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        for (int i = 0; i < 100; i++) {
+            //this thread claims the object it returned
+            conn.close();
+            conn = pool.borrowObject();
+        }
+        conn.close();
+        final AtomicReference<ObjectPoolEntry<MyTestConnection>> other =
+                new AtomicReference<ObjectPoolEntry<MyTestConnection>>();
+        Thread thread = new Thread() {
+            public void run() {
+                //another thread takes it from the idle queue
+                other.set(pool.borrowObject());
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertSame(other.get(), conn);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+        //the object is queued once, there is no other idle object
+        conn = pool.borrowObject();
+        Assert.assertNotSame(conn, other.get());
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+        other.get().close();
+        conn.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+    }
+
+    @Test
+    public void testMinTestInterval() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMinTestIntervalMillis(60*1000);
+        config.setLockFree(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = ObjectPool.newInstance(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        conn.close();
+
+        //the connection was tested recently so the pool does not notice it's bad
+        conn.getPooledObject().dispose();
+        conn = pool.borrowObject();
+        Assert.assertEquals(1, fact.getTotalCreatedConnections());
+        Assert.assertFalse(conn.getPooledObject().isGood());
+        conn.close();
+    }
+
+}
@@ -31,12 +31,17 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.framework.api.Observer;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.BatchToken;
@@ -45,11 +50,18 @@ import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.Subscription;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.api.operations.batch.BatchBuilder;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl.ReferenceCounter;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
 import org.identityconnectors.mockconnector.MockAllOpsConnector;
 import org.identityconnectors.mockconnector.MockAllOpsHandleBatchConnector;
 import org.identityconnectors.mockconnector.MockAllOpsSyncBatchConnector;
 import org.identityconnectors.mockconnector.MockAllOpsTokenBatchConnector;
+import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.spi.PoolableConnector;
+import org.identityconnectors.framework.spi.operations.CreateOp;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
@@ -201,7 +213,157 @@ public class BatchImplTests {
         assertFalse(batchError.get());
     }
 
-    private void sleep(long millis) {
+    @Test
+    public void testParallelUseCase0() {
+        final ObjectPool<PoolableConnector> pool = newPool();
+        try {
+            final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+            final List<Object> results = executeBatch(pool, 4, 20, -1, false, ids);
+
+            assertEquals(results.size(), 20);
+            assertEquals(ids.size(), 20);
+            int complete = 0;
+            for (Object result : results) {
+                BatchResult batchResult = (BatchResult) result;
+                assertEquals(((Uid) batchResult.getResult()).getUidValue(),
+                        "uid" + batchResult.getResultId());
+                if (batchResult.getComplete()) {
+                    complete++;
+                }
+            }
+            assertEquals(complete, 1);
+            assertTrue(((BatchResult) results.get(19)).getComplete());
+            assertTrue(CreateConnector.INSTANCES.size() > 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelFailOnError() {
+        final ObjectPool<PoolableConnector> pool = newPool();
+        try {
+            final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+            final List<Object> results = executeBatch(pool, 4, 50, 5, false, ids);
+
+            // the error is the last result and no more tasks started
+            assertTrue(results.get(results.size() - 1) instanceof ConnectorException);
+            assertTrue(results.size() < 50);
+            for (int i = 0; i < results.size() - 1; i++) {
+                assertFalse(((BatchResult) results.get(i)).getComplete());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelRequireSerial() {
+        final ObjectPool<PoolableConnector> pool = newPool();
+        try {
+            final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+            final List<Object> results = executeBatch(pool, 4, 10, -1, true, ids);
+
+            assertEquals(results.size(), 10);
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(((BatchResult) results.get(i)).getResultId(), String.valueOf(i));
+            }
+            assertEquals(CreateConnector.INSTANCES.size(), 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<Object> executeBatch(final ObjectPool<PoolableConnector> pool,
+            final int parallelism, final int count, final int failingTask,
+            final boolean requireSerial, final Set<String> ids) {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put(OperationOptions.OP_FAIL_ON_ERROR, Boolean.TRUE);
+        if (requireSerial) {
+            map.put(OperationOptions.OP_REQUIRE_SERIAL, "true");
+        }
+        OperationOptions options = new OperationOptions(map);
+        BatchBuilder tasks = new BatchBuilder();
+        for (int i = 0; i < count; i++) {
+            tasks.addCreateOp(ObjectClass.ACCOUNT, CollectionUtil.newSet(AttributeBuilder.build(
+                    "index", i), AttributeBuilder.build("fail", i == failingTask)), options);
+        }
+        CreateConnector.INSTANCES.clear();
+        BatchImpl impl = new BatchImpl(null, new CreateConnector(), referenceCounter, parallelism) {
+            ObjectPool<PoolableConnector> getPool() {
+                return pool;
+            }
+        };
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        impl.executeBatch(tasks.build(), new Observer<BatchResult>() {
+            public void onCompleted() {
+            }
+
+            public void onError(Throwable e) {
+                results.add(e);
+            }
+
+            public void onNext(BatchResult batchResult) {
+                ids.add(batchResult.getResultId());
+                results.add(batchResult);
+            }
+        }, options);
+        return results;
+    }
+
+    private ObjectPool<PoolableConnector> newPool() {
+        return new ObjectPool<PoolableConnector>(new ObjectPoolHandler<PoolableConnector>() {
+            public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+                return original;
+            }
+
+            public PoolableConnector makeObject() {
+                return new CreateConnector();
+            }
+
+            public void testObject(PoolableConnector object) {
+            }
+
+            public void disposeObject(PoolableConnector object) {
+            }
+
+            public void shutdown() {
+            }
+        }, new ObjectPoolConfiguration());
+    }
+
+    public static class CreateConnector implements PoolableConnector, CreateOp {
+
+        static final Set<CreateConnector> INSTANCES =
+                Collections.synchronizedSet(new HashSet<CreateConnector>());
+
+        public Uid create(ObjectClass objectClass, Set<Attribute> createAttributes,
+                OperationOptions options) {
+            INSTANCES.add(this);
+            Object index =
+                    AttributeUtil.getSingleValue(AttributeUtil.find("index", createAttributes));
+            if (AttributeUtil.getBooleanValue(AttributeUtil.find("fail", createAttributes))) {
+                throw new ConnectorException("Failed to create " + index);
+            }
+            sleep(20);
+            return new Uid("uid" + index);
+        }
+
+        public void checkAlive() {
+        }
+
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        public void init(Configuration cfg) {
+        }
+
+        public void dispose() {
+        }
+    }
+
+    private static void sleep(long millis) {
         try {
             Thread.sleep(millis);
         } catch (Exception e) { /**/ }
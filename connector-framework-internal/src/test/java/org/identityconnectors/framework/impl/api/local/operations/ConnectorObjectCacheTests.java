@@ -0,0 +1,168 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.testng.annotations.Test;
+
+public class ConnectorObjectCacheTests {
+
+    @Test
+    public void testNewInstance() {
+        final ResultsHandlerConfiguration configuration = new ResultsHandlerConfiguration();
+        assertNull(ConnectorObjectCache.newInstance(configuration));
+        configuration.setObjectCacheTimeToLive(100);
+        assertNotNull(ConnectorObjectCache.newInstance(configuration));
+    }
+
+    @Test
+    public void testGetImpl() {
+        final ConnectorObjectCache cache = new ConnectorObjectCache(1, TimeUnit.HOURS, 10);
+        final CountingSearchApiOp search = new CountingSearchApiOp();
+        final GetImpl get = new GetImpl(search, cache);
+
+        final ConnectorObject object = get.getObject(ObjectClass.ACCOUNT, new Uid("1"), null);
+        assertSame(get.getObject(ObjectClass.ACCOUNT, new Uid("1"), null), object);
+        assertEquals(search.count, 1);
+        assertEquals(cache.getHits(), 1);
+
+        // the attributes to get are part of the key
+        final OperationOptions attributesToGet =
+                new OperationOptionsBuilder().setAttributesToGet("a", "b").build();
+        get.getObject(ObjectClass.ACCOUNT, new Uid("1"), attributesToGet);
+        get.getObject(ObjectClass.ACCOUNT, new Uid("1"), new OperationOptionsBuilder()
+                .setAttributesToGet("b", "a").build());
+        assertEquals(search.count, 2);
+        get.getObject(ObjectClass.GROUP, new Uid("1"), null);
+        assertEquals(search.count, 3);
+
+        // the other options are not cached
+        final OperationOptions other =
+                new OperationOptionsBuilder().setOption("runAsUser", "admin").build();
+        get.getObject(ObjectClass.ACCOUNT, new Uid("1"), other);
+        get.getObject(ObjectClass.ACCOUNT, new Uid("1"), other);
+        assertEquals(search.count, 5);
+
+        // the unknown objects are not cached
+        assertNull(get.getObject(ObjectClass.ACCOUNT, new Uid("unknown"), null));
+        assertNull(get.getObject(ObjectClass.ACCOUNT, new Uid("unknown"), null));
+        assertEquals(search.count, 7);
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ConnectorObjectCache cache = new ConnectorObjectCache(1, TimeUnit.HOURS, 10);
+        final OperationOptions attributesToGet =
+                new OperationOptionsBuilder().setAttributesToGet("a").build();
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("1"), null, newObject("1"));
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("1"), attributesToGet,
+                newObject("1"));
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("2"), null, newObject("2"));
+        assertEquals(cache.size(), 2);
+
+        cache.invalidate(ObjectClass.ACCOUNT, new Uid("1"), null);
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1"), null));
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1"), attributesToGet));
+        assertNotNull(cache.get(ObjectClass.ACCOUNT, new Uid("2"), null));
+
+        // the object read before the change is not cached
+        final long version = cache.getVersion();
+        cache.invalidate(ObjectClass.ACCOUNT, new Uid("2"));
+        cache.put(version, ObjectClass.ACCOUNT, new Uid("2"), null, newObject("2"));
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("2"), null));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final ConnectorObjectCache cache = new ConnectorObjectCache(10, TimeUnit.MILLISECONDS, 10);
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("1"), null, newObject("1"));
+        Thread.sleep(50);
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("1"), null));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testMaxSize() {
+        final ConnectorObjectCache cache = new ConnectorObjectCache(1, TimeUnit.HOURS, 2);
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("1"), null, newObject("1"));
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("2"), null, newObject("2"));
+        // the least recently used is dropped
+        assertNotNull(cache.get(ObjectClass.ACCOUNT, new Uid("1"), null));
+        cache.put(cache.getVersion(), ObjectClass.ACCOUNT, new Uid("3"), null, newObject("3"));
+        assertEquals(cache.size(), 2);
+        assertNotNull(cache.get(ObjectClass.ACCOUNT, new Uid("1"), null));
+        assertNull(cache.get(ObjectClass.ACCOUNT, new Uid("2"), null));
+    }
+
+    @Test
+    public void testIsCacheable() {
+        final ConnectorObjectCache cache = new ConnectorObjectCache(1, TimeUnit.HOURS, 2);
+        assertTrue(cache.isCacheable(null));
+        assertTrue(cache.isCacheable(new OperationOptionsBuilder().build()));
+        assertTrue(cache.isCacheable(new OperationOptionsBuilder().setAttributesToGet("a")
+                .build()));
+        assertFalse(cache.isCacheable(new OperationOptionsBuilder().setAttributesToGet("a")
+                .setOption("x", "y").build()));
+    }
+
+    private static ConnectorObject newObject(final String uid) {
+        return new ConnectorObjectBuilder().setUid(uid).setName(uid).build();
+    }
+
+    private static class CountingSearchApiOp implements SearchApiOp {
+        private int count = 0;
+
+        public SearchResult search(ObjectClass objectClass, Filter filter,
+                ResultsHandler handler, OperationOptions options) {
+            count++;
+            final Uid uid = (Uid) ((EqualsFilter) filter).getAttribute();
+            if (!"unknown".equals(uid.getUidValue())) {
+                handler.handle(new ConnectorObjectBuilder().setObjectClass(objectClass).setUid(
+                        uid).setName(uid.getUidValue()).build());
+            }
+            return new SearchResult();
+        }
+    }
+}
@@ -24,26 +24,35 @@
 package org.identityconnectors.framework.impl.api.local.operations;
 
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.FilteredResultsHandlerVisitor;
 import org.identityconnectors.framework.common.objects.filter.PresenceFilter;
 import org.testng.annotations.Test;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
+import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.spi.AttributeNormalizer;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 import org.identityconnectors.test.common.TestHelpers;
 import org.testng.Assert;
@@ -89,6 +98,67 @@ public class SearchImplTests {
         Assert.assertEquals(expecteList, actual);
     }
 
+    @Test
+    public void testEliminateDupsCompact() {
+        List<List<ConnectorObject>> main = new ArrayList<List<ConnectorObject>>();
+        List<ConnectorObject> expected = new ArrayList<ConnectorObject>();
+        for (int q = 0; q < 3; q++) {
+            List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+            for (int i = q * 1000; i < q * 1000 + 2000; i++) {
+                data.add(createObject(i));
+                if (i >= expected.size()) {
+                    expected.add(createObject(i));
+                }
+            }
+            main.add(data);
+        }
+        ResultsHandlerConfiguration config = new ResultsHandlerConfiguration();
+        config.setEnableCompactDuplicateFilter(true);
+        config.setDuplicateFilterSpillThreshold(1000);
+        final List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+        SearchImpl.rawSearch(new DuplicateProvider(), ObjectClass.ACCOUNT, new MockFilter(main),
+                new SearchResultsHandler() {
+                    public void handleResult(SearchResult result) {
+                    }
+
+                    public boolean handle(ConnectorObject connectorObject) {
+                        return actual.add(connectorObject);
+                    }
+                }, null, config);
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testUidFingerprintSet() {
+        UidFingerprintSet set = new UidFingerprintSet(5000);
+        Set<File> spillFiles = new LinkedHashSet<File>();
+        try {
+            for (int i = 0; i < 20000; i++) {
+                Assert.assertTrue(set.add("uid=" + i + ",ou=people"));
+                if (set.isSpilled()) {
+                    spillFiles.add(set.getSpillFile());
+                }
+            }
+            // the file of the smaller table is deleted on resize
+            Assert.assertTrue(spillFiles.size() > 1);
+            for (File file : spillFiles) {
+                Assert.assertEquals(file.exists(), file.equals(set.getSpillFile()));
+            }
+            for (int i = 0; i < 20000; i++) {
+                Assert.assertFalse(set.add("uid=" + i + ",ou=people"));
+            }
+            Assert.assertTrue(set.add(""));
+            Assert.assertFalse(set.add(""));
+            Assert.assertEquals(set.size(), 20001);
+            Assert.assertTrue(set.isSpilled());
+        } finally {
+            set.close();
+        }
+        for (File file : spillFiles) {
+            Assert.assertFalse(file.exists());
+        }
+    }
+
     @Test
     public void testAttrsToGetQuery() {
         // create duplicate data..
@@ -118,6 +188,86 @@ public class SearchImplTests {
         Assert.assertEquals(expecteList, actual);
     }
 
+    @Test
+    public void testSearchResultsPipeline() {
+        List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 10; i++) {
+            ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+            bld.setUid("" + i);
+            bld.setName("name" + i);
+            bld.addAttribute("a", "a" + (i % 3));
+            bld.addAttribute("b", "B" + (i % 2));
+            if (i % 4 != 0) {
+                bld.addAttribute("c", i);
+            }
+            data.add(bld.build());
+        }
+        AttributeNormalizer upperCase = new AttributeNormalizer() {
+            public Attribute normalizeAttribute(ObjectClass oclass, Attribute attribute) {
+                Object value = AttributeUtil.getSingleValue(attribute);
+                if (value instanceof String) {
+                    return AttributeBuilder.build(attribute.getName(), ((String) value)
+                            .toUpperCase());
+                }
+                return attribute;
+            }
+        };
+        ObjectNormalizerFacade[] normalizers =
+                new ObjectNormalizerFacade[] { null,
+                    new ObjectNormalizerFacade(ObjectClass.ACCOUNT, null),
+                    new ObjectNormalizerFacade(ObjectClass.ACCOUNT, upperCase) };
+        Filter[] filters =
+                new Filter[] { null, FilterBuilder.equalTo(AttributeBuilder.build("A", "A1")),
+                    FilterBuilder.or(FilterBuilder.startsWith(AttributeBuilder.build("b", "b0")),
+                            FilterBuilder.not(FilterBuilder.present("c"))),
+                    FilterBuilder.greaterThan(AttributeBuilder.build("c", 4)) };
+        String[][] attributesToGet =
+                new String[][] { null, new String[0], new String[] { "a" },
+                    new String[] { "A", "b", "missing" }, new String[] { Uid.NAME, "c" } };
+        for (ObjectNormalizerFacade normalizer : normalizers) {
+            for (Filter filter : filters) {
+                for (boolean caseIgnore : new boolean[] { false, true }) {
+                    for (String[] attrsToGet : attributesToGet) {
+                        Filter normalizedFilter =
+                                null != normalizer ? normalizer.normalizeFilter(filter) : filter;
+
+                        final List<ConnectorObject> expected = new ArrayList<ConnectorObject>();
+                        ResultsHandler chain = new ResultsHandler() {
+                            public boolean handle(ConnectorObject obj) {
+                                return expected.add(obj);
+                            }
+                        };
+                        if (null != normalizer) {
+                            chain = new NormalizingResultsHandler(chain, normalizer);
+                        }
+                        chain =
+                                new FilteredResultsHandler(chain, FilteredResultsHandlerVisitor
+                                        .wrapFilter(normalizedFilter, caseIgnore));
+                        if (null != attrsToGet && attrsToGet.length > 0) {
+                            chain =
+                                    new SearchImpl.AttributesToGetSearchResultsHandler(chain,
+                                            attrsToGet);
+                        }
+
+                        final List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+                        ResultsHandler pipeline =
+                                new SearchResultsPipeline(new ResultsHandler() {
+                                    public boolean handle(ConnectorObject obj) {
+                                        return actual.add(obj);
+                                    }
+                                }, normalizer, normalizedFilter, caseIgnore, attrsToGet);
+
+                        for (ConnectorObject obj : data) {
+                            chain.handle(obj);
+                            pipeline.handle(obj);
+                        }
+                        Assert.assertEquals(actual, expected);
+                    }
+                }
+            }
+        }
+    }
+
     ConnectorObject createObject(int uid) {
         ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
         bld.setUid("" + uid);
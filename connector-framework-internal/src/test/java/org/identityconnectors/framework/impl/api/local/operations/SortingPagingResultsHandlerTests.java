@@ -0,0 +1,279 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
+import org.testng.annotations.Test;
+
+public class SortingPagingResultsHandlerTests {
+
+    private static final int COUNT = 50;
+
+    private static List<ConnectorObject> createObjects() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < COUNT; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(String.format("uid%02d", i));
+            builder.setName("name" + i);
+            if (i % 5 != 0) {
+                builder.addAttribute(AttributeBuilder.build("rank", i % 7));
+            }
+            objects.add(builder.build());
+        }
+        // the connector returns them in any order
+        Collections.shuffle(objects, new java.util.Random(7));
+        return objects;
+    }
+
+    /**
+     * Descending rank, the objects without rank last, then by Uid.
+     */
+    private static List<ConnectorObject> expected(List<ConnectorObject> objects) {
+        List<ConnectorObject> sorted = new ArrayList<ConnectorObject>(objects);
+        Collections.sort(sorted, new Comparator<ConnectorObject>() {
+            public int compare(ConnectorObject o1, ConnectorObject o2) {
+                Integer r1 = rank(o1);
+                Integer r2 = rank(o2);
+                if (r1 == null || r2 == null) {
+                    if (r1 != r2) {
+                        return r1 == null ? 1 : -1;
+                    }
+                } else if (!r1.equals(r2)) {
+                    return r2.compareTo(r1);
+                }
+                return o1.getUid().getUidValue().compareTo(o2.getUid().getUidValue());
+            }
+        });
+        return sorted;
+    }
+
+    private static Integer rank(ConnectorObject object) {
+        return null != object.getAttributeByName("rank") ? (Integer) object.getAttributeByName(
+                "rank").getValue().get(0) : null;
+    }
+
+    private static SearchResult search(List<ConnectorObject> objects, OperationOptions options,
+            int spillThreshold, final List<ConnectorObject> actual) {
+        return search(objects, options, spillThreshold, SortingPagingResultsHandler.MAX_FAN_IN,
+                new ResultsHandler() {
+                    public boolean handle(ConnectorObject object) {
+                        return actual.add(object);
+                    }
+                });
+    }
+
+    private static SearchResult search(List<ConnectorObject> objects, OperationOptions options,
+            int spillThreshold, int maxFanIn, ResultsHandler resultsHandler) {
+        SortingPagingResultsHandler handler =
+                new SortingPagingResultsHandler(resultsHandler, options, spillThreshold, maxFanIn);
+        try {
+            for (ConnectorObject object : objects) {
+                assertTrue(handler.handle(object));
+            }
+            return handler.complete();
+        } finally {
+            handler.dispose();
+        }
+    }
+
+    @Test
+    public void testSort() {
+        List<ConnectorObject> objects = createObjects();
+        OperationOptions options =
+                new OperationOptionsBuilder().setSortKeys(SortKey.descendingOrder("rank"))
+                        .build();
+        for (int spillThreshold : new int[] { 0, 7, COUNT }) {
+            List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+            SearchResult result = search(objects, options, spillThreshold, actual);
+            assertEquals(actual, expected(objects), "spillThreshold=" + spillThreshold);
+            assertNull(result.getPagedResultsCookie());
+        }
+    }
+
+    @Test
+    public void testPagedResultsCookie() {
+        List<ConnectorObject> objects = createObjects();
+        for (int spillThreshold : new int[] { 0, 3, 100 }) {
+            List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+            String cookie = null;
+            int pages = 0;
+            do {
+                OperationOptionsBuilder builder = new OperationOptionsBuilder();
+                builder.setSortKeys(SortKey.descendingOrder("rank")).setPageSize(7);
+                if (null != cookie) {
+                    builder.setPagedResultsCookie(cookie);
+                }
+                List<ConnectorObject> page = new ArrayList<ConnectorObject>();
+                SearchResult result = search(objects, builder.build(), spillThreshold, page);
+                actual.addAll(page);
+                pages++;
+                assertTrue(page.size() <= 7);
+                assertEquals(result.getTotalPagedResults(), SearchResult.NO_COUNT);
+                assertEquals(result.getRemainingPagedResults(), COUNT - actual.size());
+                cookie = result.getPagedResultsCookie();
+            } while (cookie != null);
+            assertEquals(pages, (COUNT + 6) / 7);
+            assertEquals(actual, expected(objects), "spillThreshold=" + spillThreshold);
+        }
+    }
+
+    @Test
+    public void testPagedResultsOffset() {
+        List<ConnectorObject> objects = createObjects();
+        for (int spillThreshold : new int[] { 0, 3 }) {
+            OperationOptions options =
+                    new OperationOptionsBuilder().setPageSize(5).setPagedResultsOffset(10)
+                            .build();
+            List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+            SearchResult result = search(objects, options, spillThreshold, actual);
+            // ordered by Uid without sort keys
+            List<ConnectorObject> expected = new ArrayList<ConnectorObject>();
+            for (int i = 10; i < 15; i++) {
+                for (ConnectorObject object : objects) {
+                    if (object.getUid().getUidValue().equals(String.format("uid%02d", i))) {
+                        expected.add(object);
+                    }
+                }
+            }
+            assertEquals(actual, expected);
+            assertEquals(result.getRemainingPagedResults(), COUNT - 15);
+            assertEquals(result.getTotalPagedResults(), SearchResult.NO_COUNT);
+        }
+    }
+
+    @Test
+    public void testMultiLevelMerge() {
+        List<ConnectorObject> objects = createObjects();
+        OperationOptions options =
+                new OperationOptionsBuilder().setSortKeys(SortKey.descendingOrder("rank"))
+                        .build();
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        Set<String> before = new HashSet<String>(Arrays.asList(tmp.list()));
+        // 25 runs merged 3 at a time
+        final List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+        final Set<String> during = new HashSet<String>();
+        search(objects, options, 2, 3, new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                if (actual.isEmpty()) {
+                    during.addAll(Arrays.asList(new File(System.getProperty("java.io.tmpdir"))
+                            .list()));
+                }
+                return actual.add(object);
+            }
+        });
+        assertEquals(actual, expected(objects));
+        during.removeAll(before);
+        int runs = 0;
+        for (String name : during) {
+            if (name.startsWith("sort") && name.endsWith(".tmp")) {
+                runs++;
+            }
+        }
+        assertTrue(runs > 0 && runs < 3, "runs=" + runs);
+        Set<String> after = new HashSet<String>(Arrays.asList(tmp.list()));
+        after.removeAll(before);
+        for (String name : after) {
+            assertFalse(name.startsWith("sort") && name.endsWith(".tmp"), name);
+        }
+    }
+
+    @Test
+    public void testHandlerStopsEarly() {
+        List<ConnectorObject> objects = createObjects();
+        for (int spillThreshold : new int[] { 0, 3 }) {
+            final List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+            OperationOptions options =
+                    new OperationOptionsBuilder().setSortKeys(SortKey.descendingOrder("rank"))
+                            .setPageSize(7).build();
+            SearchResult result =
+                    search(objects, options, spillThreshold, SortingPagingResultsHandler.MAX_FAN_IN,
+                            new ResultsHandler() {
+                                public boolean handle(ConnectorObject object) {
+                                    actual.add(object);
+                                    return actual.size() < 3;
+                                }
+                            });
+            assertEquals(actual, expected(objects).subList(0, 3));
+            // the next page starts after the last handled object
+            assertEquals(result.getRemainingPagedResults(), COUNT - 3);
+            options =
+                    new OperationOptionsBuilder().setSortKeys(SortKey.descendingOrder("rank"))
+                            .setPageSize(7).setPagedResultsCookie(
+                                    result.getPagedResultsCookie()).build();
+            actual.clear();
+            result = search(objects, options, spillThreshold, actual);
+            assertEquals(actual, expected(objects).subList(3, 10));
+            assertEquals(result.getRemainingPagedResults(), COUNT - 10);
+        }
+    }
+
+    @Test
+    public void testConnectorOptions() {
+        OperationOptions options =
+                new OperationOptionsBuilder().setAttributesToGet("mail", "RANK").setSortKeys(
+                        SortKey.ascendingOrder("rank"), SortKey.ascendingOrder("sn"))
+                        .setPageSize(10).setPagedResultsOffset(1).setPagedResultsCookie("c")
+                        .build();
+        assertTrue(SortingPagingResultsHandler.isRequested(options));
+        assertFalse(SortingPagingResultsHandler.isRequested(new OperationOptionsBuilder()
+                .build()));
+        OperationOptions connectorOptions = SortingPagingResultsHandler.toConnectorOptions(options);
+        assertNull(connectorOptions.getSortKeys());
+        assertNull(connectorOptions.getPageSize());
+        assertNull(connectorOptions.getPagedResultsOffset());
+        assertNull(connectorOptions.getPagedResultsCookie());
+        assertEquals(Arrays.asList(connectorOptions.getAttributesToGet()), Arrays.asList("mail",
+                "RANK", "sn"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCookie() {
+        OperationOptions options =
+                new OperationOptionsBuilder().setPageSize(10).setPagedResultsCookie("invalid")
+                        .build();
+        search(createObjects(), options, 0, new ArrayList<ConnectorObject>());
+    }
+}
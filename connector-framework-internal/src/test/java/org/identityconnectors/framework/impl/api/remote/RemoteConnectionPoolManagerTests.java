@@ -0,0 +1,320 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolMaintainer;
+import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RemoteConnectionPoolManagerTests {
+
+    /**
+     * Answers the {@link EchoMessage}s like the legacy connector server and
+     * counts the connections.
+     */
+    private static class EchoServer extends Thread {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger accepted = new AtomicInteger(0);
+        private final AtomicInteger closed = new AtomicInteger(0);
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+        private volatile boolean failEcho = false;
+
+        EchoServer() throws IOException {
+            super("EchoServer");
+            setDaemon(true);
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    accepted.incrementAndGet();
+                    sockets.add(socket);
+                    Thread thread = new Thread() {
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            RemoteFrameworkConnection connection = new RemoteFrameworkConnection(socket);
+            try {
+                while (true) {
+                    // locale, key and the request
+                    connection.readObject();
+                    connection.readObject();
+                    Object request = connection.readObject();
+                    if (failEcho) {
+                        connection.writeObject("unexpected");
+                    } else {
+                        connection.writeObject(new EchoMessage(((EchoMessage) request)
+                                .getObject(), null));
+                    }
+                    connection.flush();
+                }
+            } catch (RuntimeException e) {
+                connection.abort();
+                closed.incrementAndGet();
+            }
+        }
+
+        /**
+         * Drops the open connections like a restarted server.
+         */
+        void closeConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        void shutdown() throws IOException {
+            serverSocket.close();
+        }
+    }
+
+    private EchoServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = new EchoServer();
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopServer() throws Exception {
+        RemoteConnectionPoolManager.dispose();
+        server.shutdown();
+    }
+
+    private RemoteFrameworkConnectionInfo createConnectionInfo(ObjectPoolConfiguration config) {
+        return createConnectionInfo(config, 0L);
+    }
+
+    private RemoteFrameworkConnectionInfo createConnectionInfo(ObjectPoolConfiguration config,
+            long heartbeatInterval) {
+        return new RemoteFrameworkConnectionInfo("127.0.0.1", server.getPort(), new GuardedString(
+                "changeit".toCharArray()), false, null, 5000, heartbeatInterval, config);
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(counter.get(), expected);
+    }
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        RemoteFrameworkConnectionInfo info = createConnectionInfo(null);
+        ObjectPool<RemoteFrameworkConnection> pool = RemoteConnectionPoolManager.getPool(info);
+        assertSame(RemoteConnectionPoolManager.getPool(info), pool);
+        assertTrue(ObjectPoolMaintainer.isRegistered(pool));
+
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        RemoteFrameworkConnection connection = entry.getPooledObject();
+        entry.close();
+
+        // the returned connection is reused
+        entry = pool.borrowObject();
+        assertSame(entry.getPooledObject(), connection);
+
+        // a concurrent borrower gets a new connection
+        ObjectPoolEntry<RemoteFrameworkConnection> other = pool.borrowObject();
+        assertNotSame(other.getPooledObject(), connection);
+        other.close();
+        entry.close();
+        waitFor(server.accepted, 2);
+        assertEquals(pool.getStatistics().getNumIdle(), 2);
+        assertEquals(server.closed.get(), 0);
+    }
+
+    @Test
+    public void testBrokenConnection() throws Exception {
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(createConnectionInfo(null));
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        RemoteFrameworkConnection connection = entry.getPooledObject();
+        // the invocation handler aborts the connection it can not reuse
+        connection.abort();
+        entry.close();
+
+        entry = pool.borrowObject();
+        assertNotSame(entry.getPooledObject(), connection);
+        assertFalse(entry.getPooledObject().isClosed());
+        entry.close();
+        waitFor(server.accepted, 2);
+        waitFor(server.closed, 1);
+        assertEquals(pool.getStatistics().getNumIdle(), 1);
+    }
+
+    @Test
+    public void testEvictIdleConnections() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(4);
+        config.setMaxIdle(4);
+        config.setMinIdle(0);
+        config.setMinEvictableIdleTimeMillis(1);
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(createConnectionInfo(config));
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        entry.close();
+        assertEquals(pool.getStatistics().getNumIdle(), 1);
+
+        // done by the maintainer in the background
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getStatistics().getNumIdle() > 0 && System.currentTimeMillis() < deadline) {
+            pool.maintain();
+            Thread.sleep(10);
+        }
+        assertEquals(pool.getStatistics().getNumIdle(), 0);
+        assertTrue(entry.getPooledObject().isClosed());
+        waitFor(server.closed, 1);
+    }
+
+    @Test
+    public void testBackgroundEviction() throws Exception {
+        String interval = System.getProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY);
+        System.setProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY, "50");
+        try {
+            ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+            config.setMinIdle(0);
+            config.setMinEvictableIdleTimeMillis(100);
+            ObjectPool<RemoteFrameworkConnection> pool =
+                    RemoteConnectionPoolManager.getPool(createConnectionInfo(config));
+            ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+            entry.close();
+            assertEquals(pool.getStatistics().getNumIdle(), 1);
+
+            // the maintainer thread closes the connection, nobody calls
+            // maintain()
+            waitFor(server.closed, 1);
+            assertEquals(pool.getStatistics().getNumIdle(), 0);
+            assertTrue(entry.getPooledObject().isClosed());
+        } finally {
+            if (null == interval) {
+                System.clearProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY);
+            } else {
+                System.setProperty(ConnectorPoolManager.MAINTENANCE_INTERVAL_PROPERTY, interval);
+            }
+        }
+    }
+
+    @Test
+    public void testStaleConnection() throws Exception {
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(createConnectionInfo(null, 1L));
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        RemoteFrameworkConnection connection = entry.getPooledObject();
+        entry.close();
+        server.closeConnections();
+        waitFor(server.closed, 1);
+
+        // the echo of the connection idle for longer than the heartbeat fails
+        Thread.sleep(1100);
+        entry = pool.borrowObject();
+        assertNotSame(entry.getPooledObject(), connection);
+        assertTrue(connection.isClosed());
+        assertFalse(entry.getPooledObject().isClosed());
+        entry.close();
+        waitFor(server.accepted, 2);
+        assertEquals(pool.getStatistics().getNumIdle(), 1);
+    }
+
+    @Test
+    public void testFailedEcho() throws Exception {
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(createConnectionInfo(null, 1L));
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        RemoteFrameworkConnection connection = entry.getPooledObject();
+        entry.close();
+        server.failEcho = true;
+
+        // the server does not answer the echo of the idle connection
+        Thread.sleep(1100);
+        entry = pool.borrowObject();
+        assertNotSame(entry.getPooledObject(), connection);
+        assertTrue(connection.isClosed());
+        entry.close();
+        waitFor(server.accepted, 2);
+        waitFor(server.closed, 1);
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+        RemoteFrameworkConnectionInfo info = createConnectionInfo(null);
+        ObjectPool<RemoteFrameworkConnection> pool = RemoteConnectionPoolManager.getPool(info);
+        ObjectPoolEntry<RemoteFrameworkConnection> idle = pool.borrowObject();
+        ObjectPoolEntry<RemoteFrameworkConnection> active = pool.borrowObject();
+        idle.close();
+
+        RemoteConnectionPoolManager.dispose(info);
+        assertTrue(pool.isShutdown());
+        assertFalse(ObjectPoolMaintainer.isRegistered(pool));
+        assertTrue(idle.getPooledObject().isClosed());
+        waitFor(server.closed, 1);
+
+        // the active connection is closed when it's returned
+        active.close();
+        assertTrue(active.getPooledObject().isClosed());
+        waitFor(server.closed, 2);
+        assertTrue(RemoteConnectionPoolManager.getPool(info) != pool);
+    }
+}
@@ -30,6 +30,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.math.BigDecimal;
@@ -52,6 +53,7 @@ import org.identityconnectors.common.script.ScriptBuilder;
 import org.identityconnectors.common.security.GuardedByteArray;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.common.FrameworkUtil;
@@ -107,6 +109,9 @@ import org.identityconnectors.framework.common.objects.filter.NotFilter;
 import org.identityconnectors.framework.common.objects.filter.OrFilter;
 import org.identityconnectors.framework.common.objects.filter.PresenceFilter;
 import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
+import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
+import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
@@ -424,6 +429,8 @@ public class ObjectSerializationTests {
         v1.setMaxWait(3);
         v1.setMinEvictableIdleTimeMillis(4);
         v1.setMinIdle(5);
+        v1.setMinTestIntervalMillis(6);
+        v1.setLockFree(true);
 
         ObjectPoolConfiguration v2 =
             (ObjectPoolConfiguration)cloneObject(v1);
@@ -435,6 +442,36 @@ public class ObjectSerializationTests {
         assertEquals(3, v2.getMaxWait());
         assertEquals(4, v2.getMinEvictableIdleTimeMillis());
         assertEquals(5, v2.getMinIdle());
+        assertEquals(6, v2.getMinTestIntervalMillis());
+        assertTrue(v2.isLockFree());
+    }
+
+    @Test
+    public void testResultsHandlerConfiguration() {
+        ResultsHandlerConfiguration v1 = new ResultsHandlerConfiguration();
+        v1.setEnableNormalizingResultsHandler(false);
+        v1.setEnableCaseInsensitiveFilter(true);
+        v1.setEnableCompactDuplicateFilter(true);
+        v1.setDuplicateFilterSpillThreshold(1000);
+        v1.setEnableSortingPagingResultsHandler(true);
+        v1.setSortingSpillThreshold(2000);
+        v1.setObjectCacheTimeToLive(500);
+        v1.setObjectCacheMaxSize(100);
+
+        ResultsHandlerConfiguration v2 =
+            (ResultsHandlerConfiguration)cloneObject(v1);
+        assertTrue(v1 != v2);
+
+        assertEquals(v1,v2);
+        assertFalse(v2.isEnableNormalizingResultsHandler());
+        assertTrue(v2.isEnableFilteredResultsHandler());
+        assertTrue(v2.isEnableCaseInsensitiveFilter());
+        assertTrue(v2.isEnableCompactDuplicateFilter());
+        assertEquals(1000, v2.getDuplicateFilterSpillThreshold());
+        assertTrue(v2.isEnableSortingPagingResultsHandler());
+        assertEquals(2000, v2.getSortingSpillThreshold());
+        assertEquals(500, v2.getObjectCacheTimeToLive());
+        assertEquals(100, v2.getObjectCacheMaxSize());
     }
 
     @Test
@@ -1140,6 +1177,142 @@ public class ObjectSerializationTests {
         assertEquals("myuid", v2.getUid().getUidValue());
     }
 
+    @Test
+    public void testBinaryStream() {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("uid\u00e9");
+        builder.setName("name");
+        builder.addAttribute("large", new byte[2 * 1024 * 1024]);
+        builder.addAttribute("multi", "a", "\u4e2d", 1, 2L, 3.5d, true);
+        ConnectorObject large = builder.build();
+        List<Object> objects = new ArrayList<Object>();
+        objects.add(large);
+        objects.add(null);
+        objects.add(new Uid("next"));
+        objects.add(large);
+
+        ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectSerializer serializer = factory.newBinarySerializer(out);
+        for (Object o : objects) {
+            serializer.writeObject(o);
+        }
+        serializer.close();
+
+        BinaryObjectDeserializer deserializer =
+                factory.newBinaryDeserializer(new ByteArrayInputStream(out.toByteArray()));
+        for (Object o : objects) {
+            assertEquals(deserializer.readObject(), o);
+        }
+    }
+
+    /**
+     * The binary encoding of {@link #createBinaryGoldenObject()} by the
+     * serializer of the previous release, {@value #BINARY_GOLDEN_LENGTH} bytes.
+     */
+    private static final String BINARY_GOLDEN_BYTES =
+            "0000fafb0000000200000012000000044c697374000000000000000653747269"
+            + "6e670000000100000007496e746567657200000002000000044c6f6e67000000"
+            + "0300000007426f6f6c65616e0000000400000006446f75626c65000000050000"
+            + "0009427974654172726179000000060000000355696400000007000000037569"
+            + "6400000008000000087265766973696f6e00000009000000044e616d65000000"
+            + "0a0000000b4f626a656374436c6173730000000b00000004747970650000000c"
+            + "000000094174747269627574650000000d000000046e616d650000000e000000"
+            + "0656616c7565730000000f0000000953796e63546f6b656e0000001000000005"
+            + "76616c7565000000113d0000000046000000143d000000014600000009000000"
+            + "0576616c75654846000000b93d0000000146000000ae000000aa62696e617279"
+            + "2d3062696e6172792d3162696e6172792d3262696e6172792d3362696e617279"
+            + "2d3462696e6172792d3562696e6172792d3662696e6172792d3762696e617279"
+            + "2d3862696e6172792d3962696e6172792d313062696e6172792d313162696e61"
+            + "72792d313262696e6172792d313362696e6172792d313462696e6172792d3135"
+            + "62696e6172792d313662696e6172792d313762696e6172792d313862696e6172"
+            + "792d313948460000000f3d0000000246000000040000002a4846000000133d00"
+            + "00000346000000087fffffffffffffff48460000000c3d000000044600000001"
+            + "014846000000133d0000000546000000083ff80000000000004846000000023c"
+            + "4846000000d73d0000000646000000cc000000c8000102030405060708090a0b"
+            + "0c0d0e0f101112131415161718191a1b1c1d1e1f202122232425262728292a2b"
+            + "2c2d2e2f303132333435363738393a3b3c3d3e3f404142434445464748494a4b"
+            + "4c4d4e4f505152535455565758595a5b5c5d5e5f606162636465666768696a6b"
+            + "6c6d6e6f707172737475767778797a7b7c7d7e7f808182838485868788898a8b"
+            + "8c8d8e8f909192939495969798999a9b9c9d9e9fa0a1a2a3a4a5a6a7a8a9aaab"
+            + "acadaeafb0b1b2b3b4b5b6b7b8b9babbbcbdbebfc0c1c2c3c4c5c6c748460000"
+            + "002b3d000000074700000008000000070000000375696447000000090000000c"
+            + "000000087265766973696f6e4846000000133d0000000a460000000800000004"
+            + "6e616d6548460000001e3d0000000b470000000c0000000f0000000b5f5f4143"
+            + "434f554e545f5f4846000000553d0000000d470000000e0000000d0000000961"
+            + "7474726962757465470000000f000000303d0000000046000000103d00000001"
+            + "460000000500000001614846000000103d000000014600000005000000016248"
+            + "4848460000001e3d0000001047000000110000000f3d00000002460000000400"
+            + "000007484846000000533d0000000046000000153d00000001460000000a0000"
+            + "00066e657374656448460000002e3d00000000460000000f3d00000002460000"
+            + "00040000000148460000000f3d0000000246000000040000000248484848";
+
+    private static final int BINARY_GOLDEN_LENGTH = 1118;
+
+    @Test
+    public void testBinaryGoldenBytes() {
+        // the encoding must stay readable by the older Java and .NET peers
+        byte[] bytes = SerializerUtil.serializeBinaryObject(createBinaryGoldenObject());
+        assertEquals(bytes.length, BINARY_GOLDEN_LENGTH);
+        assertEquals(toHex(bytes), BINARY_GOLDEN_BYTES);
+
+        List<?> decoded =
+                (List<?>) SerializerUtil.deserializeBinaryObject(fromHex(BINARY_GOLDEN_BYTES));
+        assertEquals(decoded.size(), 14);
+        assertEquals(decoded.get(1), "binary-0binary-1binary-2binary-3binary-4binary-5binary-6"
+                + "binary-7binary-8binary-9binary-10binary-11binary-12binary-13binary-14"
+                + "binary-15binary-16binary-17binary-18binary-19");
+        assertEquals(decoded.get(3), Long.MAX_VALUE);
+        assertNull(decoded.get(6));
+        assertEquals(decoded.get(8), new Uid("uid", "revision"));
+        assertEquals(decoded.get(11), AttributeBuilder.build("attribute", "a", "b"));
+        assertEquals(toHex(SerializerUtil.serializeBinaryObject(decoded)), BINARY_GOLDEN_BYTES);
+    }
+
+    private static Object createBinaryGoldenObject() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("binary-").append(i);
+        }
+        byte[] bytes = new byte[200];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        List<Object> list = new ArrayList<Object>();
+        list.add("value");
+        list.add(text.toString());
+        list.add(42);
+        list.add(Long.MAX_VALUE);
+        list.add(Boolean.TRUE);
+        list.add(1.5d);
+        list.add(null);
+        list.add(bytes);
+        list.add(new Uid("uid", "revision"));
+        list.add(new Name("name"));
+        list.add(ObjectClass.ACCOUNT);
+        list.add(AttributeBuilder.build("attribute", "a", "b"));
+        list.add(new SyncToken(7));
+        list.add(Arrays.asList("nested", Arrays.asList(1, 2)));
+        return list;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+            buf.append(Character.forDigit(b & 0xf, 16));
+        }
+        return buf.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
     /**
      * Highly insecure method! Do not do this in production
      * code. This is only for test purposes
@@ -31,6 +31,7 @@ import java.util.List;
 
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.Version;
+import org.identityconnectors.framework.impl.api.local.ConnectorClassScanner;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.swissbox.extender.BundleScanner;
 import org.ops4j.pax.swissbox.extender.ManifestEntry;
@@ -48,6 +49,7 @@ public class ConnectorManifestScanner implements BundleScanner<ManifestEntry> {
     public static final String ATT_FRAMEWORK_VERSION = BUNDLE_PREFIX + "FrameworkVersion";
     public static final String ATT_BUNDLE_NAME = BUNDLE_PREFIX + "Name";
     public static final String ATT_BUNDLE_VERSION = BUNDLE_PREFIX + "Version";
+    public static final String ATT_CONNECTOR_CLASSES = ConnectorClassScanner.ATT_CONNECTOR_CLASSES;
     private final Version version;
 
     public ConnectorManifestScanner(Version version) {
@@ -64,6 +66,7 @@ public class ConnectorManifestScanner implements BundleScanner<ManifestEntry> {
         String frameworkVersion = null;
         String bundleName = null;
         String bundleVersion = null;
+        String connectorClasses = null;
 
         final Dictionary<?,?> bundleHeaders = bundle.getHeaders();
         if (bundleHeaders != null && !bundleHeaders.isEmpty()) {
@@ -80,6 +83,8 @@ public class ConnectorManifestScanner implements BundleScanner<ManifestEntry> {
                     bundleName = (String) bundleHeaders.get(key);
                 } else if (ATT_BUNDLE_VERSION.equals(key)) {
                     bundleVersion = (String) bundleHeaders.get(key);
+                } else if (ATT_CONNECTOR_CLASSES.equals(key)) {
+                    connectorClasses = (String) bundleHeaders.get(key);
                 }
             }
         }
@@ -89,6 +94,9 @@ public class ConnectorManifestScanner implements BundleScanner<ManifestEntry> {
             result.add(new ManifestEntry(ATT_FRAMEWORK_VERSION, frameworkVersion));
             result.add(new ManifestEntry(ATT_BUNDLE_NAME, bundleName));
             result.add(new ManifestEntry(ATT_BUNDLE_VERSION, bundleVersion));
+            if (null != connectorClasses) {
+                result.add(new ManifestEntry(ATT_CONNECTOR_CLASSES, connectorClasses));
+            }
             return result;
         } else {
             return Collections.emptyList();
@@ -45,6 +45,7 @@ import org.identityconnectors.common.Version;
 import org.identityconnectors.common.event.ConnectorEvent;
 import org.identityconnectors.common.event.ConnectorEventHandler;
 import org.identityconnectors.common.event.ConnectorEventPublisher;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
@@ -57,6 +58,7 @@ import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorInfo;
 import org.identityconnectors.framework.impl.api.ConnectorMessagesImpl;
+import org.identityconnectors.framework.impl.api.local.ConnectorClassScanner;
 import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
 import org.identityconnectors.framework.impl.api.local.JavaClassProperties;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
@@ -189,6 +191,10 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
                 for (ConnectorInfo connectorInfo : info.second) {
                     notifyListeners(buildEvent(ConnectorEvent.CONNECTOR_UNREGISTERING, info.first,
                             connectorInfo.getConnectorKey()));
+                    // the cached scripts keep the class loader of the bundle
+                    CompiledScriptCache.getInstance().invalidate(
+                            ((LocalConnectorInfoImpl) connectorInfo).getConnectorClass()
+                                    .getClassLoader());
                 }
             }
         }
@@ -248,6 +254,7 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
         String frameworkVersion = null;
         String bundleName = null;
         String bundleVersion = null;
+        List<String> connectorClasses = null;
 
         for (ManifestEntry entry : manifestEnties) {
             if (ConnectorManifestScanner.ATT_FRAMEWORK_VERSION.equals(entry.getKey())) {
@@ -256,6 +263,8 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
                 bundleName = entry.getValue();
             } else if (ConnectorManifestScanner.ATT_BUNDLE_VERSION.equals(entry.getKey())) {
                 bundleVersion = entry.getValue();
+            } else if (ConnectorManifestScanner.ATT_CONNECTOR_CLASSES.equals(entry.getKey())) {
+                connectorClasses = ConnectorClassScanner.parseClassNames(entry.getValue());
             }
         }
 
@@ -275,10 +284,16 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
 
             Class<?> connectorClass = null;
             ConnectorClass options = null;
-            String name = classFiles.nextElement().getFile();
+            URL classFile = classFiles.nextElement();
+            String name = classFile.getFile();
 
             String className = name.substring(1, name.length() - ".class".length());
             className = className.replace('/', '.');
+            // skip the classes without the ConnectorClass annotation
+            if (null != connectorClasses ? !connectorClasses.contains(className)
+                    : !ConnectorClassScanner.isConnectorClass(classFile)) {
+                continue;
+            }
             try {
                 connectorClass = parsed.loadClass(className);
                 options = connectorClass.getAnnotation(ConnectorClass.class);
@@ -30,7 +30,25 @@ package org.forgerock.openicf.common.protobuf;
  */
 public class MessageVersion {
 
-    public static final String MESSAGE_VERSION = "1.0";
+    public static final String MESSAGE_VERSION = "1.3";
+
+    /**
+     * First version which encodes the attributes, filters and operation
+     * options with native messages instead of the legacy binary objects.
+     */
+    public static final String NATIVE_ENCODING_VERSION = "1.1";
+
+    /**
+     * First version which accepts the CreditRequest to flow control the
+     * streamed search and sync results.
+     */
+    public static final String FLOW_CONTROL_VERSION = "1.2";
+
+    /**
+     * First version which registers the connectorFacadeKey of an
+     * OperationRequest once and accepts the connectorFacadeId afterwards.
+     */
+    public static final String FACADE_ID_VERSION = "1.3";
 
     private MessageVersion() {
     }
@@ -43,4 +61,40 @@ public class MessageVersion {
     public String getMessageVersion() {
         return MESSAGE_VERSION;
     }
+
+    /**
+     * Checks if the message version of the remote peer is the same or newer
+     * than the given version.
+     * <p/>
+     * Peers before version 1.1 did not send their version, those are treated
+     * as version 1.0.
+     *
+     * @param peerVersion
+     *            the message version of the remote peer, may be null or empty.
+     * @param version
+     *            the required version.
+     * @return true if the peer supports the version.
+     */
+    public static boolean isAtLeast(final String peerVersion, final String version) {
+        final String[] peer =
+                (null == peerVersion || peerVersion.length() == 0 ? "1.0" : peerVersion)
+                        .split("\\.");
+        final String[] required = version.split("\\.");
+        for (int i = 0; i < Math.max(peer.length, required.length); i++) {
+            int p = i < peer.length ? parse(peer[i]) : 0;
+            int r = i < required.length ? parse(required[i]) : 0;
+            if (p != r) {
+                return p > r;
+            }
+        }
+        return true;
+    }
+
+    private static int parse(final String number) {
+        try {
+            return Integer.parseInt(number.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.common.rpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.util.promise.ExceptionHandler;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.ResultHandler;
+
+/**
+ * An EndpointLoad tracks the requests in flight and the response time of a
+ * {@link RequestDistributor} or a {@link RemoteConnectionHolder}.
+ * <p/>
+ * The response time is an exponentially weighted moving average, the weight of
+ * the previous average decays with the time since the previous sample. The
+ * cost of the endpoint is the average response time multiplied by the number
+ * of requests in flight plus one, so a slow endpoint gets fewer requests and
+ * an endpoint with many requests in flight is avoided until they complete.
+ * <p/>
+ * An endpoint without response time gets one request at a time until the
+ * first response arrives. The average decays toward this unknown state with
+ * the time since the last sample, so an endpoint which was slow once gets a
+ * request again when it has not responded for a while.
+ * <p/>
+ * Only the successful responses are sampled, a request which fails fast does
+ * not make the endpoint look fast.
+ *
+ * @since 1.5
+ */
+public final class EndpointLoad {
+
+    /**
+     * The default decay time of the average response time in nanoseconds.
+     */
+    public static final long DEFAULT_DECAY_TIME = TimeUnit.SECONDS.toNanos(10);
+
+    private final long decayTime;
+
+    private final AtomicInteger outstandingRequests = new AtomicInteger(0);
+
+    /**
+     * Negative until the first response.
+     */
+    private double averageResponseTime = -1;
+
+    private long lastSampleTime = 0;
+
+    public EndpointLoad() {
+        this(DEFAULT_DECAY_TIME);
+    }
+
+    /**
+     * Creates a new EndpointLoad.
+     *
+     * @param decayTime
+     *            the time in nanoseconds after which the weight of the
+     *            previous average drops to 1/e.
+     */
+    public EndpointLoad(final long decayTime) {
+        if (decayTime <= 0) {
+            throw new IllegalArgumentException("The decayTime must be positive");
+        }
+        this.decayTime = decayTime;
+    }
+
+    /**
+     * Signs that a request is sent to the endpoint.
+     */
+    public void requestStarted() {
+        outstandingRequests.incrementAndGet();
+    }
+
+    /**
+     * Signs that a started request could not be sent or it has failed, the
+     * response time is not sampled.
+     */
+    public void requestFailed() {
+        outstandingRequests.decrementAndGet();
+    }
+
+    /**
+     * Signs that a started request has completed.
+     *
+     * @param responseTime
+     *            the response time in nanoseconds.
+     */
+    public void requestCompleted(final long responseTime) {
+        outstandingRequests.decrementAndGet();
+        addSample(responseTime, System.nanoTime());
+    }
+
+    /**
+     * Completes the started request when its promise completes. The time to
+     * the first response is sampled if the request succeeds, so a streaming
+     * request is not sampled by its length.
+     */
+    <V, E extends Exception> void sampleResponse(final RemoteRequest<?, ?, ?, ?, ?> request,
+            final Promise<V, E> promise, final long start) {
+        promise.thenOnResult(new ResultHandler<V>() {
+            public void handleResult(V result) {
+                final Long responseTime = request.getResponseTime();
+                requestCompleted((null != responseTime ? responseTime : System.nanoTime())
+                        - start);
+            }
+        }).thenOnException(new ExceptionHandler<E>() {
+            public void handleException(E error) {
+                requestFailed();
+            }
+        });
+    }
+
+    synchronized void addSample(final long responseTime, final long now) {
+        if (averageResponseTime < 0) {
+            averageResponseTime = responseTime;
+        } else {
+            final double weight = Math.exp(-(double) Math.max(0, now - lastSampleTime) / decayTime);
+            averageResponseTime = averageResponseTime * weight + responseTime * (1 - weight);
+        }
+        lastSampleTime = now;
+    }
+
+    public int getOutstandingRequests() {
+        return outstandingRequests.get();
+    }
+
+    /**
+     * Returns the average response time in nanoseconds.
+     *
+     * @return negative value if no request has completed yet.
+     */
+    public synchronized double getAverageResponseTime() {
+        return averageResponseTime;
+    }
+
+    /**
+     * Returns the cost of sending the next request to this endpoint.
+     *
+     * @return the expected time in nanoseconds to complete the requests in
+     *         flight and the next one.
+     */
+    public double getCost() {
+        return getCost(System.nanoTime());
+    }
+
+    synchronized double getCost(final long now) {
+        final int outstanding = Math.max(0, outstandingRequests.get());
+        final double unknownCost = outstanding == 0 ? 0 : (double) outstanding * decayTime;
+        if (averageResponseTime < 0) {
+            return unknownCost;
+        }
+        final double weight = Math.exp(-(double) Math.max(0, now - lastSampleTime) / decayTime);
+        return (outstanding + 1) * Math.max(averageResponseTime, 1.0) * weight + unknownCost
+                * (1 - weight);
+    }
+
+    public String toString() {
+        return "EndpointLoad{outstandingRequests=" + getOutstandingRequests()
+                + ", averageResponseTime=" + getAverageResponseTime() + "}";
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.common.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.util.promise.Promise;
+
+/**
+ * A least loaded load balancing algorithm distributes
+ * {@link org.forgerock.openicf.common.rpc.RemoteRequest}s to the
+ * {@link RequestDistributor} with the lowest {@link EndpointLoad#getCost()
+ * cost}, the fewest requests in flight weighted by the average response time.
+ * <p>
+ * This algorithm is used for load-balancing <i>within</i> data centers like
+ * the {@link RoundRobinLoadBalancingAlgorithm}, but a server which responds
+ * slower, because of a long garbage collection or a slow target system, gets
+ * fewer requests until it recovers. The {@link RequestDistributor}s with equal
+ * cost are selected one at a time, the same way as by the round robin
+ * algorithm.
+ * <p>
+ * If a problem occurs that temporarily prevents connections from being obtained
+ * for one of the {@link RequestDistributor}s, then this algorithm automatically
+ * "fails over" to the next operational {@link RequestDistributor} in the list.
+ * If none of the {@link RequestDistributor} are operational then a {@code null}
+ * is returned to the client.
+ * <p>
+ *
+ * @see RoundRobinLoadBalancingAlgorithm
+ * @see EndpointLoad
+ * @since 1.5
+ */
+public class LeastLoadedLoadBalancingAlgorithm<G extends RemoteConnectionGroup<G, H, P>, H extends RemoteConnectionHolder<G, H, P>, P extends RemoteConnectionContext<G, H, P>>
+        extends AbstractLoadBalancingAlgorithm<G, H, P> {
+
+    private final List<EndpointLoad> endpointLoads;
+
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    public LeastLoadedLoadBalancingAlgorithm(
+            final List<RequestDistributor<G, H, P>> requestDistributors) {
+        super(requestDistributors);
+        endpointLoads = new ArrayList<EndpointLoad>(requestDistributors.size());
+        for (int i = 0; i < requestDistributors.size(); i++) {
+            endpointLoads.add(new EndpointLoad());
+        }
+    }
+
+    /**
+     * Returns the load of the {@link RequestDistributor} at the given index.
+     */
+    public EndpointLoad getEndpointLoad(final int index) {
+        return endpointLoads.get(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public <R extends RemoteRequest<V, E, G, H, P>, V, E extends Exception> R trySubmitRequest(
+            RemoteRequestFactory<R, V, E, G, H, P> requestFactory) {
+        final int initialIndex = getInitialConnectionFactoryIndex();
+        final int maxIndex = requestDistributors.size();
+        int index = initialIndex;
+        do {
+            final EndpointLoad load = endpointLoads.get(index);
+            final long start = System.nanoTime();
+            load.requestStarted();
+            R result = null;
+            try {
+                result = requestDistributors.get(index).trySubmitRequest(requestFactory);
+            } finally {
+                if (null == result) {
+                    load.requestFailed();
+                }
+            }
+            if (null != result) {
+                final Promise<V, E> promise = result.getPromise();
+                if (null != promise) {
+                    load.sampleResponse(result, promise, start);
+                } else {
+                    load.requestFailed();
+                }
+                return result;
+            }
+            index = (index + 1) % maxIndex;
+        } while (index != initialIndex);
+
+        /*
+         * All factories are offline so give up.
+         */
+        return null;
+    }
+
+    protected int getInitialConnectionFactoryIndex() {
+        final int maxSize = requestDistributors.size();
+        if (maxSize == 1) {
+            return 0;
+        }
+        // Start from the next one in round robin order to spread the equal
+        // cost requests
+        final int offset = (counter.getAndIncrement() & 0x7fffffff) % maxSize;
+        int leastLoaded = offset;
+        double leastCost = endpointLoads.get(offset).getCost();
+        for (int i = 1; i < maxSize; i++) {
+            final int index = (offset + i) % maxSize;
+            final double cost = endpointLoads.get(index).getCost();
+            if (cost < leastCost) {
+                leastLoaded = index;
+                leastCost = cost;
+            }
+        }
+        return leastLoaded;
+    }
+}
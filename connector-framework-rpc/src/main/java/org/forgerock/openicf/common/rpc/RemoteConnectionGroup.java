@@ -25,6 +25,8 @@
 package org.forgerock.openicf.common.rpc;
 
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -45,6 +47,10 @@ import org.forgerock.util.promise.Promise;
  * <p/>
  * The local instance of {@link RemoteConnectionGroup#remoteRequests} paired
  * with the remote instance of {@link RemoteConnectionGroup#localRequests}.
+ * <p/>
+ * The requests are sent through the connection with the lowest
+ * {@link EndpointLoad#getCost() cost}, the connections with equal cost are
+ * used one at a time.
  *
  */
 public abstract class RemoteConnectionGroup<G extends RemoteConnectionGroup<G, H, P>, H extends RemoteConnectionHolder<G, H, P>, P extends RemoteConnectionContext<G, H, P>>
@@ -65,6 +71,9 @@ public abstract class RemoteConnectionGroup<G extends RemoteConnectionGroup<G, H
 
     private final AtomicInteger nextIndex = new AtomicInteger(-1);
 
+    private final ConcurrentMap<H, EndpointLoad> connectionLoads =
+            new ConcurrentHashMap<H, EndpointLoad>();
+
     public RemoteConnectionGroup(final String remoteSessionId) {
         this.remoteSessionId = remoteSessionId;
     }
@@ -88,7 +97,60 @@ public abstract class RemoteConnectionGroup<G extends RemoteConnectionGroup<G, H
                 newNextIndex = 0;
             }
         } while (!nextIndex.compareAndSet(oldNextIndex, newNextIndex));
-        return newNextIndex;
+        // Pick the least loaded starting from the next in round robin order
+        int leastLoaded = newNextIndex;
+        double leastCost = Double.MAX_VALUE;
+        final int size = webSockets.size();
+        for (int i = 0; i < size; i++) {
+            final int index = (newNextIndex + i) % size;
+            final double cost;
+            try {
+                cost = getConnectionLoad(webSockets.get(index).getSecond()).getCost();
+            } catch (IndexOutOfBoundsException e) {
+                // The connection has been removed
+                break;
+            }
+            if (cost < leastCost) {
+                leastLoaded = index;
+                leastCost = cost;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Returns the load of the connection.
+     *
+     * @param connection
+     *            the connection of this group.
+     * @return the requests in flight and the response time of the connection.
+     */
+    protected EndpointLoad getConnectionLoad(final H connection) {
+        EndpointLoad load = connectionLoads.get(connection);
+        if (null == load) {
+            load = new EndpointLoad();
+            EndpointLoad tmp = connectionLoads.putIfAbsent(connection, load);
+            if (null != tmp) {
+                load = tmp;
+            } else {
+                // Forget the closed connections
+                for (H key : connectionLoads.keySet()) {
+                    if (!key.equals(connection) && !isConnected(key)) {
+                        connectionLoads.remove(key);
+                    }
+                }
+            }
+        }
+        return load;
+    }
+
+    private boolean isConnected(final H connection) {
+        for (Pair<String, H> entry : webSockets) {
+            if (entry.getSecond().equals(connection)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public <V> V trySendMessage(Function<H, V, Exception> function) {
@@ -181,7 +243,28 @@ public abstract class RemoteConnectionGroup<G extends RemoteConnectionGroup<G, H
 
         final R remoteRequest = allocateRequest(requestFactory);
         if (null != remoteRequest) {
-            Promise<V, E> result = trySendMessage(remoteRequest.getSendFunction());
+            final Function<H, Promise<V, E>, Exception> sendFunction =
+                    remoteRequest.getSendFunction();
+            Promise<V, E> result =
+                    trySendMessage(new Function<H, Promise<V, E>, Exception>() {
+                        public Promise<V, E> apply(H connection) throws Exception {
+                            final EndpointLoad load = getConnectionLoad(connection);
+                            final long start = System.nanoTime();
+                            load.requestStarted();
+                            Promise<V, E> promise = null;
+                            try {
+                                promise = sendFunction.apply(connection);
+                            } finally {
+                                if (null == promise) {
+                                    load.requestFailed();
+                                }
+                            }
+                            if (null != promise) {
+                                load.sampleResponse(remoteRequest, promise, start);
+                            }
+                            return promise;
+                        }
+                    });
             if (null == result) {
                 remoteRequests.remove(remoteRequest.getRequestId());
                 return null;
@@ -229,6 +312,7 @@ public abstract class RemoteConnectionGroup<G extends RemoteConnectionGroup<G, H
             final long messageId, Object message) {
         RemoteRequest<?, ?, G, H, P> tmp = remoteRequests.get(messageId);
         if (null != tmp) {
+            tmp.responseReceived();
             tmp.handleIncomingMessage(sourceConnection, message);
         }
         return tmp;
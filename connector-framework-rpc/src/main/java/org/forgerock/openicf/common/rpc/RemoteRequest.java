@@ -48,6 +48,7 @@ public abstract class RemoteRequest<V, E extends Exception, G extends RemoteConn
     private final RemoteRequestFactory.CompletionCallback<V, E, G, H, P> completionCallback;
 
     private Long requestTime = null;
+    private volatile Long responseTime = null;
     private PromiseImpl<V, E> promise = null;
     private final ReentrantLock lock = new ReentrantLock();
 
@@ -87,6 +88,22 @@ public abstract class RemoteRequest<V, E extends Exception, G extends RemoteConn
         return requestTime;
     }
 
+    /**
+     * Returns the {@link System#nanoTime()} when the first response message of
+     * this request was received.
+     *
+     * @return null if no response was received yet.
+     */
+    public Long getResponseTime() {
+        return responseTime;
+    }
+
+    void responseReceived() {
+        if (null == responseTime) {
+            responseTime = System.nanoTime();
+        }
+    }
+
     public Promise<V, E> getPromise() {
         return promise;
     }
@@ -0,0 +1,263 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.common.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openicf.common.rpc.impl.TestConnectionContext;
+import org.forgerock.openicf.common.rpc.impl.TestConnectionGroup;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LeastLoadedLoadBalancingAlgorithmTest<H extends RemoteConnectionHolder<TestConnectionGroup<H>, H, TestConnectionContext<H>>> {
+
+    @Test
+    public void testEndpointLoad() {
+        EndpointLoad load = new EndpointLoad(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(load.getCost(), 0.0);
+        load.requestStarted();
+        // Only one request until the first response
+        Assert.assertEquals(load.getCost(), (double) TimeUnit.SECONDS.toNanos(1));
+        load.requestCompleted(1000);
+        Assert.assertEquals(load.getOutstandingRequests(), 0);
+        Assert.assertEquals(load.getAverageResponseTime(), 1000.0);
+
+        load = new EndpointLoad(1000);
+        load.addSample(100, 0);
+        Assert.assertEquals(load.getCost(0), 100.0);
+        load.requestStarted();
+        load.requestStarted();
+        Assert.assertEquals(load.getCost(0), 300.0);
+        load.requestFailed();
+        Assert.assertEquals(load.getCost(0), 200.0);
+
+        // The weight of the old average decays with the time
+        load = new EndpointLoad(1000);
+        load.addSample(100, 0);
+        load.addSample(200, 1);
+        Assert.assertTrue(load.getAverageResponseTime() < 101.0);
+        load.addSample(300, 100000);
+        Assert.assertTrue(load.getAverageResponseTime() > 299.0);
+    }
+
+    @Test
+    public void testAverageDecaysToUnknown() {
+        EndpointLoad load = new EndpointLoad(1000);
+        load.addSample(100000, 0);
+        Assert.assertEquals(load.getCost(0), 100000.0);
+        Assert.assertEquals(load.getCost(1000), 100000.0 * Math.exp(-1), 0.001);
+        // A slow endpoint gets a request again when it has not responded
+        Assert.assertEquals(load.getCost(100000), 0.0, 0.001);
+        // but one at a time as long as it does not respond
+        load.requestStarted();
+        Assert.assertEquals(load.getCost(100000), 1000.0, 0.001);
+        // The average itself changes with the samples only
+        Assert.assertEquals(load.getAverageResponseTime(), 100000.0);
+    }
+
+    @Test
+    public void testFailedRequestIsNotSampled() throws Exception {
+        List<Endpoint> endpoints = createEndpoints(1);
+        LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>> algorithm =
+                createAlgorithm(endpoints);
+        Assert.assertNotNull(algorithm.trySubmitRequest(new RequestFactory()));
+        Assert.assertEquals(algorithm.getEndpointLoad(0).getOutstandingRequests(), 1);
+        endpoints.get(0).fail();
+        Assert.assertEquals(algorithm.getEndpointLoad(0).getOutstandingRequests(), 0);
+        Assert.assertTrue(algorithm.getEndpointLoad(0).getAverageResponseTime() < 0);
+
+        Assert.assertNotNull(algorithm.trySubmitRequest(new RequestFactory()));
+        endpoints.get(0).complete();
+        Assert.assertTrue(algorithm.getEndpointLoad(0).getAverageResponseTime() >= 0);
+    }
+
+    @Test
+    public void testSlowEndpointIsAvoided() throws Exception {
+        List<Endpoint> endpoints = createEndpoints(2);
+        LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>> algorithm =
+                createAlgorithm(endpoints);
+
+        // Learn the response times
+        for (int i = 0; i < 2; i++) {
+            algorithm.trySubmitRequest(new RequestFactory());
+        }
+        Assert.assertEquals(endpoints.get(0).requests.size(), 1);
+        Assert.assertEquals(endpoints.get(1).requests.size(), 1);
+        // The first endpoint was slow
+        algorithm.getEndpointLoad(0).addSample(TimeUnit.SECONDS.toNanos(1), System.nanoTime());
+        endpoints.get(0).complete();
+        endpoints.get(1).complete();
+        Assert.assertEquals(algorithm.getEndpointLoad(0).getOutstandingRequests(), 0);
+
+        for (int i = 0; i < 10; i++) {
+            algorithm.trySubmitRequest(new RequestFactory());
+            // The fast endpoint responds immediately
+            endpoints.get(1).complete();
+        }
+        Assert.assertEquals(endpoints.get(0).requests.size(), 0);
+        Assert.assertEquals(endpoints.get(1).completed, 11);
+    }
+
+    @Test
+    public void testLeastOutstandingRequests() throws Exception {
+        List<Endpoint> endpoints = createEndpoints(3);
+        LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>> algorithm =
+                createAlgorithm(endpoints);
+        for (int i = 0; i < 30; i++) {
+            Assert.assertNotNull(algorithm.trySubmitRequest(new RequestFactory()));
+        }
+        // Same cost, one at a time
+        for (Endpoint endpoint : endpoints) {
+            Assert.assertEquals(endpoint.requests.size(), 10);
+        }
+        endpoints.get(2).complete();
+        Assert.assertNotNull(algorithm.trySubmitRequest(new RequestFactory()));
+        Assert.assertEquals(endpoints.get(2).requests.size(), 1);
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        List<Endpoint> endpoints = createEndpoints(2);
+        LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>> algorithm =
+                createAlgorithm(endpoints);
+        endpoints.get(0).operational = false;
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNotNull(algorithm.trySubmitRequest(new RequestFactory()));
+        }
+        Assert.assertEquals(endpoints.get(1).requests.size(), 4);
+        Assert.assertEquals(algorithm.getEndpointLoad(0).getOutstandingRequests(), 0);
+        Assert.assertEquals(algorithm.getEndpointLoad(1).getOutstandingRequests(), 4);
+        endpoints.get(1).operational = false;
+        Assert.assertNull(algorithm.trySubmitRequest(new RequestFactory()));
+        Assert.assertFalse(algorithm.isOperational());
+    }
+
+    private List<Endpoint> createEndpoints(int count) {
+        List<Endpoint> endpoints = new ArrayList<Endpoint>(count);
+        for (int i = 0; i < count; i++) {
+            endpoints.add(new Endpoint());
+        }
+        return endpoints;
+    }
+
+    private LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>> createAlgorithm(
+            List<Endpoint> endpoints) {
+        return new LeastLoadedLoadBalancingAlgorithm<TestConnectionGroup<H>, H, TestConnectionContext<H>>(
+                new ArrayList<RequestDistributor<TestConnectionGroup<H>, H, TestConnectionContext<H>>>(
+                        endpoints));
+    }
+
+    private class Endpoint implements
+            RequestDistributor<TestConnectionGroup<H>, H, TestConnectionContext<H>> {
+
+        private final List<RemoteRequest<?, ?, TestConnectionGroup<H>, H, TestConnectionContext<H>>> requests =
+                new ArrayList<RemoteRequest<?, ?, TestConnectionGroup<H>, H, TestConnectionContext<H>>>();
+        private int completed = 0;
+        private boolean operational = true;
+
+        public <R extends RemoteRequest<V, E, TestConnectionGroup<H>, H, TestConnectionContext<H>>, V, E extends Exception> R trySubmitRequest(
+                RemoteRequestFactory<R, V, E, TestConnectionGroup<H>, H, TestConnectionContext<H>> requestFactory) {
+            if (!operational) {
+                return null;
+            }
+            R request = requestFactory.createRemoteRequest(null, requests.size(), null);
+            requests.add(request);
+            return request;
+        }
+
+        public boolean isOperational() {
+            return operational;
+        }
+
+        public void complete() {
+            for (RemoteRequest<?, ?, TestConnectionGroup<H>, H, TestConnectionContext<H>> request : requests) {
+                ((Request) request).promise.handleResult("OK");
+                completed++;
+            }
+            requests.clear();
+        }
+
+        public void fail() {
+            for (RemoteRequest<?, ?, TestConnectionGroup<H>, H, TestConnectionContext<H>> request : requests) {
+                ((Request) request).promise.handleException(new Exception("Failed"));
+            }
+            requests.clear();
+        }
+    }
+
+    private class Request extends
+            RemoteRequest<String, Exception, TestConnectionGroup<H>, H, TestConnectionContext<H>> {
+
+        private final PromiseImpl<String, Exception> promise = new PromiseImpl<String, Exception>() {
+        };
+
+        public Request(long requestId) {
+            super(null, requestId, null);
+        }
+
+        public Promise<String, Exception> getPromise() {
+            return promise;
+        }
+
+        public boolean check() {
+            return true;
+        }
+
+        public void inconsistent() {
+        }
+
+        public void handleIncomingMessage(H sourceConnection, Object message) {
+        }
+
+        protected MessageElement createMessageElement(TestConnectionContext<H> remoteContext,
+                long requestId) {
+            return null;
+        }
+
+        protected void tryCancelRemote(TestConnectionContext<H> remoteContext, long requestId) {
+        }
+
+        protected Exception createCancellationException(Throwable cancellationException) {
+            return new CancellationException();
+        }
+    }
+
+    private class RequestFactory
+            implements
+            RemoteRequestFactory<Request, String, Exception, TestConnectionGroup<H>, H, TestConnectionContext<H>> {
+
+        public Request createRemoteRequest(
+                TestConnectionContext<H> context,
+                long requestId,
+                CompletionCallback<String, Exception, TestConnectionGroup<H>, H, TestConnectionContext<H>> completionCallback) {
+            return new Request(requestId);
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.forgerock.openicf.framework.remote.OpenICFServerAdapter;
 import org.forgerock.openicf.framework.remote.RemoteAsyncConnectorFacade;
 import org.forgerock.openicf.framework.remote.RemoteConnectorInfoImpl;
 import org.forgerock.openicf.framework.remote.RemoteServerConnectorInfoManager;
+import org.forgerock.openicf.framework.remote.RequestDispatcher;
 import org.forgerock.util.Function;
 import org.forgerock.util.Utils;
 import org.forgerock.util.promise.Promise;
@@ -83,6 +84,9 @@ public class ConnectorFramework implements Closeable {
     private final ExecutorService messageExecutor = Executors.newCachedThreadPool(Utils.newThreadFactory(null,
             "OpenICF ConnectorFramework Message executor %d", false));
 
+    private final RequestDispatcher requestDispatcher = new RequestDispatcher(Utils.newThreadFactory(null,
+            "OpenICF ConnectorFramework Request dispatcher %d", false));
+
     public ConnectorFramework(final ClassLoader defaultConnectorBundleParentClassLoader) {
         this.defaultConnectorBundleParentClassLoader = defaultConnectorBundleParentClassLoader;
     }
@@ -133,6 +137,7 @@ public class ConnectorFramework implements Closeable {
             scheduler.shutdown();
 
             messageExecutor.shutdown();
+            requestDispatcher.shutdown();
 
             for (ConnectorFacade facade : MANAGED_FACADE_CACHE.values()) {
                 if (facade instanceof LocalConnectorFacadeImpl) {
@@ -307,6 +312,10 @@ public class ConnectorFramework implements Closeable {
         messageExecutor.execute(processMessage);
     }
 
+    public RequestDispatcher getRequestDispatcher() {
+        return requestDispatcher;
+    }
+
     // ------ LocalConnectorFramework Implementation Start ------
 
     private final ConcurrentMap<ClassLoader, AsyncLocalConnectorInfoManager> localConnectorInfoManagerCache =
@@ -24,6 +24,7 @@
 
 package org.forgerock.openicf.framework.async.impl;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -113,6 +114,18 @@ public abstract class AbstractAPIOperation {
     protected static abstract class ResultBuffer<T, R> {
 
         private static final Object NULL_OBJECT = new Object();
+
+        /**
+         * Many results received in one response message.
+         */
+        private static final class Batch {
+            private final List<?> results;
+
+            private Batch(final List<?> results) {
+                this.results = results;
+            }
+        }
+
         private final long timeoutMillis;
         private final AtomicBoolean stopped = new AtomicBoolean(false);
         private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
@@ -124,6 +137,17 @@ public abstract class AbstractAPIOperation {
 
         private long lastSequenceNumber = -1;
 
+        /**
+         * Number of results the server sends without credit, 0 if the
+         * results are not flow controlled.
+         */
+        private int window = 0;
+
+        /**
+         * Number of results processed since the last credit was granted.
+         */
+        private int processed = 0;
+
         public ResultBuffer(long timeoutMillis) {
 
             if (timeoutMillis == APIOperation.NO_TIMEOUT) {
@@ -135,6 +159,10 @@ public abstract class AbstractAPIOperation {
             }
         }
 
+        public void setWindow(int window) {
+            this.window = Math.max(0, window);
+        }
+
         public boolean isStopped() {
             return stopped.get();
         }
@@ -158,6 +186,14 @@ public abstract class AbstractAPIOperation {
         }
 
         public void receiveNext(long sequence, T result) {
+            receive(sequence, result);
+        }
+
+        public void receiveNextBatch(long sequence, List<T> results) {
+            receive(sequence, null != results && !results.isEmpty() ? new Batch(results) : null);
+        }
+
+        private void receive(long sequence, Object result) {
             if (null != result) {
                 if (nextPermit.get() == sequence) {
                     enqueue(result);
@@ -205,6 +241,29 @@ public abstract class AbstractAPIOperation {
 
         protected abstract boolean handle(Object result);
 
+        /**
+         * Lets the server send the given number of results more.
+         * <p/>
+         * The credit is granted when half of the window has been processed
+         * so the server can fill the queue again while the application
+         * thread processes the other half.
+         *
+         * @param credit
+         *            the number of results processed since the last credit.
+         */
+        protected void grantCredit(int credit) {
+        }
+
+        private void processed(int count) {
+            if (window > 0) {
+                processed += count;
+                if (processed >= Math.max(1, window / 2)) {
+                    grantCredit(processed);
+                    processed = 0;
+                }
+            }
+        }
+
         public void process() {
             while (!stopped.get()) {
 
@@ -226,10 +285,23 @@ public abstract class AbstractAPIOperation {
                     }
                 } else {
                     try {
-                        boolean keepGoing = handle(NULL_OBJECT.equals(obj) ? null : obj);
+                        boolean keepGoing;
+                        if (obj instanceof Batch) {
+                            keepGoing = true;
+                            for (Object result : ((Batch) obj).results) {
+                                keepGoing = handle(result);
+                                if (!keepGoing) {
+                                    break;
+                                }
+                            }
+                        } else {
+                            keepGoing = handle(NULL_OBJECT.equals(obj) ? null : obj);
+                        }
                         if (!keepGoing) {
                             // stop and wait
                             clear();
+                        } else {
+                            processed(obj instanceof Batch ? ((Batch) obj).results.size() : 1);
                         }
                     } catch (RuntimeException e) {
                         // handler threw an exception
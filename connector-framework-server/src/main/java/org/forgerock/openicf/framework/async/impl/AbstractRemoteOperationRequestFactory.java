@@ -31,6 +31,7 @@ import org.forgerock.openicf.common.rpc.RemoteRequestFactory;
 import org.forgerock.openicf.framework.remote.MessagesUtil;
 import org.forgerock.openicf.framework.remote.rpc.RemoteOperationContext;
 import org.forgerock.openicf.framework.remote.rpc.RemoteOperationRequest;
+import org.forgerock.openicf.framework.remote.rpc.UnknownConnectorFacadeException;
 import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionGroup;
 import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionHolder;
 import org.forgerock.util.Function;
@@ -38,6 +39,7 @@ import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.MessageLite;
@@ -70,6 +72,9 @@ public abstract class AbstractRemoteOperationRequestFactory<V, R extends RemoteO
                     .setLocale(
                             MessagesUtil.serializeMessage(CurrentLocale.get(),
                                     CommonObjectMessages.Locale.class));
+            if (context.getRemoteConnectionGroup().isFacadeIdSupported()) {
+                operationBuilder.setConnectorFacadeId(MessagesUtil.getConnectorFacadeId(facadeKey));
+            }
             return RPCMessages.RPCRequest.newBuilder().setOperationRequest(operationBuilder);
         } else {
             return null;
@@ -93,6 +98,8 @@ public abstract class AbstractRemoteOperationRequestFactory<V, R extends RemoteO
 
         private final RPCMessages.RPCRequest.Builder request;
 
+        private volatile boolean facadeKeyResent = false;
+
         public AbstractRemoteOperationRequest(
                 RemoteOperationContext context,
                 long requestId,
@@ -108,11 +115,46 @@ public abstract class AbstractRemoteOperationRequestFactory<V, R extends RemoteO
         protected abstract void handleOperationResponseMessages(
                 WebSocketConnectionHolder sourceConnection, M message);
 
+        /**
+         * Leaves the connectorFacadeKey out of the request if it has been sent
+         * to the remote server already.
+         */
         protected RPCMessages.RPCRequest.Builder createOperationRequest(
                 RemoteOperationContext remoteContext) {
+            if (request.hasOperationRequest()) {
+                final ByteString facadeId = request.getOperationRequest().getConnectorFacadeId();
+                if (!facadeId.isEmpty()
+                        && remoteContext.getRemoteConnectionGroup().markConnectorFacadeIdSent(
+                                facadeId)) {
+                    RPCMessages.RPCRequest.Builder builder = request.clone();
+                    builder.getOperationRequestBuilder().clearConnectorFacadeKey();
+                    return builder;
+                }
+            }
             return request;
         }
 
+        /**
+         * Sends the request again with the connectorFacadeKey if the remote
+         * server does not know its id.
+         */
+        protected void handleExceptionMessage(RPCMessages.ExceptionMessage exceptionMessage) {
+            if (!facadeKeyResent
+                    && UnknownConnectorFacadeException.class.getName().equals(
+                            exceptionMessage.getExceptionClass())) {
+                facadeKeyResent = true;
+                logger.ok("Resend request:{0} with the connectorFacadeKey", getRequestId());
+                try {
+                    trySendBytes(RPCMessages.RemoteMessage.newBuilder().setMessageId(
+                            getRequestId()).setRequest(request).build().toByteArray());
+                    return;
+                } catch (ConnectorIOException e) {
+                    logger.ok(e, "Failed to resend request:{0}", getRequestId());
+                }
+            }
+            super.handleExceptionMessage(exceptionMessage);
+        }
+
         protected boolean handleResponseMessage(final WebSocketConnectionHolder sourceConnection,
                 final MessageLite message) {
             if (message instanceof OperationMessages.OperationResponse) {
@@ -606,7 +606,10 @@ public class BatchApiOpImpl extends AbstractAPIOperation implements BatchApiOp {
         }
 
         protected boolean tryCancel() {
-            subscription.close();
+            // The request may be cancelled before it is executed
+            if (null != subscription) {
+                subscription.close();
+            }
             return super.tryCancel();
         }
     }
@@ -298,7 +298,10 @@ public class ConnectorEventSubscriptionApiOpImpl extends AbstractAPIOperation im
         }
 
         protected boolean tryCancel() {
-            subscription.close();
+            // The request may be cancelled before it is executed
+            if (null != subscription) {
+                subscription.close();
+            }
             return super.tryCancel();
         }
     }
@@ -0,0 +1,385 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.async.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openicf.common.protobuf.OperationMessages;
+import org.forgerock.util.Utils;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+
+/**
+ * A ResultBatcher collects the streamed results of a local operation and
+ * sends them in one response message when the batch is full or when the
+ * oldest result in the batch has been waiting for longer than the max delay.
+ * <p/>
+ * The batches are sent outside the lock of the batcher. A full batch is sent
+ * by the thread of the operation, the shared scheduler only hands a delayed
+ * batch over to a sender thread and never sends itself. The operation waits
+ * for the delayed batch in {@link #flush()} so its last response follows all
+ * batches.
+ * <p/>
+ * Each sent batch gets the next sequence number, so the last response of the
+ * operation must carry the value of {@link #getSequence()} after the final
+ * {@link #flush()}.
+ * <p/>
+ * If the client sets a window the batcher is flow controlled: every result
+ * takes one credit and {@link #add(Object)} blocks the connector when the
+ * credit is used up, until the client grants more with
+ * {@link #grantCredit(int)} or the batcher is closed. A client which does not
+ * grant credit within the {@value #CREDIT_TIMEOUT_PROPERTY} system property in
+ * milliseconds, default {@value #DEFAULT_CREDIT_TIMEOUT}, fails the operation
+ * with an {@link OperationTimeoutException}.
+ *
+ * @since 1.5
+ */
+abstract class ResultBatcher<T> {
+
+    /**
+     * Default number of results the client accepts in one response message.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * Default time in milliseconds a result may wait in a not full batch.
+     */
+    public static final long DEFAULT_MAX_DELAY = 100L;
+
+    /**
+     * Upper limit of the batch size the server accepts from the client.
+     */
+    public static final int MAX_SIZE_LIMIT = 1000;
+
+    /**
+     * Default number of results the client accepts before it grants more
+     * credit.
+     */
+    public static final int DEFAULT_WINDOW = 1000;
+
+    public static final String CREDIT_TIMEOUT_PROPERTY =
+            "org.forgerock.openicf.framework.async.impl.ResultBatcher.creditTimeout";
+
+    /**
+     * Default time in milliseconds the operation waits for credit, zero or
+     * less waits until the operation is cancelled.
+     */
+    public static final long DEFAULT_CREDIT_TIMEOUT = 300000L;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(Utils.newThreadFactory(null,
+                    "OpenICF Result Batch Scheduler %d", true));
+
+    /**
+     * Sends the delayed batches, one batcher has at most one delayed batch in
+     * progress.
+     */
+    private static final ExecutorService SENDER = Executors.newCachedThreadPool(Utils
+            .newThreadFactory(null, "OpenICF Result Batch Sender %d", true));
+
+    private final int maxSize;
+    private final long maxDelay;
+    private final int window;
+    private final long creditTimeout;
+
+    private List<T> batch;
+    private long sequence = 0;
+    private ScheduledFuture<?> scheduledFlush = null;
+    private Future<Boolean> delayedSend = null;
+
+    private final Object creditLock = new Object();
+    private long credit;
+    private boolean closed = false;
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            synchronized (ResultBatcher.this) {
+                if (null != delayedSend && !delayedSend.isDone()) {
+                    // the previous delayed batch is still being sent
+                    scheduledFlush = SCHEDULER.schedule(this, maxDelay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                scheduledFlush = null;
+                if (batch.isEmpty()) {
+                    return;
+                }
+                final long batchSequence = ++sequence;
+                final List<T> results = batch;
+                batch = new ArrayList<T>(maxSize);
+                delayedSend = SENDER.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return send(batchSequence, results);
+                    }
+                });
+            }
+        }
+    };
+
+    /**
+     * Creates a batcher which sends every result in its own message.
+     */
+    ResultBatcher() {
+        this(1, 0L, 0);
+    }
+
+    /**
+     * Creates a batcher with the limits requested by the client.
+     *
+     * @param options
+     *            the batch options of the request, may be null.
+     */
+    ResultBatcher(final OperationMessages.ResultBatchOptions options) {
+        this(null != options ? Math.min(options.getMaxSize(), MAX_SIZE_LIMIT) : 1,
+                null != options ? options.getMaxDelay() : 0L, null != options ? options
+                        .getWindow() : 0);
+    }
+
+    ResultBatcher(int maxSize, long maxDelay, int window) {
+        this(maxSize, maxDelay, window, Long.getLong(CREDIT_TIMEOUT_PROPERTY,
+                DEFAULT_CREDIT_TIMEOUT));
+    }
+
+    ResultBatcher(int maxSize, long maxDelay, int window, long creditTimeout) {
+        this.maxSize = Math.max(1, maxSize);
+        this.maxDelay = Math.max(0L, maxDelay);
+        this.window = Math.max(0, window);
+        this.creditTimeout = creditTimeout;
+        this.credit = this.window;
+        this.batch = new ArrayList<T>(this.maxSize);
+    }
+
+    public static OperationMessages.ResultBatchOptions.Builder createDefaultOptions() {
+        return OperationMessages.ResultBatchOptions.newBuilder().setMaxSize(DEFAULT_MAX_SIZE)
+                .setMaxDelay(DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Creates the default options and sets the {@link #DEFAULT_WINDOW} if the
+     * remote peer accepts credits.
+     */
+    public static OperationMessages.ResultBatchOptions.Builder createDefaultOptions(
+            boolean flowControl) {
+        OperationMessages.ResultBatchOptions.Builder builder = createDefaultOptions();
+        if (flowControl) {
+            builder.setWindow(DEFAULT_WINDOW);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns true if more than one result is sent in a message.
+     */
+    public boolean isBatched() {
+        return maxSize > 1;
+    }
+
+    /**
+     * Returns true if the client limits the results with credits.
+     */
+    public boolean isFlowControlled() {
+        return window > 0;
+    }
+
+    /**
+     * Adds the result to the batch and sends it if the batch is full.
+     * <p/>
+     * If the batcher is flow controlled and there is no credit left the
+     * pending results are sent and the call blocks until the client grants
+     * more credit.
+     *
+     * @return false if the batch could not be sent or the batcher was closed
+     *         while it was waiting for credit.
+     * @throws OperationTimeoutException
+     *             if the client did not grant credit in time, the batcher is
+     *             closed.
+     */
+    public boolean add(T result) {
+        if (isFlowControlled() && !acquireCredit()) {
+            return false;
+        }
+        synchronized (this) {
+            batch.add(result);
+            if (batch.size() < maxSize) {
+                if (batch.size() == 1 && maxDelay > 0) {
+                    scheduledFlush =
+                            SCHEDULER.schedule(flushTask, maxDelay, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+        }
+        return flush();
+    }
+
+    private boolean acquireCredit() {
+        synchronized (creditLock) {
+            if (closed) {
+                return false;
+            } else if (credit > 0) {
+                credit--;
+                return true;
+            }
+        }
+        // The client grants credit only for the results it has received
+        if (!flush()) {
+            return false;
+        }
+        synchronized (creditLock) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(creditTimeout);
+            while (credit <= 0 && !closed) {
+                try {
+                    if (creditTimeout <= 0L) {
+                        creditLock.wait();
+                    } else {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0L) {
+                            closed = true;
+                            throw new OperationTimeoutException("No credit was granted in "
+                                    + creditTimeout + "ms");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(creditLock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (closed) {
+                return false;
+            }
+            credit--;
+            return true;
+        }
+    }
+
+    /**
+     * Lets the batcher take the given number of results more.
+     *
+     * @param credit
+     *            the number of results the client has processed.
+     */
+    public void grantCredit(int credit) {
+        if (credit > 0) {
+            synchronized (creditLock) {
+                this.credit += credit;
+                creditLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Releases the thread waiting for credit when the operation is cancelled.
+     */
+    public void close() {
+        synchronized (creditLock) {
+            closed = true;
+            creditLock.notifyAll();
+        }
+    }
+
+    /**
+     * Sends the pending results if there are any and waits until the delayed
+     * batch has been sent.
+     *
+     * @return false if a batch could not be sent.
+     */
+    public boolean flush() {
+        final List<T> results;
+        final long batchSequence;
+        final Future<Boolean> delayed;
+        synchronized (this) {
+            if (null != scheduledFlush) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            delayed = delayedSend;
+            delayedSend = null;
+            if (batch.isEmpty()) {
+                results = null;
+                batchSequence = sequence;
+            } else {
+                results = batch;
+                batch = new ArrayList<T>(maxSize);
+                batchSequence = ++sequence;
+            }
+        }
+        boolean sent = awaitSend(delayed);
+        if (null != results) {
+            sent = send(batchSequence, results) && sent;
+        }
+        return sent;
+    }
+
+    private static boolean awaitSend(final Future<Boolean> send) {
+        if (null == send) {
+            return true;
+        }
+        try {
+            return send.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Discards the pending results.
+     */
+    public synchronized void clear() {
+        if (null != scheduledFlush) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        batch.clear();
+    }
+
+    /**
+     * Returns the sequence number of the last sent batch.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sends the results in one response message, it may be called from the
+     * thread of the operation and from a sender thread at the same time.
+     *
+     * @param sequence
+     *            the sequence number of the message.
+     * @param results
+     *            the results, never empty.
+     * @return false if the message could not be sent.
+     */
+    protected abstract boolean send(long sequence, List<T> results);
+}
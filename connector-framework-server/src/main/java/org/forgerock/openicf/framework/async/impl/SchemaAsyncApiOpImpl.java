@@ -35,10 +35,13 @@ import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionGroup;
 import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionHolder;
 import org.forgerock.util.Function;
 import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.Promises;
+import org.forgerock.util.promise.ResultHandler;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 
 import com.google.protobuf.ByteString;
 
@@ -46,11 +49,22 @@ public class SchemaAsyncApiOpImpl extends AbstractAPIOperation implements Schema
 
     private static final Log logger = Log.getLog(SchemaAsyncApiOpImpl.class);
 
+    private final SchemaCache schemaCache;
+
     public SchemaAsyncApiOpImpl(
             RequestDistributor<WebSocketConnectionGroup, WebSocketConnectionHolder, RemoteOperationContext> remoteConnection,
             ConnectorKey connectorKey,
             Function<RemoteOperationContext, ByteString, RuntimeException> facadeKeyFunction, long timeout) {
+        this(remoteConnection, connectorKey, facadeKeyFunction, timeout, new SchemaCache());
+    }
+
+    public SchemaAsyncApiOpImpl(
+            RequestDistributor<WebSocketConnectionGroup, WebSocketConnectionHolder, RemoteOperationContext> remoteConnection,
+            ConnectorKey connectorKey,
+            Function<RemoteOperationContext, ByteString, RuntimeException> facadeKeyFunction, long timeout,
+            SchemaCache schemaCache) {
         super(remoteConnection, connectorKey, facadeKeyFunction,timeout);
+        this.schemaCache = schemaCache;
     }
 
     public Schema schema() {
@@ -58,9 +72,19 @@ public class SchemaAsyncApiOpImpl extends AbstractAPIOperation implements Schema
     }
 
     public Promise<Schema, RuntimeException> schemaAsync() {
+        final Schema schema = schemaCache.get();
+        if (null != schema) {
+            return Promises.<Schema, RuntimeException> newResultPromise(schema);
+        }
+        final long version = schemaCache.getVersion();
         return submitRequest(new InternalRequestFactory(getConnectorKey(), getFacadeKeyFunction(),
                 OperationMessages.OperationRequest.newBuilder().setSchemaOpRequest(
-                        OperationMessages.SchemaOpRequest.getDefaultInstance())));
+                        OperationMessages.SchemaOpRequest.getDefaultInstance()))).thenOnResult(
+                new ResultHandler<Schema>() {
+                    public void handleResult(Schema result) {
+                        schemaCache.put(version, result);
+                    }
+                });
     }
 
     private static class InternalRequestFactory extends
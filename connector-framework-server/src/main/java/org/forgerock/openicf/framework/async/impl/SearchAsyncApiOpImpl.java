@@ -24,10 +24,13 @@
 
 package org.forgerock.openicf.framework.async.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.openicf.common.protobuf.CommonObjectMessages;
+import org.forgerock.openicf.common.protobuf.ConnectorObjects;
+import org.forgerock.openicf.common.protobuf.FilterMessages;
 import org.forgerock.openicf.common.protobuf.OperationMessages;
 import org.forgerock.openicf.common.protobuf.OperationMessages.OperationRequest;
 import org.forgerock.openicf.common.protobuf.OperationMessages.SearchOpRequest;
@@ -77,20 +80,10 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
         }
         Assertions.nullCheck(handler, "handler");
 
-        SearchOpRequest.Builder requestBuilder =
-                SearchOpRequest.newBuilder().setObjectClass(objectClass.getObjectClassValue());
-        if (filter != null) {
-            requestBuilder.setFilter(MessagesUtil.serializeLegacy(filter));
-        }
-        if (options != null) {
-            requestBuilder.setOptions(MessagesUtil.serializeLegacy(options));
-        }
-
         InternalRequest request =
                 getRemoteConnection().trySubmitRequest(
                         new InternalRequestFactory(getConnectorKey(), getFacadeKeyFunction(),
-                                OperationRequest.newBuilder().setSearchOpRequest(requestBuilder),
-                                handler, getTimeout()));
+                                objectClass, filter, options, handler, getTimeout()));
         if (null != request) {
             return asyncTimeout(request.process());
         }
@@ -99,17 +92,21 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
 
     private static class InternalRequestFactory extends
             AbstractRemoteOperationRequestFactory<SearchResult, InternalRequest> {
-        private final OperationRequest.Builder operationRequest;
+        private final ObjectClass objectClass;
+        private final Filter filter;
+        private final OperationOptions options;
         private final ResultsHandler handler;
         private final long timeout;
 
         public InternalRequestFactory(
                 final org.identityconnectors.framework.api.ConnectorKey connectorKey,
                 final Function<RemoteOperationContext, ByteString, RuntimeException> facadeKeyFunction,
-                final OperationRequest.Builder operationRequest, final ResultsHandler handler,
-                long timeout) {
+                final ObjectClass objectClass, final Filter filter,
+                final OperationOptions options, final ResultsHandler handler, long timeout) {
             super(connectorKey, facadeKeyFunction);
-            this.operationRequest = operationRequest;
+            this.objectClass = objectClass;
+            this.filter = filter;
+            this.options = options;
             this.handler = handler;
             this.timeout = timeout;
         }
@@ -131,7 +128,34 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
 
         protected OperationRequest.Builder createOperationRequest(
                 RemoteOperationContext remoteContext) {
-            return operationRequest;
+            // The encoding and the flow control depend on the version of the
+            // remote peer
+            final boolean nativeEncoding =
+                    remoteContext.getRemoteConnectionGroup().isNativeEncodingSupported();
+            SearchOpRequest.Builder requestBuilder =
+                    SearchOpRequest.newBuilder().setObjectClass(objectClass.getObjectClassValue())
+                            .setBatchOptions(
+                                    ResultBatcher.createDefaultOptions(remoteContext
+                                            .getRemoteConnectionGroup().isFlowControlSupported()));
+            if (filter != null) {
+                FilterMessages.FilterUnionMessage.Builder filterMessage =
+                        MessagesUtil.tryFromFilter(filter, nativeEncoding);
+                if (null != filterMessage) {
+                    requestBuilder.setFilterMessage(filterMessage);
+                } else {
+                    requestBuilder.setFilter(MessagesUtil.serializeLegacy(filter));
+                }
+            }
+            if (options != null) {
+                ConnectorObjects.OperationOptionsMessage.Builder optionsMessage =
+                        MessagesUtil.tryFromOperationOptions(options, nativeEncoding);
+                if (null != optionsMessage) {
+                    requestBuilder.setOptionsMessage(optionsMessage);
+                } else {
+                    requestBuilder.setOptions(MessagesUtil.serializeLegacy(options));
+                }
+            }
+            return OperationRequest.newBuilder().setSearchOpRequest(requestBuilder);
         }
     }
 
@@ -179,7 +203,13 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
                     }
                     return false;
                 }
+
+                protected void grantCredit(int credit) {
+                    trySendCredit(credit);
+                }
             };
+            resultBuffer.setWindow(requestBuilder.getOperationRequest().getSearchOpRequest()
+                    .getBatchOptions().getWindow());
         }
 
         public Promise<SearchResult, RuntimeException> process() {
@@ -238,7 +268,14 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
 
         protected void handleOperationResponseMessages(WebSocketConnectionHolder sourceConnection,
                 SearchOpResponse message) {
-            if (message.hasConnectorObject()) {
+            if (message.getConnectorObjectsCount() > 0) {
+                List<ConnectorObject> batch =
+                        new ArrayList<ConnectorObject>(message.getConnectorObjectsCount());
+                for (CommonObjectMessages.ConnectorObject co : message.getConnectorObjectsList()) {
+                    batch.add(MessagesUtil.deserializeMessage(co, ConnectorObject.class));
+                }
+                resultBuffer.receiveNextBatch(message.getSequence(), batch);
+            } else if (message.hasConnectorObject()) {
                 resultBuffer.receiveNext(message.getSequence(), MessagesUtil.deserializeMessage(
                         message.getConnectorObject(), ConnectorObject.class));
             } else if (message.hasResult()) {
@@ -265,11 +302,41 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
             AbstractLocalOperationProcessor<SearchOpResponse.Builder, OperationMessages.SearchOpRequest> {
 
         private final AtomicBoolean doContinue = new AtomicBoolean(Boolean.TRUE);
-        final AtomicLong sequence = new AtomicLong(0);
+        private final ResultBatcher<ConnectorObject> batcher;
+        private final boolean nativeEncoding;
 
         protected InternalLocalOperationProcessor(long requestId, WebSocketConnectionHolder socket,
                 OperationMessages.SearchOpRequest message) {
             super(requestId, socket, message);
+            nativeEncoding =
+                    socket.getRemoteConnectionContext().getRemoteConnectionGroup()
+                            .isNativeEncodingSupported();
+            batcher =
+                    new ResultBatcher<ConnectorObject>(message.hasBatchOptions() ? message
+                            .getBatchOptions() : null) {
+                        protected boolean send(long sequence, List<ConnectorObject> results) {
+                            SearchOpResponse.Builder result =
+                                    SearchOpResponse.newBuilder().setSequence(sequence);
+                            if (isBatched()) {
+                                for (ConnectorObject connectorObject : results) {
+                                    result.addConnectorObjects(MessagesUtil
+                                            .serializeConnectorObject(connectorObject,
+                                                    nativeEncoding));
+                                }
+                            } else {
+                                result.setConnectorObject(MessagesUtil.serializeConnectorObject(
+                                        results.get(0), nativeEncoding));
+                            }
+                            if (tryHandleResult(result)) {
+                                logger.ok("SearchResult sent in sequence:{0}", sequence);
+                                return true;
+                            } else {
+                                logger.info("Failed to send response {0}", sequence);
+                                doContinue.set(Boolean.FALSE);
+                                return false;
+                            }
+                        }
+                    };
         }
 
         protected RPCMessages.RPCResponse.Builder createOperationResponse(
@@ -283,42 +350,41 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
 
             final ObjectClass objectClass = new ObjectClass(requestMessage.getObjectClass());
             Filter filter = null;
-            if (!requestMessage.getFilter().isEmpty()) {
+            if (requestMessage.hasFilterMessage()) {
+                filter = MessagesUtil.toFilter(requestMessage.getFilterMessage());
+            } else if (!requestMessage.getFilter().isEmpty()) {
                 filter = MessagesUtil.deserializeLegacy(requestMessage.getFilter());
             }
 
             OperationOptions operationOptions = null;
-            if (!requestMessage.getOptions().isEmpty()) {
+            if (requestMessage.hasOptionsMessage()) {
+                operationOptions =
+                        MessagesUtil.toOperationOptions(requestMessage.getOptionsMessage());
+            } else if (!requestMessage.getOptions().isEmpty()) {
                 operationOptions = MessagesUtil.deserializeLegacy(requestMessage.getOptions());
             }
-            final SearchResult result =
-                    connectorFacade.search(objectClass, filter, new ResultsHandler() {
-                        public boolean handle(ConnectorObject connectorObject) {
-
-                            if (doContinue.get() && null != connectorObject) {
-                                SearchOpResponse.Builder result =
-                                        SearchOpResponse
-                                                .newBuilder()
-                                                .setConnectorObject(
-                                                        MessagesUtil
-                                                                .serializeMessage(
-                                                                        connectorObject,
-                                                                        CommonObjectMessages.ConnectorObject.class))
-                                                .setSequence(sequence.incrementAndGet());
-
-                                if (tryHandleResult(result)) {
-                                    logger.ok("SearchResult sent in sequence:{0}", sequence.get());
-                                } else {
-                                    logger.info("Failed to send response {0}", sequence.get());
-                                    doContinue.set(Boolean.FALSE);
-                                }
-                            }
-                            return doContinue.get();
+            final SearchResult result;
+            try {
+                result = connectorFacade.search(objectClass, filter, new ResultsHandler() {
+                    public boolean handle(ConnectorObject connectorObject) {
+                        if (doContinue.get() && null != connectorObject) {
+                            batcher.add(connectorObject);
                         }
-                    }, operationOptions);
+                        return doContinue.get();
+                    }
+                }, operationOptions);
+            } catch (RuntimeException e) {
+                batcher.clear();
+                throw e;
+            }
+            if (doContinue.get()) {
+                batcher.flush();
+            } else {
+                batcher.clear();
+            }
 
             SearchOpResponse.Builder response =
-                    SearchOpResponse.newBuilder().setSequence(sequence.get());
+                    SearchOpResponse.newBuilder().setSequence(batcher.getSequence());
             if (null != result) {
                 response.setResult(MessagesUtil.serializeMessage(result,
                         CommonObjectMessages.SearchResult.class));
@@ -326,8 +392,18 @@ public class SearchAsyncApiOpImpl extends AbstractAPIOperation implements Search
             return response;
         }
 
+        public void handleIncomingMessage(WebSocketConnectionHolder sourceConnection,
+                Object message) {
+            if (message instanceof RPCMessages.CreditRequest) {
+                batcher.grantCredit(((RPCMessages.CreditRequest) message).getCredit());
+            } else {
+                super.handleIncomingMessage(sourceConnection, message);
+            }
+        }
+
         protected boolean tryCancel() {
             doContinue.set(Boolean.FALSE);
+            batcher.close();
             return super.tryCancel();
         }
     }
@@ -24,10 +24,12 @@
 
 package org.forgerock.openicf.framework.async.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.openicf.common.protobuf.CommonObjectMessages;
+import org.forgerock.openicf.common.protobuf.ConnectorObjects;
 import org.forgerock.openicf.common.protobuf.OperationMessages;
 import org.forgerock.openicf.common.protobuf.RPCMessages;
 import org.forgerock.openicf.common.rpc.RemoteRequestFactory;
@@ -75,22 +77,19 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
         Assertions.nullCheck(handler, "handler");
         OperationMessages.SyncOpRequest.Sync.Builder requestBuilder =
                 OperationMessages.SyncOpRequest.Sync.newBuilder().setObjectClass(
-                        objectClass.getObjectClassValue());
+                        objectClass.getObjectClassValue()).setBatchOptions(
+                        ResultBatcher.createDefaultOptions());
         if (token != null) {
             requestBuilder.setToken(MessagesUtil.serializeMessage(token,
                     CommonObjectMessages.SyncToken.class));
         }
 
-        if (options != null) {
-            requestBuilder.setOptions(MessagesUtil.serializeLegacy(options));
-        }
-
         InternalRequest request =
                 getRemoteConnection().trySubmitRequest(
                         new InternalRequestFactory(getConnectorKey(), getFacadeKeyFunction(),
                                 OperationMessages.OperationRequest.newBuilder().setSyncOpRequest(
                                         OperationMessages.SyncOpRequest.newBuilder().setSync(
-                                                requestBuilder)), handler, getTimeout()));
+                                                requestBuilder)), options, handler, getTimeout()));
 
         if (null != request) {
             return asyncTimeout(request.process());
@@ -106,12 +105,13 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
                         OperationMessages.SyncOpRequest.newBuilder().setLatestSyncToken(
                                 OperationMessages.SyncOpRequest.LatestSyncToken.newBuilder()
                                         .setObjectClass(objectClass.getObjectClassValue()))), null,
-                getTimeout()));
+                null, getTimeout()));
     }
 
     private static class InternalRequestFactory extends
             AbstractRemoteOperationRequestFactory<SyncToken, InternalRequest> {
         private final OperationMessages.OperationRequest.Builder operationRequest;
+        private final OperationOptions options;
         final SyncResultsHandler handler;
         private final long timeout;
 
@@ -119,9 +119,10 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
                 final ConnectorKey connectorKey,
                 final Function<RemoteOperationContext, ByteString, RuntimeException> facadeKeyFunction,
                 final OperationMessages.OperationRequest.Builder operationRequest,
-                final SyncResultsHandler handler, long timeout) {
+                final OperationOptions options, final SyncResultsHandler handler, long timeout) {
             super(connectorKey, facadeKeyFunction);
             this.operationRequest = operationRequest;
+            this.options = options;
             this.handler = handler;
             this.timeout = timeout;
         }
@@ -142,7 +143,28 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
 
         protected OperationMessages.OperationRequest.Builder createOperationRequest(
                 final RemoteOperationContext remoteContext) {
-            return operationRequest;
+            if (!operationRequest.getSyncOpRequest().hasSync()) {
+                return operationRequest;
+            }
+            // The encoding and the flow control depend on the version of the
+            // remote peer
+            final OperationMessages.OperationRequest.Builder builder = operationRequest.clone();
+            final OperationMessages.SyncOpRequest.Sync.Builder sync =
+                    builder.getSyncOpRequestBuilder().getSyncBuilder();
+            if (remoteContext.getRemoteConnectionGroup().isFlowControlSupported()) {
+                sync.getBatchOptionsBuilder().setWindow(ResultBatcher.DEFAULT_WINDOW);
+            }
+            if (null != options) {
+                final ConnectorObjects.OperationOptionsMessage.Builder optionsMessage =
+                        MessagesUtil.tryFromOperationOptions(options, remoteContext
+                                .getRemoteConnectionGroup().isNativeEncodingSupported());
+                if (null != optionsMessage) {
+                    sync.setOptionsMessage(optionsMessage);
+                } else {
+                    sync.setOptions(MessagesUtil.serializeLegacy(options));
+                }
+            }
+            return builder;
         }
     }
 
@@ -190,7 +212,13 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
                     }
                     return false;
                 }
+
+                protected void grantCredit(int credit) {
+                    trySendCredit(credit);
+                }
             };
+            resultBuffer.setWindow(requestBuilder.getOperationRequest().getSyncOpRequest()
+                    .getSync().getBatchOptions().getWindow());
 
         }
 
@@ -259,7 +287,15 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
                     getResultHandler().handleResult(null);
                 }
             } else if (message.hasSync()) {
-                if (message.getSync().hasSyncDelta()) {
+                if (message.getSync().getSyncDeltasCount() > 0) {
+                    List<SyncDelta> batch =
+                            new ArrayList<SyncDelta>(message.getSync().getSyncDeltasCount());
+                    for (CommonObjectMessages.SyncDelta delta : message.getSync()
+                            .getSyncDeltasList()) {
+                        batch.add(MessagesUtil.deserializeMessage(delta, SyncDelta.class));
+                    }
+                    resultBuffer.receiveNextBatch(message.getSync().getSequence(), batch);
+                } else if (message.getSync().hasSyncDelta()) {
                     resultBuffer.receiveNext(message.getSync().getSequence(), MessagesUtil
                             .deserializeMessage(message.getSync().getSyncDelta(), SyncDelta.class));
                 } else if (message.getSync().hasSyncToken()) {
@@ -289,11 +325,43 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
             AbstractLocalOperationProcessor<OperationMessages.SyncOpResponse.Builder, OperationMessages.SyncOpRequest> {
 
         private final AtomicBoolean doContinue = new AtomicBoolean(Boolean.TRUE);
-        final AtomicLong sequence = new AtomicLong(0);
+        private final ResultBatcher<SyncDelta> batcher;
+        private final boolean nativeEncoding;
 
         protected InternalLocalOperationProcessor(long requestId, WebSocketConnectionHolder socket,
                 OperationMessages.SyncOpRequest message) {
             super(requestId, socket, message);
+            nativeEncoding =
+                    socket.getRemoteConnectionContext().getRemoteConnectionGroup()
+                            .isNativeEncodingSupported();
+            batcher =
+                    new ResultBatcher<SyncDelta>(message.hasSync()
+                            && message.getSync().hasBatchOptions() ? message.getSync()
+                            .getBatchOptions() : null) {
+                        protected boolean send(long sequence, List<SyncDelta> results) {
+                            OperationMessages.SyncOpResponse.Sync.Builder sync =
+                                    OperationMessages.SyncOpResponse.Sync.newBuilder()
+                                            .setSequence(sequence);
+                            if (isBatched()) {
+                                for (SyncDelta delta : results) {
+                                    sync.addSyncDeltas(MessagesUtil.serializeSyncDelta(delta,
+                                            nativeEncoding));
+                                }
+                            } else {
+                                sync.setSyncDelta(MessagesUtil.serializeSyncDelta(results.get(0),
+                                        nativeEncoding));
+                            }
+                            if (tryHandleResult(OperationMessages.SyncOpResponse.newBuilder()
+                                    .setSync(sync))) {
+                                logger.ok("SyncResult sent in sequence:{0}", sequence);
+                                return true;
+                            } else {
+                                logger.info("Failed to send response {0}", sequence);
+                                doContinue.set(Boolean.FALSE);
+                                return false;
+                            }
+                        }
+                    };
         }
 
         protected RPCMessages.RPCResponse.Builder createOperationResponse(
@@ -326,44 +394,38 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
                                 SyncToken.class);
 
                 OperationOptions operationOptions = null;
-                if (!requestMessage.getSync().getOptions().isEmpty()) {
+                if (requestMessage.getSync().hasOptionsMessage()) {
+                    operationOptions =
+                            MessagesUtil.toOperationOptions(requestMessage.getSync()
+                                    .getOptionsMessage());
+                } else if (!requestMessage.getSync().getOptions().isEmpty()) {
                     operationOptions =
                             MessagesUtil.deserializeLegacy(requestMessage.getSync().getOptions());
                 }
 
-                SyncToken result =
-                        connectorFacade.sync(objectClass, token, new SyncResultsHandler() {
-                            public boolean handle(SyncDelta delta) {
-
-                                if (doContinue.get() && null != delta) {
-                                    OperationMessages.SyncOpResponse.Builder result =
-                                            OperationMessages.SyncOpResponse
-                                                    .newBuilder()
-                                                    .setSync(
-                                                            OperationMessages.SyncOpResponse.Sync
-                                                                    .newBuilder()
-                                                                    .setSyncDelta(
-                                                                            MessagesUtil
-                                                                                    .serializeMessage(
-                                                                                            delta,
-                                                                                            CommonObjectMessages.SyncDelta.class))
-                                                                    .setSequence(
-                                                                            sequence.incrementAndGet()));
-
-                                    if (tryHandleResult(result)) {
-                                        logger.ok("SyncResult sent in sequence:{0}", sequence.get());
-                                    } else {
-                                        logger.info("Failed to send response {0}", sequence.get());
-                                        doContinue.set(Boolean.FALSE);
-                                    }
-                                }
-                                return doContinue.get();
+                final SyncToken result;
+                try {
+                    result = connectorFacade.sync(objectClass, token, new SyncResultsHandler() {
+                        public boolean handle(SyncDelta delta) {
+                            if (doContinue.get() && null != delta) {
+                                batcher.add(delta);
                             }
-                        }, operationOptions);
+                            return doContinue.get();
+                        }
+                    }, operationOptions);
+                } catch (RuntimeException e) {
+                    batcher.clear();
+                    throw e;
+                }
+                if (doContinue.get()) {
+                    batcher.flush();
+                } else {
+                    batcher.clear();
+                }
 
                 OperationMessages.SyncOpResponse.Sync.Builder builder =
                         OperationMessages.SyncOpResponse.Sync.newBuilder().setSequence(
-                                sequence.get());
+                                batcher.getSequence());
                 if (null != result) {
                     builder.setSyncToken(MessagesUtil.serializeMessage(result,
                             CommonObjectMessages.SyncToken.class));
@@ -377,8 +439,18 @@ public class SyncAsyncApiOpImpl extends AbstractAPIOperation implements SyncApiO
             return null;
         }
 
+        public void handleIncomingMessage(WebSocketConnectionHolder sourceConnection,
+                Object message) {
+            if (message instanceof RPCMessages.CreditRequest) {
+                batcher.grantCredit(((RPCMessages.CreditRequest) message).getCredit());
+            } else {
+                super.handleIncomingMessage(sourceConnection, message);
+            }
+        }
+
         protected boolean tryCancel() {
             doContinue.set(Boolean.FALSE);
+            batcher.close();
             return super.tryCancel();
         }
     }
@@ -287,7 +287,10 @@ public class SyncEventSubscriptionApiOpImpl extends AbstractAPIOperation impleme
         }
 
         protected boolean tryCancel() {
-            subscription.close();
+            // The request may be cancelled before it is executed
+            if (null != subscription) {
+                subscription.close();
+            }
             return super.tryCancel();
         }
     }
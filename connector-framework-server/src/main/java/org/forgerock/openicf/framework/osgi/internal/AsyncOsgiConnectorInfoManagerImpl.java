@@ -52,6 +52,7 @@ import org.identityconnectors.framework.common.exceptions.ConfigurationException
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.ConnectorMessagesImpl;
+import org.identityconnectors.framework.impl.api.local.ConnectorClassScanner;
 import org.identityconnectors.framework.impl.api.local.JavaClassProperties;
 import org.identityconnectors.framework.impl.api.local.ThreadClassLoaderManager;
 import org.identityconnectors.framework.spi.Configuration;
@@ -151,6 +152,7 @@ public class AsyncOsgiConnectorInfoManagerImpl extends
         String frameworkVersion = null;
         String bundleName = null;
         String bundleVersion = null;
+        List<String> connectorClasses = null;
 
         for (ManifestEntry entry : manifestEntries) {
             if (ConnectorManifestScanner.ATT_FRAMEWORK_VERSION.equals(entry.getKey())) {
@@ -159,6 +161,8 @@ public class AsyncOsgiConnectorInfoManagerImpl extends
                 bundleName = entry.getValue();
             } else if (ConnectorManifestScanner.ATT_BUNDLE_VERSION.equals(entry.getKey())) {
                 bundleVersion = entry.getValue();
+            } else if (ConnectorManifestScanner.ATT_CONNECTOR_CLASSES.equals(entry.getKey())) {
+                connectorClasses = ConnectorClassScanner.parseClassNames(entry.getValue());
             }
         }
 
@@ -179,10 +183,16 @@ public class AsyncOsgiConnectorInfoManagerImpl extends
 
             Class<?> connectorClass = null;
             ConnectorClass options = null;
-            String name = classFiles.nextElement().getFile();
+            URL classFile = classFiles.nextElement();
+            String name = classFile.getFile();
 
             String className = name.substring(1, name.length() - ".class".length());
             className = className.replace('/', '.');
+            // skip the classes without the ConnectorClass annotation
+            if (null != connectorClasses ? !connectorClasses.contains(className)
+                    : !ConnectorClassScanner.isConnectorClass(classFile)) {
+                continue;
+            }
             try {
                 connectorClass = parsed.loadClass(className);
                 options = connectorClass.getAnnotation(ConnectorClass.class);
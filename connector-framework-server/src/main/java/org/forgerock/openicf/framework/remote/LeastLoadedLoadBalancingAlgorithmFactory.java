@@ -0,0 +1,49 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.remote;
+
+import java.util.List;
+
+import org.forgerock.openicf.common.rpc.LeastLoadedLoadBalancingAlgorithm;
+import org.forgerock.openicf.common.rpc.RequestDistributor;
+import org.forgerock.openicf.framework.remote.rpc.RemoteOperationContext;
+import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionGroup;
+import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionHolder;
+
+/**
+ * Creates {@link LeastLoadedLoadBalancingAlgorithm}s which send the requests
+ * to the remote connector server with the fewest requests in flight, weighted
+ * by its average response time.
+ *
+ * @since 1.5
+ */
+public class LeastLoadedLoadBalancingAlgorithmFactory extends LoadBalancingAlgorithmFactory {
+
+    protected RequestDistributor<WebSocketConnectionGroup, WebSocketConnectionHolder, RemoteOperationContext> createLoadBalancer(
+            List<RequestDistributor<WebSocketConnectionGroup, WebSocketConnectionHolder, RemoteOperationContext>> delegates) {
+        return new LeastLoadedLoadBalancingAlgorithm<WebSocketConnectionGroup, WebSocketConnectionHolder, RemoteOperationContext>(
+                delegates);
+    }
+}
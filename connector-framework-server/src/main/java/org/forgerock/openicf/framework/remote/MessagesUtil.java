@@ -24,39 +24,79 @@
 
 package org.forgerock.openicf.framework.remote;
 
+import java.io.File;
+import java.lang.reflect.Array;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.net.URI;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.forgerock.openicf.common.protobuf.CommonObjectMessages;
 import org.forgerock.openicf.common.protobuf.ConnectorObjects;
+import org.forgerock.openicf.common.protobuf.FilterMessages;
+import org.forgerock.openicf.common.protobuf.MessageVersion;
 import org.forgerock.openicf.common.protobuf.OperationMessages;
 import org.forgerock.openicf.common.protobuf.RPCMessages;
+import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.script.Script;
+import org.identityconnectors.common.script.ScriptBuilder;
 import org.identityconnectors.common.security.Encryptor;
+import org.identityconnectors.common.security.EncryptorFactory;
 import org.identityconnectors.common.security.GuardedByteArray;
 import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.operations.batch.BatchEmptyResult;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.QualifiedUid;
 import org.identityconnectors.framework.common.objects.ScriptContext;
 import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
 import org.identityconnectors.framework.common.objects.SyncDeltaType;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.ExtendedMatchFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.PresenceFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
 
@@ -71,6 +111,12 @@ import com.google.protobuf.MessageLite;
  */
 public class MessagesUtil {
 
+    /**
+     * The ids of the connectorFacadeKeys, the keys are held by the facades.
+     */
+    private static final Map<ByteString, ByteString> CONNECTOR_FACADE_IDS = Collections
+            .synchronizedMap(new WeakHashMap<ByteString, ByteString>());
+
     /** Prevent instantiation. */
     private MessagesUtil() {
         // No implementation required.
@@ -183,97 +229,930 @@ public class MessagesUtil {
                 RPCMessages.HandshakeMessage.newBuilder();
         messageBuilder.setPublicKey(ByteString.copyFrom(publicKey.getEncoded()));
         messageBuilder.setServerType(RPCMessages.HandshakeMessage.ServerType.JAVA);
+        messageBuilder.setMessageVersion(MessageVersion.MESSAGE_VERSION);
         // Make the fingerprint unique sessionId
-        messageBuilder.setSessionId(org.identityconnectors.common.security.SecurityUtil
-                .computeHexSHA1Hash(publicKey.getEncoded(), false));
+        messageBuilder.setSessionId(SecurityUtil.computeHexSHA1Hash(publicKey.getEncoded(), false));
         return messageBuilder;
     }
 
-    /*
-    This methods meant to help to replace {@link org.identityconnectors.framework.common.serializer.SerializerUtil}.
-    Not used yet.
+    /**
+     * Gets the id of the connectorFacadeKey which is sent instead of the key
+     * once the remote server has registered it.
+     *
+     * @param connectorFacadeKey
+     *            the serialized APIConfiguration.
+     * @return the SHA-256 hash of the key.
      */
-    public static ConnectorObjects.AttributeMessage.Builder fromAttribute(
+    public static ByteString getConnectorFacadeId(final ByteString connectorFacadeKey) {
+        ByteString id = CONNECTOR_FACADE_IDS.get(connectorFacadeKey);
+        if (null == id) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(connectorFacadeKey.asReadOnlyByteBuffer());
+                id = ByteString.copyFrom(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new ConnectorException(e);
+            }
+            CONNECTOR_FACADE_IDS.put(connectorFacadeKey, id);
+        }
+        return id;
+    }
+
+    // ---- Native encoding of attributes, filters and operation options ----
+    // The isNative methods tell whether the values have a native representation,
+    // the caller must use the legacy binary object if they don't. The from
+    // methods throw UnsupportedOperationException for such values.
+
+    private static final Set<Class<?>> NATIVE_ATTRIBUTE_VALUE_TYPES = new HashSet<Class<?>>(
+            Arrays.<Class<?>> asList(String.class, Long.class, Character.class, Double.class,
+                    Float.class, Integer.class, Boolean.class, Byte.class, byte[].class,
+                    BigDecimal.class, BigInteger.class, GuardedByteArray.class,
+                    GuardedString.class));
+
+    private static boolean isNativeAttributeValue(final Object source) {
+        if (null == source || NATIVE_ATTRIBUTE_VALUE_TYPES.contains(source.getClass())) {
+            return true;
+        }
+        if (source instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+                if (!(entry.getKey() instanceof String)) {
+                    return false;
+                }
+                if (entry.getValue() instanceof Collection) {
+                    if (!isNativeAttributeValues((Collection<?>) entry.getValue())) {
+                        return false;
+                    }
+                } else if (!isNativeAttributeValue(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNativeAttributeValues(final Collection<?> values) {
+        for (Object value : values) {
+            if (!isNativeAttributeValue(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the values of all attributes can be encoded with
+     * {@link #fromAttributes(Set)}.
+     */
+    public static boolean isNativeAttributes(final Set<? extends Attribute> attributes) {
+        for (Attribute attribute : attributes) {
+            if (null != attribute.getValue() && !isNativeAttributeValues(attribute.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static CommonObjectMessages.AttributeMessage.Builder fromAttribute(
             final Attribute attribute, final Encryptor encryptor) {
-        final ConnectorObjects.AttributeMessage.Builder builder =
-                ConnectorObjects.AttributeMessage.newBuilder().setName(attribute.getName());
+        final CommonObjectMessages.AttributeMessage.Builder builder =
+                CommonObjectMessages.AttributeMessage.newBuilder().setName(attribute.getName());
+        if (attribute instanceof Uid && null != ((Uid) attribute).getRevision()) {
+            builder.setRevision(((Uid) attribute).getRevision());
+        }
+        if (null == attribute.getValue()) {
+            builder.setNullValue(true);
+        } else {
+            for (Object source : attribute.getValue()) {
+                builder.addValue(fromAttributeValue(source, encryptor));
+            }
+        }
+        return builder;
+    }
+
+    public static Attribute toAttribute(final CommonObjectMessages.AttributeMessage message,
+            final Encryptor encryptor) {
+        if (Uid.NAME.equals(message.getName()) && StringUtil.isNotBlank(message.getRevision())) {
+            return new Uid(message.getValue(0).getStringValue(), message.getRevision());
+        }
+        if (message.getNullValue()) {
+            return AttributeBuilder.build(message.getName());
+        }
+        final List<Object> value = new ArrayList<Object>(message.getValueCount());
+        for (CommonObjectMessages.AttributeUnionValue source : message.getValueList()) {
+            value.add(toAttributeValue(source, encryptor));
+        }
+        return AttributeBuilder.build(message.getName(), value);
+    }
+
+    public static List<CommonObjectMessages.AttributeMessage> fromAttributes(
+            final Set<? extends Attribute> attributes) {
+        final Encryptor encryptor = EncryptorFactory.getInstance().getDefaultEncryptor();
+        final List<CommonObjectMessages.AttributeMessage> messages =
+                new ArrayList<CommonObjectMessages.AttributeMessage>(attributes.size());
+        for (Attribute attribute : attributes) {
+            messages.add(fromAttribute(attribute, encryptor).build());
+        }
+        return messages;
+    }
+
+    public static Set<Attribute> toAttributes(
+            final List<CommonObjectMessages.AttributeMessage> messages) {
+        final Encryptor encryptor = EncryptorFactory.getInstance().getDefaultEncryptor();
+        final Set<Attribute> attributes = new HashSet<Attribute>(messages.size());
+        for (CommonObjectMessages.AttributeMessage message : messages) {
+            attributes.add(toAttribute(message, encryptor));
+        }
+        return attributes;
+    }
+
+    private static CommonObjectMessages.AttributeUnionValue.Builder fromAttributeValue(
+            final Object source, final Encryptor encryptor) {
+        final CommonObjectMessages.AttributeUnionValue.Builder builder =
+                CommonObjectMessages.AttributeUnionValue.newBuilder();
+        final Class<?> sourceClass = (source == null ? null : source.getClass());
+        if (source == null) {
+            return builder;
+        } else if (sourceClass == String.class) {
+            builder.setStringValue((String) source);
+        } else if (sourceClass == Long.class) {
+            builder.setLongValue((Long) source);
+        } else if (sourceClass == Character.class) {
+            builder.setCharacterValue(source.toString());
+        } else if (sourceClass == Double.class) {
+            builder.setDoubleValue((Double) source);
+        } else if (sourceClass == Float.class) {
+            builder.setFloatValue((Float) source);
+        } else if (sourceClass == Integer.class) {
+            builder.setIntegerValue((Integer) source);
+        } else if (sourceClass == Boolean.class) {
+            builder.setBooleanValue((Boolean) source);
+        } else if (sourceClass == Byte.class) {
+            builder.setByteValue(ByteString.copyFrom(new byte[] { (Byte) source }));
+        } else if (sourceClass == byte[].class) {
+            builder.setByteArrayValue(ByteString.copyFrom((byte[]) source));
+        } else if (sourceClass == BigDecimal.class) {
+            BigDecimal sourceValue = (BigDecimal) source;
+            builder.setBigDecimalValue(CommonObjectMessages.BigDecimal.newBuilder().setScale(
+                    sourceValue.scale()).setUnscaled(sourceValue.unscaledValue().toString()));
+        } else if (sourceClass == BigInteger.class) {
+            builder.setBigIntegerValue(source.toString());
+        } else if (sourceClass == GuardedByteArray.class) {
+            ((GuardedByteArray) source).access(new GuardedByteArray.Accessor() {
+                public void access(byte[] clearBytes) {
+                    builder.setGuardedByteArrayValue(ByteString.copyFrom(encryptor
+                            .encrypt(clearBytes)));
+                }
+            });
+        } else if (sourceClass == GuardedString.class) {
+            ((GuardedString) source).access(new GuardedString.Accessor() {
+                public void access(char[] clearChars) {
+                    byte[] clearBytes = SecurityUtil.charsToBytes(clearChars);
+                    try {
+                        builder.setGuardedStringValue(ByteString.copyFrom(encryptor
+                                .encrypt(clearBytes)));
+                    } finally {
+                        SecurityUtil.clear(clearBytes);
+                    }
+                }
+            });
+        } else if (source instanceof Map) {
+            builder.setMapValue(fromAttributeMapValue((Map<?, ?>) source, encryptor));
+        } else {
+            throw new UnsupportedOperationException("Not supported attribute value type:"
+                    + sourceClass);
+        }
+        return builder;
+    }
+
+    private static Object toAttributeValue(final CommonObjectMessages.AttributeUnionValue source,
+            final Encryptor encryptor) {
+        switch (source.getPayloadCase()) {
+        case STRINGVALUE:
+            return source.getStringValue();
+        case LONGVALUE:
+            return source.getLongValue();
+        case CHARACTERVALUE:
+            return source.getCharacterValue().charAt(0);
+        case DOUBLEVALUE:
+            return source.getDoubleValue();
+        case FLOATVALUE:
+            return source.getFloatValue();
+        case INTEGERVALUE:
+            return source.getIntegerValue();
+        case BOOLEANVALUE:
+            return source.getBooleanValue();
+        case BYTEVALUE:
+            return source.getByteValue().byteAt(0);
+        case BYTEARRAYVALUE:
+            return source.getByteArrayValue().toByteArray();
+        case BIGDECIMALVALUE:
+            return new BigDecimal(new BigInteger(source.getBigDecimalValue().getUnscaled()), source
+                    .getBigDecimalValue().getScale());
+        case BIGINTEGERVALUE:
+            return new BigInteger(source.getBigIntegerValue());
+        case GUARDEDBYTEARRAYVALUE: {
+            byte[] clearBytes =
+                    encryptor.decrypt(source.getGuardedByteArrayValue().toByteArray());
+            try {
+                return new GuardedByteArray(clearBytes);
+            } finally {
+                SecurityUtil.clear(clearBytes);
+            }
+        }
+        case GUARDEDSTRINGVALUE: {
+            byte[] clearBytes = encryptor.decrypt(source.getGuardedStringValue().toByteArray());
+            char[] clearChars = SecurityUtil.bytesToChars(clearBytes);
+            try {
+                return new GuardedString(clearChars);
+            } finally {
+                SecurityUtil.clear(clearBytes);
+                SecurityUtil.clear(clearChars);
+            }
+        }
+        case MAPVALUE:
+            return toAttributeMapValue(source.getMapValue(), encryptor);
+        default:
+            return null;
+        }
+    }
+
+    private static CommonObjectMessages.AttributeMapValue.Builder fromAttributeMapValue(
+            final Map<?, ?> source, final Encryptor encryptor) {
+        final CommonObjectMessages.AttributeMapValue.Builder builder =
+                CommonObjectMessages.AttributeMapValue.newBuilder().setCaseInsensitive(
+                        CollectionUtil.isCaseInsensitiveMap(source));
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            if (!(entry.getKey() instanceof String)) {
+                throw new UnsupportedOperationException("Not supported map key type:"
+                        + (null != entry.getKey() ? entry.getKey().getClass() : null));
+            }
+            final CommonObjectMessages.AttributeMapFieldEntry.Builder entryBuilder =
+                    CommonObjectMessages.AttributeMapFieldEntry.newBuilder().setKey(
+                            (String) entry.getKey());
+            if (entry.getValue() instanceof Collection) {
+                final CommonObjectMessages.AttributeCollectionValue.Builder collection =
+                        CommonObjectMessages.AttributeCollectionValue.newBuilder();
+                for (Object item : (Collection<?>) entry.getValue()) {
+                    collection.addAttribute(fromAttributeValue(item, encryptor));
+                }
+                entryBuilder.setCollectionAttribute(collection);
+            } else {
+                entryBuilder.setAttribute(fromAttributeValue(entry.getValue(), encryptor));
+            }
+            builder.addValue(entryBuilder);
+        }
+        return builder;
+    }
+
+    private static Map<String, Object> toAttributeMapValue(
+            final CommonObjectMessages.AttributeMapValue source, final Encryptor encryptor) {
+        final Map<String, Object> map =
+                source.getCaseInsensitive() ? CollectionUtil.<Object> newCaseInsensitiveMap()
+                        : new HashMap<String, Object>(source.getValueCount());
+        for (CommonObjectMessages.AttributeMapFieldEntry entry : source.getValueList()) {
+            switch (entry.getValueCase()) {
+            case COLLECTIONATTRIBUTE: {
+                final List<Object> collection =
+                        new ArrayList<Object>(entry.getCollectionAttribute().getAttributeCount());
+                for (CommonObjectMessages.AttributeUnionValue item : entry
+                        .getCollectionAttribute().getAttributeList()) {
+                    collection.add(toAttributeValue(item, encryptor));
+                }
+                map.put(entry.getKey(), collection);
+                break;
+            }
+            case ATTRIBUTE:
+                map.put(entry.getKey(), toAttributeValue(entry.getAttribute(), encryptor));
+                break;
+            default:
+                map.put(entry.getKey(), null);
+            }
+        }
+        return map;
+    }
+
+    private static CommonObjectMessages.AttributeCollectionValue.Builder fromFilterAttribute(
+            final Attribute attribute, final Encryptor encryptor) {
+        if (null == attribute.getValue()
+                || (attribute instanceof Uid && null != ((Uid) attribute).getRevision())) {
+            throw new UnsupportedOperationException("Not supported filter attribute:" + attribute);
+        }
+        final CommonObjectMessages.AttributeCollectionValue.Builder builder =
+                CommonObjectMessages.AttributeCollectionValue.newBuilder();
         for (Object source : attribute.getValue()) {
-            Class sourceClass = (source == null ? null : source.getClass());
-            if (sourceClass == String.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setStringValue((String) source));
-            } else if (sourceClass == Long.class || sourceClass == long.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setLongValue((Long) source));
-            } else if (sourceClass == Character.class || sourceClass == char.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setCharacterValue(source.toString()));
-            } else if (sourceClass == Double.class || sourceClass == double.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setDoubleValue((Double) source));
-            } else if (sourceClass == Float.class || sourceClass == float.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setFloatValue((Float) source));
-            } else if (sourceClass == Integer.class || sourceClass == int.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setIntegerValue((Integer) source));
-            } else if (sourceClass == Boolean.class || sourceClass == boolean.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setBooleanValue((Boolean) source));
-            } else if (sourceClass == Byte.class || sourceClass == byte.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setByteValue(ByteString.copyFrom(new byte[] { (Byte) source })));
-            } else if (sourceClass == byte[].class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setByteArrayValue(ByteString.copyFrom((byte[]) source)));
-            } else if (sourceClass == java.math.BigDecimal.class) {
-                BigDecimal sourceValue = (BigDecimal) source;
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setBigDecimalValue(
-                                CommonObjectMessages.BigDecimal.newBuilder().setScale(
-                                        sourceValue.scale()).setUnscaled(
-                                        sourceValue.unscaledValue().toString())));
-            } else if (sourceClass == BigInteger.class) {
-                builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                        .setBigIntegerValue(source.toString()));
-            } else if (sourceClass == GuardedByteArray.class) {
-                GuardedByteArray sourceValue = (GuardedByteArray) source;
-
-                sourceValue.access(new GuardedByteArray.Accessor() {
-                    public void access(byte[] clearBytes) {
-                        builder.addValue(ConnectorObjects.AttributeUnionValue.newBuilder()
-                                .setGuardedByteArrayValue(
-                                        ByteString.copyFrom(encryptor.encrypt(clearBytes))));
+            builder.addAttribute(fromAttributeValue(source, encryptor));
+        }
+        return builder;
+    }
+
+    private static Attribute toFilterAttribute(final String name,
+            final CommonObjectMessages.AttributeCollectionValue source, final Encryptor encryptor) {
+        final List<Object> value = new ArrayList<Object>(source.getAttributeCount());
+        for (CommonObjectMessages.AttributeUnionValue item : source.getAttributeList()) {
+            value.add(toAttributeValue(item, encryptor));
+        }
+        return AttributeBuilder.build(name, value);
+    }
+
+    private static boolean isNativeFilterAttribute(final Attribute attribute) {
+        return null != attribute.getValue()
+                && !(attribute instanceof Uid && null != ((Uid) attribute).getRevision())
+                && isNativeAttributeValues(attribute.getValue());
+    }
+
+    /**
+     * Returns true if the filter can be encoded with {@link #fromFilter(Filter)}.
+     */
+    public static boolean isNativeFilter(final Filter filter) {
+        return filter.accept(NATIVE_FILTER, null);
+    }
+
+    public static FilterMessages.FilterUnionMessage.Builder fromFilter(final Filter filter) {
+        return filter.accept(FILTER_SERIALIZER, EncryptorFactory.getInstance()
+                .getDefaultEncryptor());
+    }
+
+    public static Filter toFilter(final FilterMessages.FilterUnionMessage message) {
+        return toFilter(message, EncryptorFactory.getInstance().getDefaultEncryptor());
+    }
+
+    private static Filter toFilter(final FilterMessages.FilterUnionMessage message,
+            final Encryptor encryptor) {
+        switch (message.getFilterCase()) {
+        case ANDFILTER: {
+            final List<Filter> subFilters =
+                    new ArrayList<Filter>(message.getAndFilter().getSubFiltersCount());
+            for (FilterMessages.FilterUnionMessage subFilter : message.getAndFilter()
+                    .getSubFiltersList()) {
+                subFilters.add(toFilter(subFilter, encryptor));
+            }
+            return new AndFilter(subFilters);
+        }
+        case ORFILTER: {
+            final List<Filter> subFilters =
+                    new ArrayList<Filter>(message.getOrFilter().getSubFiltersCount());
+            for (FilterMessages.FilterUnionMessage subFilter : message.getOrFilter()
+                    .getSubFiltersList()) {
+                subFilters.add(toFilter(subFilter, encryptor));
+            }
+            return new OrFilter(subFilters);
+        }
+        case NOTFILTER:
+            return new NotFilter(toFilter(message.getNotFilter().getSubFilter(), encryptor));
+        case CONTAINSALLVALUESFILTER:
+            return new ContainsAllValuesFilter(toFilterAttribute(message
+                    .getContainsAllValuesFilter().getName(), message.getContainsAllValuesFilter()
+                    .getValue(), encryptor));
+        case EQUALSFILTER:
+            return new EqualsFilter(toFilterAttribute(message.getEqualsFilter().getName(),
+                    message.getEqualsFilter().getValue(), encryptor));
+        case STARTSWITHFILTER:
+            return new StartsWithFilter(AttributeBuilder.build(message.getStartsWithFilter()
+                    .getName(), message.getStartsWithFilter().getValue()));
+        case CONTAINSFILTER:
+            return new ContainsFilter(AttributeBuilder.build(message.getContainsFilter()
+                    .getName(), message.getContainsFilter().getValue()));
+        case ENDSWITHFILTER:
+            return new EndsWithFilter(AttributeBuilder.build(message.getEndsWithFilter()
+                    .getName(), message.getEndsWithFilter().getValue()));
+        case GREATERTHANFILTER:
+            return new GreaterThanFilter(AttributeBuilder.build(message.getGreaterThanFilter()
+                    .getName(), toAttributeValue(message.getGreaterThanFilter().getValue(),
+                    encryptor)));
+        case GREATERTHANOREQUALFILTER:
+            return new GreaterThanOrEqualFilter(AttributeBuilder.build(message
+                    .getGreaterThanOrEqualFilter().getName(), toAttributeValue(message
+                    .getGreaterThanOrEqualFilter().getValue(), encryptor)));
+        case LESSTHANFILTER:
+            return new LessThanFilter(AttributeBuilder.build(message.getLessThanFilter()
+                    .getName(), toAttributeValue(message.getLessThanFilter().getValue(),
+                    encryptor)));
+        case LESSTHANOREQUALFILTER:
+            return new LessThanOrEqualFilter(AttributeBuilder.build(message
+                    .getLessThanOrEqualFilter().getName(), toAttributeValue(message
+                    .getLessThanOrEqualFilter().getValue(), encryptor)));
+        case PRESENCEFILTER:
+            return new PresenceFilter(message.getPresenceFilter().getName());
+        case EXTENDEDMATCHFILTER:
+            return new ExtendedMatchFilter(message.getExtendedMatchFilter().getOperator(),
+                    toFilterAttribute(message.getExtendedMatchFilter().getName(), message
+                            .getExtendedMatchFilter().getValue(), encryptor));
+        default:
+            throw new ConnectorException("Unknown filter message:" + message.getFilterCase());
+        }
+    }
+
+    private static final FilterVisitor<Boolean, Void> NATIVE_FILTER =
+            new FilterVisitor<Boolean, Void>() {
+
+                private Boolean visitAll(final Collection<Filter> filters) {
+                    for (Filter subFilter : filters) {
+                        if (!subFilter.accept(this, null)) {
+                            return false;
+                        }
                     }
-                });
-
-            } else if (sourceClass == GuardedString.class) {
-                GuardedString sourceValue = (GuardedString) source;
-
-                sourceValue.access(new GuardedString.Accessor() {
-                    public void access(char[] clearBytes) {
-                        builder.addValue(ConnectorObjects.AttributeUnionValue
-                                .newBuilder()
-                                .setGuardedByteArrayValue(
-                                        ByteString
-                                                .copyFrom(encryptor
-                                                        .encrypt(org.identityconnectors.common.security.SecurityUtil
-                                                                .charsToBytes(clearBytes)))));
+                    return true;
+                }
+
+                private Boolean visitSingleValue(final Attribute attribute) {
+                    return isNativeAttributeValue(AttributeUtil.getSingleValue(attribute));
+                }
+
+                public Boolean visitAndFilter(Void p, AndFilter filter) {
+                    return visitAll(filter.getFilters());
+                }
+
+                public Boolean visitOrFilter(Void p, OrFilter filter) {
+                    return visitAll(filter.getFilters());
+                }
+
+                public Boolean visitNotFilter(Void p, NotFilter filter) {
+                    return filter.getFilter().accept(this, null);
+                }
+
+                public Boolean visitContainsAllValuesFilter(Void p, ContainsAllValuesFilter filter) {
+                    return isNativeFilterAttribute(filter.getAttribute());
+                }
+
+                public Boolean visitEqualsFilter(Void p, EqualsFilter filter) {
+                    return isNativeFilterAttribute(filter.getAttribute());
+                }
+
+                public Boolean visitExtendedFilter(Void p, Filter filter) {
+                    if (filter instanceof PresenceFilter) {
+                        return true;
                     }
-                });
+                    return filter instanceof ExtendedMatchFilter
+                            && isNativeFilterAttribute(((ExtendedMatchFilter) filter)
+                                    .getAttribute());
+                }
+
+                public Boolean visitStartsWithFilter(Void p, StartsWithFilter filter) {
+                    return true;
+                }
+
+                public Boolean visitContainsFilter(Void p, ContainsFilter filter) {
+                    return true;
+                }
+
+                public Boolean visitEndsWithFilter(Void p, EndsWithFilter filter) {
+                    return true;
+                }
+
+                public Boolean visitGreaterThanFilter(Void p, GreaterThanFilter filter) {
+                    return visitSingleValue(filter.getAttribute());
+                }
+
+                public Boolean visitGreaterThanOrEqualFilter(Void p,
+                        GreaterThanOrEqualFilter filter) {
+                    return visitSingleValue(filter.getAttribute());
+                }
+
+                public Boolean visitLessThanFilter(Void p, LessThanFilter filter) {
+                    return visitSingleValue(filter.getAttribute());
+                }
+
+                public Boolean visitLessThanOrEqualFilter(Void p, LessThanOrEqualFilter filter) {
+                    return visitSingleValue(filter.getAttribute());
+                }
+            };
+
+    private static final FilterVisitor<FilterMessages.FilterUnionMessage.Builder, Encryptor> FILTER_SERIALIZER =
+            new FilterVisitor<FilterMessages.FilterUnionMessage.Builder, Encryptor>() {
+
+                public FilterMessages.FilterUnionMessage.Builder visitAndFilter(
+                        Encryptor encryptor, AndFilter filter) {
+                    final FilterMessages.AndFilter.Builder builder =
+                            FilterMessages.AndFilter.newBuilder();
+                    for (Filter subFilter : filter.getFilters()) {
+                        builder.addSubFilters(subFilter.accept(this, encryptor));
+                    }
+                    return FilterMessages.FilterUnionMessage.newBuilder().setAndFilter(builder);
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitOrFilter(
+                        Encryptor encryptor, OrFilter filter) {
+                    final FilterMessages.OrFilter.Builder builder =
+                            FilterMessages.OrFilter.newBuilder();
+                    for (Filter subFilter : filter.getFilters()) {
+                        builder.addSubFilters(subFilter.accept(this, encryptor));
+                    }
+                    return FilterMessages.FilterUnionMessage.newBuilder().setOrFilter(builder);
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitNotFilter(
+                        Encryptor encryptor, NotFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setNotFilter(
+                            FilterMessages.NotFilter.newBuilder().setSubFilter(
+                                    filter.getFilter().accept(this, encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitContainsAllValuesFilter(
+                        Encryptor encryptor, ContainsAllValuesFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder()
+                            .setContainsAllValuesFilter(
+                                    FilterMessages.ContainsAllValuesFilter.newBuilder().setName(
+                                            filter.getName()).setValue(
+                                            fromFilterAttribute(filter.getAttribute(), encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitEqualsFilter(
+                        Encryptor encryptor, EqualsFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setEqualsFilter(
+                            FilterMessages.EqualsFilter.newBuilder().setName(filter.getName())
+                                    .setValue(fromFilterAttribute(filter.getAttribute(), encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitExtendedFilter(
+                        Encryptor encryptor, Filter filter) {
+                    if (filter instanceof PresenceFilter) {
+                        return FilterMessages.FilterUnionMessage.newBuilder().setPresenceFilter(
+                                FilterMessages.PresenceFilter.newBuilder().setName(
+                                        ((PresenceFilter) filter).getName()));
+                    } else if (filter instanceof ExtendedMatchFilter) {
+                        final ExtendedMatchFilter extendedFilter = (ExtendedMatchFilter) filter;
+                        return FilterMessages.FilterUnionMessage.newBuilder()
+                                .setExtendedMatchFilter(
+                                        FilterMessages.ExtendedMatchFilter.newBuilder()
+                                                .setOperator(extendedFilter.getOperator())
+                                                .setName(extendedFilter.getName()).setValue(
+                                                        fromFilterAttribute(extendedFilter
+                                                                .getAttribute(), encryptor)));
+                    }
+                    throw new UnsupportedOperationException("Not supported filter:"
+                            + filter.getClass());
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitStartsWithFilter(
+                        Encryptor encryptor, StartsWithFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setStartsWithFilter(
+                            FilterMessages.StartsWithFilter.newBuilder().setName(filter.getName())
+                                    .setValue(filter.getValue()));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitContainsFilter(
+                        Encryptor encryptor, ContainsFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setContainsFilter(
+                            FilterMessages.ContainsFilter.newBuilder().setName(filter.getName())
+                                    .setValue(filter.getValue()));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitEndsWithFilter(
+                        Encryptor encryptor, EndsWithFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setEndsWithFilter(
+                            FilterMessages.EndsWithFilter.newBuilder().setName(filter.getName())
+                                    .setValue(filter.getValue()));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitGreaterThanFilter(
+                        Encryptor encryptor, GreaterThanFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setGreaterThanFilter(
+                            FilterMessages.GreaterThanFilter.newBuilder().setName(
+                                    filter.getName()).setValue(
+                                    fromAttributeValue(AttributeUtil.getSingleValue(filter
+                                            .getAttribute()), encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitGreaterThanOrEqualFilter(
+                        Encryptor encryptor, GreaterThanOrEqualFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder()
+                            .setGreaterThanOrEqualFilter(
+                                    FilterMessages.GreaterThanOrEqualFilter.newBuilder().setName(
+                                            filter.getName()).setValue(
+                                            fromAttributeValue(AttributeUtil.getSingleValue(filter
+                                                    .getAttribute()), encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitLessThanFilter(
+                        Encryptor encryptor, LessThanFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder().setLessThanFilter(
+                            FilterMessages.LessThanFilter.newBuilder().setName(filter.getName())
+                                    .setValue(
+                                            fromAttributeValue(AttributeUtil.getSingleValue(filter
+                                                    .getAttribute()), encryptor)));
+                }
+
+                public FilterMessages.FilterUnionMessage.Builder visitLessThanOrEqualFilter(
+                        Encryptor encryptor, LessThanOrEqualFilter filter) {
+                    return FilterMessages.FilterUnionMessage.newBuilder()
+                            .setLessThanOrEqualFilter(
+                                    FilterMessages.LessThanOrEqualFilter.newBuilder().setName(
+                                            filter.getName()).setValue(
+                                            fromAttributeValue(AttributeUtil.getSingleValue(filter
+                                                    .getAttribute()), encryptor)));
+                }
+            };
+
+    private static final Set<Class<?>> NATIVE_OPTION_VALUE_TYPES = new HashSet<Class<?>>(
+            Arrays.<Class<?>> asList(String.class, Long.class, Character.class, Double.class,
+                    Float.class, Integer.class, Boolean.class, URI.class, File.class,
+                    GuardedByteArray.class, GuardedString.class, Script.class, ObjectClass.class,
+                    Uid.class, QualifiedUid.class, SortKey.class, SearchResult.CountPolicy.class));
+
+    /**
+     * Returns true if the options can be encoded with
+     * {@link #fromOperationOptions(OperationOptions)}.
+     * <p/>
+     * The receiver restores an array with the class of its values, so an
+     * array is native only if its component type is the class of all its
+     * values.
+     */
+    public static boolean isNativeOperationOptions(final OperationOptions options) {
+        for (Object value : options.getOptions().values()) {
+            if (value instanceof Object[]) {
+                final Class<?> componentType = value.getClass().getComponentType();
+                boolean hasValue = false;
+                for (Object item : (Object[]) value) {
+                    if (null != item) {
+                        if (item.getClass() != componentType
+                                || !NATIVE_OPTION_VALUE_TYPES.contains(componentType)) {
+                            return false;
+                        }
+                        hasValue = true;
+                    }
+                }
+                if (!hasValue && componentType != String.class) {
+                    // The type of the array can not be restored
+                    return false;
+                }
+            } else if (null != value && !NATIVE_OPTION_VALUE_TYPES.contains(value.getClass())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static ConnectorObjects.OperationOptionsMessage.Builder fromOperationOptions(
+            final OperationOptions options) {
+        final Encryptor encryptor = EncryptorFactory.getInstance().getDefaultEncryptor();
+        final ConnectorObjects.OperationOptionsMessage.Builder builder =
+                ConnectorObjects.OperationOptionsMessage.newBuilder();
+        for (Map.Entry<String, Object> entry : options.getOptions().entrySet()) {
+            final ConnectorObjects.OperationOptionMapFieldEntry.Builder entryBuilder =
+                    ConnectorObjects.OperationOptionMapFieldEntry.newBuilder().setKey(
+                            entry.getKey());
+            final Object value = entry.getValue();
+            if (value instanceof Object[]) {
+                final Object[] array = (Object[]) value;
+                if (array.length == 0 && array.getClass().getComponentType() != String.class) {
+                    // The type of an empty array can not be restored
+                    throw new UnsupportedOperationException("Not supported empty array:"
+                            + array.getClass());
+                }
+                entryBuilder.setIsArray(true);
+                for (Object item : array) {
+                    entryBuilder.addValues(fromOperationOptionValue(item, encryptor));
+                }
+            } else if (null != value && value.getClass().isArray()) {
+                throw new UnsupportedOperationException("Not supported primitive array:"
+                        + value.getClass());
+            } else {
+                entryBuilder.addValues(fromOperationOptionValue(value, encryptor));
+            }
+            builder.addOptions(entryBuilder);
+        }
+        return builder;
+    }
 
-            } else if (null != sourceClass && Map.class.isAssignableFrom(sourceClass)) {
-                throw new UnsupportedOperationException("Map serialisation is not yet supported");
-            } else if (source == null) {
-                builder.addValueBuilder();
+    public static OperationOptions toOperationOptions(
+            final ConnectorObjects.OperationOptionsMessage message) {
+        final Encryptor encryptor = EncryptorFactory.getInstance().getDefaultEncryptor();
+        final Map<String, Object> options = new HashMap<String, Object>(message.getOptionsCount());
+        for (ConnectorObjects.OperationOptionMapFieldEntry entry : message.getOptionsList()) {
+            if (entry.getIsArray()) {
+                final List<Object> values = new ArrayList<Object>(entry.getValuesCount());
+                // the sender encodes the arrays whose values are all of the
+                // component type, mixed values are restored as Object[]
+                Class<?> componentType = null;
+                for (ConnectorObjects.OperationOptionUnionValue item : entry.getValuesList()) {
+                    final Object value = toOperationOptionValue(item, encryptor);
+                    if (null != value) {
+                        if (null == componentType) {
+                            componentType = value.getClass();
+                        } else if (componentType != value.getClass()) {
+                            componentType = Object.class;
+                        }
+                    }
+                    values.add(value);
+                }
+                if (null == componentType) {
+                    componentType = String.class;
+                }
+                options.put(entry.getKey(), values.toArray((Object[]) Array.newInstance(
+                        componentType, values.size())));
+            } else if (entry.getValuesCount() > 0) {
+                options.put(entry.getKey(), toOperationOptionValue(entry.getValues(0), encryptor));
             } else {
-                throw new UnsupportedOperationException();
+                options.put(entry.getKey(), null);
             }
         }
+        return new OperationOptions(options);
+    }
 
+    private static ConnectorObjects.OperationOptionUnionValue.Builder fromOperationOptionValue(
+            final Object source, final Encryptor encryptor) {
+        final ConnectorObjects.OperationOptionUnionValue.Builder builder =
+                ConnectorObjects.OperationOptionUnionValue.newBuilder();
+        if (source == null) {
+            return builder;
+        } else if (source instanceof String) {
+            builder.setStringValue((String) source);
+        } else if (source instanceof Long) {
+            builder.setLongValue((Long) source);
+        } else if (source instanceof Character) {
+            builder.setCharacterValue(source.toString());
+        } else if (source instanceof Double) {
+            builder.setDoubleValue((Double) source);
+        } else if (source instanceof Float) {
+            builder.setFloatValue((Float) source);
+        } else if (source instanceof Integer) {
+            builder.setIntegerValue((Integer) source);
+        } else if (source instanceof Boolean) {
+            builder.setBooleanValue((Boolean) source);
+        } else if (source instanceof URI) {
+            builder.setUriValue(source.toString());
+        } else if (source instanceof File) {
+            builder.setFileValue(((File) source).getPath());
+        } else if (source instanceof GuardedByteArray) {
+            ((GuardedByteArray) source).access(new GuardedByteArray.Accessor() {
+                public void access(byte[] clearBytes) {
+                    builder.setGuardedByteArrayValue(ByteString.copyFrom(encryptor
+                            .encrypt(clearBytes)));
+                }
+            });
+        } else if (source instanceof GuardedString) {
+            ((GuardedString) source).access(new GuardedString.Accessor() {
+                public void access(char[] clearChars) {
+                    byte[] clearBytes = SecurityUtil.charsToBytes(clearChars);
+                    try {
+                        builder.setGuardedStringValue(ByteString.copyFrom(encryptor
+                                .encrypt(clearBytes)));
+                    } finally {
+                        SecurityUtil.clear(clearBytes);
+                    }
+                }
+            });
+        } else if (source instanceof Script) {
+            builder.setScriptValue(CommonObjectMessages.Script.newBuilder().setScriptLanguage(
+                    ((Script) source).getScriptLanguage()).setScriptText(
+                    ((Script) source).getScriptText()));
+        } else if (source instanceof ObjectClass) {
+            builder.setObjectClassValue(((ObjectClass) source).getObjectClassValue());
+        } else if (source instanceof Uid) {
+            builder.setUidValue(serializeMessage((Uid) source, CommonObjectMessages.Uid.class));
+        } else if (source instanceof QualifiedUid) {
+            builder.setQualifiedUidValue(CommonObjectMessages.QualifiedUid.newBuilder()
+                    .setObjectClass(((QualifiedUid) source).getObjectClass().getObjectClassValue())
+                    .setUid(serializeMessage(((QualifiedUid) source).getUid(),
+                            CommonObjectMessages.Uid.class)));
+        } else if (source instanceof SortKey) {
+            builder.setSortKeyValue(CommonObjectMessages.SortKey.newBuilder().setField(
+                    ((SortKey) source).getField()).setIsAscending(
+                    ((SortKey) source).isAscendingOrder()));
+        } else if (source instanceof SearchResult.CountPolicy) {
+            switch ((SearchResult.CountPolicy) source) {
+            case EXACT:
+                builder.setCountPolicyValue(CommonObjectMessages.SearchResult.CountPolicy.EXACT);
+                break;
+            case ESTIMATE:
+                builder.setCountPolicyValue(CommonObjectMessages.SearchResult.CountPolicy.ESTIMATE);
+                break;
+            default:
+                builder.setCountPolicyValue(CommonObjectMessages.SearchResult.CountPolicy.NONE);
+            }
+        } else {
+            throw new UnsupportedOperationException("Not supported operation option value type:"
+                    + source.getClass());
+        }
         return builder;
     }
 
+    private static Object toOperationOptionValue(
+            final ConnectorObjects.OperationOptionUnionValue source, final Encryptor encryptor) {
+        switch (source.getPayloadCase()) {
+        case STRINGVALUE:
+            return source.getStringValue();
+        case LONGVALUE:
+            return source.getLongValue();
+        case CHARACTERVALUE:
+            return source.getCharacterValue().charAt(0);
+        case DOUBLEVALUE:
+            return source.getDoubleValue();
+        case FLOATVALUE:
+            return source.getFloatValue();
+        case INTEGERVALUE:
+            return source.getIntegerValue();
+        case BOOLEANVALUE:
+            return source.getBooleanValue();
+        case URIVALUE:
+            return URI.create(source.getUriValue());
+        case FILEVALUE:
+            return new File(source.getFileValue());
+        case GUARDEDBYTEARRAYVALUE: {
+            byte[] clearBytes =
+                    encryptor.decrypt(source.getGuardedByteArrayValue().toByteArray());
+            try {
+                return new GuardedByteArray(clearBytes);
+            } finally {
+                SecurityUtil.clear(clearBytes);
+            }
+        }
+        case GUARDEDSTRINGVALUE: {
+            byte[] clearBytes = encryptor.decrypt(source.getGuardedStringValue().toByteArray());
+            char[] clearChars = SecurityUtil.bytesToChars(clearBytes);
+            try {
+                return new GuardedString(clearChars);
+            } finally {
+                SecurityUtil.clear(clearBytes);
+                SecurityUtil.clear(clearChars);
+            }
+        }
+        case SCRIPTVALUE:
+            return new ScriptBuilder().setScriptLanguage(
+                    source.getScriptValue().getScriptLanguage()).setScriptText(
+                    source.getScriptValue().getScriptText()).build();
+        case OBJECTCLASSVALUE:
+            return new ObjectClass(source.getObjectClassValue());
+        case UIDVALUE:
+            return deserializeMessage(source.getUidValue(), Uid.class);
+        case QUALIFIEDUIDVALUE:
+            return new QualifiedUid(new ObjectClass(source.getQualifiedUidValue()
+                    .getObjectClass()), deserializeMessage(source.getQualifiedUidValue()
+                    .getUid(), Uid.class));
+        case SORTKEYVALUE:
+            return new SortKey(source.getSortKeyValue().getField(), source.getSortKeyValue()
+                    .getIsAscending());
+        case COUNTPOLICYVALUE:
+            switch (source.getCountPolicyValue()) {
+            case EXACT:
+                return SearchResult.CountPolicy.EXACT;
+            case ESTIMATE:
+                return SearchResult.CountPolicy.ESTIMATE;
+            default:
+                return SearchResult.CountPolicy.NONE;
+            }
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Serialises the ConnectorObject with native attribute messages if the
+     * remote peer supports it and all values can be encoded natively,
+     * otherwise with the legacy binary object.
+     */
+    public static CommonObjectMessages.ConnectorObject serializeConnectorObject(
+            final ConnectorObject source, final boolean nativeEncoding) {
+        if (nativeEncoding && isNativeAttributes(source.getAttributes())) {
+            return CommonObjectMessages.ConnectorObject.newBuilder().setObjectClass(
+                    source.getObjectClass().getObjectClassValue()).addAllAttributeMessages(
+                    fromAttributes(source.getAttributes())).build();
+        }
+        return serializeMessage(source, CommonObjectMessages.ConnectorObject.class);
+    }
+
+    /**
+     * Serialises the SyncDelta with native attribute messages if the remote
+     * peer supports it and all values can be encoded natively, otherwise with
+     * the legacy binary object.
+     */
+    public static CommonObjectMessages.SyncDelta serializeSyncDelta(final SyncDelta source,
+            final boolean nativeEncoding) {
+        if (nativeEncoding && null != source.getObject()
+                && isNativeAttributes(source.getObject().getAttributes())) {
+            return SyncDeltaHandler.createBuilder(source, false).addAllConnectorObjectAttributes(
+                    fromAttributes(source.getObject().getAttributes())).build();
+        }
+        return serializeMessage(source, CommonObjectMessages.SyncDelta.class);
+    }
+
+    /**
+     * Returns the native filter message if the remote peer supports it and
+     * all values can be encoded natively, otherwise null and the caller must
+     * send the legacy binary object.
+     */
+    public static FilterMessages.FilterUnionMessage.Builder tryFromFilter(final Filter filter,
+            final boolean nativeEncoding) {
+        if (nativeEncoding && isNativeFilter(filter)) {
+            return fromFilter(filter);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the native options message if the remote peer supports it and
+     * all values can be encoded natively, otherwise null and the caller must
+     * send the legacy binary object.
+     */
+    public static ConnectorObjects.OperationOptionsMessage.Builder tryFromOperationOptions(
+            final OperationOptions options, final boolean nativeEncoding) {
+        if (nativeEncoding && isNativeOperationOptions(options)) {
+            return fromOperationOptions(options);
+        }
+        return null;
+    }
+
     public static ByteBuffer writeToByteBuffer(MessageLite source) throws java.io.IOException {
         ByteBuffer buffer = ByteBuffer.allocate(source.getSerializedSize());
         CodedOutputStream outputStream = CodedOutputStream.newInstance(buffer);
@@ -507,7 +1386,12 @@ public class MessagesUtil {
             ObjectHandler<ConnectorObject, CommonObjectMessages.ConnectorObject, CommonObjectMessages.ConnectorObject.Builder> {
 
         public ConnectorObject deserialize(CommonObjectMessages.ConnectorObject message) {
-            Set<? extends Attribute> attributes = deserializeLegacy(message.getAttributes());
+            Set<? extends Attribute> attributes;
+            if (message.getAttributeMessagesCount() > 0) {
+                attributes = toAttributes(message.getAttributeMessagesList());
+            } else {
+                attributes = deserializeLegacy(message.getAttributes());
+            }
             return new ConnectorObject(new ObjectClass(message.getObjectClass()), attributes);
         }
 
@@ -569,7 +1453,10 @@ public class MessagesUtil {
             if (message.hasUid()) {
                 builder.setUid(deserializeMessage(message.getUid(), Uid.class));
             }
-            if (!message.getConnectorObject().isEmpty()) {
+            if (message.getConnectorObjectAttributesCount() > 0) {
+                Set<Attribute> object = toAttributes(message.getConnectorObjectAttributesList());
+                builder.setObject(new ConnectorObject(builder.getObjectClass(), object));
+            } else if (!message.getConnectorObject().isEmpty()) {
                 Set<Attribute> object = deserializeLegacy(message.getConnectorObject());
                 builder.setObject(new ConnectorObject(builder.getObjectClass(), object));
             }
@@ -581,6 +1468,11 @@ public class MessagesUtil {
         }
 
         public CommonObjectMessages.SyncDelta.Builder serializeBuilder(SyncDelta source) {
+            return createBuilder(source, true);
+        }
+
+        static CommonObjectMessages.SyncDelta.Builder createBuilder(SyncDelta source,
+                boolean legacyObject) {
             CommonObjectMessages.SyncDelta.Builder builder =
                     CommonObjectMessages.SyncDelta.newBuilder();
             builder.setToken(serializeMessage(source.getToken(),
@@ -605,7 +1497,7 @@ public class MessagesUtil {
             if (null != source.getObjectClass()) {
                 builder.setObjectClass(source.getObjectClass().getObjectClassValue());
             }
-            if (null != source.getObject()) {
+            if (legacyObject && null != source.getObject()) {
                 builder.setConnectorObject(serializeLegacy(source.getObject().getAttributes()));
             }
             if (null != source.getPreviousUid()) {
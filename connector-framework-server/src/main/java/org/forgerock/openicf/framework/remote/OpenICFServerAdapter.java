@@ -29,6 +29,7 @@ import org.forgerock.openicf.common.protobuf.RPCMessages;
 import org.forgerock.openicf.common.protobuf.RPCMessages.CancelOpRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ControlRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ControlResponse;
+import org.forgerock.openicf.common.protobuf.RPCMessages.CreditRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ExceptionMessage;
 import org.forgerock.openicf.common.protobuf.RPCMessages.HandshakeMessage;
 import org.forgerock.openicf.common.protobuf.RPCMessages.RPCRequest;
@@ -36,6 +37,7 @@ import org.forgerock.openicf.common.protobuf.RPCMessages.RPCResponse;
 import org.forgerock.openicf.common.protobuf.RPCMessages.RemoteMessage;
 import org.forgerock.openicf.framework.ConnectorFramework;
 import org.forgerock.openicf.framework.async.AsyncConnectorInfoManager;
+import org.forgerock.openicf.framework.async.impl.AbstractLocalOperationProcessor;
 import org.forgerock.openicf.framework.async.impl.AuthenticationAsyncApiOpImpl;
 import org.forgerock.openicf.framework.async.impl.BatchApiOpImpl;
 import org.forgerock.openicf.framework.async.impl.ConnectorEventSubscriptionApiOpImpl;
@@ -53,6 +55,8 @@ import org.forgerock.openicf.framework.async.impl.TestAsyncApiOpImpl;
 import org.forgerock.openicf.framework.async.impl.UpdateAsyncApiOpImpl;
 import org.forgerock.openicf.framework.async.impl.ValidateAsyncApiOpImpl;
 import org.forgerock.openicf.framework.remote.rpc.OperationMessageListener;
+import org.forgerock.openicf.framework.remote.rpc.UnknownConnectorFacadeException;
+import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionGroup;
 import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionHolder;
 import org.forgerock.openicf.framework.remote.security.ECIESEncryptor;
 import org.identityconnectors.common.Assertions;
@@ -65,6 +69,7 @@ import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.RetryableException;
 import org.identityconnectors.framework.impl.api.AbstractConnectorInfo;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 
@@ -127,17 +132,92 @@ public class OpenICFServerAdapter implements OperationMessageListener {
     public void onMessage(final WebSocketConnectionHolder socket, final byte[] bytes) {
         logger.ok("{0} onMessage({1}:bytes)", loggerName(), bytes.length);
 
-        connectorFramework.executeMessage(new Runnable() {
-            public void run() {
-                processMessage(socket, bytes);
-            }
-        });
+        final RemoteMessage message;
+        try {
+            message = RemoteMessage.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn(e, "{0} failed parse message", loggerName());
+            return;
+        }
+        // The operations run on the bounded RequestDispatcher, the cancel,
+        // credit and response messages must not wait behind them.
+        if (message.hasRequest() && message.getRequest().hasOperationRequest()
+                && !message.getRequest().getOperationRequest().hasConfigurationChangeEvent()
+                && socket.isHandHooked()) {
+            dispatchOperationRequest(socket, message.getMessageId(), message.getRequest()
+                    .getOperationRequest());
+        } else {
+            connectorFramework.executeMessage(new Runnable() {
+                public void run() {
+                    processMessage(socket, message);
+                }
+            });
+        }
+    }
+
+    /**
+     * Dispatches the operation request to the {@link RequestDispatcher} of the
+     * framework or sends a retryable error if the server is busy.
+     * <p/>
+     * The request is registered as pending until its processor is registered,
+     * so a cancel which arrives while it is queued is not lost.
+     */
+    protected void dispatchOperationRequest(final WebSocketConnectionHolder socket,
+            final long messageId, final OperationRequest message) {
+        final String principal =
+                socket.getRemoteConnectionContext().getRemotePrincipal().getName();
+        final ByteString connectorFacade =
+                message.getConnectorFacadeId().isEmpty() ? message.getConnectorFacadeKey()
+                        : message.getConnectorFacadeId();
+        final RequestDispatcher dispatcher = connectorFramework.getRequestDispatcher();
+        final WebSocketConnectionGroup group =
+                socket.getRemoteConnectionContext().getRemoteConnectionGroup();
+        final QueuedOperationRequest request =
+                new QueuedOperationRequest(socket, messageId, message);
+        if (!group.addPendingRequest(messageId, request)) {
+            logger.info("{0} duplicate Request({1}:{2})", loggerName(), messageId, principal);
+            group.trySendMessage(MessagesUtil.createErrorResponse(messageId,
+                    new ConnectorException("Request has been registered with id: " + messageId))
+                    .build());
+        } else if (!dispatcher.dispatch(principal, connectorFacade, getPriority(message),
+                request)) {
+            group.removePendingRequest(messageId, request);
+            logger.info("{0} server busy, rejected Request({1}:{2}) queued:{3}", loggerName(),
+                    messageId, principal, dispatcher.getQueuedRequests());
+            socket.getRemoteConnectionContext().getRemoteConnectionGroup().trySendMessage(
+                    MessagesUtil.createErrorResponse(
+                            messageId,
+                            RetryableException.wrap("Server busy, too many requests are queued",
+                                    (Throwable) null)).build());
+        }
+    }
+
+    /**
+     * Returns the priority of the operation, the streaming and the long
+     * running operations have the {@link RequestDispatcher.Priority#LONG}
+     * priority.
+     */
+    protected RequestDispatcher.Priority getPriority(final OperationRequest message) {
+        if (message.hasSearchOpRequest() || message.hasSyncOpRequest()
+                || message.hasBatchOpRequest() || message.hasScriptOnConnectorOpRequest()
+                || message.hasScriptOnResourceOpRequest()
+                || message.hasConnectorEventSubscriptionOpRequest()
+                || message.hasSyncEventSubscriptionOpRequest()) {
+            return RequestDispatcher.Priority.LONG;
+        }
+        return RequestDispatcher.Priority.SHORT;
     }
 
     public void processMessage(final WebSocketConnectionHolder socket, byte[] bytes){
         try {
-            RemoteMessage message = RemoteMessage.parseFrom(bytes);
+            processMessage(socket, RemoteMessage.parseFrom(bytes));
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn(e, "{0} failed parse message", loggerName());
+        }
+    }
 
+    public void processMessage(final WebSocketConnectionHolder socket, final RemoteMessage message) {
+        try {
             if (logger.isOk()) {
                 logger.ok("{0} onMessage({1})", loggerName(), message.toString());
             }
@@ -157,6 +237,9 @@ public class OpenICFServerAdapter implements OperationMessageListener {
                     } else if (message.getRequest().hasCancelOpRequest()) {
                         processCancelOpRequest(socket, message.getMessageId(), message.getRequest()
                                 .getCancelOpRequest());
+                    } else if (message.getRequest().hasCreditRequest()) {
+                        processCreditRequest(socket, message.getMessageId(), message.getRequest()
+                                .getCreditRequest());
                     } else if (message.getRequest().hasControlRequest()) {
                         processControlRequest(socket, message.getMessageId(), message.getRequest()
                                 .getControlRequest());
@@ -193,8 +276,6 @@ public class OpenICFServerAdapter implements OperationMessageListener {
             } else {
                 handleRemoteMessage(socket, message);
             }
-        } catch (InvalidProtocolBufferException e) {
-            logger.warn(e, "{0} failed parse message", loggerName());
         } catch (Throwable t) {
             logger.info(t, "{0} Unhandled exception", loggerName());
         }
@@ -339,12 +420,17 @@ public class OpenICFServerAdapter implements OperationMessageListener {
 
     public void processOperationRequest(final WebSocketConnectionHolder socket,
             final long messageId, final OperationRequest message) {
+        processOperationRequest(socket, messageId, message, null);
+    }
+
+    private void processOperationRequest(final WebSocketConnectionHolder socket,
+            final long messageId, final OperationRequest message,
+            final QueuedOperationRequest queued) {
         logger.ok("IN Request({0}:{1})", messageId, socket.getRemoteConnectionContext()
                 .getRemotePrincipal().getName());
 
-        final String connectorFacadeKey = message.getConnectorFacadeKey().toStringUtf8();
-
         if (message.hasConfigurationChangeEvent()) {
+            final String connectorFacadeKey = message.getConnectorFacadeKey().toStringUtf8();
             List<ConfigurationProperty> changes =
                     MessagesUtil.deserializeLegacy(message.getConfigurationChangeEvent()
                             .getConfigurationPropertyChange());
@@ -357,6 +443,9 @@ public class OpenICFServerAdapter implements OperationMessageListener {
 
             ConnectorInfo info = findConnectorInfo(connectorKey);
             if (info == null) {
+                if (null != queued) {
+                    queued.release();
+                }
                 RemoteMessage.Builder response =
                         MessagesUtil.createErrorResponse(messageId, new ConnectorException(
                                 "Connector not found: " + connectorKey + " "));
@@ -376,58 +465,77 @@ public class OpenICFServerAdapter implements OperationMessageListener {
                         logger.ok(e, "Failed to set request Locale");
                     }
 
-                    ConnectorFacade connectorFacade = newInstance(socket, info, connectorFacadeKey);
+                    ConnectorFacade connectorFacade =
+                            newInstance(socket, info, getConnectorFacadeKey(socket, message));
 
+                    final AbstractLocalOperationProcessor<?, ?> processor;
                     if (message.hasBatchOpRequest()) {
-                        BatchApiOpImpl.createProcessor(messageId, socket,
-                                message.getBatchOpRequest()).execute(connectorFacade);
+                        processor = BatchApiOpImpl.createProcessor(messageId, socket,
+                                message.getBatchOpRequest());
                     } else if (message.hasAuthenticateOpRequest()) {
-                        AuthenticationAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getAuthenticateOpRequest()).execute(connectorFacade);
+                        processor = AuthenticationAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getAuthenticateOpRequest());
                     } else if (message.hasCreateOpRequest()) {
-                        CreateAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getCreateOpRequest()).execute(connectorFacade);
+                        processor = CreateAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getCreateOpRequest());
                     } else if (message.hasConnectorEventSubscriptionOpRequest()) {
-                        ConnectorEventSubscriptionApiOpImpl.createProcessor(messageId, socket,
-                                message.getConnectorEventSubscriptionOpRequest()).execute(
-                                connectorFacade);
+                        processor =
+                                ConnectorEventSubscriptionApiOpImpl.createProcessor(messageId,
+                                        socket, message.getConnectorEventSubscriptionOpRequest());
                     } else if (message.hasDeleteOpRequest()) {
-                        DeleteAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getDeleteOpRequest()).execute(connectorFacade);
+                        processor = DeleteAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getDeleteOpRequest());
                     } else if (message.hasGetOpRequest()) {
-                        GetAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getGetOpRequest()).execute(connectorFacade);
+                        processor = GetAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getGetOpRequest());
                     } else if (message.hasResolveUsernameOpRequest()) {
-                        ResolveUsernameAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getResolveUsernameOpRequest()).execute(connectorFacade);
+                        processor = ResolveUsernameAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getResolveUsernameOpRequest());
                     } else if (message.hasSchemaOpRequest()) {
-                        SchemaAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getSchemaOpRequest()).execute(connectorFacade);
+                        processor = SchemaAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getSchemaOpRequest());
                     } else if (message.hasScriptOnConnectorOpRequest()) {
-                        ScriptOnConnectorAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getScriptOnConnectorOpRequest()).execute(connectorFacade);
+                        processor =
+                                ScriptOnConnectorAsyncApiOpImpl.createProcessor(messageId, socket,
+                                        message.getScriptOnConnectorOpRequest());
                     } else if (message.hasScriptOnResourceOpRequest()) {
-                        ScriptOnResourceAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getScriptOnResourceOpRequest()).execute(connectorFacade);
+                        processor =
+                                ScriptOnResourceAsyncApiOpImpl.createProcessor(messageId, socket,
+                                        message.getScriptOnResourceOpRequest());
                     } else if (message.hasSearchOpRequest()) {
-                        SearchAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getSearchOpRequest()).execute(connectorFacade);
+                        processor = SearchAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getSearchOpRequest());
                     } else if (message.hasSyncOpRequest()) {
-                        SyncAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getSyncOpRequest()).execute(connectorFacade);
+                        processor = SyncAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getSyncOpRequest());
                     } else if (message.hasSyncEventSubscriptionOpRequest()) {
-                        SyncEventSubscriptionApiOpImpl.createProcessor(messageId, socket,
-                                message.getSyncEventSubscriptionOpRequest()).execute(
-                                connectorFacade);
+                        processor =
+                                SyncEventSubscriptionApiOpImpl.createProcessor(messageId, socket,
+                                        message.getSyncEventSubscriptionOpRequest());
                     } else if (message.hasTestOpRequest()) {
-                        TestAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getTestOpRequest()).execute(connectorFacade);
+                        processor = TestAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getTestOpRequest());
                     } else if (message.hasUpdateOpRequest()) {
-                        UpdateAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getUpdateOpRequest()).execute(connectorFacade);
+                        processor = UpdateAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getUpdateOpRequest());
                     } else if (message.hasValidateOpRequest()) {
-                        ValidateAsyncApiOpImpl.createProcessor(messageId, socket,
-                                message.getValidateOpRequest()).execute(connectorFacade);
+                        processor = ValidateAsyncApiOpImpl.createProcessor(messageId, socket,
+                                message.getValidateOpRequest());
+                    } else {
+                        processor = null;
+                    }
+                    final boolean cancelled = null != queued && queued.isCancelled();
+                    if (null != queued) {
+                        // The client may reuse the message id once it got the
+                        // response, the request must not be pending by then
+                        queued.release();
+                    }
+                    if (cancelled) {
+                        // Cancelled before the processor was registered
+                        socket.getRemoteConnectionContext().getRemoteConnectionGroup()
+                                .removeRequest(messageId);
+                    } else if (null != processor) {
+                        processor.execute(connectorFacade);
                     } else {
                         socket.getRemoteConnectionContext().getRemoteConnectionGroup()
                                 .trySendMessage(
@@ -437,6 +545,9 @@ public class OpenICFServerAdapter implements OperationMessageListener {
                     }
                 } catch (Throwable t) {
                     logger.ok(t, "Failed handle OperationRequest {0}", messageId);
+                    if (null != queued) {
+                        queued.release();
+                    }
                     socket.getRemoteConnectionContext().getRemoteConnectionGroup().trySendMessage(
                             MessagesUtil.createErrorResponse(messageId, t).build());
 
@@ -463,8 +574,21 @@ public class OpenICFServerAdapter implements OperationMessageListener {
 
     public void processCancelOpRequest(final WebSocketConnectionHolder socket, long messageId,
             final CancelOpRequest message) {
-        socket.getRemoteConnectionContext().getRemoteConnectionGroup().receiveRequestCancel(
-                messageId);
+        final WebSocketConnectionGroup group =
+                socket.getRemoteConnectionContext().getRemoteConnectionGroup();
+        // The pending request is marked first, it cancels its processor if
+        // the processor is registered after the lookup below.
+        final Runnable pending = group.findPendingRequest(messageId);
+        if (pending instanceof QueuedOperationRequest) {
+            ((QueuedOperationRequest) pending).cancel();
+        }
+        group.receiveRequestCancel(messageId);
+    }
+
+    public void processCreditRequest(final WebSocketConnectionHolder socket, long messageId,
+            final CreditRequest message) {
+        socket.getRemoteConnectionContext().getRemoteConnectionGroup().receiveRequestUpdate(
+                socket, messageId, message);
     }
 
     protected Encryptor initialiseEncryptor() {
@@ -488,11 +612,86 @@ public class OpenICFServerAdapter implements OperationMessageListener {
                 new RemoteConfigurationChangeListener(socket, connectorInfo, config));
     }
 
+    /**
+     * Gets the connectorFacadeKey of the request.
+     * <p/>
+     * A request with the connectorFacadeId and the key registers the key for
+     * the remote client and the next requests send the id only.
+     *
+     * @throws UnknownConnectorFacadeException
+     *             if the id is not registered and the client must send the key
+     *             again.
+     */
+    protected String getConnectorFacadeKey(final WebSocketConnectionHolder socket,
+            final OperationRequest message) {
+        final ByteString facadeId = message.getConnectorFacadeId();
+        if (facadeId.isEmpty()) {
+            return message.getConnectorFacadeKey().toStringUtf8();
+        }
+        final WebSocketConnectionGroup group =
+                socket.getRemoteConnectionContext().getRemoteConnectionGroup();
+        if (message.getConnectorFacadeKey().isEmpty()) {
+            String connectorFacadeKey = group.findConnectorFacadeKey(facadeId);
+            if (null == connectorFacadeKey) {
+                throw new UnknownConnectorFacadeException("ConnectorFacade is not registered");
+            }
+            return connectorFacadeKey;
+        }
+        return group.registerConnectorFacadeKey(facadeId, message.getConnectorFacadeKey());
+    }
+
     public ConnectorInfo findConnectorInfo(CommonObjectMessages.ConnectorKey key) {
         return connectorInfoManager.findConnectorInfo(new ConnectorKey(key.getBundleName(), key
                 .getBundleVersion(), key.getConnectorName()));
     }
 
+    /**
+     * The operation request waiting in the {@link RequestDispatcher}.
+     */
+    private class QueuedOperationRequest implements Runnable {
+        private final WebSocketConnectionHolder socket;
+        private final long messageId;
+        private final OperationRequest message;
+        private volatile boolean cancelled = false;
+
+        private QueuedOperationRequest(final WebSocketConnectionHolder socket,
+                final long messageId, final OperationRequest message) {
+            this.socket = socket;
+            this.messageId = messageId;
+            this.message = message;
+        }
+
+        public void run() {
+            try {
+                if (!cancelled) {
+                    processOperationRequest(socket, messageId, message, this);
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Removes the pending request, it must be called before the response
+         * is sent.
+         */
+        private void release() {
+            socket.getRemoteConnectionContext().getRemoteConnectionGroup().removePendingRequest(
+                    messageId, this);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (connectorFramework.getRequestDispatcher().cancel(this)) {
+                release();
+            }
+        }
+    }
+
     private static class RemoteConfigurationChangeListener implements
             ConfigurationPropertyChangeListener {
         private final WebSocketConnectionHolder socket;
@@ -68,6 +68,7 @@ import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.operations.APIOperation;
@@ -98,6 +99,7 @@ import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
+import org.identityconnectors.framework.impl.api.SchemaCache;
 
 import com.google.protobuf.ByteString;
 
@@ -125,6 +127,8 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
     private final UpdateAsyncApiOp updateApiOp;
     private final ValidateAsyncApiOp validateApiOp;
 
+    private final SchemaCache schemaCache = new SchemaCache();
+
     protected RemoteAsyncConnectorFacade(
             final APIConfigurationImpl configuration,
             final Function<LoadBalancingConnectorFacadeContext, APIConfiguration, RuntimeException> transformer) {
@@ -136,6 +140,11 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
 
             final ConnectorKey connectorKey =
                     getAPIConfiguration().getConnectorInfo().getConnectorKey();
+            // The configuration changes reported by the server drop the schema,
+            // nothing is registered if there is no listener and no cache
+            final ConfigurationPropertyChangeListener changeListener =
+                    schemaCache.isEnabled() ? schemaCache.invalidateOnChange(getAPIConfiguration()
+                            .getChangeListener()) : getAPIConfiguration().getChangeListener();
             Function<RemoteOperationContext, ByteString, RuntimeException> facadeKeyFunction;
             if (null != transformer) {
                 facadeKeys = new ConcurrentHashMap<String, ByteString>();
@@ -177,13 +186,11 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
                                                                 .serializeBase64Object(fullConfiguration));
                                                 facadeKey =
                                                         ByteString.copyFromUtf8(connectorFacadeKey);
-                                                if (null != getAPIConfiguration()
-                                                        .getChangeListener()) {
+                                                if (null != changeListener) {
                                                     value.getRemoteConnectionGroup()
                                                             .addConfigurationChangeListener(
                                                                     connectorFacadeKey,
-                                                                    getAPIConfiguration()
-                                                                            .getChangeListener());
+                                                                    changeListener);
                                                 }
                                                 facadeKeys.putIfAbsent(value.getRemotePrincipal()
                                                         .getName(), facadeKey);
@@ -211,11 +218,10 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
                                     throws RuntimeException {
                                 context.getRemoteConnectionGroup().findConnectorInfo(
                                         getAPIConfiguration().getConnectorInfo().getConnectorKey());
-                                if (null != getAPIConfiguration().getChangeListener()) {
+                                if (null != changeListener) {
                                     context.getRemoteConnectionGroup()
                                             .addConfigurationChangeListener(
-                                                    getConnectorFacadeKey(),
-                                                    getAPIConfiguration().getChangeListener());
+                                                    getConnectorFacadeKey(), changeListener);
                                 }
                                 return facadeKey;
                             }
@@ -277,7 +283,7 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
                 schemaApiOp =
                         createLogging(SchemaApiOp.class, new SchemaAsyncApiOpImpl(remoteConnection,
                                 connectorKey, facadeKeyFunction, getAPIConfiguration().getTimeout(
-                                        SchemaApiOp.class)));
+                                        SchemaApiOp.class), schemaCache));
             } else {
                 schemaApiOp = null;
             }
@@ -372,6 +378,14 @@ public class RemoteAsyncConnectorFacade extends AbstractConnectorFacade implemen
         this(configuration, null);
     }
 
+    /**
+     * Gets the cache of the schema, the cache is dropped when the server
+     * reports a configuration change.
+     */
+    public SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
     protected <T extends APIOperation> T getAsyncOperationCheckSupported(final Class<T> api) {
         T op = api.cast(getOperationImplementation(api));
 
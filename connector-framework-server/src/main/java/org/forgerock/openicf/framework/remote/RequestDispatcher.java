@@ -0,0 +1,476 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.remote;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * A RequestDispatcher runs the operation requests of the remote clients on a
+ * bounded number of worker threads.
+ * <p/>
+ * The waiting requests are queued fairly: the principals take turns and the
+ * connector facades of a principal take turns, so a burst from one client or
+ * against one facade does not starve the others. The {@link Priority#SHORT
+ * short} operations run before the {@link Priority#LONG long} ones and some
+ * workers are reserved for them, so a few long searches can not block a get
+ * or a test. A request is rejected right away if too many requests are
+ * waiting and the client gets a retryable "server busy" error. A waiting
+ * request is removed with {@link #cancel(Runnable)} when the client cancels
+ * it.
+ * <p/>
+ * The default dispatcher is configured with system properties:
+ * <ul>
+ * <li>{@value #MAX_WORKERS_PROPERTY} - the number of worker threads, default
+ * {@value #DEFAULT_MAX_WORKERS}.</li>
+ * <li>{@value #RESERVED_WORKERS_PROPERTY} - the number of workers which run
+ * the short operations only, default one eighth of the workers.</li>
+ * <li>{@value #MAX_QUEUED_REQUESTS_PROPERTY} - the number of waiting requests,
+ * default {@value #DEFAULT_MAX_QUEUED_REQUESTS}.</li>
+ * <li>{@value #MAX_QUEUED_REQUESTS_PER_PRINCIPAL_PROPERTY} - the number of
+ * waiting requests of one principal, default half of all.</li>
+ * </ul>
+ *
+ * @since 1.5
+ */
+public class RequestDispatcher {
+
+    /**
+     * The priority of a request.
+     */
+    public enum Priority {
+        /**
+         * The operations which are expected to complete quickly, like get, test
+         * or validate.
+         */
+        SHORT,
+        /**
+         * The streaming and the long running operations, like search or sync.
+         */
+        LONG
+    }
+
+    private static final Log logger = Log.getLog(RequestDispatcher.class);
+
+    public static final String MAX_WORKERS_PROPERTY =
+            "org.forgerock.openicf.framework.remote.RequestDispatcher.maxWorkers";
+
+    public static final String RESERVED_WORKERS_PROPERTY =
+            "org.forgerock.openicf.framework.remote.RequestDispatcher.reservedWorkers";
+
+    public static final String MAX_QUEUED_REQUESTS_PROPERTY =
+            "org.forgerock.openicf.framework.remote.RequestDispatcher.maxQueuedRequests";
+
+    public static final String MAX_QUEUED_REQUESTS_PER_PRINCIPAL_PROPERTY =
+            "org.forgerock.openicf.framework.remote.RequestDispatcher.maxQueuedRequestsPerPrincipal";
+
+    public static final int DEFAULT_MAX_WORKERS = 256;
+
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+
+    private final ExecutorService executor;
+
+    private final int maxWorkers;
+    private final int maxLongWorkers;
+    private final int maxQueuedRequests;
+    private final int maxQueuedRequestsPerPrincipal;
+
+    // -- The state is guarded by this instance
+
+    private final Lane[] lanes = new Lane[] { new Lane(), new Lane() };
+
+    private final Map<String, int[]> queuedPerPrincipal = new HashMap<String, int[]>();
+
+    private final int[] active = new int[2];
+
+    private int workers = 0;
+
+    private long rejected = 0;
+
+    private long completed = 0;
+
+    private boolean running = true;
+
+    /**
+     * Creates a new dispatcher configured with the system properties.
+     *
+     * @param threadFactory
+     *            the factory of the worker threads.
+     */
+    public RequestDispatcher(final ThreadFactory threadFactory) {
+        this(Integer.getInteger(MAX_WORKERS_PROPERTY, DEFAULT_MAX_WORKERS), threadFactory);
+    }
+
+    private RequestDispatcher(final int maxWorkers, final ThreadFactory threadFactory) {
+        this(maxWorkers, Integer.getInteger(RESERVED_WORKERS_PROPERTY, maxWorkers / 8), Integer
+                .getInteger(MAX_QUEUED_REQUESTS_PROPERTY, DEFAULT_MAX_QUEUED_REQUESTS), Integer
+                .getInteger(MAX_QUEUED_REQUESTS_PER_PRINCIPAL_PROPERTY, Integer.getInteger(
+                        MAX_QUEUED_REQUESTS_PROPERTY, DEFAULT_MAX_QUEUED_REQUESTS) / 2),
+                threadFactory);
+    }
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param maxWorkers
+     *            the number of worker threads.
+     * @param reservedWorkers
+     *            the number of workers which run the short operations only.
+     * @param maxQueuedRequests
+     *            the number of waiting requests.
+     * @param maxQueuedRequestsPerPrincipal
+     *            the number of waiting requests of one principal.
+     * @param threadFactory
+     *            the factory of the worker threads.
+     */
+    public RequestDispatcher(final int maxWorkers, final int reservedWorkers,
+            final int maxQueuedRequests, final int maxQueuedRequestsPerPrincipal,
+            final ThreadFactory threadFactory) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("The maxWorkers must be positive");
+        }
+        if (reservedWorkers < 0 || maxQueuedRequests < 0 || maxQueuedRequestsPerPrincipal < 0) {
+            throw new IllegalArgumentException("The reservedWorkers and the queue limits must not"
+                    + " be negative");
+        }
+        this.maxWorkers = maxWorkers;
+        this.maxLongWorkers = Math.max(1, maxWorkers - reservedWorkers);
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxQueuedRequestsPerPrincipal = maxQueuedRequestsPerPrincipal;
+        this.executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Dispatches the request.
+     *
+     * @param principal
+     *            the name of the principal which sent the request.
+     * @param connectorFacade
+     *            the key of the connector facade which runs the request.
+     * @param priority
+     *            the priority of the request.
+     * @param request
+     *            the request to run.
+     * @return {@code false} if the request was rejected because too many
+     *         requests are waiting or the dispatcher is shut down.
+     */
+    public boolean dispatch(final String principal, final Object connectorFacade,
+            final Priority priority, final Runnable request) {
+        final Task task =
+                new Task(null != principal ? principal : "", connectorFacade, priority, request);
+        synchronized (this) {
+            if (!running) {
+                rejected++;
+                return false;
+            }
+            final boolean canRun =
+                    workers < maxWorkers
+                            && (Priority.SHORT.equals(priority) || active[Priority.LONG
+                                    .ordinal()] < maxLongWorkers);
+            if (!canRun
+                    && (getQueuedRequests() >= maxQueuedRequests
+                            || getQueuedRequests(task.principal) >= maxQueuedRequestsPerPrincipal)) {
+                rejected++;
+                return false;
+            }
+            lanes[priority.ordinal()].add(task);
+            int[] count = queuedPerPrincipal.get(task.principal);
+            if (null == count) {
+                count = new int[1];
+                queuedPerPrincipal.put(task.principal, count);
+            }
+            count[0]++;
+            if (!canRun) {
+                return true;
+            }
+            workers++;
+        }
+        try {
+            executor.execute(new Worker());
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                workers--;
+            }
+            logger.ok(e, "Failed to start a worker, the request remains queued");
+        }
+        return true;
+    }
+
+    /**
+     * Removes the request from the queue if it has not started yet.
+     *
+     * @param request
+     *            the request passed to
+     *            {@link #dispatch(String, Object, Priority, Runnable)}.
+     * @return {@code true} if the request was waiting and it will not run.
+     */
+    public synchronized boolean cancel(final Runnable request) {
+        for (Lane lane : lanes) {
+            final Task task = lane.remove(request);
+            if (null != task) {
+                final int[] count = queuedPerPrincipal.get(task.principal);
+                if (--count[0] == 0) {
+                    queuedPerPrincipal.remove(task.principal);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops accepting the requests, the queued requests still run.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+        }
+        executor.shutdown();
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Returns the number of the waiting requests.
+     */
+    public synchronized int getQueuedRequests() {
+        return lanes[0].size + lanes[1].size;
+    }
+
+    /**
+     * Returns the number of the waiting requests of the priority.
+     */
+    public synchronized int getQueuedRequests(final Priority priority) {
+        return lanes[priority.ordinal()].size;
+    }
+
+    /**
+     * Returns the number of the waiting requests of the principal.
+     */
+    public synchronized int getQueuedRequests(final String principal) {
+        final int[] count = queuedPerPrincipal.get(principal);
+        return null != count ? count[0] : 0;
+    }
+
+    /**
+     * Returns the number of the running requests.
+     */
+    public synchronized int getActiveRequests() {
+        return active[0] + active[1];
+    }
+
+    /**
+     * Returns the number of the running requests of the priority.
+     */
+    public synchronized int getActiveRequests(final Priority priority) {
+        return active[priority.ordinal()];
+    }
+
+    /**
+     * Returns the number of the rejected requests.
+     */
+    public synchronized long getRejectedRequests() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of the completed requests.
+     */
+    public synchronized long getCompletedRequests() {
+        return completed;
+    }
+
+    /**
+     * Takes the next request, the short ones first.
+     */
+    private Task poll() {
+        Task task = lanes[Priority.SHORT.ordinal()].poll();
+        if (null == task && active[Priority.LONG.ordinal()] < maxLongWorkers) {
+            task = lanes[Priority.LONG.ordinal()].poll();
+        }
+        if (null != task) {
+            final int[] count = queuedPerPrincipal.get(task.principal);
+            if (--count[0] == 0) {
+                queuedPerPrincipal.remove(task.principal);
+            }
+            active[task.priority.ordinal()]++;
+        }
+        return task;
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            Task task = null;
+            while (true) {
+                synchronized (RequestDispatcher.this) {
+                    if (null != task) {
+                        active[task.priority.ordinal()]--;
+                        completed++;
+                    }
+                    task = poll();
+                    if (null == task) {
+                        workers--;
+                        return;
+                    }
+                }
+                try {
+                    task.request.run();
+                } catch (Throwable t) {
+                    logger.warn(t, "Failed to run the request of {0}", task.principal);
+                }
+            }
+        }
+    }
+
+    private static final class Task {
+        private final String principal;
+        private final Object connectorFacade;
+        private final Priority priority;
+        private final Runnable request;
+
+        private Task(final String principal, final Object connectorFacade,
+                final Priority priority, final Runnable request) {
+            this.principal = principal;
+            this.connectorFacade = connectorFacade;
+            this.priority = priority;
+            this.request = request;
+        }
+    }
+
+    /**
+     * The requests of one priority, the principals take turns.
+     */
+    private static final class Lane {
+        private final Map<String, PrincipalQueue> principals =
+                new HashMap<String, PrincipalQueue>();
+        private final Deque<PrincipalQueue> turns = new ArrayDeque<PrincipalQueue>();
+        private int size = 0;
+
+        private void add(final Task task) {
+            PrincipalQueue queue = principals.get(task.principal);
+            if (null == queue) {
+                queue = new PrincipalQueue(task.principal);
+                principals.put(task.principal, queue);
+                turns.addLast(queue);
+            }
+            queue.add(task);
+            size++;
+        }
+
+        private Task poll() {
+            final PrincipalQueue queue = turns.pollFirst();
+            if (null == queue) {
+                return null;
+            }
+            final Task task = queue.poll();
+            if (queue.turns.isEmpty()) {
+                principals.remove(queue.principal);
+            } else {
+                turns.addLast(queue);
+            }
+            size--;
+            return task;
+        }
+
+        private Task remove(final Runnable request) {
+            for (PrincipalQueue queue : principals.values()) {
+                final Task task = queue.remove(request);
+                if (null != task) {
+                    if (queue.turns.isEmpty()) {
+                        principals.remove(queue.principal);
+                        turns.remove(queue);
+                    }
+                    size--;
+                    return task;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The requests of one principal, the connector facades take turns.
+     */
+    private static final class PrincipalQueue {
+        private final String principal;
+        private final Map<Object, Deque<Task>> connectorFacades =
+                new HashMap<Object, Deque<Task>>();
+        private final Deque<Deque<Task>> turns = new ArrayDeque<Deque<Task>>();
+
+        private PrincipalQueue(final String principal) {
+            this.principal = principal;
+        }
+
+        private void add(final Task task) {
+            Deque<Task> queue = connectorFacades.get(task.connectorFacade);
+            if (null == queue) {
+                queue = new ArrayDeque<Task>();
+                connectorFacades.put(task.connectorFacade, queue);
+                turns.addLast(queue);
+            }
+            queue.addLast(task);
+        }
+
+        private Task poll() {
+            final Deque<Task> queue = turns.pollFirst();
+            final Task task = queue.pollFirst();
+            if (queue.isEmpty()) {
+                connectorFacades.remove(task.connectorFacade);
+            } else {
+                turns.addLast(queue);
+            }
+            return task;
+        }
+
+        private Task remove(final Runnable request) {
+            for (Deque<Task> queue : connectorFacades.values()) {
+                final Iterator<Task> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    final Task task = iterator.next();
+                    if (task.request == request) {
+                        iterator.remove();
+                        if (queue.isEmpty()) {
+                            connectorFacades.remove(task.connectorFacade);
+                            turns.remove(queue);
+                        }
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.util.concurrent.CancellationException;
 
 import org.forgerock.openicf.common.protobuf.RPCMessages;
 import org.forgerock.openicf.common.protobuf.RPCMessages.CancelOpRequest;
+import org.forgerock.openicf.common.protobuf.RPCMessages.CreditRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ExceptionMessage;
 import org.forgerock.openicf.common.protobuf.RPCMessages.RPCRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.RemoteMessage;
@@ -107,6 +108,28 @@ public abstract class RemoteOperationRequest<V>
         trySendBytes(cancelMessage);
     }
 
+    /**
+     * Lets the remote peer send more streamed results of this request.
+     *
+     * @param credit
+     *            the number of results processed since the last credit.
+     * @return false if the credit could not be sent.
+     */
+    protected boolean trySendCredit(int credit) {
+        final byte[] creditMessage =
+                RemoteMessage.newBuilder().setMessageId(getRequestId()).setRequest(
+                        RPCRequest.newBuilder().setCreditRequest(
+                                CreditRequest.newBuilder().setCredit(credit))).build()
+                        .toByteArray();
+        try {
+            trySendBytes(creditMessage);
+            return true;
+        } catch (ConnectorIOException e) {
+            logger.ok(e, "Failed to send credit of request:{0}", getRequestId());
+        }
+        return false;
+    }
+
     protected RuntimeException createCancellationException(Throwable cancellationException) {
         if (cancellationException instanceof Exception)
             return (RuntimeException) cancellationException;
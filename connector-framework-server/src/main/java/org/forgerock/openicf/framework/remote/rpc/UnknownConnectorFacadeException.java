@@ -0,0 +1,46 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.remote.rpc;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Thrown when an OperationRequest refers to a connectorFacadeId the server
+ * has not registered, the client should send the request again with the full
+ * connectorFacadeKey.
+ *
+ * @since 1.5
+ */
+public class UnknownConnectorFacadeException extends ConnectorException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @see ConnectorException#ConnectorException(String)
+     */
+    public UnknownConnectorFacadeException(String message) {
+        super(message);
+    }
+}
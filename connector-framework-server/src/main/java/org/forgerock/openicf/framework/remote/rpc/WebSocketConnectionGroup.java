@@ -20,6 +20,7 @@ import java.io.Closeable;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -31,6 +32,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.forgerock.openicf.common.protobuf.MessageVersion;
 import org.forgerock.openicf.common.protobuf.RPCMessages;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ControlRequest;
 import org.forgerock.openicf.common.protobuf.RPCMessages.ControlRequest.InfoLevel;
@@ -51,12 +53,14 @@ import org.forgerock.util.promise.Promise;
 import org.identityconnectors.common.ConnectorKeyRange;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.security.Encryptor;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.api.ConfigurationProperty;
 import org.identityconnectors.framework.api.ConfigurationPropertyChangeListener;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.impl.api.AbstractConnectorInfo;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.MessageLite;
 
 public class WebSocketConnectionGroup
@@ -66,18 +70,51 @@ public class WebSocketConnectionGroup
 
     private static final Log logger = Log.getLog(WebSocketConnectionGroup.class);
 
+    /**
+     * Maximum number of connectorFacadeKeys remembered for the remote peer.
+     */
+    private static final int MAX_CONNECTOR_FACADE_KEYS = 256;
+
     private long lastActivity = System.currentTimeMillis();
     
     private Encryptor encryptor = null;
 
     private RemoteOperationContext operationContext = null;
 
+    private volatile String remoteMessageVersion = null;
+
     private final AtomicBoolean isRunning = new AtomicBoolean(Boolean.TRUE);
     private final Set<String> principals = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
 
     private final ConcurrentMap<String, ConfigurationPropertyChangeListener> configurationChangeListenerMap =
             new ConcurrentHashMap<String, ConfigurationPropertyChangeListener>();
 
+    /**
+     * The ids of the connectorFacadeKeys sent to the remote server.
+     */
+    private final ConcurrentMap<ByteString, Boolean> sentConnectorFacadeIds =
+            new ConcurrentHashMap<ByteString, Boolean>();
+
+    /**
+     * The connectorFacadeKeys registered by the remote client, the least
+     * recently used key is removed first.
+     */
+    private final Map<ByteString, String> connectorFacadeKeys =
+            new LinkedHashMap<ByteString, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                protected boolean removeEldestEntry(Map.Entry<ByteString, String> eldest) {
+                    return size() > MAX_CONNECTOR_FACADE_KEYS;
+                }
+            };
+
+    /**
+     * The operation requests of the remote client which were dispatched but
+     * have not registered their {@link LocalRequest} yet.
+     */
+    private final ConcurrentMap<Long, Runnable> pendingRequests =
+            new ConcurrentHashMap<Long, Runnable>();
+
     private final CloseListener<WebSocketConnectionHolder> closeListener =
             new CloseListener<WebSocketConnectionHolder>() {
                 public void onClosed(final WebSocketConnectionHolder connection) {
@@ -106,6 +143,7 @@ public class WebSocketConnectionGroup
             }
         }
         if (remoteSessionId.equals(message.getSessionId())) {
+            remoteMessageVersion = message.getMessageVersion();
             final Pair<String, WebSocketConnectionHolder> entry =
                     Pair.of(connectionPrincipal.getName(), webSocketConnection);
             webSockets.add(entry);
@@ -188,6 +226,139 @@ public class WebSocketConnectionGroup
         return false;
     }
 
+    /**
+     * Checks if the remote peer reads the native message encoding of the
+     * attributes, filters and operation options.
+     *
+     * @return false if the peer only reads the legacy binary objects.
+     */
+    public boolean isNativeEncodingSupported() {
+        return MessageVersion.isAtLeast(remoteMessageVersion,
+                MessageVersion.NATIVE_ENCODING_VERSION);
+    }
+
+    /**
+     * Checks if the remote peer waits for the credit of the client before it
+     * sends more streamed results.
+     *
+     * @return false if the peer does not know the CreditRequest message.
+     */
+    public boolean isFlowControlSupported() {
+        return MessageVersion.isAtLeast(remoteMessageVersion,
+                MessageVersion.FLOW_CONTROL_VERSION);
+    }
+
+    /**
+     * Checks if the remote peer registers the connectorFacadeKey and accepts
+     * the requests with the connectorFacadeId only.
+     *
+     * @return false if the peer expects the connectorFacadeKey in every
+     *         request.
+     */
+    public boolean isFacadeIdSupported() {
+        return MessageVersion.isAtLeast(remoteMessageVersion, MessageVersion.FACADE_ID_VERSION);
+    }
+
+    /**
+     * Records that the connectorFacadeKey with the given id is sent to the
+     * remote server.
+     *
+     * @param facadeId
+     *            the id of the connectorFacadeKey.
+     * @return true if the key was sent before and the request can refer to
+     *         it with the id only.
+     */
+    public boolean markConnectorFacadeIdSent(final ByteString facadeId) {
+        if (null == sentConnectorFacadeIds.putIfAbsent(facadeId, Boolean.TRUE)) {
+            if (sentConnectorFacadeIds.size() > MAX_CONNECTOR_FACADE_KEYS) {
+                // The server forgets the old keys too
+                sentConnectorFacadeIds.clear();
+                sentConnectorFacadeIds.put(facadeId, Boolean.TRUE);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Registers the connectorFacadeKey sent by the remote client.
+     *
+     * @param facadeId
+     *            the id sent with the key.
+     * @param facadeKey
+     *            the serialized APIConfiguration.
+     * @return the registered key.
+     * @throws ConnectorException
+     *             if the id is not the hash of the key.
+     */
+    public String registerConnectorFacadeKey(final ByteString facadeId,
+            final ByteString facadeKey) {
+        synchronized (connectorFacadeKeys) {
+            String key = connectorFacadeKeys.get(facadeId);
+            if (null != key) {
+                return key;
+            }
+        }
+        if (!facadeId.equals(MessagesUtil.getConnectorFacadeId(facadeKey))) {
+            throw new ConnectorException("The connectorFacadeId does not match the connectorFacadeKey");
+        }
+        final String key = facadeKey.toStringUtf8();
+        synchronized (connectorFacadeKeys) {
+            connectorFacadeKeys.put(facadeId, key);
+        }
+        return key;
+    }
+
+    /**
+     * Finds the connectorFacadeKey registered by the remote client.
+     *
+     * @param facadeId
+     *            the id of the key.
+     * @return null if the key is not registered or it was removed.
+     */
+    public String findConnectorFacadeKey(final ByteString facadeId) {
+        synchronized (connectorFacadeKeys) {
+            return connectorFacadeKeys.get(facadeId);
+        }
+    }
+
+    /**
+     * Registers the operation request before it is dispatched so a cancel
+     * which arrives while the request is queued can find it.
+     *
+     * @param messageId
+     *            the id of the request.
+     * @param request
+     *            the dispatched request.
+     * @return false if a request with the same id is pending.
+     */
+    public boolean addPendingRequest(final long messageId, final Runnable request) {
+        return null == pendingRequests.putIfAbsent(messageId, request);
+    }
+
+    /**
+     * Finds the pending operation request.
+     *
+     * @param messageId
+     *            the id of the request.
+     * @return null if the request is not pending.
+     */
+    public Runnable findPendingRequest(final long messageId) {
+        return pendingRequests.get(messageId);
+    }
+
+    /**
+     * Removes the pending operation request.
+     *
+     * @param messageId
+     *            the id of the request.
+     * @param request
+     *            the registered request.
+     */
+    public void removePendingRequest(final long messageId, final Runnable request) {
+        pendingRequests.remove(messageId, request);
+    }
+
     public Encryptor getEncryptor() {
         return encryptor;
     }
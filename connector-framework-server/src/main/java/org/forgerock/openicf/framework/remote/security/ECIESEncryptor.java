@@ -30,8 +30,8 @@ import java.security.PublicKey;
 
 import org.forgerock.openicf.framework.remote.SecurityUtil;
 import org.identityconnectors.common.security.Encryptor;
+import org.identityconnectors.common.security.impl.CipherPool;
 
-import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -40,8 +40,7 @@ public class ECIESEncryptor implements Encryptor {
     public static final String ALGORITHM = "AES";
     public static final String FULL_ALGORITHM = "AES/CBC/PKCS5Padding";
 
-    private final Key key;
-    private final IvParameterSpec iv;
+    private final CipherPool ciphers;
 
     public ECIESEncryptor(KeyPair privateKey, PublicKey publicKey) {
         byte[] bytes = SecurityUtil.doECDH(privateKey, publicKey);
@@ -50,33 +49,18 @@ public class ECIESEncryptor implements Encryptor {
         System.arraycopy(bytes,0, secret, 0, 16);
         System.arraycopy(bytes,16, vector, 0, 16);
 
-        key = new SecretKeySpec(secret, ALGORITHM);
-        iv = new IvParameterSpec(vector);
+        Key key = new SecretKeySpec(secret, ALGORITHM);
+        IvParameterSpec iv = new IvParameterSpec(vector);
+        ciphers = new CipherPool(FULL_ALGORITHM, key, iv);
     }
 
     @Override
     public byte[] decrypt(byte[] bytes) {
-        try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return ciphers.decrypt(bytes);
     }
 
     @Override
     public byte[] encrypt(byte[] bytes) {
-        try {
-            Cipher cipher = Cipher.getInstance(FULL_ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return cipher.doFinal(bytes);
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return ciphers.encrypt(bytes);
     }
 }
@@ -0,0 +1,235 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.async.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ResultBatcherTest {
+
+    @Test
+    public void testBatchSize() throws Exception {
+        final RecordingBatcher batcher = new RecordingBatcher(3, 0L, 0);
+        for (int i = 1; i <= 7; i++) {
+            Assert.assertTrue(batcher.add(i));
+        }
+        Assert.assertEquals(batcher.getSequence(), 2);
+        Assert.assertTrue(batcher.flush());
+        Assert.assertEquals(batcher.getSequence(), 3);
+        Assert.assertEquals(batcher.batches, Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(
+                4, 5, 6), Arrays.asList(7)));
+        Assert.assertEquals(batcher.sequences, Arrays.asList(1L, 2L, 3L));
+        // nothing is pending
+        Assert.assertTrue(batcher.flush());
+        Assert.assertEquals(batcher.getSequence(), 3);
+    }
+
+    @Test
+    public void testDelayedBatch() throws Exception {
+        final CountDownLatch sent = new CountDownLatch(1);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        final RecordingBatcher batcher = new RecordingBatcher(10, 20L, 0) {
+            protected boolean send(long sequence, List<Integer> results) {
+                threads.add(Thread.currentThread().getName());
+                super.send(sequence, results);
+                sent.countDown();
+                return true;
+            }
+        };
+        Assert.assertTrue(batcher.add(1));
+        Assert.assertTrue(batcher.add(2));
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        // the scheduler hands the batch over and does not send it
+        Assert.assertTrue(threads.get(0).startsWith("OpenICF Result Batch Sender"), threads
+                .get(0));
+        Assert.assertTrue(batcher.flush());
+        Assert.assertEquals(batcher.batches, Arrays.asList(Arrays.asList(1, 2)));
+        Assert.assertEquals(batcher.getSequence(), 1);
+    }
+
+    @Test
+    public void testFlushWaitsForDelayedBatch() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingBatcher batcher = new RecordingBatcher(10, 1L, 0) {
+            protected boolean send(long sequence, List<Integer> results) {
+                if (sequence == 1) {
+                    sending.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+                return super.send(sequence, results);
+            }
+        };
+        Assert.assertTrue(batcher.add(1));
+        Assert.assertTrue(sending.await(5, TimeUnit.SECONDS));
+        // the batcher is not locked while the delayed batch is sent
+        Assert.assertTrue(batcher.add(2));
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final AtomicBoolean result = new AtomicBoolean(false);
+        new Thread() {
+            public void run() {
+                result.set(batcher.flush());
+                flushed.countDown();
+            }
+        }.start();
+        Assert.assertFalse(flushed.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(result.get());
+        Assert.assertEquals(batcher.getSequence(), 2);
+        Assert.assertEquals(batcher.batches.size(), 2);
+    }
+
+    @Test
+    public void testSendFailure() throws Exception {
+        final RecordingBatcher batcher = new RecordingBatcher(2, 0L, 0) {
+            protected boolean send(long sequence, List<Integer> results) {
+                return false;
+            }
+        };
+        Assert.assertTrue(batcher.add(1));
+        Assert.assertFalse(batcher.add(2));
+        Assert.assertTrue(batcher.add(3));
+        Assert.assertFalse(batcher.flush());
+    }
+
+    @Test
+    public void testCreditExhaustion() throws Exception {
+        final RecordingBatcher batcher = new RecordingBatcher(10, 0L, 2, 0L);
+        Assert.assertTrue(batcher.isFlowControlled());
+        Assert.assertTrue(batcher.add(1));
+        Assert.assertTrue(batcher.add(2));
+        Assert.assertTrue(batcher.batches.isEmpty());
+        final CountDownLatch added = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                if (batcher.add(3)) {
+                    added.countDown();
+                }
+            }
+        }.start();
+        // the pending results are sent so the client can grant credit
+        Assert.assertFalse(added.await(50, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(batcher.batches, Arrays.asList(Arrays.asList(1, 2)));
+        batcher.grantCredit(2);
+        Assert.assertTrue(added.await(5, TimeUnit.SECONDS));
+        // one credit is left
+        Assert.assertTrue(batcher.add(4));
+        Assert.assertTrue(batcher.flush());
+        Assert.assertEquals(batcher.batches, Arrays.asList(Arrays.asList(1, 2), Arrays.asList(
+                3, 4)));
+    }
+
+    @Test
+    public void testCreditTimeout() throws Exception {
+        final RecordingBatcher batcher = new RecordingBatcher(10, 0L, 1, 50L);
+        Assert.assertTrue(batcher.add(1));
+        final long start = System.nanoTime();
+        try {
+            batcher.add(2);
+            Assert.fail("OperationTimeoutException expected");
+        } catch (OperationTimeoutException e) {
+            Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        // the batcher is closed, the late credit does not resume it
+        batcher.grantCredit(10);
+        Assert.assertFalse(batcher.add(3));
+        Assert.assertEquals(batcher.batches, Arrays.asList(Arrays.asList(1)));
+    }
+
+    @Test
+    public void testCloseReleasesWaitingOperation() throws Exception {
+        final RecordingBatcher batcher = new RecordingBatcher(10, 0L, 1, 0L);
+        Assert.assertTrue(batcher.add(1));
+        final CountDownLatch released = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                if (!batcher.add(2)) {
+                    released.countDown();
+                }
+            }
+        }.start();
+        Assert.assertFalse(released.await(50, TimeUnit.MILLISECONDS));
+        batcher.close();
+        Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReceiveNextBatch() throws Exception {
+        final List<Object> handled = new ArrayList<Object>();
+        final AbstractAPIOperation.ResultBuffer<Integer, String> buffer =
+                new AbstractAPIOperation.ResultBuffer<Integer, String>(APIOperation.NO_TIMEOUT) {
+                    protected boolean handle(Object result) {
+                        handled.add(result);
+                        return result instanceof Integer;
+                    }
+                };
+        // the batches may arrive out of order
+        buffer.receiveNextBatch(2, Arrays.asList(3, 4));
+        Assert.assertEquals(buffer.getRemaining(), 0);
+        buffer.receiveNextBatch(1, Arrays.asList(1, 2));
+        Assert.assertEquals(buffer.getRemaining(), 2);
+        buffer.receiveNext(3, 5);
+        buffer.receiveLast(3, "done");
+        Assert.assertTrue(buffer.hasAll());
+        buffer.process();
+        Assert.assertEquals(handled, Arrays.<Object> asList(1, 2, 3, 4, 5, "done"));
+    }
+
+    private static class RecordingBatcher extends ResultBatcher<Integer> {
+
+        final List<List<Integer>> batches = Collections
+                .synchronizedList(new ArrayList<List<Integer>>());
+        final List<Long> sequences = Collections.synchronizedList(new ArrayList<Long>());
+
+        RecordingBatcher(int maxSize, long maxDelay, int window) {
+            super(maxSize, maxDelay, window);
+        }
+
+        RecordingBatcher(int maxSize, long maxDelay, int window, long creditTimeout) {
+            super(maxSize, maxDelay, window, creditTimeout);
+        }
+
+        protected boolean send(long sequence, List<Integer> results) {
+            sequences.add(sequence);
+            batches.add(new ArrayList<Integer>(results));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.forgerock.openicf.framework.remote;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openicf.common.protobuf.CommonObjectMessages;
+import org.forgerock.openicf.common.protobuf.OperationMessages;
+import org.forgerock.openicf.common.protobuf.OperationMessages.OperationRequest;
+import org.forgerock.openicf.common.protobuf.RPCMessages;
+import org.forgerock.openicf.common.protobuf.RPCMessages.HandshakeMessage;
+import org.forgerock.openicf.common.protobuf.RPCMessages.RemoteMessage;
+import org.forgerock.openicf.framework.ConnectorFramework;
+import org.forgerock.openicf.framework.remote.rpc.RemoteOperationContext;
+import org.forgerock.openicf.framework.remote.rpc.UnknownConnectorFacadeException;
+import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionGroup;
+import org.forgerock.openicf.framework.remote.rpc.WebSocketConnectionHolder;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.protobuf.ByteString;
+
+public class OpenICFServerAdapterTest {
+
+    @Test
+    public void testResendWithConnectorFacadeKey() throws Exception {
+        final ConnectorFramework framework =
+                new ConnectorFramework(OpenICFServerAdapterTest.class.getClassLoader());
+        try {
+            final OpenICFServerAdapter adapter = new TestServerAdapter(framework);
+            final ByteString facadeKey = ByteString.copyFromUtf8("<ConnectorFacadeKey/>");
+            final OperationRequest.Builder request =
+                    OperationRequest.newBuilder().setConnectorKey(
+                            CommonObjectMessages.ConnectorKey.newBuilder().setBundleName(
+                                    "testbundle").setBundleVersion("1.0.0.0").setConnectorName(
+                                    "TestConnector")).setConnectorFacadeId(
+                            MessagesUtil.getConnectorFacadeId(facadeKey)).setTestOpRequest(
+                            OperationMessages.TestOpRequest.getDefaultInstance());
+            final BlockingQueue<RemoteMessage> responses = new LinkedBlockingQueue<RemoteMessage>();
+            final TestConnectionHolder socket = new TestConnectionHolder() {
+                protected void receive(final RemoteMessage message) {
+                    if (!message.hasResponse()) {
+                        return;
+                    }
+                    responses.add(message);
+                    if (message.getResponse().hasError()
+                            && UnknownConnectorFacadeException.class.getName().equals(
+                                    message.getResponse().getError().getExceptionClass())) {
+                        // The client resends the request with the same id as
+                        // soon as it gets the error
+                        adapter.onMessage(this, createRequest((int) message.getMessageId(),
+                                request.clone().setConnectorFacadeKey(facadeKey)));
+                    }
+                }
+            };
+            socket.connect();
+
+            // The server does not know the id
+            adapter.onMessage(socket, createRequest(1L, request));
+            RemoteMessage response = responses.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(response);
+            Assert.assertEquals(response.getResponse().getError().getExceptionClass(),
+                    UnknownConnectorFacadeException.class.getName());
+
+            response = responses.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(response);
+            Assert.assertEquals(response.getMessageId(), 1L);
+            Assert.assertFalse(response.getResponse().hasError(), response.toString());
+            Assert.assertTrue(response.getResponse().getOperationResponse().hasTestOpResponse());
+        } finally {
+            framework.close();
+        }
+    }
+
+    private static byte[] createRequest(final int messageId,
+            final OperationRequest.Builder request) {
+        return MessagesUtil.createRequest(messageId,
+                RPCMessages.RPCRequest.newBuilder().setOperationRequest(request)).build()
+                .toByteArray();
+    }
+
+    private static class TestServerAdapter extends OpenICFServerAdapter {
+
+        private TestServerAdapter(final ConnectorFramework framework) {
+            super(framework, framework.getLocalManager(), false);
+        }
+
+        public ConnectorInfo findConnectorInfo(final CommonObjectMessages.ConnectorKey key) {
+            return newProxy(ConnectorInfo.class);
+        }
+
+        public ConnectorFacade newInstance(final WebSocketConnectionHolder socket,
+                final ConnectorInfo connectorInfo, final String config) {
+            return newProxy(ConnectorFacade.class);
+        }
+
+        private static <T> T newProxy(final Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+                    new Class<?>[] { type }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                                throws Throwable {
+                            if (Object.class.equals(method.getDeclaringClass())) {
+                                return method.invoke(this, args);
+                            }
+                            return null;
+                        }
+                    }));
+        }
+    }
+
+    private static abstract class TestConnectionHolder extends WebSocketConnectionHolder {
+
+        private volatile RemoteOperationContext context = null;
+
+        private void connect() {
+            final WebSocketConnectionGroup group = new WebSocketConnectionGroup("test-session");
+            context = group.handshake(new Principal() {
+                public String getName() {
+                    return "test";
+                }
+            }, this, HandshakeMessage.newBuilder().setSessionId("test-session").build());
+        }
+
+        protected abstract void receive(RemoteMessage message);
+
+        public RemoteOperationContext getRemoteConnectionContext() {
+            return context;
+        }
+
+        public Future<?> sendBytes(final byte[] data) {
+            final FutureTask<Void> future = new FutureTask<Void>(new Runnable() {
+                public void run() {
+                    try {
+                        receive(RemoteMessage.parseFrom(data));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }, null);
+            future.run();
+            return future;
+        }
+
+        public Future<?> sendString(final String data) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void sendPing(final byte[] applicationData) throws Exception {
+        }
+
+        public void sendPong(final byte[] applicationData) throws Exception {
+        }
+
+        protected void handshake(final HandshakeMessage message) {
+        }
+
+        protected void tryClose() {
+        }
+
+        public boolean isOperational() {
+            return true;
+        }
+    }
+}
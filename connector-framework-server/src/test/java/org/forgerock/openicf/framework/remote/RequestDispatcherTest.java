@@ -0,0 +1,222 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.forgerock.openicf.framework.remote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openicf.framework.remote.RequestDispatcher.Priority;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RequestDispatcherTest {
+
+    @Test
+    public void testReservedWorkers() throws Exception {
+        final RequestDispatcher dispatcher =
+                new RequestDispatcher(2, 1, 10, 10, Executors.defaultThreadFactory());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(3);
+        try {
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.LONG, new Blocking(started,
+                    release, finished)));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.LONG, new Blocking(null,
+                    release, finished)));
+            // the second worker is reserved for the short requests
+            final CountDownLatch shortFinished = new CountDownLatch(1);
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.SHORT, new Runnable() {
+                public void run() {
+                    shortFinished.countDown();
+                    finished.countDown();
+                }
+            }));
+            Assert.assertTrue(shortFinished.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(dispatcher.getActiveRequests(Priority.LONG), 1);
+            Assert.assertEquals(dispatcher.getQueuedRequests(Priority.LONG), 1);
+            Assert.assertEquals(dispatcher.getQueuedRequests("p1"), 1);
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        awaitCompleted(dispatcher, 3);
+        Assert.assertEquals(dispatcher.getQueuedRequests(), 0);
+        Assert.assertEquals(dispatcher.getActiveRequests(), 0);
+        Assert.assertEquals(dispatcher.getRejectedRequests(), 0);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testAdmissionControl() throws Exception {
+        final RequestDispatcher dispatcher =
+                new RequestDispatcher(1, 0, 2, 1, Executors.defaultThreadFactory());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(3);
+        try {
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.SHORT, new Blocking(
+                    started, release, finished)));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.SHORT, new Blocking(null,
+                    release, finished)));
+            // too many requests of the principal
+            Assert.assertFalse(dispatcher.dispatch("p1", "f2", Priority.SHORT, new Blocking(null,
+                    release, finished)));
+            Assert.assertTrue(dispatcher.dispatch("p2", "f1", Priority.LONG, new Blocking(null,
+                    release, finished)));
+            // too many requests
+            Assert.assertFalse(dispatcher.dispatch("p3", "f1", Priority.SHORT, new Blocking(null,
+                    release, finished)));
+            Assert.assertEquals(dispatcher.getQueuedRequests(), 2);
+            Assert.assertEquals(dispatcher.getRejectedRequests(), 2);
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        awaitCompleted(dispatcher, 3);
+
+        dispatcher.shutdown();
+        Assert.assertFalse(dispatcher.dispatch("p1", "f1", Priority.SHORT, new Blocking(null,
+                release, finished)));
+        Assert.assertEquals(dispatcher.getRejectedRequests(), 3);
+    }
+
+    @Test
+    public void testFairQueuing() throws Exception {
+        final RequestDispatcher dispatcher =
+                new RequestDispatcher(1, 0, 10, 10, Executors.defaultThreadFactory());
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(6);
+        try {
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.LONG, new Blocking(
+                    started, release, finished)));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            dispatch(dispatcher, "p1", "f1", Priority.LONG, order, finished);
+            dispatch(dispatcher, "p1", "f1", Priority.LONG, order, finished);
+            dispatch(dispatcher, "p1", "f2", Priority.LONG, order, finished);
+            dispatch(dispatcher, "p2", "f1", Priority.LONG, order, finished);
+            dispatch(dispatcher, "p2", "f1", Priority.SHORT, order, finished);
+            Assert.assertEquals(dispatcher.getQueuedRequests(), 5);
+            Assert.assertEquals(dispatcher.getQueuedRequests(Priority.SHORT), 1);
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(order, Arrays.asList("SHORT p2/f1", "LONG p1/f1",
+                "LONG p2/f1", "LONG p1/f2", "LONG p1/f1"));
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testCancelQueuedRequest() throws Exception {
+        final RequestDispatcher dispatcher =
+                new RequestDispatcher(1, 0, 10, 10, Executors.defaultThreadFactory());
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        final Blocking running = new Blocking(started, release, finished);
+        final Runnable cancelled = new Runnable() {
+            public void run() {
+                order.add("cancelled");
+            }
+        };
+        try {
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.LONG, running));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(dispatcher.dispatch("p1", "f1", Priority.LONG, cancelled));
+            dispatch(dispatcher, "p1", "f2", Priority.LONG, order, finished);
+            Assert.assertEquals(dispatcher.getQueuedRequests("p1"), 2);
+
+            Assert.assertTrue(dispatcher.cancel(cancelled));
+            Assert.assertFalse(dispatcher.cancel(cancelled));
+            // the running request can not be removed
+            Assert.assertFalse(dispatcher.cancel(running));
+            Assert.assertEquals(dispatcher.getQueuedRequests(), 1);
+            Assert.assertEquals(dispatcher.getQueuedRequests("p1"), 1);
+        } finally {
+            release.countDown();
+        }
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        awaitCompleted(dispatcher, 2);
+        Assert.assertEquals(order, Arrays.asList("LONG p1/f2"));
+        Assert.assertEquals(dispatcher.getQueuedRequests(), 0);
+        dispatcher.shutdown();
+    }
+
+    private static void dispatch(final RequestDispatcher dispatcher, final String principal,
+            final String facade, final Priority priority, final List<String> order,
+            final CountDownLatch finished) {
+        Assert.assertTrue(dispatcher.dispatch(principal, facade, priority, new Runnable() {
+            public void run() {
+                order.add(priority + " " + principal + "/" + facade);
+                finished.countDown();
+            }
+        }));
+    }
+
+    private static void awaitCompleted(final RequestDispatcher dispatcher, final long count)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getCompletedRequests() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(dispatcher.getCompletedRequests(), count);
+    }
+
+    private static class Blocking implements Runnable {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+        private final CountDownLatch finished;
+
+        Blocking(final CountDownLatch started, final CountDownLatch release,
+                final CountDownLatch finished) {
+            this.started = started;
+            this.release = release;
+            this.finished = finished;
+        }
+
+        public void run() {
+            if (null != started) {
+                started.countDown();
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        }
+    }
+}
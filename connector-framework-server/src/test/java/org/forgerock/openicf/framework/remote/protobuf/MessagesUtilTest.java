@@ -27,21 +27,43 @@ package org.forgerock.openicf.framework.remote.protobuf;
 import static org.forgerock.openicf.framework.remote.MessagesUtil.deserializeMessage;
 import static org.forgerock.openicf.framework.remote.MessagesUtil.serializeMessage;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.forgerock.openicf.common.protobuf.CommonObjectMessages;
+import org.forgerock.openicf.framework.remote.MessagesUtil;
+import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.QualifiedUid;
 import org.identityconnectors.framework.common.objects.ScriptContext;
 import org.identityconnectors.framework.common.objects.ScriptContextBuilder;
 import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
 import org.identityconnectors.framework.common.objects.SyncDeltaType;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.protobuf.ByteString;
+
 public class MessagesUtilTest {
 
     @Test
@@ -99,4 +121,123 @@ public class MessagesUtilTest {
         Assert.assertEquals(deserializeMessage(message, SyncDelta.class), source);
     }
 
+    @Test
+    public void testConnectorObjectNativeSerialize() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("list", Arrays.<Object> asList("a", 1L));
+        map.put("value", true);
+        ConnectorObject source =
+                new ConnectorObjectBuilder().setUid(new Uid("0", "1")).setName("0")
+                        .addAttribute("string", "a", "b").addAttribute("map", map)
+                        .addAttribute(AttributeBuilder.build("empty"))
+                        .addAttribute("password", new GuardedString("secret".toCharArray()))
+                        .addAttribute("decimal", new BigDecimal("1.25")).build();
+        CommonObjectMessages.ConnectorObject message =
+                MessagesUtil.serializeConnectorObject(source, true);
+        assertTrue(message.getAttributes().isEmpty());
+        assertEquals(message.getAttributeMessagesCount(), source.getAttributes().size());
+        ConnectorObject target = deserializeMessage(message, ConnectorObject.class);
+        assertEquals(target, source);
+        assertEquals(target.getUid().getRevision(), "1");
+        assertNull(target.getAttributeByName("empty").getValue());
+    }
+
+    @Test
+    public void testSyncDeltaNativeSerialize() throws Exception {
+        ConnectorObjectBuilder coBuilder = new ConnectorObjectBuilder().setUid("0").setName("0");
+        SyncDelta source =
+                new SyncDeltaBuilder().setDeltaType(SyncDeltaType.CREATE)
+                        .setToken(new SyncToken(1)).setObject(coBuilder.build()).build();
+        CommonObjectMessages.SyncDelta message = MessagesUtil.serializeSyncDelta(source, true);
+        assertTrue(message.getConnectorObject().isEmpty());
+        assertEquals(deserializeMessage(message, SyncDelta.class), source);
+    }
+
+    @Test
+    public void testFilterNativeSerialize() throws Exception {
+        Filter source =
+                FilterBuilder.or(FilterBuilder.and(FilterBuilder.equalTo(AttributeBuilder.build(
+                        "a", "b", "c")), FilterBuilder.not(FilterBuilder.present("d"))),
+                        FilterBuilder.greaterThan(AttributeBuilder.build("e", 10)), FilterBuilder
+                                .extendedMatch("~=", AttributeBuilder.build("f", "g")),
+                        FilterBuilder.startsWith(AttributeBuilder.build("h", "i")));
+        Filter target = MessagesUtil.toFilter(MessagesUtil.fromFilter(source).build());
+        assertEquals(SerializerUtil.serializeXmlObject(target, false), SerializerUtil
+                .serializeXmlObject(source, false));
+    }
+
+    @Test
+    public void testOperationOptionsNativeSerialize() throws Exception {
+        OperationOptions source =
+                new OperationOptionsBuilder().setAttributesToGet("a", "b").setPageSize(10)
+                        .setSortKeys(new SortKey("a", false)).setTotalPagedResultsPolicy(
+                                SearchResult.CountPolicy.EXACT).setContainer(
+                                new QualifiedUid(ObjectClass.GROUP, new Uid("1"))).build();
+        OperationOptions target =
+                MessagesUtil.toOperationOptions(MessagesUtil.fromOperationOptions(source).build());
+        assertEquals(target.getAttributesToGet(), source.getAttributesToGet());
+        assertEquals(target.getPageSize(), source.getPageSize());
+        assertEquals(target.getSortKeys()[0].getField(), "a");
+        assertFalse(target.getSortKeys()[0].isAscendingOrder());
+        assertEquals(target.getTotalPagedResultsPolicy(), SearchResult.CountPolicy.EXACT);
+        assertEquals(target.getContainer(), source.getContainer());
+    }
+
+    @Test
+    public void testLegacyFallback() throws Exception {
+        OperationOptions source =
+                new OperationOptionsBuilder().setOption("primitive", new int[] { 1 }).build();
+        assertNull(MessagesUtil.tryFromOperationOptions(source, true));
+        assertNull(MessagesUtil.tryFromOperationOptions(new OperationOptionsBuilder().build(),
+                false));
+
+        ConnectorObject object = new ConnectorObjectBuilder().setUid("0").setName("0").build();
+        CommonObjectMessages.ConnectorObject message =
+                MessagesUtil.serializeConnectorObject(object, false);
+        assertEquals(message.getAttributeMessagesCount(), 0);
+        assertFalse(message.getAttributes().isEmpty());
+    }
+
+    @Test
+    public void testOperationOptionsArrayType() throws Exception {
+        // the component type is the class of the values, not of the first one
+        OperationOptions source =
+                new OperationOptionsBuilder().setOption("uids", new Uid[] { null, new Uid("1") })
+                        .build();
+        assertTrue(MessagesUtil.isNativeOperationOptions(source));
+        OperationOptions target =
+                MessagesUtil.toOperationOptions(MessagesUtil.fromOperationOptions(source).build());
+        assertEquals(target.getOptions().get("uids").getClass(), Uid[].class);
+        assertEquals(Arrays.asList((Object[]) target.getOptions().get("uids")), Arrays.asList(
+                null, new Uid("1")));
+
+        // the type of an empty array can not be restored
+        assertFalse(MessagesUtil.isNativeOperationOptions(new OperationOptionsBuilder()
+                .setOption("uids", new Uid[0]).build()));
+        assertTrue(MessagesUtil.isNativeOperationOptions(new OperationOptionsBuilder()
+                .setAttributesToGet().build()));
+    }
+
+    @Test
+    public void testNativeChecks() throws Exception {
+        assertFalse(MessagesUtil.isNativeFilter(FilterBuilder.and(FilterBuilder
+                .present("a"), FilterBuilder.equalTo(new Uid("1", "rev")))));
+        assertTrue(MessagesUtil.isNativeFilter(FilterBuilder.and(FilterBuilder.present("a"),
+                FilterBuilder.equalTo(new Uid("1")))));
+        assertNull(MessagesUtil.tryFromFilter(FilterBuilder.equalTo(new Uid("1", "rev")), true));
+
+        ConnectorObject object =
+                new ConnectorObjectBuilder().setUid("0").setName("0").addAttribute(
+                        AttributeBuilder.build("a", new BigDecimal("1.5"))).build();
+        assertTrue(MessagesUtil.isNativeAttributes(object.getAttributes()));
+    }
+
+    @Test
+    public void testConnectorFacadeId() throws Exception {
+        ByteString key = ByteString.copyFromUtf8("AAAAfHNlcmlhbGl6ZWQgY29uZmlndXJhdGlvbg==");
+        ByteString id = MessagesUtil.getConnectorFacadeId(key);
+        assertEquals(id.size(), 32);
+        assertEquals(MessagesUtil.getConnectorFacadeId(ByteString.copyFrom(key.toByteArray())), id);
+        assertFalse(MessagesUtil.getConnectorFacadeId(ByteString.copyFromUtf8("AAAA")).equals(id));
+    }
 }
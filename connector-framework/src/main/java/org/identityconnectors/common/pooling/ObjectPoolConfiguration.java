@@ -40,6 +40,8 @@ public final class ObjectPoolConfiguration {
         this.setMaxWait(other.getMaxWait());
         this.setMinEvictableIdleTimeMillis(other.getMinEvictableIdleTimeMillis());
         this.setMinIdle(other.getMinIdle());
+        this.setMinTestIntervalMillis(other.getMinTestIntervalMillis());
+        this.setLockFree(other.isLockFree());
     }
 
     /**
@@ -69,6 +71,18 @@ public final class ObjectPoolConfiguration {
      */
     private int minIdle = 1;
 
+    /**
+     * Minimum time after a successful test before an object is tested again
+     * when it's borrowed. Zero means test on every borrow.
+     */
+    private long minTestIntervalMillis = 0;
+
+    /**
+     * Use the lock-free pool which hands the returned objects over to the
+     * waiting threads in arrival order.
+     */
+    private boolean lockFree = false;
+
     /**
      * Get the set number of maximum objects (idle+active).
      */
@@ -144,6 +158,38 @@ public final class ObjectPoolConfiguration {
         this.minIdle = minIdle;
     }
 
+    /**
+     * Minimum time after a successful test before an object is tested again
+     * when it's borrowed. Zero means test on every borrow.
+     */
+    public long getMinTestIntervalMillis() {
+        return minTestIntervalMillis;
+    }
+
+    /**
+     * Minimum time after a successful test before an object is tested again
+     * when it's borrowed. Zero means test on every borrow.
+     */
+    public void setMinTestIntervalMillis(long minTestIntervalMillis) {
+        this.minTestIntervalMillis = minTestIntervalMillis;
+    }
+
+    /**
+     * Use the lock-free pool which hands the returned objects over to the
+     * waiting threads in arrival order.
+     */
+    public boolean isLockFree() {
+        return lockFree;
+    }
+
+    /**
+     * Use the lock-free pool which hands the returned objects over to the
+     * waiting threads in arrival order.
+     */
+    public void setLockFree(boolean lockFree) {
+        this.lockFree = lockFree;
+    }
+
     public void validate() {
         if (minIdle < 0) {
             throw new IllegalArgumentException("Min idle is less than zero.");
@@ -160,6 +206,9 @@ public final class ObjectPoolConfiguration {
         if (minEvictableIdleTimeMillis < 0) {
             throw new IllegalArgumentException("Min evictable idle time millis less than zero.");
         }
+        if (minTestIntervalMillis < 0) {
+            throw new IllegalArgumentException("Min test interval millis less than zero.");
+        }
         if (minIdle > maxIdle) {
             throw new IllegalArgumentException("Min idle is greater than max idle.");
         }
@@ -171,7 +220,8 @@ public final class ObjectPoolConfiguration {
     @Override
     public int hashCode() {
         return (int) (getMaxObjects() + getMaxIdle() + getMaxWait()
-                + getMinEvictableIdleTimeMillis() + getMinIdle());
+                + getMinEvictableIdleTimeMillis() + getMinIdle() + getMinTestIntervalMillis() + (isLockFree() ? 1
+                : 0));
     }
 
     @Override
@@ -194,6 +244,12 @@ public final class ObjectPoolConfiguration {
             if (getMinIdle() != other.getMinIdle()) {
                 return false;
             }
+            if (getMinTestIntervalMillis() != other.getMinTestIntervalMillis()) {
+                return false;
+            }
+            if (isLockFree() != other.isLockFree()) {
+                return false;
+            }
             return true;
         }
         return false;
@@ -208,6 +264,8 @@ public final class ObjectPoolConfiguration {
         bld.put("MaxWait", getMaxWait());
         bld.put("MinEvictableIdleTimeMillis", getMinEvictableIdleTimeMillis());
         bld.put("MinIdle", getMinIdle());
+        bld.put("MinTestIntervalMillis", getMinTestIntervalMillis());
+        bld.put("LockFree", isLockFree());
         return bld.toString();
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.common.script;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.Assertions;
+
+/**
+ * A cache of the compiled scripts shared by the {@link ScriptExecutorFactory}
+ * implementations.
+ * <p/>
+ * The compiled scripts are keyed by the language, the script text and the
+ * class loader the script was compiled with. The least recently used script
+ * is evicted when the cache is full. The size of the shared cache is set by
+ * the {@value #MAX_SIZE_PROPERTY} system property, default
+ * {@value #DEFAULT_MAX_SIZE}, zero disables the cache.
+ * <p/>
+ * The cached value must be safe to share. A factory should cache the compiled
+ * form, for example the class of a script, and create the mutable instances
+ * for each {@link ScriptExecutor}.
+ *
+ * @since 1.5
+ */
+public final class CompiledScriptCache {
+
+    public static final String MAX_SIZE_PROPERTY =
+            "org.identityconnectors.common.script.CompiledScriptCache.maxSize";
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final class Holder {
+        private static final CompiledScriptCache INSTANCE = new CompiledScriptCache(Integer
+                .getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+    }
+
+    private final int maxSize;
+
+    private final Map<Key, Object> cache;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize
+     *            the maximum number of cached scripts.
+     */
+    public CompiledScriptCache(final int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.cache = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > CompiledScriptCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the shared instance.
+     *
+     * @return the cache configured by the system property.
+     */
+    public static CompiledScriptCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the compiled script from the cache or compiles and caches it.
+     *
+     * @param language
+     *            the name of the language.
+     * @param loader
+     *            the class loader the script is compiled with.
+     * @param script
+     *            the script text.
+     * @param compiler
+     *            compiles the script if it's not in the cache.
+     * @return the compiled script.
+     * @throws Exception
+     *             if the compiler failed, the failure is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String language, final ClassLoader loader, final String script,
+            final Callable<T> compiler) throws Exception {
+        Assertions.nullCheck(language, "language");
+        Assertions.nullCheck(script, "script");
+        Assertions.nullCheck(compiler, "compiler");
+        if (maxSize == 0) {
+            misses.incrementAndGet();
+            return compiler.call();
+        }
+        final Key key = new Key(language, loader, script);
+        synchronized (cache) {
+            final Object compiled = cache.get(key);
+            if (null != compiled) {
+                hits.incrementAndGet();
+                return (T) compiled;
+            }
+        }
+        misses.incrementAndGet();
+        // compile outside the lock, the same script may be compiled twice
+        final T compiled = compiler.call();
+        if (null != compiled) {
+            synchronized (cache) {
+                cache.put(key, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Removes the scripts compiled with the class loader and the scripts of
+     * the collected class loaders.
+     *
+     * @param loader
+     *            the class loader which is not used any more.
+     */
+    public void invalidate(final ClassLoader loader) {
+        synchronized (cache) {
+            final Iterator<Key> keys = cache.keySet().iterator();
+            while (keys.hasNext()) {
+                final Key key = keys.next();
+                if (key.isStale() || key.getLoader() == loader) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all scripts.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached scripts.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of scripts found in the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of scripts compiled.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of scripts evicted from the full cache.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * The key doesn't keep the class loader alive, the cached script may.
+     */
+    private static final class Key {
+
+        private final String language;
+        private final WeakReference<ClassLoader> loader;
+        private final int loaderHash;
+        private final String script;
+        private final int hash;
+
+        Key(final String language, final ClassLoader loader, final String script) {
+            this.language = language;
+            this.loader = null != loader ? new WeakReference<ClassLoader>(loader) : null;
+            this.loaderHash = System.identityHashCode(loader);
+            this.script = script;
+            this.hash = (31 * language.hashCode() + loaderHash) * 31 + script.hashCode();
+        }
+
+        ClassLoader getLoader() {
+            return null != loader ? loader.get() : null;
+        }
+
+        boolean isStale() {
+            return null != loader && null == loader.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && loaderHash == other.loaderHash
+                    && (null == loader) == (null == other.loader)
+                    && getLoader() == other.getLoader() && language.equals(other.language)
+                    && script.equals(other.script);
+        }
+    }
+}
@@ -64,7 +64,7 @@ public final class GuardedByteArray {
         public void access(byte[] clearBytes);
     }
 
-    private static Encryptor encryptor;
+    private static volatile Encryptor encryptor;
 
     private boolean readOnly;
     private boolean disposed;
@@ -194,6 +194,7 @@ public final class GuardedByteArray {
         System.arraycopy(encryptedBytes, 0, encryptedBytes2, 0, encryptedBytes.length);
         GuardedByteArray rv = new GuardedByteArray();
         rv.encryptedBytes = encryptedBytes2;
+        rv.base64SHA1Hash = base64SHA1Hash;
         return rv;
     }
 
@@ -224,11 +225,19 @@ public final class GuardedByteArray {
         }
     }
 
-    private static synchronized Encryptor getEncryptor() {
-        if (encryptor == null) {
-            encryptor = EncryptorFactory.getInstance().newRandomEncryptor();
+    private static Encryptor getEncryptor() {
+        // the encryptor is thread-safe, lock only to create it
+        Encryptor result = encryptor;
+        if (result == null) {
+            synchronized (GuardedByteArray.class) {
+                result = encryptor;
+                if (result == null) {
+                    result = EncryptorFactory.getInstance().newRandomEncryptor();
+                    encryptor = result;
+                }
+            }
         }
-        return encryptor;
+        return result;
     }
 
     static synchronized void setEncryptor(Encryptor encryptor) {
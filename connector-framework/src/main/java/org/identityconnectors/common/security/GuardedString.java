@@ -64,7 +64,7 @@ public final class GuardedString {
         public void access(char[] clearChars);
     }
 
-    static Encryptor encryptor;
+    static volatile Encryptor encryptor;
 
     private boolean readOnly;
     private boolean disposed;
@@ -195,6 +195,7 @@ public final class GuardedString {
         System.arraycopy(encryptedBytes, 0, encryptedBytes2, 0, encryptedBytes.length);
         GuardedString rv = new GuardedString();
         rv.encryptedBytes = encryptedBytes2;
+        rv.base64SHA1Hash = base64SHA1Hash;
         return rv;
     }
 
@@ -245,11 +246,19 @@ public final class GuardedString {
         }
     }
 
-    private static synchronized Encryptor getEncryptor() {
-        if (encryptor == null) {
-            encryptor = EncryptorFactory.getInstance().newRandomEncryptor();
+    private static Encryptor getEncryptor() {
+        // the encryptor is thread-safe, lock only to create it
+        Encryptor result = encryptor;
+        if (result == null) {
+            synchronized (GuardedString.class) {
+                result = encryptor;
+                if (result == null) {
+                    result = EncryptorFactory.getInstance().newRandomEncryptor();
+                    encryptor = result;
+                }
+            }
         }
-        return encryptor;
+        return result;
     }
 
     static synchronized void setEncryptor(Encryptor encryptor) {
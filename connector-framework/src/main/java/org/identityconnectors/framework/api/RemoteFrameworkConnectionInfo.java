@@ -29,6 +29,7 @@ import javax.net.ssl.TrustManager;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.common.security.GuardedString;
 
 /**
@@ -43,6 +44,7 @@ public final class RemoteFrameworkConnectionInfo {
     private final List<TrustManager> trustManagers;
     private final int timeout;
     private final long heartbeatInterval;
+    private final ObjectPoolConfiguration connectionPoolConfiguration;
 
     /**
      * Creates a new instance of RemoteFrameworkConnectionInfo, using a clear
@@ -90,6 +92,7 @@ public final class RemoteFrameworkConnectionInfo {
         this.trustManagers = CollectionUtil.newReadOnlyList(trustManagers);
         this.timeout = timeout;
         this.heartbeatInterval = 60L;
+        this.connectionPoolConfiguration = createDefaultConnectionPoolConfiguration();
     }
 
     /**
@@ -118,6 +121,40 @@ public final class RemoteFrameworkConnectionInfo {
      */
     public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
                                          List<TrustManager> trustManagers, int timeout, long heartbeatInterval) {
+        this(host, port, key, useSSL, trustManagers, timeout, heartbeatInterval, null);
+    }
+
+    /**
+     * Creates a new instance of RemoteFrameworkConnectionInfo.
+     *
+     * @param host
+     *            The host to connect to
+     * @param port
+     *            The port to connect to
+     * @param key
+     *            The remote framework key
+     * @param useSSL
+     *            Set to true if we are to connect via SSL.
+     * @param trustManagers
+     *            List of {@link TrustManager}'s to use for establising the SSL
+     *            connection. May be null or empty, in which case the default
+     *            installed providers for the JVM will be used. Ignored if
+     *            'useSSL' is false.
+     * @param timeout
+     *            The timeout to use (in milliseconds). A value of 0 means
+     *            infinite timeout;
+     * @param heartbeatInterval
+     *            The connection check interval to use (in seconds). A value of
+     *            0 means the default 60 seconds.
+     * @param connectionPoolConfiguration
+     *            The configuration of the pool of persistent connections kept
+     *            to the remote framework. May be null, in which case the
+     *            default pool configuration is used.
+     * @since 1.5
+     */
+    public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
+            List<TrustManager> trustManagers, int timeout, long heartbeatInterval,
+            ObjectPoolConfiguration connectionPoolConfiguration) {
         Assertions.nullCheck(host, "host");
         Assertions.nullCheck(key, "key");
         this.host = host;
@@ -127,6 +164,18 @@ public final class RemoteFrameworkConnectionInfo {
         this.trustManagers = CollectionUtil.newReadOnlyList(trustManagers);
         this.timeout = timeout;
         this.heartbeatInterval = heartbeatInterval;
+        this.connectionPoolConfiguration =
+                null != connectionPoolConfiguration ? new ObjectPoolConfiguration(
+                        connectionPoolConfiguration) : createDefaultConnectionPoolConfiguration();
+    }
+
+    private static ObjectPoolConfiguration createDefaultConnectionPoolConfiguration() {
+        ObjectPoolConfiguration configuration = new ObjectPoolConfiguration();
+        configuration.setMaxObjects(64);
+        configuration.setMaxIdle(2);
+        configuration.setMinIdle(0);
+        configuration.setMinEvictableIdleTimeMillis(60 * 1000);
+        return configuration;
     }
 
     /**
@@ -195,6 +244,27 @@ public final class RemoteFrameworkConnectionInfo {
         return heartbeatInterval;
     }
 
+    /**
+     * Returns the configuration of the pool of persistent connections kept to
+     * the remote framework.
+     * <p/>
+     * Idle pooled connections are verified with a round trip before they are
+     * reused if they were not used for longer than the
+     * {@link #getHeartbeatInterval() heartbeat interval}.
+     * <p/>
+     * The connector server serves every open connection with one of its worker
+     * threads, the idle connections included, and it has 100 workers by
+     * default. The default pool keeps at most 2 idle connections for one
+     * minute, the maximum idle connections of all the clients of a server must
+     * stay well below its maximum workers.
+     *
+     * @return a copy of the connection pool configuration.
+     * @since 1.5
+     */
+    public ObjectPoolConfiguration getConnectionPoolConfiguration() {
+        return new ObjectPoolConfiguration(connectionPoolConfiguration);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -220,6 +290,9 @@ public final class RemoteFrameworkConnectionInfo {
             if (getTimeout() != other.getTimeout()) {
                 return false;
             }
+            if (!connectionPoolConfiguration.equals(other.connectionPoolConfiguration)) {
+                return false;
+            }
 
             return true;
         }
@@ -34,6 +34,12 @@ package org.identityconnectors.framework.api;
  * <li>AttributesToGetSearchResultsHandler</li>
  * </ul>
  * This configuration allow to overconfigure the chain.
+ * <p/>
+ * When the connector translates the filter to more than one query the
+ * duplicated objects are removed by their {@code Uid}. By default every seen
+ * {@code Uid} value is kept on the heap, the compact duplicate filter keeps
+ * only a 128 bit fingerprint of each value and it can move the fingerprints
+ * to a memory-mapped temporary file when there are too many of them.
  *
  * @author $author$
  * @since 1.1
@@ -62,6 +68,49 @@ public class ResultsHandlerConfiguration {
      * in the handler chain.
      */
     boolean enableAttributesToGetSearchResultsHandler = true;
+    /**
+     * Keeps the fingerprints of the seen {@code Uid} values instead of the
+     * values in the duplicate filter of the multi-query searches.
+     *
+     * @since 1.5
+     */
+    boolean enableCompactDuplicateFilter = false;
+    /**
+     * Number of fingerprints the compact duplicate filter keeps on the heap
+     * before it moves them to a memory-mapped file. Zero keeps all of them on
+     * the heap.
+     *
+     * @since 1.5
+     */
+    int duplicateFilterSpillThreshold = 0;
+    /**
+     * Sorts and pages the search results in the framework for the connectors
+     * which do not support the sort and paging options. The options are not
+     * passed to the connector.
+     *
+     * @since 1.5
+     */
+    boolean enableSortingPagingResultsHandler = false;
+    /**
+     * Number of search results the sorting keeps in memory before it writes
+     * them to a temporary file. Zero keeps all of them in memory.
+     *
+     * @since 1.5
+     */
+    int sortingSpillThreshold = 0;
+    /**
+     * Time in milliseconds the objects read by the get operation are cached
+     * by the facade. Zero disables the cache.
+     *
+     * @since 1.5
+     */
+    int objectCacheTimeToLive = 0;
+    /**
+     * Number of objects the cache of the get operation keeps.
+     *
+     * @since 1.5
+     */
+    int objectCacheMaxSize = 1000;
 
     /**
      * default empty constructor.
@@ -81,6 +130,12 @@ public class ResultsHandlerConfiguration {
         this.enableCaseInsensitiveFilter = source.isEnableCaseInsensitiveFilter();
         this.enableAttributesToGetSearchResultsHandler =
                 source.isEnableAttributesToGetSearchResultsHandler();
+        this.enableCompactDuplicateFilter = source.isEnableCompactDuplicateFilter();
+        this.duplicateFilterSpillThreshold = source.getDuplicateFilterSpillThreshold();
+        this.enableSortingPagingResultsHandler = source.isEnableSortingPagingResultsHandler();
+        this.sortingSpillThreshold = source.getSortingSpillThreshold();
+        this.objectCacheTimeToLive = source.getObjectCacheTimeToLive();
+        this.objectCacheMaxSize = source.getObjectCacheMaxSize();
     }
 
     public boolean isEnableAttributesToGetSearchResultsHandler() {
@@ -116,6 +171,66 @@ public class ResultsHandlerConfiguration {
         this.enableNormalizingResultsHandler = enableNormalizingResultsHandler;
     }
 
+    public boolean isEnableCompactDuplicateFilter() {
+        return enableCompactDuplicateFilter;
+    }
+
+    public void setEnableCompactDuplicateFilter(boolean enableCompactDuplicateFilter) {
+        this.enableCompactDuplicateFilter = enableCompactDuplicateFilter;
+    }
+
+    public int getDuplicateFilterSpillThreshold() {
+        return duplicateFilterSpillThreshold;
+    }
+
+    public void setDuplicateFilterSpillThreshold(int duplicateFilterSpillThreshold) {
+        if (duplicateFilterSpillThreshold < 0) {
+            throw new IllegalArgumentException("Spill threshold is less than zero.");
+        }
+        this.duplicateFilterSpillThreshold = duplicateFilterSpillThreshold;
+    }
+
+    public boolean isEnableSortingPagingResultsHandler() {
+        return enableSortingPagingResultsHandler;
+    }
+
+    public void setEnableSortingPagingResultsHandler(boolean enableSortingPagingResultsHandler) {
+        this.enableSortingPagingResultsHandler = enableSortingPagingResultsHandler;
+    }
+
+    public int getSortingSpillThreshold() {
+        return sortingSpillThreshold;
+    }
+
+    public void setSortingSpillThreshold(int sortingSpillThreshold) {
+        if (sortingSpillThreshold < 0) {
+            throw new IllegalArgumentException("Spill threshold is less than zero.");
+        }
+        this.sortingSpillThreshold = sortingSpillThreshold;
+    }
+
+    public int getObjectCacheTimeToLive() {
+        return objectCacheTimeToLive;
+    }
+
+    public void setObjectCacheTimeToLive(int objectCacheTimeToLive) {
+        if (objectCacheTimeToLive < 0) {
+            throw new IllegalArgumentException("Time to live is less than zero.");
+        }
+        this.objectCacheTimeToLive = objectCacheTimeToLive;
+    }
+
+    public int getObjectCacheMaxSize() {
+        return objectCacheMaxSize;
+    }
+
+    public void setObjectCacheMaxSize(int objectCacheMaxSize) {
+        if (objectCacheMaxSize < 1) {
+            throw new IllegalArgumentException("Cache size is less than one.");
+        }
+        this.objectCacheMaxSize = objectCacheMaxSize;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -137,6 +252,24 @@ public class ResultsHandlerConfiguration {
         if (this.enableAttributesToGetSearchResultsHandler != other.enableAttributesToGetSearchResultsHandler) {
             return false;
         }
+        if (this.enableCompactDuplicateFilter != other.enableCompactDuplicateFilter) {
+            return false;
+        }
+        if (this.duplicateFilterSpillThreshold != other.duplicateFilterSpillThreshold) {
+            return false;
+        }
+        if (this.enableSortingPagingResultsHandler != other.enableSortingPagingResultsHandler) {
+            return false;
+        }
+        if (this.sortingSpillThreshold != other.sortingSpillThreshold) {
+            return false;
+        }
+        if (this.objectCacheTimeToLive != other.objectCacheTimeToLive) {
+            return false;
+        }
+        if (this.objectCacheMaxSize != other.objectCacheMaxSize) {
+            return false;
+        }
         return true;
     }
 
@@ -147,6 +280,12 @@ public class ResultsHandlerConfiguration {
         hash = 79 * hash + (this.enableFilteredResultsHandler ? 1 : 0);
         hash = 79 * hash + (this.enableCaseInsensitiveFilter ? 1 : 0);
         hash = 79 * hash + (this.enableAttributesToGetSearchResultsHandler ? 1 : 0);
+        hash = 79 * hash + (this.enableCompactDuplicateFilter ? 1 : 0);
+        hash = 79 * hash + this.duplicateFilterSpillThreshold;
+        hash = 79 * hash + (this.enableSortingPagingResultsHandler ? 1 : 0);
+        hash = 79 * hash + this.sortingSpillThreshold;
+        hash = 79 * hash + this.objectCacheTimeToLive;
+        hash = 79 * hash + this.objectCacheMaxSize;
         return hash;
     }
 
@@ -156,6 +295,11 @@ public class ResultsHandlerConfiguration {
                 + enableNormalizingResultsHandler + "\nenableFilteredResultsHandler="
                 + enableFilteredResultsHandler + "\nenableCaseInsensitiveFilter="
                 + enableCaseInsensitiveFilter + "\nenableAttributesToGetSearchResultsHandler="
-                + enableAttributesToGetSearchResultsHandler + '}';
+                + enableAttributesToGetSearchResultsHandler + "\nenableCompactDuplicateFilter="
+                + enableCompactDuplicateFilter + "\nduplicateFilterSpillThreshold="
+                + duplicateFilterSpillThreshold + "\nenableSortingPagingResultsHandler="
+                + enableSortingPagingResultsHandler + "\nsortingSpillThreshold="
+                + sortingSpillThreshold + "\nobjectCacheTimeToLive=" + objectCacheTimeToLive
+                + "\nobjectCacheMaxSize=" + objectCacheMaxSize + '}';
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map of the attributes by their case-insensitive names.
+ * <p/>
+ * The names are compared like {@link String#CASE_INSENSITIVE_ORDER} does, but
+ * the attributes are found in an open addressing hash table of the case
+ * folded hash of the names instead of a sorted tree. The hash of the
+ * {@link Uid} and {@link Name} attribute names is computed once. The map
+ * iterates the attributes in the order they were added, an attribute which
+ * has the same name as an attribute added before replaces it.
+ *
+ * @since 1.5
+ */
+final class AttributeMap extends AbstractMap<String, Attribute> {
+
+    private static final int UID_HASH = foldedHash(Uid.NAME);
+    private static final int NAME_HASH = foldedHash(Name.NAME);
+
+    private final String[] names;
+    private final Attribute[] attributes;
+    private final int[] hashes;
+    private final int size;
+
+    /**
+     * Index of the entry plus one, zero in the empty slots.
+     */
+    private final int[] table;
+
+    private Set<Map.Entry<String, Attribute>> entrySet = null;
+    private Collection<Attribute> values = null;
+
+    AttributeMap(final Collection<? extends Attribute> attrs) {
+        final int capacity = attrs.size();
+        names = new String[capacity];
+        attributes = new Attribute[capacity];
+        hashes = new int[capacity];
+        int tableSize = 4;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        table = new int[tableSize];
+        int count = 0;
+        for (Attribute attr : attrs) {
+            final String name = attr.getName();
+            final int hash = hash(name);
+            final int entry = indexOf(name, hash);
+            if (entry >= 0) {
+                attributes[entry] = attr;
+            } else {
+                names[count] = name;
+                attributes[count] = attr;
+                hashes[count] = hash;
+                int slot = hash & (table.length - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                table[slot] = ++count;
+            }
+        }
+        size = count;
+    }
+
+    @Override
+    public Attribute get(final Object key) {
+        if (key instanceof String) {
+            final String name = (String) key;
+            final int entry = indexOf(name, hash(name));
+            if (entry >= 0) {
+                return attributes[entry];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && indexOf((String) key, hash((String) key)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Attribute>> entrySet() {
+        if (null == entrySet) {
+            entrySet = new AbstractSet<Map.Entry<String, Attribute>>() {
+                public Iterator<Map.Entry<String, Attribute>> iterator() {
+                    return new EntryIterator();
+                }
+
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Collection<Attribute> values() {
+        if (null == values) {
+            values = new AbstractCollection<Attribute>() {
+                public Iterator<Attribute> iterator() {
+                    return new Iterator<Attribute>() {
+                        private int next = 0;
+
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        public Attribute next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            return attributes[next++];
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return values;
+    }
+
+    private int indexOf(final String name, final int hash) {
+        int slot = hash & (table.length - 1);
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            entry--;
+            if (hashes[entry] == hash && names[entry].equalsIgnoreCase(name)) {
+                return entry;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return -1;
+    }
+
+    private static int hash(final String name) {
+        // the constants are the same instances in most lookups
+        if (name == Uid.NAME) {
+            return UID_HASH;
+        } else if (name == Name.NAME) {
+            return NAME_HASH;
+        }
+        return foldedHash(name);
+    }
+
+    /**
+     * Returns the same hash for the names which are equal ignoring case.
+     */
+    private static int foldedHash(final String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            // the same folding as String.equalsIgnoreCase
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Attribute>> {
+
+        private int next = 0;
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public Map.Entry<String, Attribute> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return new Entry(next++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class Entry implements Map.Entry<String, Attribute> {
+
+        private final int index;
+
+        Entry(final int index) {
+            this.index = index;
+        }
+
+        public String getKey() {
+            return names[index];
+        }
+
+        public Attribute getValue() {
+            return attributes[index];
+        }
+
+        public Attribute setValue(final Attribute value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
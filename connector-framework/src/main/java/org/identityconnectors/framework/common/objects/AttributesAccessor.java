@@ -50,7 +50,7 @@ public class AttributesAccessor {
     private final Map<String, Attribute> attributeMap;
 
     public AttributesAccessor(final Set<Attribute> attrs) {
-        attributeMap = AttributeUtil.toMap(attrs);
+        attributeMap = new AttributeMap(attrs);
     }
 
     /**
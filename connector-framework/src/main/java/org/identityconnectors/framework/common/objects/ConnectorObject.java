@@ -59,7 +59,7 @@ public final class ConnectorObject {
         }
         this.objectClass = objectClass;
         // create an easy look map..
-        this.attributeMap = AttributeUtil.toMap(set);
+        this.attributeMap = new AttributeMap(set);
         // make sure the Uid was added..
         if (!this.attributeMap.containsKey(Uid.NAME)) {
             throw new IllegalArgumentException("The Attribute set must contain a 'Uid'.");
@@ -0,0 +1,490 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.filter.FilteredResultsHandlerVisitor.FilterResult;
+
+/**
+ * A FilterCompiler turns a {@link Filter} into a predicate which accepts the
+ * {@link ConnectorObject}s the same way as the
+ * {@link FilteredResultsHandlerVisitor}.
+ * <p/>
+ * The filter tree is walked once when the filter is compiled instead of for
+ * every object. The assertion values of the case-ignore string filters are
+ * converted to lower case with the {@link CurrentLocale} of the compiling
+ * thread, and the children of the {@code And} and {@code Or} filters are
+ * evaluated in the order of their estimated cost, so the cheap children
+ * short-circuit the expensive ones.
+ *
+ * @since 1.5
+ */
+public final class FilterCompiler {
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * Compiles the filter.
+     *
+     * @param filter
+     *            the filter to compile.
+     * @param caseIgnore
+     *            true to compare the {@link String} and {@link Character}
+     *            values case-insensitively.
+     * @return the compiled filter or null if the filter is null.
+     */
+    public static Filter compile(final Filter filter, final boolean caseIgnore) {
+        if (null == filter) {
+            return null;
+        }
+        return new CompiledFilter(filter.accept(new Compiler(caseIgnore, CurrentLocale.get()),
+                null));
+    }
+
+    private static final class CompiledFilter implements Filter {
+
+        private final Node root;
+
+        CompiledFilter(final Node root) {
+            this.root = root;
+        }
+
+        public boolean accept(final ConnectorObject obj) {
+            return root.evaluate(obj).toBoolean();
+        }
+
+        public <R, P> R accept(FilterVisitor<R, P> v, P p) {
+            return v.visitExtendedFilter(p, this);
+        }
+    }
+
+    // =======================================================================
+    // Nodes
+    // =======================================================================
+
+    private abstract static class Node {
+
+        /**
+         * The estimated relative cost of the evaluation.
+         */
+        abstract int cost();
+
+        abstract FilterResult evaluate(ConnectorObject obj);
+    }
+
+    private static final Comparator<Node> BY_COST = new Comparator<Node>() {
+        public int compare(final Node o1, final Node o2) {
+            return o1.cost() < o2.cost() ? -1 : (o1.cost() == o2.cost() ? 0 : 1);
+        }
+    };
+
+    private static final class Constant extends Node {
+
+        private final FilterResult result;
+
+        Constant(final FilterResult result) {
+            this.result = result;
+        }
+
+        int cost() {
+            return 0;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            return result;
+        }
+    }
+
+    private static final class And extends Node {
+
+        private final Node[] children;
+        private final int cost;
+
+        And(final Node[] children) {
+            this.children = children;
+            this.cost = sum(children);
+        }
+
+        int cost() {
+            return cost;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            for (Node child : children) {
+                if (child.evaluate(obj) == FilterResult.FALSE) {
+                    return FilterResult.FALSE;
+                }
+            }
+            return FilterResult.TRUE;
+        }
+    }
+
+    private static final class Or extends Node {
+
+        private final Node[] children;
+        private final int cost;
+
+        Or(final Node[] children) {
+            this.children = children;
+            this.cost = sum(children);
+        }
+
+        int cost() {
+            return cost;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            FilterResult result = FilterResult.FALSE;
+            for (Node child : children) {
+                final FilterResult r = child.evaluate(obj);
+                if (r == FilterResult.TRUE) {
+                    return r;
+                } else if (r == FilterResult.UNDEFINED) {
+                    result = r;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Not extends Node {
+
+        private final Node child;
+
+        Not(final Node child) {
+            this.child = child;
+        }
+
+        int cost() {
+            return child.cost();
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            switch (child.evaluate(obj)) {
+            case FALSE:
+                return FilterResult.TRUE;
+            case UNDEFINED:
+                return FilterResult.UNDEFINED;
+            default: // TRUE
+                return FilterResult.FALSE;
+            }
+        }
+    }
+
+    private static final class Presence extends Node {
+
+        private final String name;
+
+        Presence(final String name) {
+            this.name = name;
+        }
+
+        int cost() {
+            return 1;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            return FilterResult.valueOf(null != obj.getAttributeByName(name));
+        }
+    }
+
+    private static final class Equals extends Node {
+
+        private final String name;
+        private final List<Object> values;
+        private final boolean caseIgnore;
+
+        Equals(final Attribute attribute, final boolean caseIgnore) {
+            this.name = attribute.getName();
+            this.values = attribute.getValue();
+            this.caseIgnore = caseIgnore;
+        }
+
+        int cost() {
+            return 2;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            final Attribute attribute = obj.getAttributeByName(name);
+            if (null == attribute) {
+                return FilterResult.UNDEFINED;
+            }
+            return FilterResult.valueOf(CollectionUtil.equals(attribute.getValue(), values,
+                    caseIgnore));
+        }
+    }
+
+    private static final int CONTAINS = 0;
+    private static final int STARTS_WITH = 1;
+    private static final int ENDS_WITH = 2;
+
+    private static final class StringMatch extends Node {
+
+        private final String name;
+        private final int operation;
+        private final String value;
+        private final Locale locale;
+
+        /**
+         * @param locale
+         *            the locale of the lower case value, null to compare
+         *            case-sensitively.
+         */
+        StringMatch(final StringFilter filter, final int operation, final Locale locale) {
+            this.name = filter.getName();
+            this.operation = operation;
+            this.locale = locale;
+            this.value = null != locale ? filter.getValue().toLowerCase(locale) : filter.getValue();
+        }
+
+        int cost() {
+            return 2;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            final Object o = singleValue(obj, name);
+            if (!(o instanceof String)) {
+                return FilterResult.UNDEFINED;
+            }
+            final String s = null != locale ? ((String) o).toLowerCase(locale) : (String) o;
+            switch (operation) {
+            case CONTAINS:
+                return FilterResult.valueOf(s.contains(value));
+            case STARTS_WITH:
+                return FilterResult.valueOf(s.startsWith(value));
+            default: // ENDS_WITH
+                return FilterResult.valueOf(s.endsWith(value));
+            }
+        }
+    }
+
+    private static final int GREATER_THAN = 0;
+    private static final int GREATER_THAN_OR_EQUAL = 1;
+    private static final int LESS_THAN = 2;
+    private static final int LESS_THAN_OR_EQUAL = 3;
+
+    private static final class Comparison extends Node {
+
+        private final String name;
+        private final int operation;
+        private final Object value;
+        private final boolean caseIgnoreString;
+        private final boolean caseIgnoreCharacter;
+
+        Comparison(final SingleValueAttributeFilter filter, final int operation,
+                final boolean caseIgnore) {
+            this.name = filter.getName();
+            this.operation = operation;
+            this.value = filter.getValue();
+            this.caseIgnoreString = caseIgnore && value instanceof String;
+            this.caseIgnoreCharacter = caseIgnore && value instanceof Character;
+        }
+
+        int cost() {
+            return 2;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            final Object o = singleValue(obj, name);
+            if (null == o) {
+                return FilterResult.UNDEFINED;
+            }
+            if (!(o instanceof Comparable)) {
+                throw new IllegalArgumentException("Attribute value " + name
+                        + " must be comparable! Found" + o.getClass());
+            }
+            final int compare;
+            if (caseIgnoreString) {
+                if (!(o instanceof String)) {
+                    return FilterResult.UNDEFINED;
+                }
+                compare = ((String) o).compareToIgnoreCase((String) value);
+            } else if (caseIgnoreCharacter) {
+                if (!(o instanceof Character)) {
+                    return FilterResult.UNDEFINED;
+                }
+                compare =
+                        Character.toLowerCase((Character) o)
+                                - Character.toLowerCase((Character) value);
+            } else {
+                compare = CollectionUtil.forceCompare(o, value);
+            }
+            switch (operation) {
+            case GREATER_THAN:
+                return FilterResult.valueOf(compare > 0);
+            case GREATER_THAN_OR_EQUAL:
+                return FilterResult.valueOf(compare >= 0);
+            case LESS_THAN:
+                return FilterResult.valueOf(compare < 0);
+            default: // LESS_THAN_OR_EQUAL
+                return FilterResult.valueOf(compare <= 0);
+            }
+        }
+    }
+
+    private static final class ContainsAllValues extends Node {
+
+        private final String name;
+        private final List<Object> values;
+        private final boolean caseIgnore;
+
+        ContainsAllValues(final Attribute attribute, final boolean caseIgnore) {
+            this.name = attribute.getName();
+            this.values = attribute.getValue();
+            this.caseIgnore = caseIgnore;
+        }
+
+        int cost() {
+            return 3;
+        }
+
+        FilterResult evaluate(final ConnectorObject obj) {
+            final Attribute attribute = obj.getAttributeByName(name);
+            final List<Object> attributeValues;
+            if (null == attribute || null == (attributeValues = attribute.getValue())) {
+                return FilterResult.UNDEFINED;
+            }
+            if (values.isEmpty()) {
+                return FilterResult.TRUE;
+            } else if (attributeValues.isEmpty()) {
+                return FilterResult.FALSE;
+            } else if (caseIgnore) {
+                for (Object o : values) {
+                    if (!FilteredResultsHandlerVisitor.containsIgnoreCase(attributeValues, o)) {
+                        return FilterResult.FALSE;
+                    }
+                }
+                return FilterResult.TRUE;
+            }
+            return FilterResult.valueOf(attributeValues.containsAll(values));
+        }
+    }
+
+    private static Object singleValue(final ConnectorObject obj, final String name) {
+        final Attribute attr = obj.getAttributeByName(name);
+        if (null != attr && null != attr.getValue() && attr.getValue().size() == 1) {
+            return attr.getValue().get(0);
+        }
+        return null;
+    }
+
+    private static int sum(final Node[] nodes) {
+        int cost = 1;
+        for (Node node : nodes) {
+            cost += node.cost();
+        }
+        return cost;
+    }
+
+    // =======================================================================
+    // Compiler
+    // =======================================================================
+
+    private static final class Compiler implements FilterVisitor<Node, Void> {
+
+        private final boolean caseIgnore;
+        private final Locale locale;
+
+        Compiler(final boolean caseIgnore, final Locale locale) {
+            this.caseIgnore = caseIgnore;
+            this.locale = locale;
+        }
+
+        private Node[] compileAll(final CompositeFilter filter) {
+            final List<Node> children = new ArrayList<Node>(filter.getFilters().size());
+            for (Filter subFilter : filter.getFilters()) {
+                children.add(subFilter.accept(this, null));
+            }
+            // the sort is stable, the children of the same cost keep the order
+            Collections.sort(children, BY_COST);
+            return children.toArray(new Node[children.size()]);
+        }
+
+        public Node visitAndFilter(Void p, AndFilter filter) {
+            return new And(compileAll(filter));
+        }
+
+        public Node visitOrFilter(Void p, OrFilter filter) {
+            return new Or(compileAll(filter));
+        }
+
+        public Node visitNotFilter(Void p, NotFilter filter) {
+            return new Not(filter.getFilter().accept(this, null));
+        }
+
+        public Node visitContainsFilter(Void p, ContainsFilter filter) {
+            return new StringMatch(filter, CONTAINS, caseIgnore ? locale : null);
+        }
+
+        public Node visitStartsWithFilter(Void p, StartsWithFilter filter) {
+            return new StringMatch(filter, STARTS_WITH, caseIgnore ? locale : null);
+        }
+
+        public Node visitEndsWithFilter(Void p, EndsWithFilter filter) {
+            return new StringMatch(filter, ENDS_WITH, caseIgnore ? locale : null);
+        }
+
+        public Node visitContainsAllValuesFilter(Void p, ContainsAllValuesFilter filter) {
+            return new ContainsAllValues(filter.getAttribute(), caseIgnore);
+        }
+
+        public Node visitEqualsFilter(Void p, EqualsFilter filter) {
+            return new Equals(filter.getAttribute(), caseIgnore);
+        }
+
+        public Node visitGreaterThanFilter(Void p, GreaterThanFilter filter) {
+            return new Comparison(filter, GREATER_THAN, caseIgnore);
+        }
+
+        public Node visitGreaterThanOrEqualFilter(Void p, GreaterThanOrEqualFilter filter) {
+            return new Comparison(filter, GREATER_THAN_OR_EQUAL, caseIgnore);
+        }
+
+        public Node visitLessThanFilter(Void p, LessThanFilter filter) {
+            return new Comparison(filter, LESS_THAN, caseIgnore);
+        }
+
+        public Node visitLessThanOrEqualFilter(Void p, LessThanOrEqualFilter filter) {
+            return new Comparison(filter, LESS_THAN_OR_EQUAL, caseIgnore);
+        }
+
+        public Node visitExtendedFilter(Void p, Filter filter) {
+            if (filter instanceof PresenceFilter) {
+                return new Presence(((PresenceFilter) filter).getName());
+            }
+            return new Constant(FilterResult.UNDEFINED);
+        }
+    }
+}
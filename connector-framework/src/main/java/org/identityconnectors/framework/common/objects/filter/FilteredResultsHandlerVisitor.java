@@ -59,18 +59,20 @@ public class FilteredResultsHandlerVisitor implements
         }
     }
 
+    /**
+     * Wraps the filter to accept the objects like the default visitors do.
+     * <p/>
+     * The filter is compiled once with the {@link FilterCompiler}.
+     *
+     * @param nestedFilter
+     *            the filter to wrap.
+     * @param caseIgnore
+     *            true to compare the {@link String} and {@link Character}
+     *            values case-insensitively.
+     * @return the wrapped filter or null if the filter is null.
+     */
     public static Filter wrapFilter(final Filter nestedFilter, final boolean caseIgnore) {
-        return null == nestedFilter ? null : new Filter() {
-            public boolean accept(final ConnectorObject obj) {
-                return nestedFilter.accept(
-                        caseIgnore ? DEFAULT_CASE_IGNORE_VISITOR : DEFAULT_CASE_SENSITIVE_VISITOR,
-                        obj).toBoolean();
-            }
-
-            public <R, P> R accept(FilterVisitor<R, P> v, P p) {
-                return v.visitExtendedFilter(p, this);
-            }
-        };
+        return FilterCompiler.compile(nestedFilter, caseIgnore);
     }
 
     private boolean caseIgnore = false;
@@ -121,31 +123,9 @@ public class FilteredResultsHandlerVisitor implements
                 result = FilterResult.FALSE;
             } else if (caseIgnore) {
                 boolean stillContains = true;
-                for (Object o : filter.getAttribute().getValue()) {
-                    boolean found = false;
-                    if (o instanceof String) {
-                        for (Object c : attributeValues) {
-                            if (c instanceof String && ((String) c).equalsIgnoreCase((String) o)) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    } else if (o instanceof Character) {
-                        for (Object c : attributeValues) {
-                            if (c instanceof Character
-                                    && Character.toUpperCase((Character) c) != Character
-                                            .toUpperCase((Character) o)) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    } else {
-                        result =
-                                FilterResult.valueOf(attributeValues.containsAll(filter
-                                        .getAttribute().getValue()));
-                        break;
-                    }
-                    if (!(stillContains = stillContains && found)){
+                for (Object o : filterValues) {
+                    if (!containsIgnoreCase(attributeValues, o)) {
+                        stillContains = false;
                         break;
                     }
                 }
@@ -322,11 +302,12 @@ public class FilteredResultsHandlerVisitor implements
         FilterResult result = FilterResult.FALSE;
         for (final Filter subFilter : filter.getFilters()) {
             final FilterResult r = subFilter.accept(this, connectorObject);
-            if (r.ordinal() > result.ordinal()) {
+            if (r == FilterResult.TRUE) {
+                // any TRUE child wins regardless of the order of the children
                 result = r;
-            }
-            if (result == FilterResult.TRUE) {
                 break;
+            } else if (r == FilterResult.UNDEFINED) {
+                result = r;
             }
         }
         return result;
@@ -363,6 +344,31 @@ public class FilteredResultsHandlerVisitor implements
         return result;
     }
 
+    /**
+     * Returns true if the values contain the value, the {@link String} and
+     * {@link Character} values are compared case-insensitively.
+     */
+    static boolean containsIgnoreCase(final List<Object> values, final Object value) {
+        if (value instanceof String) {
+            for (Object c : values) {
+                if (c instanceof String && ((String) c).equalsIgnoreCase((String) value)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (value instanceof Character) {
+            for (Object c : values) {
+                if (c instanceof Character
+                        && Character.toUpperCase((Character) c) == Character
+                                .toUpperCase((Character) value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return values.contains(value);
+    }
+
     protected <T> T expectSingleValue(ConnectorObject connectorObject, String attributeName,
             Class<T> expect) {
         T result = null;
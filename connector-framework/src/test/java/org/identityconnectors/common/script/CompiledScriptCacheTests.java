@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.common.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class CompiledScriptCacheTests {
+
+    private static class Compiler implements Callable<Object> {
+
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public Object call() throws Exception {
+            count.incrementAndGet();
+            return new Object();
+        }
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        Compiler compiler = new Compiler();
+        ClassLoader loader = getClass().getClassLoader();
+        Object first = cache.get("Groovy", loader, "return 1", compiler);
+        assertSame(cache.get("Groovy", loader, "return 1", compiler), first);
+        assertEquals(compiler.count.get(), 1);
+        assertEquals(cache.getHitCount(), 1L);
+        assertEquals(cache.getMissCount(), 1L);
+
+        // the language, the text and the class loader are all part of the key
+        assertNotSame(cache.get("JavaScript", loader, "return 1", compiler), first);
+        assertNotSame(cache.get("Groovy", loader, "return 2", compiler), first);
+        ClassLoader other = new URLClassLoader(new URL[0], loader);
+        assertNotSame(cache.get("Groovy", other, "return 1", compiler), first);
+        assertNotSame(cache.get("Groovy", null, "return 1", compiler), first);
+        assertEquals(compiler.count.get(), 5);
+        assertEquals(cache.size(), 5);
+
+        cache.invalidate(other);
+        assertEquals(cache.size(), 4);
+        cache.clear();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(2);
+        Compiler compiler = new Compiler();
+        ClassLoader loader = getClass().getClassLoader();
+        cache.get("Groovy", loader, "a", compiler);
+        cache.get("Groovy", loader, "b", compiler);
+        // "a" becomes the most recently used
+        cache.get("Groovy", loader, "a", compiler);
+        cache.get("Groovy", loader, "c", compiler);
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictionCount(), 1L);
+        cache.get("Groovy", loader, "a", compiler);
+        assertEquals(compiler.count.get(), 3);
+        cache.get("Groovy", loader, "b", compiler);
+        assertEquals(compiler.count.get(), 4);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(0);
+        Compiler compiler = new Compiler();
+        cache.get("Groovy", null, "a", compiler);
+        cache.get("Groovy", null, "a", compiler);
+        assertEquals(compiler.count.get(), 2);
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        final AtomicInteger count = new AtomicInteger(0);
+        Callable<Object> failing = new Callable<Object>() {
+            public Object call() throws Exception {
+                count.incrementAndGet();
+                throw new IllegalArgumentException("syntax error");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("Groovy", null, "a", failing);
+                fail("compiler failure expected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(count.get(), 2);
+        assertEquals(cache.size(), 0);
+    }
+}
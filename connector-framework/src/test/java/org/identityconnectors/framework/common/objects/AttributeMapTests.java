@@ -0,0 +1,99 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class AttributeMapTests {
+
+    @Test
+    public void testSameAsCaseInsensitiveTreeMap() {
+        Random random = new Random(42);
+        String chars = "aAbBzZ_\u0131I\u0130i\u00df\u00e9\u00c9";
+        List<Attribute> attrs = new ArrayList<Attribute>();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                name.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            attrs.add(AttributeBuilder.build(name.toString(), i));
+        }
+        Map<String, Attribute> expected = AttributeUtil.toMap(attrs);
+        AttributeMap map = new AttributeMap(attrs);
+        assertEquals(map.size(), expected.size());
+        assertEquals(map, expected);
+        for (Attribute attr : attrs) {
+            String name = attr.getName();
+            assertSame(map.get(name), expected.get(name));
+            assertSame(map.get(name.toUpperCase()), expected.get(name.toUpperCase()));
+            assertSame(map.get(name.toLowerCase()), expected.get(name.toLowerCase()));
+            assertEquals(map.containsKey(name + "x"), expected.containsKey(name + "x"));
+        }
+    }
+
+    @Test
+    public void testOrderAndDuplicates() {
+        List<Attribute> attrs = new ArrayList<Attribute>();
+        attrs.add(new Uid("1"));
+        attrs.add(new Name("name"));
+        attrs.add(AttributeBuilder.build("Mail", "a@example.com"));
+        attrs.add(AttributeBuilder.build("MAIL", "b@example.com"));
+        AttributeMap map = new AttributeMap(attrs);
+        assertEquals(map.size(), 3);
+        assertTrue(map.get("mail").getValue().contains("b@example.com"));
+        // the first name is kept like in the sorted map
+        assertTrue(map.containsKey("Mail"));
+        assertTrue(map.keySet().contains("mail"));
+        Iterator<String> names = map.keySet().iterator();
+        assertEquals(names.next(), Uid.NAME);
+        assertEquals(names.next(), Name.NAME);
+        assertEquals(names.next(), "Mail");
+        assertFalse(names.hasNext());
+        assertEquals(map.values().size(), 3);
+        assertNull(map.get("__uid__x"));
+        assertNull(map.get(null));
+        assertSame(map.get("__uid__"), attrs.get(0));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        List<Attribute> attrs = new ArrayList<Attribute>();
+        attrs.add(new Uid("1"));
+        new AttributeMap(attrs).put("a", new Uid("2"));
+    }
+}
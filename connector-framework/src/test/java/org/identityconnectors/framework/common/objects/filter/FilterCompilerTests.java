@@ -0,0 +1,134 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2015 ForgeRock AS. All rights reserved.
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+package org.identityconnectors.framework.common.objects.filter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.testng.annotations.Test;
+
+public class FilterCompilerTests {
+
+    private static List<ConnectorObject> objects() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        String[] names = { "Alice", "bob", "CAROL" };
+        for (int i = 0; i < names.length; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(String.valueOf(i));
+            builder.setName(names[i]);
+            builder.addAttribute(AttributeBuilder.build("age", 20 + i * 10));
+            builder.addAttribute(AttributeBuilder.build("initial", names[i].charAt(0)));
+            builder.addAttribute(AttributeBuilder.build("groups", "Admins", "users" + i));
+            if (i != 1) {
+                builder.addAttribute(AttributeBuilder.build("mail", names[i] + "@Example.com"));
+            }
+            objects.add(builder.build());
+        }
+        return objects;
+    }
+
+    private static List<Filter> filters() {
+        List<Filter> filters = new ArrayList<Filter>();
+        Filter mail = FilterBuilder.endsWith(AttributeBuilder.build("mail", "@example.com"));
+        Filter name = FilterBuilder.startsWith(AttributeBuilder.build("__NAME__", "a"));
+        Filter contains = FilterBuilder.contains(AttributeBuilder.build("__NAME__", "O"));
+        Filter age = FilterBuilder.greaterThan(AttributeBuilder.build("age", 25));
+        Filter initial = FilterBuilder.lessThanOrEqualTo(AttributeBuilder.build("initial", 'b'));
+        Filter groups =
+                FilterBuilder.containsAllValues(AttributeBuilder.build("groups", "admins"));
+        Filter equals = FilterBuilder.equalTo(AttributeBuilder.build("__NAME__", "bob"));
+        Filter present = FilterBuilder.present("mail");
+        // UNDEFINED for the object without mail
+        Filter missing = FilterBuilder.contains(AttributeBuilder.build("mail", "alice"));
+        filters.add(mail);
+        filters.add(name);
+        filters.add(contains);
+        filters.add(age);
+        filters.add(initial);
+        filters.add(groups);
+        filters.add(equals);
+        filters.add(present);
+        filters.add(FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build("__NAME__", "bob")));
+        filters.add(FilterBuilder.lessThan(AttributeBuilder.build("age", 40)));
+        filters.add(FilterBuilder.and(groups, FilterBuilder.or(age, name)));
+        filters.add(FilterBuilder.or(missing, equals));
+        filters.add(FilterBuilder.or(equals, missing));
+        filters.add(FilterBuilder.not(FilterBuilder.or(missing, age)));
+        filters.add(FilterBuilder.not(FilterBuilder.and(missing, present)));
+        filters.add(FilterBuilder.and(FilterBuilder.not(missing), contains));
+        return filters;
+    }
+
+    @Test
+    public void testSameAsVisitor() {
+        for (boolean caseIgnore : new boolean[] { false, true }) {
+            FilteredResultsHandlerVisitor visitor = new FilteredResultsHandlerVisitor(caseIgnore);
+            for (Filter filter : filters()) {
+                Filter compiled = FilterCompiler.compile(filter, caseIgnore);
+                for (ConnectorObject obj : objects()) {
+                    assertEquals(compiled.accept(obj), filter.accept(visitor, obj).toBoolean(),
+                            filter + " caseIgnore=" + caseIgnore + " " + obj.getName());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCaseIgnore() {
+        ConnectorObject alice = objects().get(0);
+        Filter mail = FilterBuilder.endsWith(AttributeBuilder.build("mail", "@example.com"));
+        assertFalse(FilterCompiler.compile(mail, false).accept(alice));
+        assertTrue(FilterCompiler.compile(mail, true).accept(alice));
+        Filter groups =
+                FilterBuilder.containsAllValues(AttributeBuilder.build("groups", "ADMINS",
+                        "Users0"));
+        assertFalse(FilterCompiler.compile(groups, false).accept(alice));
+        assertTrue(FilterCompiler.compile(groups, true).accept(alice));
+        Filter initial = FilterBuilder.containsAllValues(AttributeBuilder.build("initial", 'a'));
+        assertTrue(FilterCompiler.compile(initial, true).accept(alice));
+        assertFalse(FilterCompiler.compile(initial, true).accept(objects().get(1)));
+    }
+
+    @Test
+    public void testOrderOfChildren() {
+        ConnectorObject bob = objects().get(1);
+        Filter equals = FilterBuilder.equalTo(AttributeBuilder.build("__NAME__", "bob"));
+        Filter missing = FilterBuilder.contains(AttributeBuilder.build("mail", "bob"));
+        // an UNDEFINED child doesn't hide a TRUE child
+        assertTrue(FilterCompiler.compile(FilterBuilder.or(missing, equals), false).accept(bob));
+        assertTrue(FilterCompiler.compile(FilterBuilder.or(equals, missing), false).accept(bob));
+        assertFalse(FilterCompiler.compile(FilterBuilder.not(FilterBuilder.or(missing, missing)),
+                false).accept(bob));
+        assertNull(FilterCompiler.compile(null, true));
+    }
+}